@@ -0,0 +1,43 @@
+package com.vaadin.integration.eclipse.benchmarks;
+
+import java.util.Collection;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks of the plug-in inside the test runtime started by
+ * the build.
+ *
+ * The benchmarks are run in the JVM of the test runtime (without forking), as
+ * the code under test needs the OSGi framework and a workspace. The
+ * benchmarks to run are selected with the system property "benchmark.include"
+ * and the results are written as JSON to the file given in the system
+ * property "benchmark.results".
+ */
+public class BenchmarkRunner {
+
+    @Test
+    public void runBenchmarks() throws RunnerException {
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.include(System.getProperty("benchmark.include", ".*"));
+        builder.forks(0);
+        builder.warmupIterations(5);
+        builder.measurementIterations(10);
+        String results = System.getProperty("benchmark.results");
+        if (results != null) {
+            builder.resultFormat(ResultFormatType.JSON);
+            builder.result(results);
+        }
+        Options options = builder.build();
+
+        Collection<RunResult> runResults = new Runner(options).run();
+        Assert.assertFalse("No benchmarks were run", runResults.isEmpty());
+    }
+}
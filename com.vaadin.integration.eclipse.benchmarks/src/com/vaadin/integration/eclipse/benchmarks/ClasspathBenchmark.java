@@ -0,0 +1,65 @@
+package com.vaadin.integration.eclipse.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.launching.IVMInstall;
+import org.eclipse.jdt.launching.JavaRuntime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.vaadin.integration.eclipse.util.ProjectClasspathCache;
+import com.vaadin.integration.eclipse.util.VaadinPluginUtil;
+
+/**
+ * Benchmarks for computing the classpath used to launch the widgetset and
+ * theme compilers, both when it is cached and when it is recomputed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ClasspathBenchmark {
+
+    /**
+     * Number of library JARs on the classpath of the project.
+     */
+    @Param({ "10", "200" })
+    public int libraries;
+
+    private IJavaProject project;
+    private IVMInstall vmInstall;
+
+    @Setup
+    public void setUp() throws CoreException, IOException {
+        project = SyntheticProject.create("classpath-benchmark", 10,
+                libraries);
+        vmInstall = JavaRuntime.getVMInstall(project);
+    }
+
+    @TearDown
+    public void tearDown() throws CoreException {
+        SyntheticProject.delete(project);
+    }
+
+    @Benchmark
+    public String getProjectBaseClasspath() throws CoreException {
+        return VaadinPluginUtil.getProjectBaseClasspath(project, vmInstall,
+                true);
+    }
+
+    @Benchmark
+    public String getProjectBaseClasspathUncached() throws CoreException {
+        ProjectClasspathCache.invalidateAll();
+        return VaadinPluginUtil.getProjectBaseClasspath(project, vmInstall,
+                true);
+    }
+}
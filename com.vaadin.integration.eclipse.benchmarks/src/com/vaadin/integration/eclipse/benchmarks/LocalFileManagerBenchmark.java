@@ -0,0 +1,76 @@
+package com.vaadin.integration.eclipse.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.core.runtime.CoreException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.vaadin.integration.eclipse.util.VersionUtil;
+import com.vaadin.integration.eclipse.util.data.LocalVaadinVersion;
+import com.vaadin.integration.eclipse.util.files.LocalFileManager;
+import com.vaadin.integration.eclipse.util.files.LocalFileManager.FileType;
+import com.vaadin.integration.eclipse.util.files.LocalVersionCatalogue;
+
+/**
+ * Benchmarks for listing the Vaadin versions in the download directory of the
+ * test runtime.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LocalFileManagerBenchmark {
+
+    /**
+     * Number of downloaded versions of each release type.
+     */
+    @Param({ "5", "100" })
+    public int versions;
+
+    @Setup
+    public void setUp() throws CoreException, IOException {
+        deleteDownloads();
+        for (FileType type : FileType.vaadinReleaseTypes()) {
+            File dir = LocalFileManager.getDownloadDirectory(type).toFile();
+            for (int i = 0; i < versions; ++i) {
+                // a mix of numeric and prerelease revisions
+                String version = "6." + (i % 10) + "."
+                        + (i % 3 == 0 ? "beta" + i : String.valueOf(i));
+                FileUtils.touch(new File(new File(dir, version), VersionUtil
+                        .getVaadinJarFilename(version)));
+            }
+        }
+        // created behind the back of the catalogue
+        LocalVersionCatalogue.invalidate();
+    }
+
+    @TearDown
+    public void tearDown() throws CoreException {
+        deleteDownloads();
+    }
+
+    private void deleteDownloads() throws CoreException {
+        for (FileType type : FileType.vaadinReleaseTypes()) {
+            SyntheticFiles.delete(LocalFileManager.getDownloadDirectory(type)
+                    .toFile());
+        }
+        LocalVersionCatalogue.invalidate();
+    }
+
+    @Benchmark
+    public List<LocalVaadinVersion> getLocalVaadinVersions()
+            throws CoreException {
+        return LocalFileManager.getLocalVaadinVersions(false);
+    }
+}
@@ -0,0 +1,79 @@
+package com.vaadin.integration.eclipse.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.vaadin.integration.eclipse.util.ProjectUtil;
+
+/**
+ * Benchmarks for checking the manifest attributes of add-on JARs, as done for
+ * every JAR on the classpath when looking for widgetsets and themes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProjectUtilBenchmark {
+
+    private static final String WIDGETSET_ATTRIBUTE = "Vaadin-Widgetsets";
+
+    /**
+     * Number of other entries in the JAR.
+     */
+    @Param({ "10", "5000" })
+    public int entries;
+
+    private File dir;
+    private IPath addonJar;
+    private IPath libraryJar;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = SyntheticFiles.createTempDirectory("manifest-benchmark");
+
+        Map<String, String> attributes = new HashMap<String, String>();
+        attributes.put("Implementation-Title", "Add-on");
+        attributes.put(WIDGETSET_ATTRIBUTE, "com.example.AddonWidgetset");
+        File jar = new File(dir, "addon-1.0.jar");
+        SyntheticFiles.createJar(jar, attributes,
+                Collections.<String, String> emptyMap(), entries);
+        addonJar = new Path(jar.getAbsolutePath());
+
+        attributes.remove(WIDGETSET_ATTRIBUTE);
+        jar = new File(dir, "library-1.0.jar");
+        SyntheticFiles.createJar(jar, attributes,
+                Collections.<String, String> emptyMap(), entries);
+        libraryJar = new Path(jar.getAbsolutePath());
+    }
+
+    @TearDown
+    public void tearDown() {
+        SyntheticFiles.delete(dir);
+    }
+
+    @Benchmark
+    public boolean hasManifestAttributePresent() {
+        return ProjectUtil.hasManifestAttribute(WIDGETSET_ATTRIBUTE, addonJar);
+    }
+
+    @Benchmark
+    public boolean hasManifestAttributeAbsent() {
+        return ProjectUtil
+                .hasManifestAttribute(WIDGETSET_ATTRIBUTE, libraryJar);
+    }
+}
@@ -0,0 +1,97 @@
+package com.vaadin.integration.eclipse.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Creates the files and JARs used as input by the benchmarks.
+ */
+public class SyntheticFiles {
+
+    private SyntheticFiles() {
+    }
+
+    /**
+     * Creates an empty temporary directory.
+     *
+     * @param prefix
+     * @return
+     * @throws IOException
+     */
+    public static File createTempDirectory(String prefix) throws IOException {
+        File dir = File.createTempFile(prefix, "");
+        if (!dir.delete() || !dir.mkdirs()) {
+            throw new IOException("Could not create directory " + dir);
+        }
+        return dir;
+    }
+
+    /**
+     * Deletes a directory created for a benchmark, ignoring failures.
+     *
+     * @param dir
+     */
+    public static void delete(File dir) {
+        try {
+            FileUtils.deleteDirectory(dir);
+        } catch (IOException e) {
+            // left in the temporary directory
+        }
+    }
+
+    /**
+     * Writes a JAR with the given main manifest attributes and entries.
+     *
+     * @param file
+     *            JAR to create
+     * @param attributes
+     *            main attributes of the manifest, or null for a JAR without a
+     *            manifest
+     * @param entries
+     *            contents by entry name
+     * @param fillerEntries
+     *            number of additional empty class file entries, to make the
+     *            central directory of the JAR as large as in a library JAR
+     * @throws IOException
+     */
+    public static void createJar(File file, Map<String, String> attributes,
+            Map<String, String> entries, int fillerEntries) throws IOException {
+        file.getParentFile().mkdirs();
+        JarOutputStream out = null;
+        try {
+            if (attributes != null) {
+                Manifest manifest = new Manifest();
+                Attributes main = manifest.getMainAttributes();
+                main.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+                for (Map.Entry<String, String> attribute : attributes
+                        .entrySet()) {
+                    main.putValue(attribute.getKey(), attribute.getValue());
+                }
+                out = new JarOutputStream(new FileOutputStream(file), manifest);
+            } else {
+                out = new JarOutputStream(new FileOutputStream(file));
+            }
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                out.putNextEntry(new JarEntry(entry.getKey()));
+                out.write(entry.getValue().getBytes("UTF-8"));
+                out.closeEntry();
+            }
+            for (int i = 0; i < fillerEntries; ++i) {
+                out.putNextEntry(new JarEntry("com/example/filler/p"
+                        + (i / 100) + "/Filler" + i + ".class"));
+                out.closeEntry();
+            }
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+    }
+}
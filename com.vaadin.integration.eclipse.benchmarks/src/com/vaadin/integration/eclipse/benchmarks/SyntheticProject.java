@@ -0,0 +1,161 @@
+package com.vaadin.integration.eclipse.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IProjectDescription;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceDescription;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.launching.JavaRuntime;
+
+/**
+ * Creates Vaadin 7 style Java projects in the workspace of the test runtime.
+ *
+ * A project has a source folder with a number of packages, each containing a
+ * widgetset module, a plain GWT module and some Java classes, and a number of
+ * library JARs named like Vaadin JARs. The class com.vaadin.ui.UI is in the
+ * source folder so that the project is detected as a Vaadin 7 project.
+ */
+public class SyntheticProject {
+
+    private SyntheticProject() {
+    }
+
+    /**
+     * Creates a project, replacing any earlier project with the same name.
+     * Automatic builds are turned off so that the benchmarks are not disturbed
+     * by builds.
+     *
+     * @param name
+     *            project name
+     * @param packages
+     *            number of packages in the source folder
+     * @param libraries
+     *            number of library JARs on the classpath
+     * @return
+     * @throws CoreException
+     * @throws IOException
+     */
+    public static IJavaProject create(final String name, final int packages,
+            final int libraries) throws CoreException, IOException {
+        IWorkspace workspace = ResourcesPlugin.getWorkspace();
+        IWorkspaceDescription description = workspace.getDescription();
+        if (description.isAutoBuilding()) {
+            description.setAutoBuilding(false);
+            workspace.setDescription(description);
+        }
+
+        final IProject project = workspace.getRoot().getProject(name);
+        if (project.exists()) {
+            project.delete(true, true, null);
+        }
+        final File libDir = project.getWorkspace().getRoot().getLocation()
+                .append(name + "-lib").toFile();
+        SyntheticFiles.delete(libDir);
+        final List<IClasspathEntry> classpath = new ArrayList<IClasspathEntry>();
+        for (int i = 0; i < libraries; ++i) {
+            File jar = new File(libDir, "vaadin-library" + i + "-7.7.0.jar");
+            Map<String, String> attributes = new HashMap<String, String>();
+            attributes.put("Bundle-Name", "Vaadin Library " + i);
+            attributes.put("Implementation-Version", "7.7.0");
+            SyntheticFiles.createJar(jar, attributes,
+                    Collections.<String, String> emptyMap(), 100);
+            classpath.add(JavaCore.newLibraryEntry(
+                    new Path(jar.getAbsolutePath()), null, null));
+        }
+
+        workspace.run(new IWorkspaceRunnable() {
+            public void run(IProgressMonitor monitor) throws CoreException {
+                project.create(null);
+                project.open(null);
+                IProjectDescription projectDescription = project
+                        .getDescription();
+                projectDescription
+                        .setNatureIds(new String[] { JavaCore.NATURE_ID });
+                project.setDescription(projectDescription, null);
+
+                IFolder src = project.getFolder("src");
+                src.create(true, true, null);
+                createFile(src, "com/vaadin/ui/UI.java",
+                        "package com.vaadin.ui;\npublic class UI {\n}\n");
+                for (int i = 0; i < packages; ++i) {
+                    String pkg = "com/example/p" + i;
+                    createFile(src, pkg + "/Widgetset" + i + ".gwt.xml",
+                            "<module>\n"
+                                    + "  <inherits name=\"com.vaadin.DefaultWidgetSet\" />\n"
+                                    + "</module>\n");
+                    createFile(src, pkg + "/Module" + i + ".gwt.xml",
+                            "<module>\n</module>\n");
+                    for (int j = 0; j < 5; ++j) {
+                        createFile(src, pkg + "/client/Widget" + j + ".java",
+                                "package com.example.p" + i
+                                        + ".client;\npublic class Widget" + j
+                                        + " {\n}\n");
+                    }
+                }
+
+                classpath.add(0, JavaCore.newSourceEntry(src.getFullPath()));
+                classpath.add(JavaRuntime.getDefaultJREContainerEntry());
+                JavaCore.create(project).setRawClasspath(
+                        classpath.toArray(new IClasspathEntry[classpath
+                                .size()]),
+                        project.getFolder("bin").getFullPath(), null);
+            }
+        }, null);
+
+        return JavaCore.create(project);
+    }
+
+    /**
+     * Deletes a project created by {@link #create(String, int, int)}.
+     *
+     * @param jproject
+     * @throws CoreException
+     */
+    public static void delete(IJavaProject jproject) throws CoreException {
+        IProject project = jproject.getProject();
+        File libDir = project.getWorkspace().getRoot().getLocation()
+                .append(project.getName() + "-lib").toFile();
+        project.delete(true, true, null);
+        SyntheticFiles.delete(libDir);
+    }
+
+    private static void createFile(IFolder root, String path, String contents)
+            throws CoreException {
+        IFile file = root.getFile(new Path(path));
+        createFolders(file.getParent());
+        try {
+            file.create(new ByteArrayInputStream(contents.getBytes("UTF-8")),
+                    true, null);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void createFolders(IContainer container)
+            throws CoreException {
+        if (container instanceof IFolder && !container.exists()) {
+            createFolders(container.getParent());
+            ((IFolder) container).create(true, true, null);
+        }
+    }
+}
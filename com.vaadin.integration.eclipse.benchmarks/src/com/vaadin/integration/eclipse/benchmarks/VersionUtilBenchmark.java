@@ -0,0 +1,95 @@
+package com.vaadin.integration.eclipse.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.vaadin.integration.eclipse.util.VersionUtil;
+
+/**
+ * Benchmarks for comparing version strings and reading the version of a
+ * Vaadin JAR.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class VersionUtilBenchmark {
+
+    // a mix of the version forms found in the version lists
+    private static final String[] VERSIONS = { "6.8.18", "7.0.0", "7.0.0.beta1",
+            "7.1.15", "7.4.0.alpha2", "7.5-SNAPSHOT", "7.6.8", "7.7.0.rc1",
+            "7.7.10", "8.0.0", "8.0.0.beta2", "8.1-SNAPSHOT", "8.1.0.alpha8",
+            "8.3.2", "8.4.0.rc2", "8.5.2" };
+
+    /**
+     * Number of other entries in the JARs.
+     */
+    @Param({ "10", "5000" })
+    public int entries;
+
+    private File dir;
+    private IPath manifestJar;
+    private IPath versionFileJar;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = SyntheticFiles.createTempDirectory("version-benchmark");
+
+        Map<String, String> attributes = new HashMap<String, String>();
+        attributes.put("Bundle-Name", "Vaadin Server");
+        attributes.put("Implementation-Version", "7.7.10");
+        File jar = new File(dir, "vaadin-server-7.7.10.jar");
+        SyntheticFiles.createJar(jar, attributes,
+                Collections.<String, String> emptyMap(), entries);
+        manifestJar = new Path(jar.getAbsolutePath());
+
+        // Vaadin 6.4.5 and older only have the version in a separate file
+        jar = new File(dir, "vaadin-6.4.5.jar");
+        SyntheticFiles.createJar(jar, null,
+                Collections.singletonMap("META-INF/VERSION", "6.4.5\n"),
+                entries);
+        versionFileJar = new Path(jar.getAbsolutePath());
+    }
+
+    @TearDown
+    public void tearDown() {
+        SyntheticFiles.delete(dir);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void compareVersions(Blackhole blackhole) {
+        for (String version1 : VERSIONS) {
+            for (String version2 : VERSIONS) {
+                blackhole.consume(VersionUtil.compareVersions(version1,
+                        version2));
+            }
+        }
+    }
+
+    @Benchmark
+    public String getVaadinVersionFromManifest() {
+        return VersionUtil.getVaadinVersionFromJar(manifestJar);
+    }
+
+    @Benchmark
+    public String getVaadinVersionFromVersionFile() {
+        return VersionUtil.getVaadinVersionFromJar(versionFileJar);
+    }
+}
@@ -0,0 +1,53 @@
+package com.vaadin.integration.eclipse.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.jdt.core.IJavaProject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.vaadin.integration.eclipse.util.WidgetsetUtil;
+
+/**
+ * Benchmarks for finding the widgetsets of a project.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WidgetsetUtilBenchmark {
+
+    /**
+     * Number of packages, each with one widgetset, in the project.
+     */
+    @Param({ "10", "200" })
+    public int packages;
+
+    private IJavaProject project;
+
+    @Setup
+    public void setUp() throws CoreException, IOException {
+        project = SyntheticProject.create("widgetset-benchmark", packages, 5);
+    }
+
+    @TearDown
+    public void tearDown() throws CoreException {
+        SyntheticProject.delete(project);
+    }
+
+    @Benchmark
+    public List<String> findWidgetSets() throws CoreException {
+        return WidgetsetUtil.findWidgetSets(project,
+                new NullProgressMonitor());
+    }
+}
@@ -0,0 +1,100 @@
+package com.vaadin.integration.eclipse.builder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the stylesheet processing of {@link ThemeOutputProcessor}.
+ */
+public class ThemeOutputProcessorTest {
+
+    private File themeDir;
+
+    @Before
+    public void setUp() throws IOException {
+        themeDir = File.createTempFile("theme", "");
+        themeDir.delete();
+        themeDir.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(themeDir);
+    }
+
+    @Test
+    public void minifyRemovesWhitespaceAndComments() {
+        Assert.assertEquals(".a .b,.c>.d{color:red;margin:0 auto}.e{}",
+                ThemeOutputProcessor.minify("/* header */\n"
+                        + ".a  .b ,\n.c > .d {\n  color: red ;\n"
+                        + "  margin: 0   auto;\n}\n\n.e { /* empty */ }\n"));
+    }
+
+    @Test
+    public void minifyKeepsStringsAndLicenseComments() {
+        Assert.assertEquals(
+                "/*! License */ .a:before{content:\"  { ; }  \"}"
+                        + ".b:after{content:'a \\' /* b */'}",
+                ThemeOutputProcessor.minify("/*! License */\n"
+                        + ".a:before {\n  content: \"  { ; }  \";\n}\n"
+                        + ".b:after { content: 'a \\' /* b */'; }"));
+    }
+
+    @Test
+    public void inlineImagesReplacesSmallImages() throws IOException {
+        FileUtils.writeByteArrayToFile(new File(themeDir, "small.png"),
+                new byte[] { 'M', 'a', 'n' });
+        FileUtils.writeByteArrayToFile(new File(themeDir, "img/icon.gif"),
+                new byte[] { 'M', 'a' });
+        FileUtils.writeByteArrayToFile(new File(themeDir, "one.svg"),
+                new byte[] { 'M' });
+        Set<File> inlined = new HashSet<File>();
+
+        String css = ThemeOutputProcessor.inlineImages(
+                ".a{background:url(small.png)}"
+                        + ".b{background:url('img/icon.gif')}"
+                        + ".c{background:url(\"one.svg\")}", themeDir,
+                inlined);
+
+        Assert.assertEquals(".a{background:url(data:image/png;base64,TWFu)}"
+                + ".b{background:url(data:image/gif;base64,TWE=)}"
+                + ".c{background:url(data:image/svg+xml;base64,TQ==)}", css);
+        Assert.assertEquals(
+                new HashSet<File>(Arrays.asList(
+                        new File(themeDir, "small.png"), new File(themeDir,
+                                "img/icon.gif"), new File(themeDir,
+                                "one.svg"))), inlined);
+    }
+
+    @Test
+    public void inlineImagesKeepsOtherUrls() throws IOException {
+        FileUtils.writeByteArrayToFile(new File(themeDir, "small.png"),
+                new byte[] { 1, 2, 3 });
+        FileUtils.writeByteArrayToFile(new File(themeDir, "large.png"),
+                new byte[8 * 1024]);
+        FileUtils.writeByteArrayToFile(new File(themeDir, "font.woff"),
+                new byte[] { 1, 2, 3 });
+        String css = ".a{background:url(large.png)}"
+                + ".b{background:url(/small.png)}"
+                + ".c{background:url(http://example.com/small.png)}"
+                + ".d{background:url(small.png?v=1)}"
+                + ".e{background:url(missing.png)}"
+                + ".f{background:url(data:image/png;base64,AQID)}"
+                + "@font-face{src:url(font.woff)}";
+        Set<File> inlined = new HashSet<File>();
+
+        Assert.assertEquals(css,
+                ThemeOutputProcessor.inlineImages(css, themeDir, inlined));
+        Assert.assertEquals(Collections.emptySet(), inlined);
+    }
+}
@@ -0,0 +1,88 @@
+package com.vaadin.integration.eclipse.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the console filtering of {@link GwtCompilerOutputHandler}.
+ */
+public class GwtCompilerOutputHandlerTest {
+
+    // log of a compilation at the INFO level, shortened
+    private static final String[] LOG = {
+            "Compiling module com.example.AppWidgetset",
+            "   Computing all possible rebind results for 'com.vaadin.client.metadata.ConnectorBundleLoader'",
+            "      Rebinding com.vaadin.client.metadata.ConnectorBundleLoader",
+            "         Invoking generator com.vaadin.server.widgetsetutils.ConnectorBundleLoaderFactory",
+            "            Populating eager bundle",
+            "               Visiting ButtonConnector with ConnectorInitVisitor",
+            "                  [WARN] No @Connect annotation for LegacyConnector",
+            "   Validating units:",
+            "      Ignored 2 units with compilation errors in first pass.",
+            "   [ERROR] Errors in 'file:/work/app/src/com/example/client/AppConnector.java'",
+            "      [ERROR] Line 12: Unresolved reference to type Foo",
+            "   [WARN] Warnings in 'file:/work/app/src/com/example/client/Other.java'",
+            "      [WARN] Line 7: Deprecated method used",
+            "   Compiling 2 permutations",
+            "      Compiling permutation 0...",
+            "      Compiling permutation 1...",
+            "   Compile of permutations succeeded",
+            "   Compilation succeeded -- 41.212s",
+            "Linking into /work/app/WebContent/VAADIN/widgetsets/com.example.AppWidgetset",
+            "   Link succeeded",
+            "   Linking succeeded -- 0.641s" };
+
+    private static List<String> shownLines(GwtCompilerOutputHandler handler,
+            String... lines) {
+        List<String> shown = new ArrayList<String>();
+        for (String line : lines) {
+            if (handler.handleLine(line)) {
+                shown.add(line);
+            }
+        }
+        return shown;
+    }
+
+    @Test
+    public void quietModeShowsOnlyErrorsAndWarnings() {
+        GwtCompilerOutputHandler handler = new GwtCompilerOutputHandler(
+                new NullProgressMonitor(), 100, false);
+
+        Assert.assertEquals(Arrays.asList(
+                "                  [WARN] No @Connect annotation for LegacyConnector",
+                "   [ERROR] Errors in 'file:/work/app/src/com/example/client/AppConnector.java'",
+                "      [ERROR] Line 12: Unresolved reference to type Foo",
+                "   [WARN] Warnings in 'file:/work/app/src/com/example/client/Other.java'",
+                "      [WARN] Line 7: Deprecated method used"),
+                shownLines(handler, LOG));
+        // the problems are collected from the hidden log as well
+        Assert.assertEquals(2, handler.getProblems().size());
+    }
+
+    @Test
+    public void quietModeShowsOutputNotFromTheLog() {
+        GwtCompilerOutputHandler handler = new GwtCompilerOutputHandler(
+                new NullProgressMonitor(), 100, false);
+        String[] output = {
+                "Error: Could not find or load main class com.google.gwt.dev.Compiler",
+                "Exception in thread \"main\" java.lang.OutOfMemoryError: Java heap space",
+                "\tat java.util.Arrays.copyOf(Arrays.java:2367)",
+                "Caused by: java.lang.IllegalStateException" };
+
+        Assert.assertEquals(Arrays.asList(output),
+                shownLines(handler, output));
+    }
+
+    @Test
+    public void verboseModeShowsAllLines() {
+        GwtCompilerOutputHandler handler = new GwtCompilerOutputHandler(
+                new NullProgressMonitor(), 100, true);
+
+        Assert.assertEquals(Arrays.asList(LOG), shownLines(handler, LOG));
+    }
+}
@@ -0,0 +1,256 @@
+package com.vaadin.integration.eclipse.util.network;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.vaadin.integration.eclipse.util.HashUtil;
+import com.vaadin.integration.eclipse.util.network.DownloadEngine.Download;
+
+/**
+ * Tests for {@link DownloadEngine} against a local HTTP server.
+ */
+public class DownloadEngineTest {
+
+    private static final Pattern RANGE_PATTERN = Pattern
+            .compile("bytes=(\\d+)-");
+
+    private HttpServer server;
+    private File dir;
+
+    // contents served by path
+    private final Map<String, byte[]> files = Collections
+            .synchronizedMap(new HashMap<String, byte[]>());
+
+    // Range headers of the requests, null for requests without one
+    private final List<String> ranges = Collections
+            .synchronizedList(new ArrayList<String>());
+
+    // true to answer every range request with 416
+    private volatile boolean rejectRanges = false;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("download", "");
+        dir.delete();
+        dir.mkdirs();
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    serve(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.stop(0);
+        FileUtils.deleteDirectory(dir);
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        byte[] data = files.get(path);
+        if (data == null) {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (!path.endsWith(".sha256") && !path.endsWith(".sha1")) {
+            ranges.add(range);
+        }
+        int offset = 0;
+        if (range != null) {
+            Matcher matcher = RANGE_PATTERN.matcher(range);
+            if (rejectRanges || !matcher.matches()
+                    || Integer.parseInt(matcher.group(1)) >= data.length) {
+                exchange.sendResponseHeaders(416, -1);
+                return;
+            }
+            offset = Integer.parseInt(matcher.group(1));
+            exchange.getResponseHeaders().add(
+                    "Content-Range",
+                    "bytes " + offset + "-" + (data.length - 1) + "/"
+                            + data.length);
+            exchange.sendResponseHeaders(206, data.length - offset);
+        } else {
+            exchange.sendResponseHeaders(200, data.length);
+        }
+        OutputStream out = exchange.getResponseBody();
+        out.write(data, offset, data.length - offset);
+        out.close();
+    }
+
+    private String getUrl(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    private static byte[] createData(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; ++i) {
+            data[i] = (byte) (i * 31 + i / 256);
+        }
+        return data;
+    }
+
+    private static String sha256(byte[] data) {
+        return HashUtil.toHex(HashUtil.newDigest("SHA-256").digest(data));
+    }
+
+    @Test
+    public void resumesPartialDownload() throws Exception {
+        byte[] data = createData(200 * 1024);
+        files.put("/file.jar", data);
+        File target = new File(dir, "file.jar");
+        File part = new File(dir, "file.jar.part");
+        FileUtils.writeByteArrayToFile(part,
+                Arrays.copyOfRange(data, 0, 1000));
+
+        DownloadEngine.download(
+                Collections.singletonList(new Download(
+                        getUrl("/file.jar"), target)),
+                new NullProgressMonitor());
+
+        Assert.assertEquals(Collections.singletonList("bytes=1000-"), ranges);
+        Assert.assertArrayEquals(data, FileUtils.readFileToByteArray(target));
+        Assert.assertFalse(part.exists());
+    }
+
+    @Test
+    public void restartsWhenRangeNotSatisfiable() throws Exception {
+        byte[] data = createData(10 * 1024);
+        files.put("/file.jar", data);
+        rejectRanges = true;
+        File target = new File(dir, "file.jar");
+        // e.g. left behind by an earlier version of the file
+        FileUtils.writeByteArrayToFile(new File(dir, "file.jar.part"),
+                createData(20 * 1024));
+
+        DownloadEngine.download(
+                Collections.singletonList(new Download(
+                        getUrl("/file.jar"), target)),
+                new NullProgressMonitor());
+
+        Assert.assertEquals(Arrays.asList("bytes=20480-", null), ranges);
+        Assert.assertArrayEquals(data, FileUtils.readFileToByteArray(target));
+    }
+
+    @Test
+    public void verifiesChecksum() throws Exception {
+        byte[] data = createData(10 * 1024);
+        files.put("/file.jar", data);
+        files.put("/file.jar.sha256",
+                (sha256(data) + "  file.jar\n").getBytes("US-ASCII"));
+        File target = new File(dir, "file.jar");
+
+        DownloadEngine.download(
+                Collections.singletonList(new Download(
+                        getUrl("/file.jar"), target)),
+                new NullProgressMonitor());
+
+        Assert.assertArrayEquals(data, FileUtils.readFileToByteArray(target));
+    }
+
+    @Test
+    public void rejectsChecksumMismatch() throws Exception {
+        byte[] data = createData(10 * 1024);
+        files.put("/file.jar", data);
+        files.put("/file.jar.sha256",
+                sha256(createData(100)).getBytes("US-ASCII"));
+        File target = new File(dir, "file.jar");
+
+        try {
+            DownloadEngine.download(
+                    Collections.singletonList(new Download(
+                            getUrl("/file.jar"), target)),
+                    new NullProgressMonitor());
+            Assert.fail("Checksum mismatch not detected");
+        } catch (CoreException e) {
+            // expected
+        }
+
+        Assert.assertFalse(target.exists());
+        // a corrupt file must not be resumed
+        Assert.assertFalse(new File(dir, "file.jar.part").exists());
+    }
+
+    @Test
+    public void cancelKeepsPartialDownload() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(1);
+        // sends a small chunk at a time until the client gives up
+        server.createContext("/slow.jar", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    exchange.sendResponseHeaders(200, 100 * 1024 * 1024);
+                    OutputStream out = exchange.getResponseBody();
+                    byte[] chunk = createData(1024);
+                    for (int i = 0; i < 1000; ++i) {
+                        out.write(chunk);
+                        out.flush();
+                        started.countDown();
+                        Thread.sleep(20);
+                    }
+                } catch (IOException e) {
+                    // client disconnected
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    exchange.close();
+                    finished.countDown();
+                }
+            }
+        });
+        File target = new File(dir, "slow.jar");
+        NullProgressMonitor monitor = new NullProgressMonitor() {
+            @Override
+            public boolean isCanceled() {
+                // cancel once the transfer has started
+                return started.getCount() == 0;
+            }
+        };
+
+        try {
+            DownloadEngine.download(
+                    Collections.singletonList(new Download(
+                            getUrl("/slow.jar"), target)), monitor);
+            Assert.fail("Download not canceled");
+        } catch (OperationCanceledException e) {
+            // expected
+        }
+
+        Assert.assertFalse(target.exists());
+        // kept to resume later
+        Assert.assertTrue(new File(dir, "slow.jar.part").exists());
+        finished.await(30, TimeUnit.SECONDS);
+    }
+}
@@ -8,6 +8,7 @@ import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.jobs.Job;
 
 import com.vaadin.integration.eclipse.builder.AddonStylesBuilder;
+import com.vaadin.integration.eclipse.builder.ThemeBuilder;
 import com.vaadin.integration.eclipse.maven.MavenUtil;
 import com.vaadin.integration.eclipse.util.ErrorUtil;
 import com.vaadin.integration.eclipse.util.PreferenceUtil;
@@ -35,6 +36,12 @@ public class CheckAddonStylesBuilderJob extends Job {
                 } else {
                     AddonStylesBuilder.addBuilder(project);
                 }
+                // Maven projects compile their themes with Maven
+                if (MavenUtil.isMavenProject(project)) {
+                    ThemeBuilder.removeBuilder(project);
+                } else {
+                    ThemeBuilder.addBuilder(project);
+                }
             } catch (CoreException e) {
                 ErrorUtil.handleBackgroundException(e);
             }
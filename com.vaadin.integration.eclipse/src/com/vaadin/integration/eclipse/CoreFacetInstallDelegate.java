@@ -39,6 +39,7 @@ import org.eclipse.wst.common.project.facet.core.IDelegate;
 import org.eclipse.wst.common.project.facet.core.IProjectFacetVersion;
 
 import com.vaadin.integration.eclipse.builder.AddonStylesBuilder;
+import com.vaadin.integration.eclipse.builder.ThemeBuilder;
 import com.vaadin.integration.eclipse.builder.WidgetsetNature;
 import com.vaadin.integration.eclipse.configuration.VaadinFacetInstallDataModelProvider;
 import com.vaadin.integration.eclipse.util.ErrorUtil;
@@ -288,6 +289,7 @@ IVaadinFacetInstallDataModelProperties {
                     }
 
                     AddonStylesBuilder.addBuilder(project);
+                    ThemeBuilder.addBuilder(project);
 
                     if (vaadinVersion instanceof MavenVaadinVersion) {
                         setupIvy(jProject, (MavenVaadinVersion) vaadinVersion,
@@ -381,6 +383,7 @@ IVaadinFacetInstallDataModelProperties {
                 }
 
                 AddonStylesBuilder.addBuilder(project);
+                ThemeBuilder.addBuilder(project);
             }
             monitor.worked(1);
         } catch (Exception e) {
@@ -14,6 +14,18 @@ import org.eclipse.ui.plugin.AbstractUIPlugin;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 
+import com.vaadin.integration.eclipse.builder.GwtModuleIndex;
+import com.vaadin.integration.eclipse.builder.SuperDevModeManager;
+import com.vaadin.integration.eclipse.builder.ThemeImportGraph;
+import com.vaadin.integration.eclipse.util.JarMetadataIndex;
+import com.vaadin.integration.eclipse.util.PreferenceUtil;
+import com.vaadin.integration.eclipse.util.ProjectClasspathCache;
+import com.vaadin.integration.eclipse.util.VaadinJarResolver;
+import com.vaadin.integration.eclipse.util.VaadinProjectModel;
+import com.vaadin.integration.eclipse.util.files.ArtifactStore;
+import com.vaadin.integration.eclipse.util.files.GwtUnitCache;
+import com.vaadin.integration.eclipse.util.worker.CompilerWorkerPool;
+
 public class VaadinPlugin extends AbstractUIPlugin {
 
     public static final String PLUGIN_ID = "com.vaadin.integration.eclipse";
@@ -104,10 +116,28 @@ public class VaadinPlugin extends AbstractUIPlugin {
         // when necessary (#15500).
         ResourcesPlugin.getWorkspace().addResourceChangeListener(
                 new NewProjectListener(), IResourceChangeEvent.POST_BUILD);
+        GwtUnitCache.start();
+        ProjectClasspathCache.start();
+        VaadinProjectModel.start();
+        ThemeImportGraph.start();
+        ArtifactStore.start();
+        GwtModuleIndex.start();
+        PreferenceUtil.start();
     }
 
     @Override
     public void stop(BundleContext context) throws Exception {
+        CompilerWorkerPool.stopAll();
+        SuperDevModeManager.stopAll();
+        GwtUnitCache.stop();
+        ProjectClasspathCache.stop();
+        VaadinProjectModel.stop();
+        ThemeImportGraph.stop();
+        VaadinJarResolver.clear();
+        ArtifactStore.stop();
+        JarMetadataIndex.stop();
+        GwtModuleIndex.stop();
+        PreferenceUtil.stop();
         super.stop(context);
     }
 
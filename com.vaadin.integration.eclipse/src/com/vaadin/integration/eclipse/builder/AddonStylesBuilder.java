@@ -1,6 +1,8 @@
 package com.vaadin.integration.eclipse.builder;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import org.eclipse.core.resources.ICommand;
@@ -15,7 +17,6 @@ import org.eclipse.core.resources.IncrementalProjectBuilder;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
-import org.eclipse.core.runtime.SubProgressMonitor;
 
 import com.vaadin.integration.eclipse.util.ProjectUtil;
 
@@ -24,11 +25,7 @@ public class AddonStylesBuilder extends IncrementalProjectBuilder {
     public static final String BUILDER_ID = "com.vaadin.integration.eclipse.addonStylesBuilder";
 
     class AddonStyleDeltaVisitor implements IResourceDeltaVisitor {
-        private IProgressMonitor monitor;
-
-        public AddonStyleDeltaVisitor(IProgressMonitor monitor) {
-            this.monitor = monitor;
-        }
+        private boolean addonsChanged = false;
 
         private boolean isJar(IResource resource) {
             return resource instanceof IFile
@@ -36,19 +33,23 @@ public class AddonStylesBuilder extends IncrementalProjectBuilder {
         }
 
         public boolean visit(IResourceDelta delta) throws CoreException {
+            if (addonsChanged) {
+                // the themes are updated once for the whole delta
+                return false;
+            }
             IResource resource = delta.getResource();
             int kind = delta.getKind();
 
             if (kind == IResourceDelta.ADDED || kind == IResourceDelta.CHANGED) {
                 if (isAddonPackageWithStyles(resource.getRawLocation())) {
-                    run(monitor);
+                    addonsChanged = true;
                 }
             } else if (kind == IResourceDelta.REMOVED && isJar(resource)) {
-                run(monitor);
+                addonsChanged = true;
             }
 
             // return true to continue visiting children.
-            return true;
+            return !addonsChanged;
         }
     }
 
@@ -62,7 +63,11 @@ public class AddonStylesBuilder extends IncrementalProjectBuilder {
             if (delta == null) {
                 run(monitor);
             } else {
-                delta.accept(new AddonStyleDeltaVisitor(monitor));
+                AddonStyleDeltaVisitor visitor = new AddonStyleDeltaVisitor();
+                delta.accept(visitor);
+                if (visitor.addonsChanged) {
+                    run(monitor);
+                }
             }
         }
         return null;
@@ -73,16 +78,17 @@ public class AddonStylesBuilder extends IncrementalProjectBuilder {
         if (AddonStylesImporter.isSupported(project)) {
             IFolder themes = ProjectUtil.getThemesFolder(project);
             if (themes.exists()) {
+                List<IFolder> themeFolders = new ArrayList<IFolder>();
                 for (IResource theme : themes.members()) {
-                    IFolder themeFolder = (IFolder) theme;
-                    try {
-                        AddonStylesImporter.run(project, monitor, themeFolder);
-                        themeFolder.refreshLocal(IResource.DEPTH_INFINITE,
-                                new SubProgressMonitor(monitor, 1));
-                    } catch (IOException e) {
-                        e.printStackTrace();
+                    if (theme instanceof IFolder) {
+                        themeFolders.add((IFolder) theme);
                     }
                 }
+                try {
+                    AddonStylesImporter.run(project, monitor, themeFolders);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
             }
         }
     }
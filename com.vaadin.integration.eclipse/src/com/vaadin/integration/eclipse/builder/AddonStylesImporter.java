@@ -1,25 +1,66 @@
 package com.vaadin.integration.eclipse.builder;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
 
+import org.apache.commons.io.IOUtils;
 import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.SubProgressMonitor;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.launching.IVMInstall;
 
 import com.vaadin.integration.eclipse.VaadinPlugin;
+import com.vaadin.integration.eclipse.util.ClasspathArgumentFile;
 import com.vaadin.integration.eclipse.util.ErrorUtil;
+import com.vaadin.integration.eclipse.util.GeneratedFiles;
+import com.vaadin.integration.eclipse.util.JarMetadataIndex;
+import com.vaadin.integration.eclipse.util.PlatformUtil;
 import com.vaadin.integration.eclipse.util.PreferenceUtil;
 import com.vaadin.integration.eclipse.util.VaadinPluginUtil;
 import com.vaadin.integration.eclipse.util.WidgetsetUtil;
+import com.vaadin.integration.eclipse.util.worker.CompilerWorkerPool;
 
 public class AddonStylesImporter {
 
+    private static final String ADDONS_FILE = "addons.scss";
+
+    private static final String STYLESHEETS_ATTRIBUTE = "Vaadin-Stylesheets";
+
+    /**
+     * The add-on stylesheets an addons.scss file was created for and the
+     * modification time of the file.
+     */
+    private static class Generated {
+        private final String stylesheets;
+        private final long lastModified;
+
+        private Generated(String stylesheets, long lastModified) {
+            this.stylesheets = stylesheets;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * Last created addons.scss files by full path of the theme folder.
+     */
+    private static final Map<IPath, Generated> generated = new HashMap<IPath, Generated>();
+
     /**
      * Does the project support Vaadin 7.1 Addon importer
      * 
@@ -53,11 +94,45 @@ public class AddonStylesImporter {
         PreferenceUtil.get(project).setAddonThemeScanningSuspended(suspended);
     }
 
+    /**
+     * Creates the addons.scss file of a theme.
+     * 
+     * @param project
+     * @param monitor
+     * @param targetDir
+     *            the theme folder
+     * @throws CoreException
+     * @throws IOException
+     */
     public static void run(IProject project, final IProgressMonitor monitor,
             IFolder targetDir) throws CoreException, IOException {
+        run(project, monitor, Collections.singletonList(targetDir));
+    }
 
-        if (AddonStylesImporter.isSuspended(project)) {
-            return;
+    /**
+     * Creates the addons.scss files of themes of a project.
+     * 
+     * The add-on stylesheets on the classpath are looked up once for all the
+     * themes, and a theme is skipped if they have not changed since its
+     * addons.scss was last created and the file has not been modified since.
+     * The themes are processed one after another in a compiler worker JVM
+     * shared by the themes of the project, see {@link CompilerWorkerPool}.
+     * An addons.scss file is only written and refreshed if its contents
+     * change, see {@link GeneratedFiles}.
+     * 
+     * @param project
+     * @param monitor
+     * @param themeFolders
+     * @return the theme folders whose addons.scss was changed and refreshed
+     * @throws CoreException
+     * @throws IOException
+     */
+    public static List<IFolder> run(IProject project,
+            final IProgressMonitor monitor, Collection<IFolder> themeFolders)
+            throws CoreException, IOException {
+        List<IFolder> updated = new ArrayList<IFolder>();
+        if (AddonStylesImporter.isSuspended(project) || themeFolders.isEmpty()) {
+            return updated;
         }
 
         IJavaProject jproject = JavaCore.create(project);
@@ -67,40 +142,159 @@ public class AddonStylesImporter {
         ArrayList<String> commonArgs = WidgetsetUtil.buildCommonArgs(jproject,
                 vmInstall);
 
-        ArrayList<String> compilerArgs = new ArrayList<String>(commonArgs);
+        String stylesheets = getAddonStylesheets(VaadinPluginUtil
+                .getProjectBaseClasspath(jproject, vmInstall, true));
 
-        compilerArgs.add(VaadinPlugin.ADDON_IMPORTER_CLASS);
+        List<IFolder> targetDirs = new ArrayList<IFolder>();
+        for (IFolder themeFolder : themeFolders) {
+            if (!isUpToDate(themeFolder, stylesheets)) {
+                targetDirs.add(themeFolder);
+            }
+        }
+        if (targetDirs.isEmpty()) {
+            return updated;
+        }
 
-        String themePath = targetDir.getLocation().toPortableString();
-        compilerArgs.add(themePath);
+        IPath projectLocation = project.getLocation();
 
-        final String[] argsStr = new String[compilerArgs.size()];
-        compilerArgs.toArray(argsStr);
+        // the files are created in a staging directory and only copied to
+        // the themes if they have changed
+        File stagingDir = GeneratedFiles.createStagingDirectory();
 
-        ProcessBuilder b = new ProcessBuilder(argsStr);
+        monitor.beginTask("Creating addons.scss", targetDirs.size() * 2);
+        try {
+            for (IFolder targetDir : targetDirs) {
+                if (monitor.isCanceled()) {
+                    break;
+                }
+                ArrayList<String> compilerArgs = new ArrayList<String>(
+                        commonArgs);
 
-        IPath projectLocation = project.getLocation();
-        b.directory(projectLocation.toFile());
+                compilerArgs.add(VaadinPlugin.ADDON_IMPORTER_CLASS);
 
-        monitor.beginTask("Creating addons.scss", 1);
+                File themeStagingDir = new File(stagingDir,
+                        targetDir.getName());
+                themeStagingDir.mkdir();
+                String themePath = new Path(themeStagingDir.getAbsolutePath())
+                        .toPortableString();
+                compilerArgs.add(themePath);
 
-        final Process exec = b.start();
+                ProcessBuilder b = new ProcessBuilder(
+                        ClasspathArgumentFile.apply(compilerArgs, vmInstall));
+                b.directory(projectLocation.toFile());
 
-        try {
-            int result = exec.waitFor();
-            monitor.worked(1);
-            if (result != 0) {
-                throw new Error(
-                        "The "
-                                + AddonStylesImporter.class.getSimpleName()
-                                + " failed to create then addons.scss file with the return code "
-                                + result);
-            }
+                // starting a JVM takes much longer than creating the file
+                Process exec = CompilerWorkerPool.start(vmInstall,
+                        projectLocation.toFile(), commonArgs,
+                        VaadinPlugin.ADDON_IMPORTER_CLASS,
+                        Collections.singletonList(themePath));
+                if (exec == null) {
+                    exec = b.start();
+                }
 
+                int result = exec.waitFor();
+                if (CompilerWorkerPool.isWorkerFailure(exec)) {
+                    exec = b.start();
+                    result = exec.waitFor();
+                }
+                monitor.worked(1);
+                if (result != 0) {
+                    throw new Error(
+                            "The "
+                                    + AddonStylesImporter.class.getSimpleName()
+                                    + " failed to create then addons.scss file with the return code "
+                                    + result);
+                }
+                if (GeneratedFiles.update(new File(themeStagingDir,
+                        ADDONS_FILE), targetDir.getFile(ADDONS_FILE),
+                        new SubProgressMonitor(monitor, 1))) {
+                    updated.add(targetDir);
+                }
+                setUpToDate(targetDir, stylesheets);
+            }
         } catch (InterruptedException e) {
             ErrorUtil.logInfo("Update of addons.scss interrupted");
         } finally {
             monitor.done();
+            GeneratedFiles.deleteStagingDirectory(stagingDir);
+        }
+        return updated;
+    }
+
+    /**
+     * Returns the add-on stylesheets declared by the JARs and folders on a
+     * classpath in classpath order, as a string that changes whenever the
+     * importer would create a different addons.scss file.
+     */
+    private static String getAddonStylesheets(String classpath) {
+        StringBuilder result = new StringBuilder();
+        for (String entry : classpath.split(PlatformUtil
+                .getClasspathSeparator())) {
+            if (entry.length() == 0) {
+                continue;
+            }
+            File file = new File(entry);
+            String value = null;
+            try {
+                if (file.isFile()) {
+                    if (file.getName().endsWith(".jar")) {
+                        value = JarMetadataIndex.get(file).getAttribute(
+                                STYLESHEETS_ATTRIBUTE);
+                    }
+                } else {
+                    value = getManifestAttribute(new File(file,
+                            JarFile.MANIFEST_NAME), STYLESHEETS_ATTRIBUTE);
+                }
+            } catch (IOException e) {
+                // not readable by the importer either, but remember the
+                // entry so that the file is created when it becomes readable
+                value = "?";
+            }
+            if (value != null) {
+                result.append(entry).append('=').append(value)
+                        .append('\n');
+            }
+        }
+        return result.toString();
+    }
+
+    private static String getManifestAttribute(File manifestFile,
+            String attribute) throws IOException {
+        if (!manifestFile.isFile()) {
+            return null;
+        }
+        InputStream input = new FileInputStream(manifestFile);
+        try {
+            return new Manifest(input).getMainAttributes().getValue(attribute);
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    private static boolean isUpToDate(IFolder themeFolder, String stylesheets) {
+        File addons = getAddonsFile(themeFolder);
+        synchronized (generated) {
+            Generated last = generated.get(themeFolder.getFullPath());
+            return last != null && addons != null && addons.isFile()
+                    && last.stylesheets.equals(stylesheets)
+                    && last.lastModified == addons.lastModified();
         }
     }
+
+    private static void setUpToDate(IFolder themeFolder, String stylesheets) {
+        File addons = getAddonsFile(themeFolder);
+        synchronized (generated) {
+            if (addons != null && addons.isFile()) {
+                generated.put(themeFolder.getFullPath(), new Generated(
+                        stylesheets, addons.lastModified()));
+            } else {
+                generated.remove(themeFolder.getFullPath());
+            }
+        }
+    }
+
+    private static File getAddonsFile(IFolder themeFolder) {
+        IPath location = themeFolder.getFile(ADDONS_FILE).getLocation();
+        return location != null ? location.toFile() : null;
+    }
 }
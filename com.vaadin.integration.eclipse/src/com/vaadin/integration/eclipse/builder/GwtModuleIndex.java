@@ -0,0 +1,404 @@
+package com.vaadin.integration.eclipse.builder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceVisitor;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.JavaCore;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import com.vaadin.integration.eclipse.util.ErrorUtil;
+
+/**
+ * In-memory index of the GWT modules in the source folders of projects.
+ *
+ * For each module, the index records the folders containing its client side
+ * code (source and super-source paths) and public resources as well as the
+ * modules it inherits. This makes it possible to find the widgetsets affected
+ * by a changed resource without searching the workspace or parsing anything.
+ *
+ * The index of a project is built on first use and kept up to date by
+ * {@link WidgetsetBuilder} from resource deltas. It is discarded when the
+ * project is closed or deleted.
+ */
+public class GwtModuleIndex {
+
+    private static final String MODULE_SUFFIX = ".gwt.xml";
+
+    // used by GWT when a module does not declare any source path
+    private static final String DEFAULT_SOURCE_PATH = "client";
+
+    // used by GWT when a module does not declare any public path
+    private static final String DEFAULT_PUBLIC_PATH = "public";
+
+    /**
+     * Indexes by project name.
+     */
+    private static final Map<String, GwtModuleIndex> indexes = new HashMap<String, GwtModuleIndex>();
+
+    /**
+     * Source folders of the project when the index was built.
+     */
+    private final List<IPath> sourceRoots = new ArrayList<IPath>();
+
+    /**
+     * Modules by the full path of the module file.
+     */
+    private final Map<IPath, Module> modules = new HashMap<IPath, Module>();
+
+    /**
+     * Affected widgetsets by folder, cleared whenever a module changes.
+     */
+    private final Map<IPath, Set<String>> affectedWidgetsets = new HashMap<IPath, Set<String>>();
+
+    private GwtModuleIndex() {
+    }
+
+    /**
+     * Returns the index of a project, building it if necessary.
+     *
+     * @param project
+     * @return
+     * @throws CoreException
+     */
+    public static GwtModuleIndex get(IProject project) throws CoreException {
+        synchronized (indexes) {
+            GwtModuleIndex index = indexes.get(project.getName());
+            if (index == null) {
+                index = new GwtModuleIndex();
+                index.build(JavaCore.create(project));
+                indexes.put(project.getName(), index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Discards the index of a project, e.g. when its source folders have
+     * changed. The index is rebuilt on next use.
+     *
+     * @param project
+     */
+    public static void invalidate(IProject project) {
+        synchronized (indexes) {
+            indexes.remove(project.getName());
+        }
+    }
+
+    /**
+     * Starts discarding the indexes of closed and deleted projects.
+     */
+    public static void start() {
+        ResourcesPlugin.getWorkspace().addResourceChangeListener(
+                ProjectCloseListener.INSTANCE,
+                IResourceChangeEvent.PRE_CLOSE
+                        | IResourceChangeEvent.PRE_DELETE);
+    }
+
+    /**
+     * Stops listening to the projects and discards all indexes.
+     */
+    public static void stop() {
+        ResourcesPlugin.getWorkspace().removeResourceChangeListener(
+                ProjectCloseListener.INSTANCE);
+        synchronized (indexes) {
+            indexes.clear();
+        }
+    }
+
+    /**
+     * Checks whether a resource is a GWT module descriptor.
+     *
+     * @param resource
+     * @return
+     */
+    public static boolean isModuleFile(IResource resource) {
+        return resource instanceof IFile
+                && resource.getName().endsWith(MODULE_SUFFIX);
+    }
+
+    private void build(IJavaProject jproject) throws CoreException {
+        for (IPackageFragmentRoot root : jproject.getPackageFragmentRoots()) {
+            if (root.getKind() != IPackageFragmentRoot.K_SOURCE
+                    || !(root.getResource() instanceof IContainer)) {
+                continue;
+            }
+            sourceRoots.add(root.getResource().getFullPath());
+            root.getResource().accept(new IResourceVisitor() {
+                public boolean visit(IResource resource) throws CoreException {
+                    if (isModuleFile(resource)) {
+                        updateModule((IFile) resource);
+                    }
+                    return true;
+                }
+            });
+        }
+    }
+
+    /**
+     * Updates the index after a module file has been added or modified.
+     *
+     * @param file
+     *            module file
+     */
+    public synchronized void updateModule(IFile file) {
+        IPath sourceRoot = null;
+        for (IPath root : sourceRoots) {
+            if (root.isPrefixOf(file.getFullPath())) {
+                sourceRoot = root;
+                break;
+            }
+        }
+        if (sourceRoot == null) {
+            // not a module on the classpath
+            return;
+        }
+        String path = file.getFullPath()
+                .removeFirstSegments(sourceRoot.segmentCount())
+                .toPortableString();
+        String name = path.substring(0, path.length() - MODULE_SUFFIX.length())
+                .replace('/', '.');
+
+        Module module = new Module(name, file.getName().toLowerCase()
+                .contains("widgetset"));
+        parse(file, module);
+        modules.put(file.getFullPath(), module);
+        affectedWidgetsets.clear();
+    }
+
+    /**
+     * Updates the index after a module file has been removed.
+     *
+     * @param file
+     *            module file
+     */
+    public synchronized void removeModule(IFile file) {
+        if (modules.remove(file.getFullPath()) != null) {
+            affectedWidgetsets.clear();
+        }
+    }
+
+    /**
+     * Returns the widgetsets of the project that use a resource, either
+     * directly or through an inherited module of the same project. For a
+     * module file, returns the widgetsets inheriting the module.
+     *
+     * @param resource
+     *            resource in the project of the index
+     * @return widgetset module names, empty if the resource is not used by
+     *         any widgetset
+     */
+    public synchronized Set<String> getAffectedWidgetsets(IResource resource) {
+        if (isModuleFile(resource)) {
+            Module module = modules.get(resource.getFullPath());
+            if (module == null) {
+                return new TreeSet<String>();
+            }
+            Set<String> names = new HashSet<String>();
+            names.add(module.name);
+            return findInheritingWidgetsets(names);
+        }
+
+        // all files in a folder belong to the same modules
+        IPath folder = resource.getFullPath().removeLastSegments(1);
+        Set<String> result = affectedWidgetsets.get(folder);
+        if (result == null) {
+            Set<String> names = new HashSet<String>();
+            for (Module module : modules.values()) {
+                if (module.contains(folder)) {
+                    names.add(module.name);
+                }
+            }
+            result = findInheritingWidgetsets(names);
+            affectedWidgetsets.put(folder, result);
+        }
+        return new TreeSet<String>(result);
+    }
+
+    /**
+     * Returns the source, super-source and public folders of all modules of
+     * the project, including the default folders of modules that do not
+     * declare them.
+     *
+     * @return full paths of the folders
+     */
+    public synchronized Set<IPath> getClientSideFolders() {
+        Set<IPath> result = new HashSet<IPath>();
+        for (Module module : modules.values()) {
+            result.addAll(module.folders);
+        }
+        return result;
+    }
+
+    private Set<String> findInheritingWidgetsets(Set<String> moduleNames) {
+        Set<String> result = new TreeSet<String>();
+        if (moduleNames.isEmpty()) {
+            return result;
+        }
+        Map<String, Module> byName = new HashMap<String, Module>();
+        for (Module module : modules.values()) {
+            byName.put(module.name, module);
+        }
+        for (Module module : modules.values()) {
+            if (module.widgetset
+                    && inherits(module, moduleNames, byName,
+                            new HashSet<String>())) {
+                result.add(module.name);
+            }
+        }
+        return result;
+    }
+
+    private boolean inherits(Module module, Set<String> moduleNames,
+            Map<String, Module> byName, Set<String> visited) {
+        if (!visited.add(module.name)) {
+            // inheritance cycle
+            return false;
+        }
+        if (moduleNames.contains(module.name)) {
+            return true;
+        }
+        for (String inherited : module.inherits) {
+            // modules from JARs are not in the index
+            Module inheritedModule = byName.get(inherited);
+            if (inheritedModule != null
+                    && inherits(inheritedModule, moduleNames, byName,
+                            visited)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void parse(IFile file, Module module) {
+        IPath packagePath = file.getFullPath().removeLastSegments(1);
+        List<String> sourcePaths = new ArrayList<String>();
+        List<String> publicPaths = new ArrayList<String>();
+        InputStream input = null;
+        try {
+            DocumentBuilderFactory docFactory = DocumentBuilderFactory
+                    .newInstance();
+            docFactory.setValidating(false);
+            DocumentBuilder docBuilder = docFactory.newDocumentBuilder();
+            // never fetch the GWT module DTD
+            docBuilder.setEntityResolver(new EntityResolver() {
+                public InputSource resolveEntity(String publicId,
+                        String systemId) {
+                    return new InputSource(new StringReader(""));
+                }
+            });
+            input = file.getContents(true);
+            Document doc = docBuilder.parse(input);
+
+            addPaths(doc, "source", sourcePaths);
+            addPaths(doc, "super-source", sourcePaths);
+            addPaths(doc, "public", publicPaths);
+            NodeList inherits = doc.getElementsByTagName("inherits");
+            for (int i = 0; i < inherits.getLength(); ++i) {
+                String name = ((Element) inherits.item(i))
+                        .getAttribute("name");
+                if (!"".equals(name)) {
+                    module.inherits.add(name);
+                }
+            }
+        } catch (SAXException e) {
+            // being edited, the next change will update the module
+        } catch (IOException e) {
+            ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                    "Could not read GWT module " + file.getFullPath(), e);
+        } catch (CoreException e) {
+            ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                    "Could not read GWT module " + file.getFullPath(), e);
+        } catch (ParserConfigurationException e) {
+            ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                    "Could not read GWT module " + file.getFullPath(), e);
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+
+        if (sourcePaths.isEmpty()) {
+            sourcePaths.add(DEFAULT_SOURCE_PATH);
+        }
+        if (publicPaths.isEmpty()) {
+            publicPaths.add(DEFAULT_PUBLIC_PATH);
+        }
+        for (String path : sourcePaths) {
+            module.folders.add(packagePath.append(path));
+        }
+        for (String path : publicPaths) {
+            module.folders.add(packagePath.append(path));
+        }
+    }
+
+    private static void addPaths(Document doc, String tagName,
+            List<String> paths) {
+        NodeList elements = doc.getElementsByTagName(tagName);
+        for (int i = 0; i < elements.getLength(); ++i) {
+            paths.add(((Element) elements.item(i)).getAttribute("path"));
+        }
+    }
+
+    private static class ProjectCloseListener implements
+            IResourceChangeListener {
+
+        private static final ProjectCloseListener INSTANCE = new ProjectCloseListener();
+
+        public void resourceChanged(IResourceChangeEvent event) {
+            if (event.getResource() instanceof IProject) {
+                invalidate((IProject) event.getResource());
+            }
+        }
+    }
+
+    private static class Module {
+        private final String name;
+        private final boolean widgetset;
+        private final List<String> inherits = new ArrayList<String>();
+        // full paths of source, super-source and public folders
+        private final List<IPath> folders = new ArrayList<IPath>();
+
+        public Module(String name, boolean widgetset) {
+            this.name = name;
+            this.widgetset = widgetset;
+        }
+
+        private boolean contains(IPath folder) {
+            for (IPath path : folders) {
+                if (path.isPrefixOf(folder)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
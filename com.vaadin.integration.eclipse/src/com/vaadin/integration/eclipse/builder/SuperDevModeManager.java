@@ -0,0 +1,419 @@
+package com.vaadin.integration.eclipse.builder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.launching.IVMInstall;
+import org.eclipse.ui.console.MessageConsoleStream;
+
+import com.vaadin.integration.eclipse.VaadinPlugin;
+import com.vaadin.integration.eclipse.consoles.CompileWidgetsetConsole;
+import com.vaadin.integration.eclipse.util.ClasspathArgumentFile;
+import com.vaadin.integration.eclipse.util.ErrorUtil;
+import com.vaadin.integration.eclipse.util.PreferenceUtil;
+import com.vaadin.integration.eclipse.util.VaadinPluginUtil;
+import com.vaadin.integration.eclipse.util.WidgetsetUtil;
+
+/**
+ * Manages SuperDevMode code servers started by the plug-in.
+ *
+ * While a code server is running for a project, changes to client side code
+ * do not trigger widgetset compilation requests. Instead, the code server is
+ * asked to recompile the permutation used for development of the affected
+ * widgetsets, which only retranslates the changed code. The widgetset remains marked as dirty so
+ * that it is compiled normally once the code server has been stopped.
+ */
+public class SuperDevModeManager {
+
+    // the port the Vaadin debug window connects to by default
+    private static final int DEFAULT_PORT = 9876;
+
+    // printed by the code server when it accepts requests
+    private static final String READY_MESSAGE = "The code server is ready";
+
+    // collects changes saved together into a single recompilation
+    private static final long RECOMPILE_DELAY = 300;
+
+    private static final String WORK_DIRECTORY = "superdevmode";
+
+    /**
+     * Running code servers by project name.
+     */
+    private static final Map<String, CodeServer> servers = new HashMap<String, CodeServer>();
+
+    private static final ProjectCloseListener projectCloseListener = new ProjectCloseListener();
+
+    private SuperDevModeManager() {
+    }
+
+    /**
+     * Checks whether a SuperDevMode code server started by the plug-in is
+     * running for a project.
+     *
+     * @param project
+     * @return
+     */
+    public static boolean isRunning(IProject project) {
+        synchronized (servers) {
+            return servers.containsKey(project.getName());
+        }
+    }
+
+    /**
+     * Starts a SuperDevMode code server for all widgetsets of a project. Does
+     * nothing if a code server is already running for the project.
+     *
+     * @param project
+     * @param monitor
+     * @throws CoreException
+     */
+    public static void start(IProject project, IProgressMonitor monitor)
+            throws CoreException {
+        if (isRunning(project)) {
+            return;
+        }
+        IJavaProject jproject = JavaCore.create(project);
+        List<String> modules = WidgetsetUtil.findWidgetSets(jproject, monitor);
+        if (modules.isEmpty()) {
+            throw ErrorUtil.newCoreException("The project "
+                    + project.getName() + " has no widgetset");
+        }
+
+        IVMInstall vmInstall = VaadinPluginUtil.getJvmInstall(jproject, true);
+        List<String> args = WidgetsetUtil.buildCommonArgs(jproject, vmInstall);
+        String extraJvmParams = PreferenceUtil.get(project)
+                .getWidgetsetCompilationExtraJvmParameters();
+        if (extraJvmParams != null) {
+            for (String param : extraJvmParams.split(" ")) {
+                if (!"".equals(param)) {
+                    args.add(param);
+                }
+            }
+        }
+        args.add(VaadinPlugin.GWT_CODE_SERVER_CLASS);
+
+        int port = findPort();
+        args.add("-port");
+        args.add(String.valueOf(port));
+
+        File workDir = VaadinPlugin.getInstance().getStateLocation()
+                .append(WORK_DIRECTORY).append(project.getName()).toFile();
+        if (!workDir.isDirectory() && !workDir.mkdirs()) {
+            throw ErrorUtil.newCoreException("Could not create directory "
+                    + workDir);
+        }
+        args.add("-workDir");
+        args.add(workDir.getAbsolutePath());
+
+        // the code server only detects changes in source directories
+        for (IPackageFragmentRoot root : jproject.getPackageFragmentRoots()) {
+            if (root.getKind() == IPackageFragmentRoot.K_SOURCE
+                    && root.getResource() instanceof IContainer) {
+                args.add("-src");
+                args.add(root.getResource().getLocation().toOSString());
+            }
+        }
+        args.addAll(modules);
+
+        ProcessBuilder builder = new ProcessBuilder(
+                ClasspathArgumentFile.apply(args, vmInstall));
+        builder.directory(project.getLocation().toFile());
+        builder.redirectErrorStream(true);
+        Process process;
+        try {
+            process = builder.start();
+        } catch (IOException e) {
+            throw ErrorUtil.newCoreException(
+                    "Could not start the SuperDevMode code server", e);
+        }
+
+        CodeServer server = new CodeServer(project, process, port, modules);
+        synchronized (servers) {
+            if (servers.isEmpty()) {
+                ResourcesPlugin.getWorkspace().addResourceChangeListener(
+                        projectCloseListener,
+                        IResourceChangeEvent.PRE_CLOSE
+                                | IResourceChangeEvent.PRE_DELETE);
+            }
+            servers.put(project.getName(), server);
+        }
+
+        MessageConsoleStream stream = CompileWidgetsetConsole.get()
+                .newMessageStream();
+        stream.println("Starting SuperDevMode code server for project "
+                + project.getName() + " on port " + port);
+        if (port != DEFAULT_PORT) {
+            stream.println("Port " + DEFAULT_PORT
+                    + " is in use, open the application with ?superdevmode=localhost:"
+                    + port);
+        }
+        server.startOutputThread(stream);
+    }
+
+    private static int findPort() {
+        ServerSocket socket = null;
+        try {
+            socket = new ServerSocket(DEFAULT_PORT);
+            return DEFAULT_PORT;
+        } catch (IOException e) {
+            // in use, let the system pick one
+            try {
+                socket = new ServerSocket(0);
+                return socket.getLocalPort();
+            } catch (IOException e2) {
+                return DEFAULT_PORT;
+            }
+        } finally {
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the code server of a project if one is running.
+     *
+     * @param project
+     */
+    public static void stop(IProject project) {
+        stop(project.getName());
+    }
+
+    private static void stop(String projectName) {
+        CodeServer server;
+        synchronized (servers) {
+            server = servers.remove(projectName);
+            if (servers.isEmpty()) {
+                ResourcesPlugin.getWorkspace().removeResourceChangeListener(
+                        projectCloseListener);
+            }
+        }
+        if (server != null) {
+            server.recompileJob.cancel();
+            server.process.destroy();
+        }
+    }
+
+    /**
+     * Stops all code servers started by the plug-in.
+     */
+    public static void stopAll() {
+        List<String> names;
+        synchronized (servers) {
+            names = new ArrayList<String>(servers.keySet());
+        }
+        for (String name : names) {
+            stop(name);
+        }
+    }
+
+    /**
+     * Requests the code server of a project to recompile widgetsets after
+     * client side code has changed. Requests made in quick succession are
+     * combined.
+     *
+     * @param project
+     * @param modules
+     *            the widgetsets affected by the change
+     */
+    public static void recompile(IProject project, Collection<String> modules) {
+        CodeServer server;
+        synchronized (servers) {
+            server = servers.get(project.getName());
+        }
+        if (server != null && server.addPending(modules)) {
+            server.recompileJob.schedule(RECOMPILE_DELAY);
+        }
+    }
+
+    private static class CodeServer {
+        private final IProject project;
+        private final Process process;
+        private final int port;
+        private final List<String> modules;
+        private final RecompileJob recompileJob;
+        private volatile boolean ready = false;
+        // modules to recompile, in the order of the requests
+        private final Set<String> pendingModules = new LinkedHashSet<String>();
+
+        public CodeServer(IProject project, Process process, int port,
+                List<String> modules) {
+            this.project = project;
+            this.process = process;
+            this.port = port;
+            this.modules = modules;
+            recompileJob = new RecompileJob(this);
+        }
+
+        /**
+         * Adds the modules served by the code server to the pending
+         * recompilations.
+         *
+         * @return true if there are pending recompilations
+         */
+        private boolean addPending(Collection<String> changedModules) {
+            synchronized (pendingModules) {
+                for (String module : changedModules) {
+                    if (modules.contains(module)) {
+                        pendingModules.add(module);
+                    }
+                }
+                return !pendingModules.isEmpty();
+            }
+        }
+
+        private boolean hasPending() {
+            synchronized (pendingModules) {
+                return !pendingModules.isEmpty();
+            }
+        }
+
+        private List<String> takePending() {
+            synchronized (pendingModules) {
+                List<String> result = new ArrayList<String>(pendingModules);
+                pendingModules.clear();
+                return result;
+            }
+        }
+
+        private void startOutputThread(final MessageConsoleStream stream) {
+            Thread thread = new Thread("SuperDevMode code server output") {
+                @Override
+                public void run() {
+                    try {
+                        BufferedReader reader = new BufferedReader(
+                                new InputStreamReader(process.getInputStream()));
+                        String line;
+                        while ((line = reader.readLine()) != null) {
+                            stream.println(line);
+                            if (!ready && line.contains(READY_MESSAGE)) {
+                                ready = true;
+                                if (hasPending()) {
+                                    recompileJob.schedule();
+                                }
+                            }
+                        }
+                    } catch (IOException e) {
+                        // stopped
+                    }
+                    synchronized (servers) {
+                        if (servers.get(project.getName()) != CodeServer.this) {
+                            return;
+                        }
+                    }
+                    stop(project);
+                    stream.println("SuperDevMode code server for project "
+                            + project.getName() + " stopped");
+                }
+            };
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Asks a code server to recompile the development permutation of the
+     * changed modules, repeating while more changes arrive.
+     */
+    private static class RecompileJob extends Job {
+
+        private final CodeServer server;
+
+        public RecompileJob(CodeServer server) {
+            super("SuperDevMode recompilation");
+            this.server = server;
+            setUser(false);
+            setSystem(true);
+        }
+
+        @Override
+        protected IStatus run(IProgressMonitor monitor) {
+            // requests before the server is ready are run once it is
+            while (server.ready && !monitor.isCanceled()) {
+                List<String> modules = server.takePending();
+                if (modules.isEmpty()) {
+                    break;
+                }
+                String userAgent = PreferenceUtil.get(server.project)
+                        .getDevelopmentUserAgent();
+                for (String module : modules) {
+                    recompile(module, userAgent);
+                }
+            }
+            return Status.OK_STATUS;
+        }
+
+        private void recompile(String module, String userAgent) {
+            MessageConsoleStream stream = CompileWidgetsetConsole.get()
+                    .newMessageStream();
+            long start = System.currentTimeMillis();
+            HttpURLConnection connection = null;
+            InputStream in = null;
+            try {
+                URL url = new URL("http://127.0.0.1:" + server.port
+                        + "/recompile/" + module + "?user.agent="
+                        + URLEncoder.encode(userAgent, "UTF-8"));
+                connection = (HttpURLConnection) url.openConnection();
+                in = connection.getInputStream();
+                // the response is sent when the compilation is done
+                IOUtils.toByteArray(in);
+                stream.println("Recompiled " + module + " (" + userAgent
+                        + ") in " + (System.currentTimeMillis() - start)
+                        + " ms");
+            } catch (IOException e) {
+                // details are in the code server output
+                stream.println("Recompiling " + module + " failed");
+            } finally {
+                IOUtils.closeQuietly(in);
+                if (connection != null) {
+                    connection.disconnect();
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops code servers when their projects are closed or deleted.
+     */
+    private static class ProjectCloseListener implements
+            IResourceChangeListener {
+
+        public void resourceChanged(IResourceChangeEvent event) {
+            if (event.getResource() instanceof IProject) {
+                stop((IProject) event.getResource());
+            }
+        }
+    }
+}
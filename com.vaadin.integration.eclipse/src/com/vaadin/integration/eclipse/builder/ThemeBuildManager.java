@@ -0,0 +1,211 @@
+package com.vaadin.integration.eclipse.builder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+import com.vaadin.integration.eclipse.util.ErrorUtil;
+import com.vaadin.integration.eclipse.util.ProjectUtil;
+
+/**
+ * Runs the automatic theme compilations requested by {@link ThemeBuilder} and
+ * the compilations requested by the user.
+ *
+ * Each theme of a project has a single compilation job, so a theme is never
+ * compiled concurrently with itself. Requests are collected for a moment
+ * before compiling, so that a burst of saves compiles each affected theme
+ * once, and a request for a theme that is being compiled cancels the running
+ * compilation and compiles the theme again. A compilation requested by the
+ * user replaces the pending automatic one and waits for a running one to
+ * stop. The job of a theme is discarded when it has nothing left to do.
+ */
+public class ThemeBuildManager {
+
+    // requests made within this time are compiled together
+    private static final long DEBOUNCE_DELAY = 300;
+
+    /**
+     * Compilation jobs by project name and theme name. Also guards the state
+     * of the jobs.
+     */
+    private static final Map<String, ThemeCompileJob> jobs = new HashMap<String, ThemeCompileJob>();
+
+    private ThemeBuildManager() {
+    }
+
+    /**
+     * Compiles themes of a project in the background.
+     *
+     * @param project
+     * @param themes
+     *            theme names
+     */
+    public static void compileLater(IProject project,
+            Collection<String> themes) {
+        synchronized (jobs) {
+            for (String theme : themes) {
+                getJob(project, theme).request();
+            }
+        }
+    }
+
+    /**
+     * Compiles a theme in the calling thread, e.g. when requested by the user.
+     * A pending automatic compilation of the theme is not needed anymore and
+     * is canceled, and a running one is stopped and waited for.
+     *
+     * @param project
+     * @param themeFolder
+     * @param monitor
+     * @throws CoreException
+     * @throws IOException
+     */
+    public static void compile(IProject project, IFolder themeFolder,
+            IProgressMonitor monitor) throws CoreException, IOException {
+        ThemeCompileJob job;
+        synchronized (jobs) {
+            job = getJob(project, themeFolder.getName());
+            ++job.compilations;
+            job.pending = false;
+            job.cancel();
+        }
+        try {
+            synchronized (job.compileLock) {
+                ThemeCompiler.run(project, monitor, themeFolder);
+            }
+        } finally {
+            synchronized (jobs) {
+                --job.compilations;
+                removeIfIdle(job);
+            }
+        }
+    }
+
+    /**
+     * Cancels the pending and running theme compilations of a project, e.g.
+     * when automatic theme compilation is suspended.
+     *
+     * @param project
+     */
+    public static void cancel(IProject project) {
+        String prefix = project.getName() + IPath.SEPARATOR;
+        synchronized (jobs) {
+            for (ThemeCompileJob job : new ArrayList<ThemeCompileJob>(
+                    jobs.values())) {
+                if (job.key.startsWith(prefix)) {
+                    job.pending = false;
+                    job.cancel();
+                    removeIfIdle(job);
+                }
+            }
+        }
+    }
+
+    // must be called holding the jobs lock
+    private static ThemeCompileJob getJob(IProject project, String theme) {
+        String key = project.getName() + IPath.SEPARATOR + theme;
+        ThemeCompileJob job = jobs.get(key);
+        if (job == null) {
+            job = new ThemeCompileJob(key, project, theme);
+            jobs.put(key, job);
+        }
+        return job;
+    }
+
+    // must be called holding the jobs lock
+    private static void removeIfIdle(ThemeCompileJob job) {
+        if (!job.pending && !job.running && job.compilations == 0
+                && jobs.get(job.key) == job) {
+            jobs.remove(job.key);
+        }
+    }
+
+    private static class ThemeCompileJob extends Job {
+        private final String key;
+        private final IProject project;
+        private final String theme;
+
+        // held while compiling the theme
+        private final Object compileLock = new Object();
+
+        // state guarded by the jobs lock: whether the job is scheduled or
+        // running, and the number of compilations requested by the user
+        private boolean pending = false;
+        private boolean running = false;
+        private int compilations = 0;
+
+        public ThemeCompileJob(String key, IProject project, String theme) {
+            super("Compiling theme " + theme);
+            this.key = key;
+            this.project = project;
+            this.theme = theme;
+            setUser(false);
+            setSystem(true);
+        }
+
+        // must be called holding the jobs lock
+        private void request() {
+            pending = true;
+            if (getState() != NONE) {
+                // a waiting job starts the delay again, a running compilation
+                // is superseded and the job runs again when it has stopped
+                cancel();
+            }
+            schedule(DEBOUNCE_DELAY);
+        }
+
+        @Override
+        protected IStatus run(IProgressMonitor monitor) {
+            synchronized (jobs) {
+                // a request made from now on runs the job again
+                pending = false;
+                running = true;
+            }
+            try {
+                compile(monitor);
+            } finally {
+                synchronized (jobs) {
+                    running = false;
+                    removeIfIdle(this);
+                }
+            }
+            return monitor.isCanceled() ? Status.CANCEL_STATUS
+                    : Status.OK_STATUS;
+        }
+
+        private void compile(IProgressMonitor monitor) {
+            if (!project.isOpen() || ThemeCompiler.isSuspended(project)) {
+                return;
+            }
+            try {
+                IFolder themeFolder = ProjectUtil.getThemesFolder(project)
+                        .getFolder(theme);
+                if (!themeFolder.getFile("styles.scss").exists()) {
+                    return;
+                }
+                synchronized (compileLock) {
+                    if (!monitor.isCanceled()) {
+                        ThemeCompiler.run(project, monitor, themeFolder);
+                    }
+                }
+            } catch (CoreException e) {
+                ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                        "Could not compile theme " + theme, e);
+            } catch (IOException e) {
+                ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                        "Could not compile theme " + theme, e);
+            }
+        }
+    }
+}
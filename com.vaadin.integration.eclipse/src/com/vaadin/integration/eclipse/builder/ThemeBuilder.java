@@ -0,0 +1,193 @@
+package com.vaadin.integration.eclipse.builder;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.eclipse.core.resources.ICommand;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IProjectDescription;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.IncrementalProjectBuilder;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+
+import com.vaadin.integration.eclipse.util.PreferenceUtil;
+import com.vaadin.integration.eclipse.util.ProjectUtil;
+
+/**
+ * Compiles the themes of a project when their Sass files change.
+ *
+ * Only the themes importing a changed file are compiled, see
+ * {@link ThemeImportGraph}, as well as the themes into which a changed image
+ * has been inlined, see {@link ThemeOutputProcessor}. The compilation runs in
+ * the background through {@link ThemeBuildManager} so that saving files does
+ * not wait for it and quick successive saves compile each theme once.
+ */
+public class ThemeBuilder extends IncrementalProjectBuilder {
+
+    public static final String BUILDER_ID = "com.vaadin.integration.eclipse.themeBuilder";
+
+    class ThemeDeltaVisitor implements IResourceDeltaVisitor {
+        private final IPath themesPath;
+        private final Set<IResource> changedFiles = new HashSet<IResource>();
+        private final Set<String> removedFromThemes = new TreeSet<String>();
+        private boolean filesAddedOrRemoved = false;
+
+        public ThemeDeltaVisitor(IPath themesPath) {
+            this.themesPath = themesPath;
+        }
+
+        public boolean visit(IResourceDelta delta) throws CoreException {
+            IResource resource = delta.getResource();
+            if (!ThemeImportGraph.isScssFile(resource)) {
+                // return true to continue visiting children.
+                return true;
+            }
+            if (delta.getKind() == IResourceDelta.CHANGED) {
+                if ((delta.getFlags() & IResourceDelta.CONTENT) != 0) {
+                    changedFiles.add(resource);
+                }
+            } else {
+                filesAddedOrRemoved = true;
+                if (delta.getKind() == IResourceDelta.REMOVED) {
+                    // no longer in the import graph, compile the theme
+                    // containing the file
+                    IPath relative = resource.getFullPath()
+                            .removeFirstSegments(themesPath.segmentCount());
+                    if (relative.segmentCount() > 1) {
+                        removedFromThemes.add(relative.segment(0));
+                    }
+                } else {
+                    changedFiles.add(resource);
+                }
+            }
+            return true;
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    protected IProject[] build(int kind, Map args, IProgressMonitor monitor)
+            throws CoreException {
+        IProject project = getProject();
+        if (ThemeCompiler.isSuspended(project)) {
+            return null;
+        }
+        IFolder themesFolder = ProjectUtil.getThemesFolder(project);
+        if (!themesFolder.exists()) {
+            return null;
+        }
+
+        Set<String> themes;
+        IResourceDelta delta = kind == FULL_BUILD ? null
+                : getDelta(project);
+        if (delta == null) {
+            themes = ThemeImportGraph.get(project).getThemes();
+        } else {
+            themes = getThemesInliningChangedImages(project, delta);
+            IResourceDelta themesDelta = delta.findMember(themesFolder
+                    .getProjectRelativePath());
+            if (themesDelta == null && themes.isEmpty()) {
+                return null;
+            }
+            ThemeDeltaVisitor visitor = new ThemeDeltaVisitor(
+                    themesFolder.getFullPath());
+            if (themesDelta != null) {
+                themesDelta.accept(visitor);
+            }
+            if (visitor.filesAddedOrRemoved) {
+                // imports may now resolve to other files
+                ThemeImportGraph.invalidate(project);
+            }
+            ThemeImportGraph graph = ThemeImportGraph.get(project);
+            themes.addAll(visitor.removedFromThemes);
+            for (IResource file : visitor.changedFiles) {
+                themes.addAll(graph.getAffectedThemes(file));
+            }
+            themes.retainAll(graph.getThemes());
+        }
+
+        if (!themes.isEmpty() && ThemeCompiler.isSupported(project)) {
+            ThemeBuildManager.compileLater(project, themes);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the themes into which an image changed in the delta has been
+     * inlined.
+     */
+    private static Set<String> getThemesInliningChangedImages(
+            IProject project, IResourceDelta delta) throws CoreException {
+        final Map<String, Set<String>> inlinedImages = PreferenceUtil.get(
+                project).getThemeInlinedImages();
+        final Set<String> themes = new TreeSet<String>();
+        if (inlinedImages.isEmpty()) {
+            return themes;
+        }
+        delta.accept(new IResourceDeltaVisitor() {
+            public boolean visit(IResourceDelta child) {
+                IResource resource = child.getResource();
+                if (resource.getType() != IResource.FILE
+                        || (child.getKind() == IResourceDelta.CHANGED && (child
+                                .getFlags() & IResourceDelta.CONTENT) == 0)) {
+                    return true;
+                }
+                String path = resource.getFullPath().toPortableString();
+                for (Map.Entry<String, Set<String>> entry : inlinedImages
+                        .entrySet()) {
+                    if (entry.getValue().contains(path)) {
+                        themes.add(entry.getKey());
+                    }
+                }
+                return true;
+            }
+        });
+        return themes;
+    }
+
+    public static void addBuilder(IProject project) throws CoreException {
+        IProjectDescription desc = project.getDescription();
+        ICommand[] commands = desc.getBuildSpec();
+
+        for (int i = 0; i < commands.length; ++i) {
+            if (commands[i].getBuilderName().equals(ThemeBuilder.BUILDER_ID)) {
+                return;
+            }
+        }
+
+        ICommand[] newCommands = new ICommand[commands.length + 1];
+        System.arraycopy(commands, 0, newCommands, 0, commands.length);
+        ICommand command = desc.newCommand();
+        command.setBuilderName(ThemeBuilder.BUILDER_ID);
+        newCommands[newCommands.length - 1] = command;
+        desc.setBuildSpec(newCommands);
+        project.setDescription(desc, null);
+    }
+
+    public static void removeBuilder(IProject project) throws CoreException {
+        IProjectDescription desc = project.getDescription();
+        ICommand[] commands = desc.getBuildSpec();
+        int builderIndex = -1;
+        for (int i = 0; i < commands.length; i++) {
+            if (commands[i].getBuilderName().equals(ThemeBuilder.BUILDER_ID)) {
+                builderIndex = i;
+                break;
+            }
+        }
+        if (builderIndex != -1) {
+            ICommand[] newCommands = new ICommand[commands.length - 1];
+            System.arraycopy(commands, 0, newCommands, 0, builderIndex);
+            System.arraycopy(commands, builderIndex + 1, newCommands,
+                    builderIndex, (commands.length - 1) - builderIndex);
+            desc.setBuildSpec(newCommands);
+            project.setDescription(desc, null);
+        }
+    }
+}
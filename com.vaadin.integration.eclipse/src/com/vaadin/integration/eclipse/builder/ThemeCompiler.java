@@ -1,19 +1,27 @@
 package com.vaadin.integration.eclipse.builder;
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IProject;
-import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.SubProgressMonitor;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.JavaCore;
@@ -22,13 +30,50 @@ import org.eclipse.ui.console.MessageConsoleStream;
 
 import com.vaadin.integration.eclipse.VaadinPlugin;
 import com.vaadin.integration.eclipse.consoles.CompileThemeConsole;
+import com.vaadin.integration.eclipse.util.ClasspathArgumentFile;
+import com.vaadin.integration.eclipse.util.CompilerOutputPump;
+import com.vaadin.integration.eclipse.util.CompilerProblems;
+import com.vaadin.integration.eclipse.util.CompilerProblems.Problem;
 import com.vaadin.integration.eclipse.util.ErrorUtil;
+import com.vaadin.integration.eclipse.util.GeneratedFiles;
 import com.vaadin.integration.eclipse.util.PreferenceUtil;
 import com.vaadin.integration.eclipse.util.VaadinPluginUtil;
 import com.vaadin.integration.eclipse.util.WidgetsetUtil;
+import com.vaadin.integration.eclipse.util.worker.CompilerWorkerPool;
 
 public class ThemeCompiler {
 
+    // e.g. "Encountered "}" at line 12, column 5."
+    private static final Pattern SASS_LINE_PATTERN = Pattern
+            .compile(".* at line (\\d+), column \\d+.*");
+
+    /**
+     * Collects parse errors from the output of the Sass compiler, which
+     * prints the path of the file on its own line before the error.
+     */
+    private static class SassOutputHandler implements
+            CompilerOutputPump.LineHandler {
+
+        private final List<Problem> problems = new ArrayList<Problem>();
+        private String currentFile;
+
+        public boolean handleLine(String line) {
+            String trimmed = line.trim();
+            if (trimmed.endsWith(".scss") && new File(trimmed).isAbsolute()) {
+                currentFile = trimmed;
+            } else if (currentFile != null) {
+                Matcher matcher = SASS_LINE_PATTERN.matcher(trimmed);
+                if (matcher.matches()) {
+                    problems.add(new Problem(currentFile, Integer
+                            .parseInt(matcher.group(1)), trimmed,
+                            IMarker.SEVERITY_ERROR));
+                    currentFile = null;
+                }
+            }
+            return true;
+        }
+    }
+
     /**
      * Does the project support Vaadin 7 theme compilation
      * 
@@ -60,16 +105,14 @@ public class ThemeCompiler {
      */
     public static void setSuspended(IProject project, boolean suspended) {
         PreferenceUtil.get(project).setThemeCompilationSuspended(suspended);
+        if (suspended) {
+            ThemeBuildManager.cancel(project);
+        }
     }
 
     public static void run(IProject project, final IProgressMonitor monitor,
             IFolder themeDir) throws CoreException, IOException {
 
-        // TODO should be done by builder, not here
-        // if (ThemeCompiler.isSuspended(project)) {
-        // return;
-        // }
-
         final long start = new Date().getTime();
         CompileThemeConsole console = CompileThemeConsole.get();
 
@@ -84,22 +127,38 @@ public class ThemeCompiler {
 
         compilerArgs.add(VaadinPlugin.THEME_COMPILER_CLASS);
 
-        // .scss file and .css file paths
+        // .scss file and .css file paths, the .css file is compiled to a
+        // staging directory and only copied to the theme if it has changed
         IFile scssFile = themeDir.getFile("styles.scss");
         IFile cssFile = themeDir.getFile("styles.css");
-        compilerArgs.add(scssFile.getLocation().toPortableString());
-        compilerArgs.add(cssFile.getLocation().toPortableString());
+        File stagingDir = GeneratedFiles.createStagingDirectory();
+        File stagedCssFile = new File(stagingDir, cssFile.getName());
+        List<String> compilerParams = new ArrayList<String>();
+        compilerParams.add(scssFile.getLocation().toPortableString());
+        compilerParams.add(new Path(stagedCssFile.getAbsolutePath())
+                .toPortableString());
+        compilerArgs.addAll(compilerParams);
 
-        final String[] argsStr = new String[compilerArgs.size()];
-        compilerArgs.toArray(argsStr);
-
-        ProcessBuilder b = new ProcessBuilder(argsStr);
+        ProcessBuilder b = new ProcessBuilder(ClasspathArgumentFile.apply(
+                compilerArgs, vmInstall));
         b.redirectErrorStream(true);
 
         IPath projectLocation = project.getLocation();
         b.directory(projectLocation.toFile());
 
-        final Process exec = b.start();
+        // the Sass compiler takes much less time than starting a JVM, so the
+        // themes of a project share a compiler JVM that stays running
+        Process exec = CompilerWorkerPool.start(vmInstall,
+                projectLocation.toFile(), commonArgs,
+                VaadinPlugin.THEME_COMPILER_CLASS, compilerParams);
+        if (exec == null) {
+            try {
+                exec = b.start();
+            } catch (IOException e) {
+                GeneratedFiles.deleteStagingDirectory(stagingDir);
+                throw e;
+            }
+        }
 
         console.setCompilationProcess(exec);
 
@@ -109,31 +168,61 @@ public class ThemeCompiler {
         newMessageStream.println("Compiling theme " + themeDir.getName());
         newMessageStream.println();
 
-        InputStream inputStream = exec.getInputStream();
-        BufferedReader bufferedReader = new BufferedReader(
-                new InputStreamReader(inputStream));
-        String line = null;
-        while ((line = bufferedReader.readLine()) != null) {
-            newMessageStream.println(line);
-        }
-
-        monitor.beginTask("Compiling theme", 1);
+        monitor.beginTask("Compiling theme", 2);
+        SassOutputHandler outputHandler = new SassOutputHandler();
+        CompilerOutputPump pump = new CompilerOutputPump(exec,
+                newMessageStream, outputHandler, monitor);
+        pump.start();
         try {
             int result = exec.waitFor();
+            pump.waitFor();
+            if (CompilerWorkerPool.isWorkerFailure(exec)
+                    && !monitor.isCanceled()) {
+                newMessageStream
+                        .println("The compiler worker stopped unexpectedly, "
+                                + "compiling in a separate JVM");
+                exec = b.start();
+                console.setCompilationProcess(exec);
+                outputHandler = new SassOutputHandler();
+                pump = new CompilerOutputPump(exec, newMessageStream,
+                        outputHandler, monitor);
+                pump.start();
+                result = exec.waitFor();
+                pump.waitFor();
+            }
             monitor.worked(1);
+            if (!monitor.isCanceled()) {
+                CompilerProblems.replaceMarkers(jproject,
+                        CompilerProblems.THEME_MARKER, themeDir.getName(),
+                        outputHandler.problems);
+            }
             if (result != 0) {
                 newMessageStream.println("Compiling theme "
                         + themeDir.getName() + " failed after "
                         + (System.currentTimeMillis() - start) + " ms");
+            } else if (monitor.isCanceled()) {
+                newMessageStream.println("Compiling theme "
+                        + themeDir.getName() + " canceled");
             } else {
+                boolean processed = ThemeOutputProcessor.isEnabled(project);
+                Set<File> inlinedImages = new HashSet<File>();
+                if (processed) {
+                    inlinedImages = ThemeOutputProcessor.process(
+                            stagedCssFile, themeDir.getLocation().toFile());
+                }
+                setInlinedImages(project, themeDir.getName(), inlinedImages);
+                boolean changed = GeneratedFiles.update(stagedCssFile,
+                        cssFile, new SubProgressMonitor(monitor, 1));
+                ThemeOutputProcessor.updateCompressedFiles(themeDir,
+                        stagedCssFile, changed, processed,
+                        new NullProgressMonitor());
                 newMessageStream.println("Compilation of theme "
                         + themeDir.getName() + " done in "
-                        + (System.currentTimeMillis() - start) + " ms");
+                        + (System.currentTimeMillis() - start) + " ms"
+                        + (changed ? "" : ", " + cssFile.getName()
+                                + " is unchanged"));
             }
             newMessageStream.println();
-
-            themeDir.refreshLocal(IResource.DEPTH_INFINITE,
-                    new SubProgressMonitor(monitor, 1));
         } catch (InterruptedException e) {
             newMessageStream.println("Compiling theme " + themeDir.getName()
                     + " interrupted");
@@ -141,6 +230,28 @@ public class ThemeCompiler {
         } finally {
             monitor.done();
             console.setCompilationProcess(null);
+            GeneratedFiles.deleteStagingDirectory(stagingDir);
+        }
+    }
+
+    /**
+     * Records the images inlined into a theme, so that changing them compiles
+     * the theme again.
+     */
+    private static void setInlinedImages(IProject project, String theme,
+            Set<File> images) {
+        IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+        Set<String> paths = new TreeSet<String>();
+        for (File image : images) {
+            IFile file = root.getFileForLocation(new Path(image
+                    .getAbsolutePath()));
+            if (file != null) {
+                paths.add(file.getFullPath().toPortableString());
+            }
+        }
+        PreferenceUtil preferences = PreferenceUtil.get(project);
+        if (preferences.setThemeInlinedImages(theme, paths)) {
+            preferences.persistLater();
         }
     }
 }
@@ -0,0 +1,389 @@
+package com.vaadin.integration.eclipse.builder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Path;
+
+import com.vaadin.integration.eclipse.util.ErrorUtil;
+import com.vaadin.integration.eclipse.util.ProjectUtil;
+
+/**
+ * In-memory graph of the Sass imports of the themes of projects.
+ *
+ * For each theme, the graph records the .scss files its styles.scss imports
+ * directly or indirectly. This makes it possible to find the themes affected
+ * by a changed partial without reading the other files of the themes.
+ * Imports that cannot be resolved in the project, such as the Valo theme in
+ * the Vaadin themes JAR, are ignored.
+ *
+ * The graph of a project is built on first use and kept up to date by a
+ * resource change listener: changed files are parsed again, and as adding or
+ * removing .scss files can change how imports are resolved, the graph is then
+ * discarded and rebuilt on next use.
+ */
+public class ThemeImportGraph {
+
+    private static final String SCSS_SUFFIX = ".scss";
+
+    private static final String THEME_FILE = "styles.scss";
+
+    private static final Pattern COMMENT_PATTERN = Pattern.compile(
+            "/\\*.*?\\*/|(?<![:\"'])//[^\\n]*", Pattern.DOTALL);
+
+    private static final Pattern IMPORT_PATTERN = Pattern
+            .compile("@import\\s+([^;{}]+)");
+
+    private static final Pattern STRING_PATTERN = Pattern
+            .compile("\"([^\"]*)\"|'([^']*)'");
+
+    /**
+     * Graphs by project name.
+     */
+    private static final Map<String, ThemeImportGraph> graphs = new HashMap<String, ThemeImportGraph>();
+
+    private static final Listener LISTENER = new Listener();
+
+    private final IWorkspaceRoot root;
+
+    /**
+     * The styles.scss file of each theme by theme name.
+     */
+    private final Map<String, IPath> themes = new HashMap<String, IPath>();
+
+    /**
+     * Files imported by each parsed file, by full path.
+     */
+    private final Map<IPath, Set<IPath>> imports = new HashMap<IPath, Set<IPath>>();
+
+    /**
+     * Affected themes by file, cleared whenever an import changes.
+     */
+    private final Map<IPath, Set<String>> affectedThemes = new HashMap<IPath, Set<String>>();
+
+    private ThemeImportGraph(IWorkspaceRoot root) {
+        this.root = root;
+    }
+
+    /**
+     * Returns the graph of a project, building it if necessary.
+     *
+     * @param project
+     * @return
+     * @throws CoreException
+     */
+    public static ThemeImportGraph get(IProject project) throws CoreException {
+        synchronized (graphs) {
+            ThemeImportGraph graph = graphs.get(project.getName());
+            if (graph == null) {
+                graph = new ThemeImportGraph(project.getWorkspace().getRoot());
+                graph.build(project);
+                graphs.put(project.getName(), graph);
+            }
+            return graph;
+        }
+    }
+
+    /**
+     * Discards the graph of a project, e.g. when .scss files have been added
+     * or removed. The graph is rebuilt on next use.
+     *
+     * @param project
+     */
+    public static void invalidate(IProject project) {
+        synchronized (graphs) {
+            graphs.remove(project.getName());
+        }
+    }
+
+    /**
+     * Starts listening to changes of Sass files.
+     */
+    public static void start() {
+        ResourcesPlugin.getWorkspace().addResourceChangeListener(LISTENER,
+                IResourceChangeEvent.POST_CHANGE);
+    }
+
+    /**
+     * Stops listening to changes of Sass files and discards all graphs.
+     */
+    public static void stop() {
+        ResourcesPlugin.getWorkspace().removeResourceChangeListener(LISTENER);
+        synchronized (graphs) {
+            graphs.clear();
+        }
+    }
+
+    private static ThemeImportGraph getIfBuilt(IProject project) {
+        synchronized (graphs) {
+            return graphs.get(project.getName());
+        }
+    }
+
+    /**
+     * Checks whether a resource is a Sass file.
+     *
+     * @param resource
+     * @return
+     */
+    public static boolean isScssFile(IResource resource) {
+        return resource instanceof IFile
+                && resource.getName().endsWith(SCSS_SUFFIX);
+    }
+
+    private void build(IProject project) throws CoreException {
+        IFolder themesFolder = ProjectUtil.getThemesFolder(project);
+        if (!themesFolder.exists()) {
+            return;
+        }
+        for (IResource member : themesFolder.members()) {
+            if (member instanceof IFolder) {
+                IFile themeFile = ((IFolder) member).getFile(THEME_FILE);
+                if (themeFile.exists()) {
+                    themes.put(member.getName(), themeFile.getFullPath());
+                    parseAll(themeFile.getFullPath());
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses a file and the files it imports that have not been parsed yet.
+     */
+    private void parseAll(IPath start) {
+        List<IPath> queue = new ArrayList<IPath>();
+        queue.add(start);
+        while (!queue.isEmpty()) {
+            IPath path = queue.remove(queue.size() - 1);
+            Set<IPath> fileImports = parse(root.getFile(path));
+            imports.put(path, fileImports);
+            for (IPath imported : fileImports) {
+                if (!imports.containsKey(imported)) {
+                    queue.add(imported);
+                }
+            }
+        }
+    }
+
+    /**
+     * Updates the graph after a file has been modified.
+     *
+     * @param file
+     *            .scss file
+     */
+    private synchronized void updateFile(IFile file) {
+        IPath path = file.getFullPath();
+        if (!imports.containsKey(path)) {
+            // not used by any theme
+            return;
+        }
+        Set<IPath> oldImports = imports.get(path);
+        Set<IPath> newImports = parse(file);
+        if (newImports.equals(oldImports)) {
+            return;
+        }
+        imports.put(path, newImports);
+        for (IPath imported : newImports) {
+            if (!imports.containsKey(imported)) {
+                parseAll(imported);
+            }
+        }
+        affectedThemes.clear();
+    }
+
+    /**
+     * Returns the names of all themes of the project.
+     *
+     * @return
+     */
+    public synchronized Set<String> getThemes() {
+        return new TreeSet<String>(themes.keySet());
+    }
+
+    /**
+     * Returns the themes of the project that use a file, either as their
+     * styles.scss or through an import.
+     *
+     * @param resource
+     *            resource in the project of the graph
+     * @return theme names, empty if the resource is not used by any theme
+     */
+    public synchronized Set<String> getAffectedThemes(IResource resource) {
+        IPath path = resource.getFullPath();
+        Set<String> result = affectedThemes.get(path);
+        if (result == null) {
+            result = new TreeSet<String>();
+            if (imports.containsKey(path)) {
+                for (Map.Entry<String, IPath> theme : themes.entrySet()) {
+                    if (imports(theme.getValue(), path)) {
+                        result.add(theme.getKey());
+                    }
+                }
+            }
+            affectedThemes.put(path, result);
+        }
+        return new TreeSet<String>(result);
+    }
+
+    private boolean imports(IPath from, IPath path) {
+        Set<IPath> visited = new HashSet<IPath>();
+        List<IPath> queue = new ArrayList<IPath>();
+        queue.add(from);
+        while (!queue.isEmpty()) {
+            IPath current = queue.remove(queue.size() - 1);
+            if (current.equals(path)) {
+                return true;
+            }
+            // import cycles are errors, but must not hang the build
+            if (!visited.add(current)) {
+                continue;
+            }
+            Set<IPath> currentImports = imports.get(current);
+            if (currentImports != null) {
+                queue.addAll(currentImports);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the files in the workspace imported by a file.
+     */
+    private Set<IPath> parse(IFile file) {
+        Set<IPath> result = new LinkedHashSet<IPath>();
+        if (!file.exists()) {
+            return result;
+        }
+        InputStream input = null;
+        try {
+            input = file.getContents(true);
+            String contents = COMMENT_PATTERN.matcher(
+                    IOUtils.toString(input, file.getCharset())).replaceAll("");
+            Matcher importMatcher = IMPORT_PATTERN.matcher(contents);
+            while (importMatcher.find()) {
+                Matcher stringMatcher = STRING_PATTERN.matcher(importMatcher
+                        .group(1));
+                while (stringMatcher.find()) {
+                    String name = stringMatcher.group(1) != null ? stringMatcher
+                            .group(1) : stringMatcher.group(2);
+                    IPath imported = resolve(file.getFullPath()
+                            .removeLastSegments(1), name);
+                    if (imported != null) {
+                        result.add(imported);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                    "Could not read Sass file " + file.getFullPath(), e);
+        } catch (CoreException e) {
+            ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                    "Could not read Sass file " + file.getFullPath(), e);
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+        return result;
+    }
+
+    /**
+     * Finds the file of an import in the way Sass does, also trying the
+     * partial name with a leading underscore and the .scss suffix.
+     *
+     * @return full path of the file or null if it is not in the workspace
+     */
+    private IPath resolve(IPath folder, String name) {
+        if (name.endsWith(".css") || name.contains("://")
+                || name.startsWith("/")) {
+            // plain CSS imports are not compiled
+            return null;
+        }
+        IPath path = folder.append(new Path(name));
+        if (path.segmentCount() < 2) {
+            return null;
+        }
+        String fileName = path.lastSegment();
+        if (!fileName.endsWith(SCSS_SUFFIX)) {
+            fileName += SCSS_SUFFIX;
+        }
+        IPath parent = path.removeLastSegments(1);
+        for (String candidate : new String[] { fileName, "_" + fileName }) {
+            IPath candidatePath = parent.append(candidate);
+            if (root.getFile(candidatePath).exists()) {
+                return candidatePath;
+            }
+        }
+        return null;
+    }
+
+    private static class Listener implements IResourceChangeListener {
+
+        // opened or closed
+        private static final int PROJECT_FLAGS = IResourceDelta.OPEN;
+
+        private static final int CONTENT = IResourceDelta.CONTENT;
+
+        public void resourceChanged(IResourceChangeEvent event) {
+            IResourceDelta delta = event.getDelta();
+            if (delta == null) {
+                return;
+            }
+            try {
+                delta.accept(new IResourceDeltaVisitor() {
+                    public boolean visit(IResourceDelta delta) {
+                        IResource resource = delta.getResource();
+                        if (resource.getType() == IResource.PROJECT) {
+                            if (getIfBuilt((IProject) resource) == null) {
+                                return false;
+                            }
+                            if (delta.getKind() != IResourceDelta.CHANGED
+                                    || (delta.getFlags() & PROJECT_FLAGS) != 0) {
+                                invalidate((IProject) resource);
+                                return false;
+                            }
+                        } else if (isScssFile(resource)) {
+                            if (delta.getKind() != IResourceDelta.CHANGED) {
+                                invalidate(resource.getProject());
+                            } else if ((delta.getFlags() & CONTENT) != 0) {
+                                ThemeImportGraph graph = getIfBuilt(resource
+                                        .getProject());
+                                if (graph != null) {
+                                    graph.updateFile((IFile) resource);
+                                }
+                            }
+                        }
+                        return true;
+                    }
+                });
+            } catch (CoreException e) {
+                // the visitor does not throw
+                synchronized (graphs) {
+                    graphs.clear();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package com.vaadin.integration.eclipse.builder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+
+import com.vaadin.integration.eclipse.util.ErrorUtil;
+import com.vaadin.integration.eclipse.util.GeneratedFiles;
+import com.vaadin.integration.eclipse.util.PreferenceUtil;
+
+/**
+ * Optional post-processing of compiled themes for deployments that serve the
+ * theme files directly: the compiled stylesheet is minified, small images
+ * are inlined as data URIs, and styles.css.gz and, if the brotli command is
+ * available, styles.css.br are written next to styles.css.
+ *
+ * The compressed files are only written when styles.css has changed, and
+ * they are removed when the processing is disabled so that servers do not
+ * serve stale precompressed files. The inlined images are recorded for each
+ * theme, and {@link ThemeBuilder} compiles the theme again when they change.
+ */
+public class ThemeOutputProcessor {
+
+    // images up to this size are inlined
+    private static final int INLINE_IMAGE_LIMIT = 4 * 1024;
+
+    private static final String CSS_ENCODING = "UTF-8";
+
+    private static final String GZIP_SUFFIX = ".gz";
+
+    private static final String BROTLI_SUFFIX = ".br";
+
+    private static final String BROTLI_COMMAND = "brotli";
+
+    // characters around which whitespace is not needed
+    private static final String NO_SPACE_BEFORE = "{};,>";
+    private static final String NO_SPACE_AFTER = "{};,:>";
+
+    private static final Pattern URL_PATTERN = Pattern
+            .compile("url\\((['\"]?)([^'\"()]+)\\1\\)");
+
+    private static final Map<String, String> IMAGE_TYPES = new HashMap<String, String>();
+    static {
+        IMAGE_TYPES.put("png", "image/png");
+        IMAGE_TYPES.put("gif", "image/gif");
+        IMAGE_TYPES.put("jpg", "image/jpeg");
+        IMAGE_TYPES.put("jpeg", "image/jpeg");
+        IMAGE_TYPES.put("svg", "image/svg+xml");
+    }
+
+    private static final char[] BASE64 = ("ABCDEFGHIJKLMNOPQRSTUVWXYZ"
+            + "abcdefghijklmnopqrstuvwxyz0123456789+/").toCharArray();
+
+    private ThemeOutputProcessor() {
+    }
+
+    /**
+     * Checks whether the compiled themes of a project should be processed.
+     *
+     * @param project
+     * @return
+     */
+    public static boolean isEnabled(IProject project) {
+        return PreferenceUtil.get(project).isThemeCompressedOutputEnabled();
+    }
+
+    /**
+     * Minifies a compiled stylesheet and inlines the small images it refers
+     * to.
+     *
+     * @param cssFile
+     *            the compiled stylesheet, which is rewritten
+     * @param themeDir
+     *            the directory relative URLs in the stylesheet refer to
+     * @return the inlined image files
+     * @throws IOException
+     */
+    public static Set<File> process(File cssFile, File themeDir)
+            throws IOException {
+        Set<File> inlined = new TreeSet<File>();
+        String css = FileUtils.readFileToString(cssFile, CSS_ENCODING);
+        css = inlineImages(minify(css), themeDir, inlined);
+        FileUtils.writeStringToFile(cssFile, css, CSS_ENCODING);
+        return inlined;
+    }
+
+    /**
+     * Updates the compressed variants of the stylesheet of a theme.
+     *
+     * @param themeDir
+     *            the theme folder
+     * @param cssFile
+     *            the stylesheet as written to the theme, in a staging
+     *            directory where the compressed files can be created
+     * @param cssChanged
+     *            true if styles.css of the theme was changed
+     * @param enabled
+     *            true if the compressed files should exist
+     * @param monitor
+     * @throws IOException
+     * @throws CoreException
+     */
+    public static void updateCompressedFiles(IFolder themeDir, File cssFile,
+            boolean cssChanged, boolean enabled, IProgressMonitor monitor)
+            throws IOException, CoreException {
+        IFile gzipFile = themeDir.getFile(cssFile.getName() + GZIP_SUFFIX);
+        IFile brotliFile = themeDir.getFile(cssFile.getName() + BROTLI_SUFFIX);
+        File brotli = enabled ? findBrotli() : null;
+
+        if (enabled && (cssChanged || !gzipFile.exists())) {
+            File compressed = new File(cssFile.getPath() + GZIP_SUFFIX);
+            gzip(cssFile, compressed);
+            GeneratedFiles.update(compressed, gzipFile, monitor);
+        } else if (!enabled && gzipFile.exists()) {
+            gzipFile.delete(true, monitor);
+        }
+
+        if (brotli != null && (cssChanged || !brotliFile.exists())) {
+            File compressed = new File(cssFile.getPath() + BROTLI_SUFFIX);
+            if (brotli(brotli, cssFile, compressed)) {
+                GeneratedFiles.update(compressed, brotliFile, monitor);
+            } else if (brotliFile.exists()) {
+                brotliFile.delete(true, monitor);
+            }
+        } else if (brotli == null && brotliFile.exists()
+                && (cssChanged || !enabled)) {
+            brotliFile.delete(true, monitor);
+        }
+    }
+
+    /**
+     * Removes comments and unnecessary whitespace from a stylesheet. Strings
+     * and comments starting with "/*!", such as license headers, are kept.
+     */
+    static String minify(String css) {
+        StringBuilder result = new StringBuilder(css.length());
+        boolean space = false;
+        int i = 0;
+        while (i < css.length()) {
+            char c = css.charAt(i);
+            if (c == '/' && css.startsWith("/*", i)) {
+                int end = css.indexOf("*/", i + 2);
+                end = end < 0 ? css.length() : end + 2;
+                if (css.startsWith("/*!", i)) {
+                    result.append(css, i, end);
+                } else {
+                    space = true;
+                }
+                i = end;
+                continue;
+            }
+            if (Character.isWhitespace(c)) {
+                space = true;
+                i++;
+                continue;
+            }
+            if (space && result.length() > 0
+                    && NO_SPACE_AFTER.indexOf(last(result)) < 0
+                    && NO_SPACE_BEFORE.indexOf(c) < 0) {
+                result.append(' ');
+            }
+            space = false;
+            if (c == '"' || c == '\'') {
+                int end = endOfString(css, i);
+                result.append(css, i, end);
+                i = end;
+                continue;
+            }
+            if (c == '}' && result.length() > 0 && last(result) == ';') {
+                result.setLength(result.length() - 1);
+            }
+            result.append(c);
+            i++;
+        }
+        return result.toString();
+    }
+
+    private static char last(StringBuilder builder) {
+        return builder.charAt(builder.length() - 1);
+    }
+
+    private static int endOfString(String css, int start) {
+        char quote = css.charAt(start);
+        int i = start + 1;
+        while (i < css.length()) {
+            char c = css.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == quote) {
+                return i + 1;
+            } else {
+                i++;
+            }
+        }
+        return css.length();
+    }
+
+    /**
+     * Replaces relative URLs of small image files with data URIs.
+     *
+     * @param inlined
+     *            the inlined files are added here
+     */
+    static String inlineImages(String css, File themeDir,
+            Collection<File> inlined) throws IOException {
+        Matcher matcher = URL_PATTERN.matcher(css);
+        StringBuffer result = new StringBuffer(css.length());
+        while (matcher.find()) {
+            String url = matcher.group(2).trim();
+            File image = getInlinedImage(url, themeDir);
+            String replacement = matcher.group();
+            if (image != null) {
+                String type = IMAGE_TYPES.get(getExtension(url));
+                replacement = "url(data:" + type + ";base64,"
+                        + base64(FileUtils.readFileToByteArray(image)) + ")";
+                inlined.add(image);
+            }
+            matcher.appendReplacement(result,
+                    Matcher.quoteReplacement(replacement));
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+
+    private static File getInlinedImage(String url, File themeDir) {
+        if (url.startsWith("/") || url.contains(":") || url.contains("?")
+                || url.contains("#")
+                || !IMAGE_TYPES.containsKey(getExtension(url))) {
+            // absolute, data or external URL, or not an image
+            return null;
+        }
+        File image = new File(themeDir, url);
+        if (!image.isFile() || image.length() > INLINE_IMAGE_LIMIT) {
+            // e.g. in the themes JAR, or better cached separately
+            return null;
+        }
+        return image;
+    }
+
+    private static String getExtension(String url) {
+        int dot = url.lastIndexOf('.');
+        return dot < 0 ? "" : url.substring(dot + 1).toLowerCase(
+                Locale.ENGLISH);
+    }
+
+    private static String base64(byte[] data) {
+        StringBuilder result = new StringBuilder((data.length + 2) / 3 * 4);
+        for (int i = 0; i < data.length; i += 3) {
+            int remaining = Math.min(3, data.length - i);
+            int bits = (data[i] & 0xff) << 16;
+            if (remaining > 1) {
+                bits |= (data[i + 1] & 0xff) << 8;
+            }
+            if (remaining > 2) {
+                bits |= data[i + 2] & 0xff;
+            }
+            result.append(BASE64[(bits >> 18) & 0x3f]);
+            result.append(BASE64[(bits >> 12) & 0x3f]);
+            result.append(remaining > 1 ? BASE64[(bits >> 6) & 0x3f] : '=');
+            result.append(remaining > 2 ? BASE64[bits & 0x3f] : '=');
+        }
+        return result.toString();
+    }
+
+    private static void gzip(File source, File target) throws IOException {
+        InputStream input = new FileInputStream(source);
+        OutputStream output = null;
+        try {
+            output = new GZIPOutputStream(new FileOutputStream(target));
+            IOUtils.copy(input, output);
+        } finally {
+            IOUtils.closeQuietly(input);
+            IOUtils.closeQuietly(output);
+        }
+    }
+
+    /**
+     * Finds the brotli command from the PATH.
+     *
+     * @return the executable or null if not found
+     */
+    private static File findBrotli() {
+        String path = System.getenv("PATH");
+        if (path == null) {
+            return null;
+        }
+        for (String dir : path.split(File.pathSeparator)) {
+            for (String name : new String[] { BROTLI_COMMAND,
+                    BROTLI_COMMAND + ".exe" }) {
+                File file = new File(dir, name);
+                if (file.isFile()) {
+                    return file;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean brotli(File brotli, File source, File target) {
+        ProcessBuilder builder = new ProcessBuilder(brotli.getAbsolutePath(),
+                "--force", "--output=" + target.getAbsolutePath(),
+                source.getAbsolutePath());
+        builder.redirectErrorStream(true);
+        try {
+            Process process = builder.start();
+            IOUtils.toString(process.getInputStream());
+            return process.waitFor() == 0 && target.isFile();
+        } catch (IOException e) {
+            ErrorUtil.handleBackgroundException(IStatus.INFO,
+                    "Could not run " + brotli, e);
+            return false;
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+}
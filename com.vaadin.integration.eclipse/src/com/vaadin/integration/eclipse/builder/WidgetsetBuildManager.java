@@ -3,6 +3,7 @@ package com.vaadin.integration.eclipse.builder;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -12,10 +13,12 @@ import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubProgressMonitor;
 import org.eclipse.core.runtime.jobs.Job;
@@ -43,8 +46,11 @@ import org.eclipse.swt.widgets.Shell;
 import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.dialogs.ElementListSelectionDialog;
 
+import com.vaadin.integration.eclipse.VaadinFacetUtils;
+import com.vaadin.integration.eclipse.maven.MavenUtil;
 import com.vaadin.integration.eclipse.util.ErrorUtil;
 import com.vaadin.integration.eclipse.util.PreferenceUtil;
+import com.vaadin.integration.eclipse.util.WidgetsetCompileBudget;
 import com.vaadin.integration.eclipse.util.WidgetsetUtil;
 
 /**
@@ -255,16 +261,19 @@ public class WidgetsetBuildManager {
 
     private static final class CompileWidgetsetJob extends Job {
         private final IProject project;
+        private final boolean production;
 
-        private CompileWidgetsetJob(String name, IProject project) {
+        private CompileWidgetsetJob(String name, IProject project,
+                boolean production) {
             super(name);
             this.project = project;
+            this.production = production;
         }
 
         @Override
         protected IStatus run(IProgressMonitor monitor) {
             projectWidgetsetBuildPending.remove(project);
-            internalCompile(project, monitor);
+            internalCompile(project, production, monitor);
             return Status.OK_STATUS;
         }
     }
@@ -274,20 +283,23 @@ public class WidgetsetBuildManager {
      * 
      * This is a set of project name + {@link IPath.SEPARATOR} + module name
      */
-    private static Set<String> widgetsetBuildRunning = new HashSet<String>();
+    private static Set<String> widgetsetBuildRunning = Collections
+            .synchronizedSet(new HashSet<String>());
 
     /**
      * Which projects have a queued/pending widgetset build. This is set at
      * request time so that additional requests are ignored while waiting for
      * user confirmation.
      */
-    private static Set<IProject> projectWidgetsetBuildPending = new HashSet<IProject>();
+    private static Set<IProject> projectWidgetsetBuildPending = Collections
+            .synchronizedSet(new HashSet<IProject>());
 
     /**
      * Which projects are being modified internally by the plugin and should not
      * be considered candidates for widgetset building.
      */
-    private static Set<IProject> projectWidgetsetBuildSuspended = new HashSet<IProject>();
+    private static Set<IProject> projectWidgetsetBuildSuspended = Collections
+            .synchronizedSet(new HashSet<IProject>());
 
     /**
      * Ask the user whether he wants the widgetset(s) to be compiled and trigger
@@ -299,7 +311,8 @@ public class WidgetsetBuildManager {
      * Multiple concurrent builds for a project are not allowed, but different
      * projects can be built concurrently. All widgetset builds for the project
      * are blocked until the user answers the question. Requests to compile
-     * widgetsets in closed projects are silently ignored.
+     * widgetsets in closed projects or in projects with a running
+     * SuperDevMode code server are silently ignored.
      * 
      * @param project
      *            the project whose widgetset(s) to compile
@@ -313,13 +326,35 @@ public class WidgetsetBuildManager {
      */
     public static void runWidgetSetBuildTool(final IProject project,
             final boolean synchronous, final IProgressMonitor monitor) {
+        runWidgetSetBuildTool(project, synchronous, false, monitor);
+    }
+
+    /**
+     * Ask the user whether he wants the widgetset(s) to be compiled and trigger
+     * a build if necessary, see
+     * {@link #runWidgetSetBuildTool(IProject, boolean, IProgressMonitor)}.
+     * 
+     * @param project
+     *            the project whose widgetset(s) to compile
+     * @param synchronous
+     *            if true, do not return until the widgetset has been compiled
+     *            or the user has chosen not to compile it
+     * @param production
+     *            true to compile all permutations even if the development
+     *            profile is enabled for the project
+     * @param monitor
+     *            progress monitor for synchronous execution
+     */
+    public static void runWidgetSetBuildTool(final IProject project,
+            final boolean synchronous, final boolean production,
+            final IProgressMonitor monitor) {
 
         if (!WidgetsetUtil.isWidgetsetManagedByPlugin(project)
                 || isBuildRunning(project)
-                || isWidgetsetBuildingSuspended(project)) {
+                || isWidgetsetBuildingSuspended(project)
+                || SuperDevModeManager.isRunning(project)) {
             // no message, ignore request
-        } else if (!projectWidgetsetBuildPending.contains(project)) {
-            projectWidgetsetBuildPending.add(project);
+        } else if (projectWidgetsetBuildPending.add(project)) {
 
             // value modifiable by the nested anonymous class
             final boolean[] openQuestion = new boolean[] { false };
@@ -330,22 +365,35 @@ public class WidgetsetBuildManager {
                     Shell shell = PlatformUI.getWorkbench()
                             .getActiveWorkbenchWindow().getShell();
 
+                    // only the widgetsets affected by the changes are compiled
+                    String message;
+                    List<String> dirtyWidgetsets = PreferenceUtil.get(project)
+                            .getDirtyWidgetsets();
+                    if (dirtyWidgetsets != null && !dirtyWidgetsets.isEmpty()) {
+                        StringBuilder names = new StringBuilder();
+                        for (String widgetset : dirtyWidgetsets) {
+                            names.append("\n    ").append(widgetset);
+                        }
+                        message = "Your client side code in the project "
+                                + project.getName()
+                                + " might need a recompilation of the widgetsets:"
+                                + names + "\nCompile widgetsets now?";
+                    } else {
+                        message = "Your client side code in the project "
+                                + project.getName()
+                                + " might need a recompilation. Compile widgetset now?";
+                    }
+
                     // provides an option to disable further recompilation
                     // requests for the project, and tells how to re-enable
-                    openQuestion[0] = ConfirmationDialog
-                            .openQuestion(
-                                    shell,
-                                    "Compile widgetset",
-                                    "Your client side code in the project "
-                                            + project.getName()
-                                            + " might need a recompilation. Compile widgetset now?",
-                                    project);
+                    openQuestion[0] = ConfirmationDialog.openQuestion(shell,
+                            "Compile widgetset", message, project);
                     if (!synchronous) {
                         if (openQuestion[0]) {
                             CompileWidgetsetJob job = new CompileWidgetsetJob(
                                     "Compiling wigetset for project "
                                             + project.getName() + "...",
-                                    project);
+                                    project, production);
 
                             job.setUser(false);
 
@@ -370,7 +418,7 @@ public class WidgetsetBuildManager {
                 // the UI thread - otherwise Job.join() would be ok
                 projectWidgetsetBuildPending.remove(project);
                 if (openQuestion[0]) {
-                    internalCompile(project, monitor);
+                    internalCompile(project, production, monitor);
                 }
             } else {
                 PlatformUI.getWorkbench().getDisplay().asyncExec(runnable);
@@ -378,20 +426,46 @@ public class WidgetsetBuildManager {
         }
     }
 
+    /**
+     * Compiles the widgetsets of a project for exporting it without asking
+     * the user. The widgetsets compiled with the development profile only
+     * work in the development browser, so they are always recompiled with
+     * all permutations in addition to the other dirty widgetsets.
+     * 
+     * @param project
+     * @param monitor
+     */
+    public static void compileWidgetsetsForExport(IProject project,
+            IProgressMonitor monitor) {
+        if (!WidgetsetUtil.isWidgetsetManagedByPlugin(project)) {
+            return;
+        }
+        List<String> devProfileWidgetsets = PreferenceUtil.get(project)
+                .getDevProfileWidgetsets();
+        if (!devProfileWidgetsets.isEmpty()) {
+            WidgetsetUtil.markWidgetsetsDirty(project, devProfileWidgetsets);
+        }
+        if (WidgetsetUtil.isWidgetsetDirty(project)) {
+            internalCompile(project, true, monitor);
+        }
+    }
+
     private static boolean isBuildRunning(IProject project) {
-        for (String running : widgetsetBuildRunning) {
-            if (running.startsWith(project.getName() + IPath.SEPARATOR)) {
-                return true;
+        synchronized (widgetsetBuildRunning) {
+            for (String running : widgetsetBuildRunning) {
+                if (running.startsWith(project.getName() + IPath.SEPARATOR)) {
+                    return true;
+                }
             }
         }
         return false;
     }
 
-    private static void internalCompile(IProject project,
+    private static void internalCompile(IProject project, boolean production,
             IProgressMonitor monitor) {
         try {
             final IJavaProject jproject = JavaCore.create(project);
-            compileWidgetsets(jproject, monitor);
+            compileWidgetsets(jproject, production, true, monitor);
         } catch (CoreException e) {
             ErrorUtil.handleBackgroundException(IStatus.ERROR,
                     "Widgetset compilation failed", e);
@@ -409,8 +483,8 @@ public class WidgetsetBuildManager {
      * 
      * {@see #compileWidgetset(IJavaProject, String, IProgressMonitor)}
      * 
-     * If the project has multiple widgetsets and the user has not specified
-     * which one to compile, notify the user.
+     * If the project has multiple widgetsets, they are compiled in parallel
+     * within the limits of {@link WidgetsetCompileBudget}.
      * 
      * Widgetset rebuild questions are not shown if a widgetset build request is
      * pending for the project, if the requested widgetset is being built, if
@@ -432,6 +506,48 @@ public class WidgetsetBuildManager {
     public static void compileWidgetsets(final IJavaProject jproject,
             final IProgressMonitor monitor) throws CoreException, IOException,
             InterruptedException {
+        compileWidgetsets(jproject, false, monitor);
+    }
+
+    /**
+     * Compile one or more widgetsets for given project, see
+     * {@link #compileWidgetsets(IJavaProject, IProgressMonitor)}.
+     * 
+     * @param jproject
+     * @param production
+     *            true to compile all permutations even if the development
+     *            profile is enabled for the project
+     * @param monitor
+     * @throws CoreException
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public static void compileWidgetsets(final IJavaProject jproject,
+            boolean production, final IProgressMonitor monitor)
+            throws CoreException, IOException, InterruptedException {
+        compileWidgetsets(jproject, production, false, monitor);
+    }
+
+    /**
+     * Compile one or more widgetsets for given project, see
+     * {@link #compileWidgetsets(IJavaProject, IProgressMonitor)}.
+     * 
+     * @param jproject
+     * @param production
+     *            true to compile all permutations even if the development
+     *            profile is enabled for the project
+     * @param dirtyOnly
+     *            true to only compile the widgetsets modified since their last
+     *            compilation if the project has multiple widgetsets
+     * @param monitor
+     * @throws CoreException
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private static void compileWidgetsets(final IJavaProject jproject,
+            boolean production, boolean dirtyOnly,
+            final IProgressMonitor monitor) throws CoreException,
+            IOException, InterruptedException {
         // if no more than one widgetset in the project, compile it (or
         // create a new one)
         IProject project = jproject.getProject();
@@ -477,8 +593,8 @@ public class WidgetsetBuildManager {
                 // this should be unnecessary, as the client package is under
                 // the widgetset
                 widgetset = widgetset.replace(".client.", ".");
-                compileWidgetsetIfNotRunning(jproject, widgetset,
-                        new SubProgressMonitor(monitor, 27));
+                compileWidgetsetIfNotRunning(jproject, widgetset, null,
+                        production, new SubProgressMonitor(monitor, 27));
                 if (widgetsets.size() == 0) {
                     // refresh the created widgetset - need to find it first
                     String pathStr = widgetset.replace(".", "/") + ".gwt.xml";
@@ -502,23 +618,148 @@ public class WidgetsetBuildManager {
                     }
                 }
             } else {
-                // TODO ask the user, compile all the selected ones
-                // TODO queue immediately as separate tasks
-                ErrorUtil
-                        .displayWarningFromBackgroundThread(
-                                "Select widgetset",
-                                "Multiple widgetsets in project "
-                                        + project.getName()
-                                        + ". Select a widgetset file (..widgetset.gwt.xml) to compile.");
-                // for (String widgetset : widgetsets) {
-                // compileWidgetset(project, widgetset, monitor);
-                // }
+                if (dirtyOnly) {
+                    widgetsets = WidgetsetUtil.getDirtyWidgetsets(jproject,
+                            monitor);
+                    if (widgetsets.isEmpty()) {
+                        // only removed widgetsets were dirty
+                        WidgetsetUtil.setWidgetsetDirty(project, false);
+                        return;
+                    }
+                }
+                List<CompileModuleJob> jobs = new ArrayList<CompileModuleJob>();
+                for (String widgetset : widgetsets) {
+                    jobs.add(new CompileModuleJob(jproject, widgetset,
+                            production));
+                }
+                runInParallel(jobs, new SubProgressMonitor(monitor, 27));
+            }
+        } finally {
+            monitor.done();
+        }
+    }
+
+    /**
+     * Compiles all widgetsets of all open Vaadin projects in the workspace
+     * whose widgetsets are managed by the plug-in. The widgetsets are compiled
+     * in parallel within the limits of {@link WidgetsetCompileBudget}.
+     * 
+     * @param monitor
+     * @throws CoreException
+     * @throws InterruptedException
+     */
+    public static void compileAllWidgetsets(IProgressMonitor monitor)
+            throws CoreException, InterruptedException {
+        try {
+            monitor.beginTask("Compiling all widgetsets", 10 + 90);
+            List<CompileModuleJob> jobs = new ArrayList<CompileModuleJob>();
+            for (IProject project : ResourcesPlugin.getWorkspace().getRoot()
+                    .getProjects()) {
+                if (!project.isOpen()
+                        || !VaadinFacetUtils.isVaadinProject(project)
+                        || MavenUtil.isMavenProject(project)
+                        || !WidgetsetUtil.isWidgetsetManagedByPlugin(project)) {
+                    continue;
+                }
+                IJavaProject jproject = JavaCore.create(project);
+                for (String widgetset : WidgetsetUtil.findWidgetSets(jproject,
+                        new SubProgressMonitor(monitor, 0))) {
+                    jobs.add(new CompileModuleJob(jproject, widgetset, false));
+                }
+            }
+            monitor.worked(10);
+            runInParallel(jobs, new SubProgressMonitor(monitor, 90));
+        } finally {
+            monitor.done();
+        }
+    }
+
+    /**
+     * Runs widgetset compilation jobs in parallel and waits for all of them to
+     * complete. Canceling the monitor cancels the jobs.
+     * 
+     * @throws OperationCanceledException
+     *             if the monitor was canceled
+     */
+    private static void runInParallel(List<CompileModuleJob> jobs,
+            IProgressMonitor monitor) throws InterruptedException {
+        try {
+            monitor.beginTask("Compiling widgetsets", jobs.size());
+            // register all compilations before starting any of them so that
+            // the first ones do not take all processors
+            for (CompileModuleJob job : jobs) {
+                job.budgetRequest = WidgetsetCompileBudget.newRequest();
+            }
+            for (CompileModuleJob job : jobs) {
+                job.schedule();
+            }
+            for (CompileModuleJob job : jobs) {
+                // polled instead of joined with the monitor so that the
+                // other jobs can be canceled
+                while (job.getState() != Job.NONE) {
+                    if (monitor.isCanceled()) {
+                        cancel(jobs);
+                        throw new OperationCanceledException();
+                    }
+                    Thread.sleep(500);
+                }
+                monitor.worked(1);
             }
         } finally {
             monitor.done();
         }
     }
 
+    private static void cancel(List<CompileModuleJob> jobs) {
+        for (CompileModuleJob job : jobs) {
+            // a job that never runs must not keep its place in the
+            // compilation queue, a running job releases its request itself
+            if (job.cancel()) {
+                job.budgetRequest.release();
+            }
+        }
+    }
+
+    /**
+     * Compiles a single widgetset module as a part of a batch.
+     */
+    private static class CompileModuleJob extends Job {
+
+        private final IJavaProject jproject;
+        private final String widgetset;
+        private final boolean production;
+        private WidgetsetCompileBudget.Request budgetRequest;
+
+        public CompileModuleJob(IJavaProject jproject, String widgetset,
+                boolean production) {
+            super("Compiling widgetset " + widgetset + " in project "
+                    + jproject.getProject().getName());
+            this.jproject = jproject;
+            this.widgetset = widgetset;
+            this.production = production;
+            setUser(false);
+        }
+
+        @Override
+        protected IStatus run(IProgressMonitor monitor) {
+            try {
+                compileWidgetsetIfNotRunning(jproject, widgetset,
+                        budgetRequest, production, monitor);
+            } catch (CoreException e) {
+                ErrorUtil.handleBackgroundException(IStatus.ERROR,
+                        "Widgetset compilation failed", e);
+            } catch (IOException e) {
+                ErrorUtil.handleBackgroundException(IStatus.ERROR,
+                        "Widgetset compilation failed", e);
+            } catch (InterruptedException e) {
+                ErrorUtil.handleBackgroundException(IStatus.ERROR,
+                        "Widgetset compilation failed", e);
+            }
+            return monitor.isCanceled() ? Status.CANCEL_STATUS
+                    : Status.OK_STATUS;
+        }
+    }
+
     /**
      * Asks the user where to create a widgetset and creates it. The user can
      * also choose to skip widgetset creation.
@@ -562,6 +803,12 @@ public class WidgetsetBuildManager {
      * @param jproject
      * @param widgetset
      *            widgetset GWT module name
+     * @param budgetRequest
+     *            compilation budget request registered for the widgetset or
+     *            null, always released
+     * @param production
+     *            true to compile all permutations even if the development
+     *            profile is enabled
      * @param monitor
      * 
      * @throws CoreException
@@ -569,14 +816,15 @@ public class WidgetsetBuildManager {
      * @throws InterruptedException
      */
     private static void compileWidgetsetIfNotRunning(IJavaProject jproject,
-            String widgetset, IProgressMonitor monitor) throws CoreException,
-            IOException, InterruptedException {
+            String widgetset, WidgetsetCompileBudget.Request budgetRequest,
+            boolean production, IProgressMonitor monitor)
+            throws CoreException, IOException, InterruptedException {
         IProject project = jproject.getProject();
         String key = project.getName() + IPath.SEPARATOR + widgetset;
-        if (!widgetsetBuildRunning.contains(key)) {
-            widgetsetBuildRunning.add(key);
+        if (widgetsetBuildRunning.add(key)) {
             try {
-                WidgetsetUtil.compileWidgetset(jproject, widgetset, monitor);
+                WidgetsetUtil.compileWidgetset(jproject, widgetset,
+                        budgetRequest, production, monitor);
 
                 // could create a hosted mode launch here if it does not exist -
                 // instead, do it on demand from the project properties as it
@@ -592,6 +840,9 @@ public class WidgetsetBuildManager {
                 widgetsetBuildRunning.remove(key);
             }
         } else {
+            if (budgetRequest != null) {
+                budgetRequest.release();
+            }
             ErrorUtil.displayWarningFromBackgroundThread(
                     "Widgetset build running",
                     "A build for the widgetset " + widgetset
@@ -639,7 +890,7 @@ public class WidgetsetBuildManager {
         String fqname = name.replace(".gwt.xml", "");
         fqname = fqname.replaceAll("/", ".");
 
-        compileWidgetsetIfNotRunning(jproject, fqname, monitor);
+        compileWidgetsetIfNotRunning(jproject, fqname, null, false, monitor);
     }
 
     /**
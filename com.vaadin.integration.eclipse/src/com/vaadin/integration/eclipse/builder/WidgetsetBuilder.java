@@ -1,6 +1,7 @@
 package com.vaadin.integration.eclipse.builder;
 
 import java.util.Map;
+import java.util.Set;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
@@ -31,11 +32,20 @@ public class WidgetsetBuilder extends IncrementalProjectBuilder {
 
     class WidgetsetResourceDeltaVisitor implements IResourceDeltaVisitor {
         private IProgressMonitor monitor;
+        private GwtModuleIndex moduleIndex;
+        private Boolean vaadin7;
 
         public WidgetsetResourceDeltaVisitor(IProgressMonitor monitor) {
             this.monitor = monitor;
         }
 
+        private boolean isVaadin7() {
+            if (vaadin7 == null) {
+                vaadin7 = ProjectUtil.isVaadin7(getProject());
+            }
+            return vaadin7;
+        }
+
         /*
          * (non-Javadoc)
          * 
@@ -50,6 +60,11 @@ public class WidgetsetBuilder extends IncrementalProjectBuilder {
                 if (f.getName().equals("build")) {
                     return false;
                 }
+                // saving project preferences must not trigger builds
+                if (f.getName().equals(".settings")
+                        && f.getParent() instanceof IProject) {
+                    return false;
+                }
             }
 
             if (WidgetsetUtil.isWidgetsetPackage(resource.getRawLocation())) {
@@ -113,30 +128,30 @@ public class WidgetsetBuilder extends IncrementalProjectBuilder {
                                 getProject(), false, monitor);
                     }
                 }
-            } else if (resource.exists()
-                    && (isGwtModule(resource) || isClientSideJavaClass(resource))) {
-                switch (delta.getKind()) {
-                case IResourceDelta.ADDED:
-                case IResourceDelta.CHANGED:
-                case IResourceDelta.REMOVED:
-                    // removed might not arrive here as resource does not
-                    // exist...
-                    WidgetsetUtil.setWidgetsetDirty(getProject(), true);
-
-                    break;
+            } else if (".classpath".equals(resource.getName())
+                    && resource.getParent() instanceof IProject) {
+                // source folders may have changed
+                GwtModuleIndex.invalidate(getProject());
+                moduleIndex = null;
+            } else if (GwtModuleIndex.isModuleFile(resource)) {
+                GwtModuleIndex index = getModuleIndex();
+                Set<String> widgetsets;
+                if (delta.getKind() == IResourceDelta.REMOVED) {
+                    // the widgetsets inheriting the removed module
+                    widgetsets = index.getAffectedWidgetsets(resource);
+                    index.removeModule((IFile) resource);
+                } else {
+                    index.updateModule((IFile) resource);
+                    widgetsets = index.getAffectedWidgetsets(resource);
                 }
-            } else if (resource.exists()
-                    && isComponentWithWidgetAnnotation(resource)) {
-                switch (delta.getKind()) {
-                case IResourceDelta.ADDED:
-                case IResourceDelta.REMOVED:
-                    // removed should never arrive here as does not exist...
+                markDirty(widgetsets);
+            } else if (resource instanceof IFile) {
+                markDirty(getModuleIndex().getAffectedWidgetsets(resource));
+
+                if (delta.getKind() == IResourceDelta.ADDED
+                        && isComponentWithWidgetAnnotation(resource)) {
+                    // TODO also if the @ClientWidget annotation changed
                     WidgetsetUtil.setWidgetsetDirty(getProject(), true);
-                    break;
-                case IResourceDelta.CHANGED:
-                    // TODO only if the @ClientWidget annotation changed
-                    // VaadinPluginUtil.setWidgetsetDirty(getProject(), true);
-                    break;
                 }
             }
 
@@ -149,53 +164,29 @@ public class WidgetsetBuilder extends IncrementalProjectBuilder {
                     && resource.getName().endsWith(".jar");
         }
 
-        private boolean isGwtModule(IResource resource) {
-            return resource instanceof IFile
-                    && resource.getName().endsWith(".gwt.xml");
+        private GwtModuleIndex getModuleIndex() throws CoreException {
+            if (moduleIndex == null) {
+                moduleIndex = GwtModuleIndex.get(getProject());
+            }
+            return moduleIndex;
         }
 
-        /**
-         * Check if given resource is java file in gwt module.
-         * 
-         * Only resources with "client" as a segment of their path are
-         * considered. The existence of a GWT module in the parent of that
-         * segment is then checked.
-         * 
-         * @param resource
-         * @return true if the resource is a java file in a GWT module
-         */
-        private boolean isClientSideJavaClass(IResource resource) {
-            if (resource instanceof IFile
-                    && resource.getName().endsWith(".java")) {
-                IPath path = resource.getProjectRelativePath();
-
-                for (int i = 1; i < path.segmentCount(); ++i) {
-                    if ("client".equals(path.segment(i))) {
-                        // check if the parent has a GWT module
-                        IFolder parent = resource.getProject().getFolder(
-                                path.uptoSegment(i));
-                        try {
-                            for (IResource child : parent.members()) {
-                                if (child.getName().endsWith(".gwt.xml")) {
-                                    return true;
-                                }
-                            }
-                        } catch (CoreException e) {
-                            ErrorUtil.handleBackgroundException(
-                                    IStatus.WARNING,
-                                    "Could not list children of folder "
-                                            + parent.getFullPath(), e);
-                            // continue search - maybe multiple .client. in path
-                        }
-                    }
-                }
+        private void markDirty(Set<String> widgetsets) {
+            if (!widgetsets.isEmpty()) {
+                WidgetsetUtil.markWidgetsetsDirty(getProject(), widgetsets);
+                // a running code server only retranslates what changed
+                SuperDevModeManager.recompile(getProject(), widgetsets);
             }
-            return false;
         }
 
+        /**
+         * Checks whether a new Java file is a server side component with the
+         * Vaadin 6 @ClientWidget annotation, which is used when generating the
+         * widgetset. Vaadin 7 widgetsets do not depend on server side classes.
+         */
         private boolean isComponentWithWidgetAnnotation(IResource resource) {
-            if (resource instanceof IFile
-                    && resource.getName().endsWith(".java")) {
+            if (resource.getName().endsWith(".java") && resource.exists()
+                    && !isVaadin7()) {
                 IFile file = (IFile) resource;
 
                 ICompilationUnit createCompilationUnitFrom = JavaCore
@@ -254,6 +245,8 @@ public class WidgetsetBuilder extends IncrementalProjectBuilder {
 
     protected void fullBuild(final IProgressMonitor monitor)
             throws CoreException {
+        // resources may have changed without deltas
+        GwtModuleIndex.invalidate(getProject());
 
         // detect if widget set compile is needed, then run tool; the
         // "dirty flag" must be saved to file system, so that new build is not
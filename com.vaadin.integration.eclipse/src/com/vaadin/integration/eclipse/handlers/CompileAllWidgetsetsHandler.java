@@ -0,0 +1,44 @@
+package com.vaadin.integration.eclipse.handlers;
+
+import org.eclipse.core.commands.AbstractHandler;
+import org.eclipse.core.commands.ExecutionEvent;
+import org.eclipse.core.commands.ExecutionException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+import com.vaadin.integration.eclipse.builder.WidgetsetBuildManager;
+import com.vaadin.integration.eclipse.util.ErrorUtil;
+
+/**
+ * Handler for the Compile All Widgetsets action, which compiles the widgetsets
+ * of all Vaadin projects in the workspace in parallel.
+ *
+ * @see org.eclipse.core.commands.IHandler
+ * @see org.eclipse.core.commands.AbstractHandler
+ */
+public class CompileAllWidgetsetsHandler extends AbstractHandler {
+
+    public Object execute(ExecutionEvent event) throws ExecutionException {
+        Job job = new Job("Compiling all widgetsets...") {
+            @Override
+            protected IStatus run(IProgressMonitor monitor) {
+                try {
+                    WidgetsetBuildManager.compileAllWidgetsets(monitor);
+                } catch (OperationCanceledException e) {
+                    return Status.CANCEL_STATUS;
+                } catch (Exception e) {
+                    ErrorUtil.handleBackgroundException(IStatus.ERROR,
+                            "Widgetset compilation failed", e);
+                }
+                return Status.OK_STATUS;
+            }
+        };
+        job.setUser(false);
+        job.schedule();
+        return null;
+    }
+
+}
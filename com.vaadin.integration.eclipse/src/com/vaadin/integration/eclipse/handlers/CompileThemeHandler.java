@@ -9,14 +9,14 @@ import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
-import org.eclipse.core.runtime.SubProgressMonitor;
 import org.eclipse.core.runtime.jobs.ISchedulingRule;
 import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.viewers.ISelection;
 import org.eclipse.ui.IEditorPart;
 
 import com.vaadin.integration.eclipse.VaadinFacetUtils;
-import com.vaadin.integration.eclipse.builder.ThemeCompiler;
+import com.vaadin.integration.eclipse.builder.ThemeBuildManager;
+import com.vaadin.integration.eclipse.builder.ThemeImportGraph;
 import com.vaadin.integration.eclipse.maven.MavenUtil;
 import com.vaadin.integration.eclipse.util.ErrorUtil;
 import com.vaadin.integration.eclipse.util.ProjectUtil;
@@ -67,9 +67,8 @@ public class CompileThemeHandler extends AbstractVaadinCompileHandler {
                         if (theme instanceof IFolder) {
                             IFolder themeFolder = (IFolder) theme;
                             try {
-                                ThemeCompiler.run(project, monitor, themeFolder);
-                                themeFolder.refreshLocal(IResource.DEPTH_ONE,
-                                        new SubProgressMonitor(monitor, 1));
+                                ThemeBuildManager.compile(project,
+                                        themeFolder, monitor);
                             } catch (IOException e) {
                                 e.printStackTrace();
                             }
@@ -97,8 +96,17 @@ public class CompileThemeHandler extends AbstractVaadinCompileHandler {
 
                 boolean compiled = false;
 
-                // TODO could check here if the file is within a theme and only compile
-                // that theme
+                // only the themes importing a Sass file need to be compiled
+                if (VaadinFacetUtils.isVaadinProject(project)
+                        && ThemeImportGraph.isScssFile(file)) {
+                    for (String theme : ThemeImportGraph.get(project)
+                            .getAffectedThemes(file)) {
+                        IFolder themeFolder = themes.getFolder(theme);
+                        ThemeBuildManager.compile(project, themeFolder,
+                                monitor);
+                        compiled = true;
+                    }
+                }
 
                 if (!compiled) {
                     if (VaadinFacetUtils.isVaadinProject(project)) {
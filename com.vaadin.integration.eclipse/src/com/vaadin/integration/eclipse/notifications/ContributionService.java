@@ -1,6 +1,5 @@
 package com.vaadin.integration.eclipse.notifications;
 
-import java.io.IOException;
 import java.lang.ref.Reference;
 import java.lang.ref.WeakReference;
 import java.net.URL;
@@ -893,15 +892,7 @@ public final class ContributionService extends ContributionControlAccess {
                     .getUpgradeProjects().entrySet()) {
                 PreferenceUtil util = PreferenceUtil.get(entry.getKey());
                 util.setLatestMavenUpgradeVersions(entry.getValue());
-                save(util);
-            }
-        }
-
-        private void save(PreferenceUtil util) {
-            try {
-                util.persist();
-            } catch (IOException e) {
-                LOG.log(Level.WARNING, null, e);
+                util.persistLater();
             }
         }
 
@@ -1,21 +1,20 @@
 package com.vaadin.integration.eclipse.notifications.jobs.nightly;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 
 import org.eclipse.core.resources.IProject;
-import org.eclipse.core.resources.IWorkspaceRoot;
-import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.core.runtime.jobs.MultiRule;
-import org.eclipse.jdt.core.JavaCore;
 
 import com.vaadin.integration.eclipse.VaadinPlugin;
 import com.vaadin.integration.eclipse.notifications.Consumer;
@@ -23,10 +22,11 @@ import com.vaadin.integration.eclipse.notifications.ProjectsUpgradeInfo;
 import com.vaadin.integration.eclipse.notifications.Utils;
 import com.vaadin.integration.eclipse.util.ErrorUtil;
 import com.vaadin.integration.eclipse.util.PreferenceUtil;
-import com.vaadin.integration.eclipse.util.ProjectUtil;
-import com.vaadin.integration.eclipse.util.VersionUtil;
+import com.vaadin.integration.eclipse.util.VaadinProjectModel;
+import com.vaadin.integration.eclipse.util.VaadinProjectModel.VaadinProject;
 import com.vaadin.integration.eclipse.util.data.DownloadableVaadinVersion;
 import com.vaadin.integration.eclipse.util.data.MavenVaadinVersion;
+import com.vaadin.integration.eclipse.util.data.VersionNumber;
 import com.vaadin.integration.eclipse.util.network.DownloadManager;
 import com.vaadin.integration.eclipse.util.network.MavenVersionManager;
 
@@ -70,7 +70,7 @@ abstract class NightlyCheckJob extends Job {
 
     private IStatus checkProjects(IProgressMonitor monitor)
             throws CoreException {
-        List<IProject> vaadin7Projects = getVaadin7Projects();
+        List<VaadinProject> vaadin7Projects = getVaadin7Projects();
 
         LOG.info("All vaadin 7+ projects : " + vaadin7Projects); //$NON-NLS-1$
 
@@ -105,30 +105,18 @@ abstract class NightlyCheckJob extends Job {
         return Status.OK_STATUS;
     }
 
-    private List<IProject> getVaadin7Projects() {
-        List<IProject> vaadin7Projects = new ArrayList<IProject>();
-        IWorkspaceRoot workspaceRoot = ResourcesPlugin.getWorkspace().getRoot();
-        IProject[] projects = workspaceRoot.getProjects();
-        for (IProject project : projects) {
-            try {
-                if (!project.isOpen() || !project.hasNature(JavaCore.NATURE_ID)) {
-                    continue;
-                }
-                if (ProjectUtil.isVaadin7(project)) {
-                    vaadin7Projects.add(project);
-                }
-            } catch (CoreException e) {
-                ErrorUtil.handleBackgroundException(IStatus.WARNING,
-                        "Could not check Vaadin version in project " //$NON-NLS-1$
-                        + project.getName(),
-                        e);
+    private List<VaadinProject> getVaadin7Projects() {
+        List<VaadinProject> vaadin7Projects = new ArrayList<VaadinProject>();
+        for (VaadinProject project : VaadinProjectModel.getVaadinProjects()) {
+            if (project.isVaadin7()) {
+                vaadin7Projects.add(project);
             }
         }
         return vaadin7Projects;
     }
 
     private Map<IProject, List<MavenVaadinVersion>> getVaadinUpgrades(
-            List<IProject> vaadinProjects) {
+            List<VaadinProject> vaadinProjects) {
         Map<IProject, List<MavenVaadinVersion>> availableUpgrades = new HashMap<IProject, List<MavenVaadinVersion>>();
         List<MavenVaadinVersion> availableVersions = new ArrayList<MavenVaadinVersion>();
         try {
@@ -138,34 +126,38 @@ abstract class NightlyCheckJob extends Job {
             // available.
             return availableUpgrades;
         }
-        for (IProject project : vaadinProjects) {
+        UpgradeIndex upgrades = new UpgradeIndex(availableVersions);
+        for (VaadinProject vaadinProject : vaadinProjects) {
+            IProject project = vaadinProject.getProject();
             try {
                 if (!PreferenceUtil.get(project)
                         .isUpdateNotificationEnabled()) {
                     continue;
                 }
-                String currentVersion = ProjectUtil
-                        .getVaadinLibraryVersion(project, true);
-                if (currentVersion == null) {
+                String currentVersionString = vaadinProject
+                        .getVaadinVersion();
+                if (currentVersionString == null) {
                     continue;
                 }
+                VersionNumber currentVersion = VersionNumber
+                        .valueOf(currentVersionString);
                 List<MavenVaadinVersion> allUpgrades = new ArrayList<MavenVaadinVersion>();
-                MavenVaadinVersion newestUpgradeSameMinor = getLatestUpgrade(
-                        currentVersion, availableVersions, true, false);
+                MavenVaadinVersion newestUpgradeSameMinor = upgrades
+                        .getLatestUpgrade(currentVersion, true, false);
                 if (newestUpgradeSameMinor != null) {
                     allUpgrades.add(newestUpgradeSameMinor);
                 }
-                MavenVaadinVersion newestStableUpgrade = getLatestUpgrade(
-                        currentVersion, availableVersions, false, true);
+                MavenVaadinVersion newestStableUpgrade = upgrades
+                        .getLatestUpgrade(currentVersion, false, true);
                 if (newestStableUpgrade != null
                         && !allUpgrades.contains(newestStableUpgrade)) {
                     allUpgrades.add(newestStableUpgrade);
                 }
                 // Suggest upgrading to the newest alpha/beta/rc version if
                 // the current version is not a stable version
-                if (!VersionUtil.isStableVersion(currentVersion)) {
-                    MavenVaadinVersion newestUpgrade = getLatestUpgrade(
-                            currentVersion, availableVersions, false, false);
+                if (!currentVersion.isStable()) {
+                    MavenVaadinVersion newestUpgrade = upgrades
+                            .getLatestUpgrade(currentVersion, false, false);
                     if (newestUpgrade != null
                             && !allUpgrades.contains(newestUpgrade)) {
                         allUpgrades.add(newestUpgrade);
@@ -184,29 +176,71 @@ abstract class NightlyCheckJob extends Job {
         return availableUpgrades;
     }
 
-    private MavenVaadinVersion getLatestUpgrade(String current,
-            List<MavenVaadinVersion> availableVersions,
-            boolean allowOnlySameMinor, boolean allowOnlyStableVersions) {
-        String latestAsString = current;
-        MavenVaadinVersion result = null;
-        for (MavenVaadinVersion version : availableVersions) {
-            String versionNumber = version.getVersionNumber();
-            // Always require at least the major version to be the same as in
-            // the current version.
-            boolean acceptVersion = !allowOnlySameMinor
-                    ? VersionUtil.isSameVersion(versionNumber, current, 1)
-                    : VersionUtil.isSameVersion(versionNumber, current, 2);
-            if (allowOnlyStableVersions) {
-                acceptVersion = acceptVersion
-                        && VersionUtil.isStableVersion(versionNumber);
+    /**
+     * Available versions grouped by major and by major and minor version,
+     * newest first, so that the newest upgrade is found without comparing
+     * every available version with the current one.
+     */
+    private static class UpgradeIndex {
+        // versions by a prefix of one or two version parts, with a separate
+        // list of only stable versions, newest first
+        private final Map<String, List<MavenVaadinVersion>> versions = new HashMap<String, List<MavenVaadinVersion>>();
+
+        private UpgradeIndex(List<MavenVaadinVersion> availableVersions) {
+            List<MavenVaadinVersion> sorted = new ArrayList<MavenVaadinVersion>(
+                    availableVersions);
+            // newest first, equal versions in their original order
+            Collections.sort(sorted, new Comparator<MavenVaadinVersion>() {
+                public int compare(MavenVaadinVersion o1,
+                        MavenVaadinVersion o2) {
+                    return o2.getVersion().compareTo(o1.getVersion());
+                }
+            });
+            for (MavenVaadinVersion version : sorted) {
+                for (int digits = 1; digits <= 2; ++digits) {
+                    String prefix = version.getVersion().getPrefix(digits);
+                    if (prefix == null) {
+                        continue;
+                    }
+                    add(getKey(prefix, false), version);
+                    if (version.getVersion().isStable()) {
+                        add(getKey(prefix, true), version);
+                    }
+                }
+            }
+        }
+
+        private void add(String key, MavenVaadinVersion version) {
+            List<MavenVaadinVersion> list = versions.get(key);
+            if (list == null) {
+                list = new ArrayList<MavenVaadinVersion>();
+                versions.put(key, list);
+            }
+            list.add(version);
+        }
+
+        private static String getKey(String prefix, boolean onlyStable) {
+            return onlyStable ? prefix + " stable" : prefix;
+        }
+
+        /**
+         * Returns the newest version newer than the current one with the
+         * same major version, or the same major and minor version.
+         */
+        private MavenVaadinVersion getLatestUpgrade(VersionNumber current,
+                boolean allowOnlySameMinor, boolean allowOnlyStableVersions) {
+            String prefix = current.getPrefix(allowOnlySameMinor ? 2 : 1);
+            if (prefix == null) {
+                return null;
             }
-            if (acceptVersion && VersionUtil.compareVersions(versionNumber,
-                    latestAsString) > 0) {
-                result = version;
-                latestAsString = version.getVersionNumber();
+            List<MavenVaadinVersion> candidates = versions.get(getKey(prefix,
+                    allowOnlyStableVersions));
+            if (candidates == null
+                    || candidates.get(0).getVersion().compareTo(current) <= 0) {
+                return null;
             }
+            return candidates.get(0);
         }
-        return result;
     }
 
 }
\ No newline at end of file
@@ -14,8 +14,6 @@ import java.util.logging.Logger;
 import java.util.prefs.Preferences;
 
 import org.eclipse.core.resources.IProject;
-import org.eclipse.core.resources.IWorkspaceRoot;
-import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
@@ -29,7 +27,8 @@ import org.eclipse.jdt.launching.IVMInstall;
 
 import com.vaadin.integration.eclipse.VaadinPlugin;
 import com.vaadin.integration.eclipse.util.ErrorUtil;
-import com.vaadin.integration.eclipse.util.ProjectUtil;
+import com.vaadin.integration.eclipse.util.VaadinProjectModel;
+import com.vaadin.integration.eclipse.util.VaadinProjectModel.VaadinProject;
 import com.vaadin.integration.eclipse.util.VaadinPluginUtil;
 
 /**
@@ -121,23 +120,10 @@ public abstract class ReportVaadinUsageStatistics extends Job {
      */
     private Map<IProject, String> getVaadinProjects() {
         Map<IProject, String> projectsWithVaadin = new HashMap<IProject, String>();
-        IWorkspaceRoot workspaceRoot = ResourcesPlugin.getWorkspace().getRoot();
-        IProject[] projects = workspaceRoot.getProjects();
-        for (IProject project : projects) {
-            try {
-                if (project.isOpen() && project.hasNature(JavaCore.NATURE_ID)) {
-                    String versionNumber = ProjectUtil.getVaadinLibraryVersion(
-                            project, true);
-                    if (null != versionNumber) {
-                        projectsWithVaadin.put(project, versionNumber);
-                    }
-                }
-
-            } catch (CoreException e) {
-                ErrorUtil.handleBackgroundException(IStatus.WARNING,
-                        "Could not check Vaadin version in project " //$NON-NLS-1$
-                                + project.getName(),
-                        e);
+        for (VaadinProject project : VaadinProjectModel.getVaadinProjects()) {
+            String versionNumber = project.getVaadinVersion();
+            if (null != versionNumber) {
+                projectsWithVaadin.put(project.getProject(), versionNumber);
             }
         }
         return projectsWithVaadin;
@@ -71,4 +71,38 @@ public class PreferenceConstants {
      */
     public static final String MAVEN_WIDGETSET_AUTOMATIC_BUILD_ENABLED = "mavenAutomaticWidgetsetBuildPreference";
 
+    /*
+     * =========================================================================
+     * Widgetset compilation settings
+     */
+
+    /**
+     * True to reuse previously compiled widgetsets when the compilation inputs
+     * have not changed.
+     */
+    public static final String WIDGETSET_CACHE_ENABLED = "widgetsetCacheEnabledPreference";
+
+    /**
+     * Directory of the compiled widgetset cache, empty for the default location
+     * in the Eclipse configuration area.
+     */
+    public static final String WIDGETSET_CACHE_DIRECTORY = "widgetsetCacheDirectoryPreference";
+
+    /**
+     * Maximum size of the compiled widgetset cache in megabytes.
+     */
+    public static final String WIDGETSET_CACHE_SIZE = "widgetsetCacheSizePreference";
+
+    /**
+     * Total maximum heap in megabytes of widgetset compilations running at the
+     * same time.
+     */
+    public static final String WIDGETSET_COMPILATION_MEMORY = "widgetsetCompilationMemoryPreference";
+
+    /**
+     * Size in megabytes of the downloaded Vaadin and GWT libraries over which
+     * libraries no longer used by any project are removed.
+     */
+    public static final String DOWNLOAD_STORE_SIZE = "downloadStoreSizePreference";
+
 }
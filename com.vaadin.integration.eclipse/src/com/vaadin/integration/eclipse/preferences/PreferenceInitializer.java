@@ -38,6 +38,13 @@ public class PreferenceInitializer extends AbstractPreferenceInitializer {
                 PreferenceConstants.MAVEN_WIDGETSET_AUTOMATIC_BUILD_ENABLED,
                 true);
 
+        store.setDefault(PreferenceConstants.WIDGETSET_CACHE_ENABLED, true);
+        store.setDefault(PreferenceConstants.WIDGETSET_CACHE_DIRECTORY, "");
+        store.setDefault(PreferenceConstants.WIDGETSET_CACHE_SIZE, 500);
+        store.setDefault(PreferenceConstants.WIDGETSET_COMPILATION_MEMORY,
+                2048);
+        store.setDefault(PreferenceConstants.DOWNLOAD_STORE_SIZE, 2048);
+
         /*
          * Migrate old settings here if they exists.
          */
@@ -7,7 +7,9 @@ import org.eclipse.core.resources.IProject;
 import org.eclipse.jface.dialogs.IDialogConstants;
 import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.jface.preference.BooleanFieldEditor;
+import org.eclipse.jface.preference.DirectoryFieldEditor;
 import org.eclipse.jface.preference.FieldEditor;
+import org.eclipse.jface.preference.IntegerFieldEditor;
 import org.eclipse.jface.preference.PreferencePage;
 import org.eclipse.m2e.core.ui.internal.UpdateMavenProjectJob;
 import org.eclipse.mylyn.commons.ui.compatibility.CommonFonts;
@@ -114,6 +116,8 @@ public class VaadinPreferences extends PreferencePage
 
         createMavenSection(composite);
 
+        createWidgetsetSection(composite);
+
         createPrereleaseSection(composite);
 
         createNotificationsSection(composite);
@@ -245,6 +249,62 @@ public class VaadinPreferences extends PreferencePage
         addField(autoWidgetsetBuildEnabled);
     }
 
+    private void createWidgetsetSection(Composite composite) {
+        final ExpandableComposite expandable = new ExpandableComposite(
+                composite, SWT.FILL, ExpandableComposite.TWISTIE
+                        | ExpandableComposite.CLIENT_INDENT);
+        expandable.setExpanded(false);
+        GridData data = new GridData();
+        data.horizontalAlignment = SWT.FILL;
+        data.grabExcessHorizontalSpace = true;
+        expandable.setLayoutData(data);
+
+        expandable.addExpansionListener(new ExpansionListener());
+
+        Composite panel = new Composite(expandable, SWT.NONE);
+        expandable.setClient(panel);
+        panel.setLayout(new GridLayout(1, false));
+        expandable.setText("Widgetsets");
+        expandable.setFont(CommonFonts.BOLD);
+
+        addField(new VaadinBooleanFieldEditor(
+                PreferenceConstants.WIDGETSET_CACHE_ENABLED,
+                "Reuse compiled widgetsets when nothing has changed", panel,
+                false));
+
+        // field editors lay out their parent, so each needs its own
+        Composite fields = new Composite(panel, SWT.NONE);
+        fields.setLayoutData(new GridData(SWT.FILL, SWT.BEGINNING, true,
+                false));
+        addField(new VaadinDirectoryFieldEditor(
+                PreferenceConstants.WIDGETSET_CACHE_DIRECTORY,
+                "Cache directory (empty for default):", fields));
+        fields = new Composite(panel, SWT.NONE);
+        fields.setLayoutData(new GridData(SWT.FILL, SWT.BEGINNING, true,
+                false));
+        VaadinIntegerFieldEditor size = new VaadinIntegerFieldEditor(
+                PreferenceConstants.WIDGETSET_CACHE_SIZE,
+                "Maximum cache size (MB):", fields);
+        size.setValidRange(1, Integer.MAX_VALUE);
+        addField(size);
+        fields = new Composite(panel, SWT.NONE);
+        fields.setLayoutData(new GridData(SWT.FILL, SWT.BEGINNING, true,
+                false));
+        VaadinIntegerFieldEditor memory = new VaadinIntegerFieldEditor(
+                PreferenceConstants.WIDGETSET_COMPILATION_MEMORY,
+                "Maximum total memory of parallel compilations (MB):", fields);
+        memory.setValidRange(64, Integer.MAX_VALUE);
+        addField(memory);
+        fields = new Composite(panel, SWT.NONE);
+        fields.setLayoutData(new GridData(SWT.FILL, SWT.BEGINNING, true,
+                false));
+        VaadinIntegerFieldEditor downloads = new VaadinIntegerFieldEditor(
+                PreferenceConstants.DOWNLOAD_STORE_SIZE,
+                "Remove unused downloaded libraries over (MB):", fields);
+        downloads.setValidRange(1, Integer.MAX_VALUE);
+        addField(downloads);
+    }
+
     private void updateNotificationControls(
             final VaadinBooleanFieldEditor enableControl) {
         boolean enabled = enableControl.getBooleanValue();
@@ -303,6 +363,57 @@ public class VaadinPreferences extends PreferencePage
         }
     }
 
+    private static class VaadinDirectoryFieldEditor extends
+            DirectoryFieldEditor implements VaadinFieldEditor {
+
+        private final Composite parent;
+
+        VaadinDirectoryFieldEditor(String name, String label,
+                Composite parent) {
+            super(name, label, parent);
+            this.parent = parent;
+            // empty means the default location
+            setEmptyStringAllowed(true);
+        }
+
+        @Override
+        public void setPresentsDefaultValue(boolean booleanValue) {
+            super.setPresentsDefaultValue(booleanValue);
+        }
+
+        public void setEnable(boolean enable) {
+            setEnabled(enable, parent);
+        }
+
+        public boolean isNotificationEditor() {
+            return false;
+        }
+    }
+
+    private static class VaadinIntegerFieldEditor extends IntegerFieldEditor
+            implements VaadinFieldEditor {
+
+        private final Composite parent;
+
+        VaadinIntegerFieldEditor(String name, String label, Composite parent) {
+            super(name, label, parent);
+            this.parent = parent;
+        }
+
+        @Override
+        public void setPresentsDefaultValue(boolean booleanValue) {
+            super.setPresentsDefaultValue(booleanValue);
+        }
+
+        public void setEnable(boolean enable) {
+            setEnabled(enable, parent);
+        }
+
+        public boolean isNotificationEditor() {
+            return false;
+        }
+    }
+
     private static class VaadinStringCheckboxEditor extends
             VaadinBooleanFieldEditor {
         private String trueValue;
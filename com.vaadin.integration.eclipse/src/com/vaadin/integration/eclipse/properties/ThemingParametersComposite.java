@@ -8,12 +8,18 @@ import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.Composite;
 
 import com.vaadin.integration.eclipse.builder.AddonStylesImporter;
+import com.vaadin.integration.eclipse.builder.ThemeCompiler;
 import com.vaadin.integration.eclipse.maven.MavenUtil;
+import com.vaadin.integration.eclipse.util.PreferenceUtil;
 
 public class ThemingParametersComposite extends Composite {
 
     private Button suspendAddonThemeScanning;
 
+    private Button suspendThemeCompilation;
+
+    private Button compressedOutput;
+
     private IProject project;
 
     public ThemingParametersComposite(Composite parent, int style) {
@@ -32,6 +38,20 @@ public class ThemingParametersComposite extends Composite {
         suspendAddonThemeScanning
                 .setText("Suspend automatic addon theme scanning");
 
+        suspendThemeCompilation = new Button(options, SWT.CHECK);
+        suspendThemeCompilation
+                .setText("Suspend automatic theme compilation");
+        suspendThemeCompilation.setLayoutData(new GridData(SWT.BEGINNING,
+                SWT.BEGINNING, false, false, 2, 1));
+
+        compressedOutput = new Button(options, SWT.CHECK);
+        compressedOutput.setText("Minify and precompress compiled themes");
+        compressedOutput.setToolTipText("Inlines small images in styles.css "
+                + "and creates styles.css.gz, and styles.css.br if the "
+                + "brotli command is available");
+        compressedOutput.setLayoutData(new GridData(SWT.BEGINNING,
+                SWT.BEGINNING, false, false, 2, 1));
+
         return this;
     }
 
@@ -42,19 +62,39 @@ public class ThemingParametersComposite extends Composite {
             suspendAddonThemeScanning.setEnabled(enabled
                     && !MavenUtil.isMavenProject(project));
         }
+        if (suspendThemeCompilation != null) {
+            suspendThemeCompilation.setEnabled(enabled
+                    && !MavenUtil.isMavenProject(project));
+        }
+        if (compressedOutput != null) {
+            compressedOutput.setEnabled(enabled);
+        }
     }
 
     public void setProject(IProject project) {
         this.project = project;
         if (MavenUtil.isMavenProject(project)) {
             suspendAddonThemeScanning.setEnabled(false);
+            suspendThemeCompilation.setEnabled(false);
         } else {
             boolean suspendend = AddonStylesImporter.isSuspended(project);
             suspendAddonThemeScanning.setSelection(suspendend);
+            suspendThemeCompilation.setSelection(ThemeCompiler
+                    .isSuspended(project));
         }
+        compressedOutput.setSelection(PreferenceUtil.get(project)
+                .isThemeCompressedOutputEnabled());
     }
 
     public boolean isAddonScanningSuspended() {
         return suspendAddonThemeScanning.getSelection();
     }
+
+    public boolean isThemeCompilationSuspended() {
+        return suspendThemeCompilation.getSelection();
+    }
+
+    public boolean isCompressedOutputEnabled() {
+        return compressedOutput.getSelection();
+    }
 }
@@ -1,15 +1,15 @@
 package com.vaadin.integration.eclipse.properties;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
-import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.NullProgressMonitor;
-import org.eclipse.core.runtime.SubProgressMonitor;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.swt.SWT;
@@ -24,6 +24,8 @@ import org.eclipse.swt.widgets.Shell;
 
 import com.vaadin.integration.eclipse.builder.AddonStylesBuilder;
 import com.vaadin.integration.eclipse.builder.AddonStylesImporter;
+import com.vaadin.integration.eclipse.builder.ThemeBuilder;
+import com.vaadin.integration.eclipse.builder.ThemeCompiler;
 import com.vaadin.integration.eclipse.builder.WidgetsetBuildManager;
 import com.vaadin.integration.eclipse.maven.MavenUtil;
 import com.vaadin.integration.eclipse.util.ErrorUtil;
@@ -113,6 +115,12 @@ public class VaadinIvyProjectPropertyPage implements IVaadinPropertyPage {
             } else {
                 AddonStylesBuilder.addBuilder(project);
             }
+            // the builder checks whether theme compilation is suspended
+            if (MavenUtil.isMavenProject(project)) {
+                ThemeBuilder.removeBuilder(project);
+            } else {
+                ThemeBuilder.addBuilder(project);
+            }
 
         } catch (CoreException e) {
             ErrorUtil
@@ -164,6 +172,20 @@ public class VaadinIvyProjectPropertyPage implements IVaadinPropertyPage {
                 modifiedValues = true;
             }
 
+            // does not affect widgetsets
+            boolean themesSuspended = themingComposite
+                    .isThemeCompilationSuspended();
+            if (themesSuspended != ThemeCompiler.isSuspended(project)) {
+                ThemeCompiler.setSuspended(project, themesSuspended);
+                preferences.persist();
+            }
+
+            // applied when the themes are compiled next time
+            if (preferences.setThemeCompressedOutputEnabled(themingComposite
+                    .isCompressedOutputEnabled())) {
+                preferences.persist();
+            }
+
             if (wasSuspended && !suspended) {
                 try {
                     // Trigger addon import scanning if it previously was
@@ -171,24 +193,20 @@ public class VaadinIvyProjectPropertyPage implements IVaadinPropertyPage {
                     // and now again is enabled
                     IFolder themes = ProjectUtil.getThemesFolder(project);
                     if (themes.exists()) {
+                        List<IFolder> themeFolders = new ArrayList<IFolder>();
                         for (IResource theme : themes.members()) {
                             if (theme instanceof IFolder) {
-                                IFolder themeFolder = (IFolder) theme;
-                                try {
-                                    IProgressMonitor monitor = new NullProgressMonitor();
-                                    AddonStylesImporter.run(project, monitor,
-                                            themeFolder);
-                                    themeFolder.refreshLocal(
-                                            IResource.DEPTH_INFINITE,
-                                            new SubProgressMonitor(monitor, 1));
-                                } catch (IOException e) {
-                                    ErrorUtil.handleBackgroundException(
-                                            IStatus.WARNING,
-                                            "Failed to import addon theme folder "
-                                                    + themeFolder.getName(), e);
-                                }
+                                themeFolders.add((IFolder) theme);
                             }
                         }
+                        try {
+                            AddonStylesImporter.run(project,
+                                    new NullProgressMonitor(), themeFolders);
+                        } catch (IOException e) {
+                            ErrorUtil.handleBackgroundException(
+                                    IStatus.WARNING,
+                                    "Failed to import addon theme folders", e);
+                        }
                     }
 
                 } catch (CoreException e) {
@@ -203,6 +221,27 @@ public class VaadinIvyProjectPropertyPage implements IVaadinPropertyPage {
             modifiedValues = true;
         }
 
+        // does not affect the compilation result
+        boolean useWorker = widgetsetComposite.isCompilerWorkerEnabled();
+        if (preferences.setWidgetsetCompilerWorkerEnabled(useWorker)) {
+            preferences.persist();
+        }
+
+        boolean devProfile = widgetsetComposite.isDevProfileEnabled();
+        if (preferences.setWidgetsetDevProfileEnabled(devProfile)) {
+            modifiedValues = true;
+        }
+
+        // only affects the compilation result with the development profile
+        String userAgent = widgetsetComposite.getDevelopmentUserAgent();
+        if (preferences.setDevelopmentUserAgent(userAgent)) {
+            if (devProfile) {
+                modifiedValues = true;
+            } else {
+                preferences.persist();
+            }
+        }
+
         String style = widgetsetComposite.getCompilationStyle();
         if (preferences.setWidgetsetCompilationStyle(style)) {
             modifiedValues = true;
@@ -1,6 +1,13 @@
 package com.vaadin.integration.eclipse.properties;
 
+import java.io.IOException;
+
 import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.events.SelectionAdapter;
 import org.eclipse.swt.events.SelectionEvent;
@@ -12,7 +19,9 @@ import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Label;
 import org.eclipse.swt.widgets.Text;
 
+import com.vaadin.integration.eclipse.builder.SuperDevModeManager;
 import com.vaadin.integration.eclipse.builder.WidgetsetBuildManager;
+import com.vaadin.integration.eclipse.util.ErrorUtil;
 import com.vaadin.integration.eclipse.util.PreferenceUtil;
 import com.vaadin.integration.eclipse.util.VaadinPluginUtil;
 import com.vaadin.integration.eclipse.util.WidgetsetUtil;
@@ -26,10 +35,14 @@ public class WidgetsetParametersComposite extends Composite {
     private Combo parallelismCombo;
     private Button suspendAutomaticBuilds;
     private Button verboseCompilation;
+    private Button keepCompilerRunning;
+    private Button devProfile;
     private Text extraParameters;
     private Text extraJvmParameters;
     private Button createDevelopmentModeLaunchButton;
     private Button createSuperDevelopmentModeLaunchButton;
+    private Button superDevModeButton;
+    private Combo userAgentCombo;
 
     private IProject project = null;
 
@@ -38,6 +51,16 @@ public class WidgetsetParametersComposite extends Composite {
     private String DETAILED_LABEL = "Detailed";
     private String DRAFT_LABEL = "Pretty + draft compile (Vaadin 6.3+)";
 
+    // GWT user.agent values and their labels
+    private static final String[] USER_AGENTS = { "safari", "gecko1_8",
+            "ie10", "ie9", "ie8" };
+    private static final String[] USER_AGENT_LABELS = {
+            "Chrome, Safari, Opera", "Firefox", "Internet Explorer 10+",
+            "Internet Explorer 9", "Internet Explorer 8" };
+
+    private static final String START_SUPERDEVMODE_LABEL = "Start SuperDevMode";
+    private static final String STOP_SUPERDEVMODE_LABEL = "Stop SuperDevMode";
+
     public WidgetsetParametersComposite(Composite parent, int style) {
         super(parent, style);
     }
@@ -60,6 +83,11 @@ public class WidgetsetParametersComposite extends Composite {
 
         verboseCompilation.setSelection(verboseOutput);
 
+        keepCompilerRunning.setSelection(preferences
+                .isWidgetsetCompilerWorkerEnabled());
+
+        devProfile.setSelection(preferences.isWidgetsetDevProfileEnabled());
+
         String style = preferences.getWidgetsetCompilationStyle();
         if ("DETAILED".equals(style)) {
             styleCombo.setText(DETAILED_LABEL);
@@ -86,6 +114,23 @@ public class WidgetsetParametersComposite extends Composite {
                 .isSuperDevModeSupported(project);
         createSuperDevelopmentModeLaunchButton
                 .setEnabled(superDevModeSupported);
+        superDevModeButton.setEnabled(superDevModeSupported);
+        updateSuperDevModeButton();
+
+        String userAgent = preferences.getDevelopmentUserAgent();
+        userAgentCombo.select(0);
+        for (int i = 0; i < USER_AGENTS.length; ++i) {
+            if (USER_AGENTS[i].equals(userAgent)) {
+                userAgentCombo.select(i);
+            }
+        }
+    }
+
+    private void updateSuperDevModeButton() {
+        superDevModeButton
+                .setText(SuperDevModeManager.isRunning(project) ? STOP_SUPERDEVMODE_LABEL
+                        : START_SUPERDEVMODE_LABEL);
+        superDevModeButton.getParent().layout();
     }
 
     private void setWidgetsetManagedByPlugin(boolean enabled) {
@@ -107,6 +152,12 @@ public class WidgetsetParametersComposite extends Composite {
         if (verboseCompilation != null) {
             verboseCompilation.setEnabled(enabled);
         }
+        if (keepCompilerRunning != null) {
+            keepCompilerRunning.setEnabled(enabled);
+        }
+        if (devProfile != null) {
+            devProfile.setEnabled(enabled);
+        }
         if (extraParameters != null) {
             extraParameters.setEnabled(enabled);
         }
@@ -119,6 +170,12 @@ public class WidgetsetParametersComposite extends Composite {
         if (createSuperDevelopmentModeLaunchButton != null) {
             createSuperDevelopmentModeLaunchButton.setEnabled(enabled);
         }
+        if (superDevModeButton != null) {
+            superDevModeButton.setEnabled(enabled);
+        }
+        if (userAgentCombo != null) {
+            userAgentCombo.setEnabled(enabled);
+        }
     }
 
     public Composite createContents() {
@@ -141,6 +198,8 @@ public class WidgetsetParametersComposite extends Composite {
         options.setLayout(new GridLayout(2, false));
         options.setLayoutData(new GridData(SWT.FILL, SWT.BEGINNING, true, false));
 
+        Label label;
+
         suspendAutomaticBuilds = new Button(options, SWT.CHECK);
         suspendAutomaticBuilds.setText("Suspend automatic widgetset builds");
         GridData gd = new GridData(SWT.FILL, SWT.BEGINNING, true, false);
@@ -153,8 +212,33 @@ public class WidgetsetParametersComposite extends Composite {
         gd.horizontalSpan = 2;
         verboseCompilation.setLayoutData(gd);
 
+        keepCompilerRunning = new Button(options, SWT.CHECK);
+        keepCompilerRunning
+                .setText("Keep the compiler running between compilations (experimental)");
+        gd = new GridData(SWT.FILL, SWT.BEGINNING, true, false);
+        gd.horizontalSpan = 2;
+        keepCompilerRunning.setLayoutData(gd);
+
+        devProfile = new Button(options, SWT.CHECK);
+        devProfile
+                .setText("Compile only for the development browser and the default locale");
+        gd = new GridData(SWT.FILL, SWT.BEGINNING, true, false);
+        gd.horizontalSpan = 2;
+        devProfile.setLayoutData(gd);
+
+        // used by the development profile and SuperDevMode
+        label = new Label(options, SWT.NULL);
+        label.setText("Development browser:");
+        userAgentCombo = new Combo(options, SWT.BORDER | SWT.DROP_DOWN
+                | SWT.READ_ONLY);
+        gd = new GridData(GridData.FILL_HORIZONTAL);
+        userAgentCombo.setLayoutData(gd);
+        for (String userAgentLabel : USER_AGENT_LABELS) {
+            userAgentCombo.add(userAgentLabel);
+        }
+
         // compilation style (obfuscated/pretty)
-        Label label = new Label(options, SWT.NULL);
+        label = new Label(options, SWT.NULL);
         label.setText("Javascript style:");
 
         styleCombo = new Combo(options, SWT.BORDER | SWT.DROP_DOWN
@@ -222,12 +306,24 @@ public class WidgetsetParametersComposite extends Composite {
         hosted.setLayout(new GridLayout(2, false));
         hosted.setLayoutData(new GridData(SWT.FILL, SWT.BEGINNING, true, false));
 
+        // code server managed by the plugin
+        superDevModeButton = new Button(hosted, SWT.NULL);
+        superDevModeButton.setText(START_SUPERDEVMODE_LABEL);
+        superDevModeButton.setLayoutData(new GridData(SWT.RIGHT,
+                SWT.BEGINNING, true, false));
+        superDevModeButton.addSelectionListener(new SelectionAdapter() {
+            @Override
+            public void widgetSelected(SelectionEvent e) {
+                toggleSuperDevMode();
+            }
+        });
+
         // hosted mode launch creation button on the right
         createSuperDevelopmentModeLaunchButton = new Button(hosted, SWT.NULL);
         createSuperDevelopmentModeLaunchButton
                 .setText("Create SuperDevMode launch");
         createSuperDevelopmentModeLaunchButton.setLayoutData(new GridData(
-                SWT.RIGHT, SWT.BEGINNING, true, false));
+                SWT.RIGHT, SWT.BEGINNING, false, false));
         createSuperDevelopmentModeLaunchButton
                 .addSelectionListener(new SelectionAdapter() {
                     @Override
@@ -243,6 +339,55 @@ public class WidgetsetParametersComposite extends Composite {
                 });
     }
 
+    private void toggleSuperDevMode() {
+        final IProject currentProject = project;
+        if (SuperDevModeManager.isRunning(currentProject)) {
+            SuperDevModeManager.stop(currentProject);
+            updateSuperDevModeButton();
+            return;
+        }
+        // the browser is needed by the first recompilation
+        PreferenceUtil preferences = PreferenceUtil.get(currentProject);
+        if (preferences.setDevelopmentUserAgent(getDevelopmentUserAgent())) {
+            try {
+                preferences.persist();
+            } catch (IOException e) {
+                ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                        "Could not save SuperDevMode browser", e);
+            }
+        }
+        superDevModeButton.setEnabled(false);
+        Job job = new Job("Starting SuperDevMode code server") {
+            @Override
+            protected IStatus run(IProgressMonitor monitor) {
+                try {
+                    SuperDevModeManager.start(currentProject, monitor);
+                } catch (CoreException e) {
+                    ErrorUtil.displayErrorFromBackgroundThread(
+                            "SuperDevMode",
+                            "Could not start the SuperDevMode code server: "
+                                    + e.getMessage());
+                    ErrorUtil.handleBackgroundException(IStatus.ERROR,
+                            "Could not start the SuperDevMode code server", e);
+                }
+                final Composite composite = WidgetsetParametersComposite.this;
+                if (!composite.isDisposed()) {
+                    composite.getDisplay().asyncExec(new Runnable() {
+                        public void run() {
+                            if (!superDevModeButton.isDisposed()) {
+                                superDevModeButton.setEnabled(true);
+                                updateSuperDevModeButton();
+                            }
+                        }
+                    });
+                }
+                return Status.OK_STATUS;
+            }
+        };
+        job.setUser(false);
+        job.schedule();
+    }
+
     /**
      * Hosted mode launch configuration and instructions.
      */
@@ -317,6 +462,36 @@ public class WidgetsetParametersComposite extends Composite {
         return verboseCompilation.getSelection();
     }
 
+    /**
+     * Returns whether widgetsets should be compiled in a compiler JVM that is
+     * kept running between compilations.
+     * 
+     * @return
+     */
+    public boolean isCompilerWorkerEnabled() {
+        return keepCompilerRunning.getSelection();
+    }
+
+    /**
+     * Returns whether widgetsets should be compiled only for the development
+     * browser and the default locale.
+     * 
+     * @return
+     */
+    public boolean isDevProfileEnabled() {
+        return devProfile.getSelection();
+    }
+
+    /**
+     * Returns the GWT user.agent of the development browser.
+     * 
+     * @return user agent, not null
+     */
+    public String getDevelopmentUserAgent() {
+        int index = userAgentCombo.getSelectionIndex();
+        return USER_AGENTS[index >= 0 ? index : 0];
+    }
+
     /**
      * Returns extra parameters for the widgetset compiler.
      * 
@@ -1,7 +1,5 @@
 package com.vaadin.integration.eclipse.toolbars;
 
-import java.io.IOException;
-
 import org.eclipse.core.resources.IProject;
 import org.eclipse.jface.action.IAction;
 import org.eclipse.jface.resource.ImageRegistry;
@@ -24,7 +22,6 @@ import com.vaadin.integration.eclipse.VaadinPlugin;
 import com.vaadin.integration.eclipse.handlers.CompileThemeAndWidgetsetHandler;
 import com.vaadin.integration.eclipse.handlers.CompileThemeHandler;
 import com.vaadin.integration.eclipse.handlers.CompileWidgetsetHandler;
-import com.vaadin.integration.eclipse.util.ErrorUtil;
 import com.vaadin.integration.eclipse.util.PreferenceUtil;
 import com.vaadin.integration.eclipse.util.ProjectUtil;
 
@@ -149,15 +146,9 @@ public class VaadinPulldownMenuAction implements
     protected static void persistCompileAction(IProject project,
             String compileAction) {
         if (project != null) {
-            try {
-                PreferenceUtil preferences = PreferenceUtil.get(project);
-                preferences.setPreviousCompileAction(compileAction);
-                preferences.persist();
-            } catch (IOException ex) {
-                ErrorUtil.handleBackgroundException(
-                        "Failed to persist previous compile action preference",
-                        ex);
-            }
+            PreferenceUtil preferences = PreferenceUtil.get(project);
+            preferences.setPreviousCompileAction(compileAction);
+            preferences.persistLater();
         }
     }
 
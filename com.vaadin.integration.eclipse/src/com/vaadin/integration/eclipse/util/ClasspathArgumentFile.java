@@ -0,0 +1,116 @@
+package com.vaadin.integration.eclipse.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.jdt.launching.IVMInstall;
+
+import com.vaadin.integration.eclipse.VaadinPlugin;
+
+/**
+ * Moves long classpaths of JVM command lines to argument files.
+ *
+ * Java 9 and later read command line arguments from a file given as
+ * "@file". The files are named by a hash of the classpath, so an unchanged
+ * classpath reuses the file written for an earlier launch.
+ */
+public class ClasspathArgumentFile {
+
+    private static final String DIRECTORY = "argfiles";
+
+    // shorter classpaths are kept on the command line
+    private static final int MINIMUM_LENGTH = 1024;
+
+    // argument files not used for this long are removed
+    private static final long MAXIMUM_AGE = 7L * 24 * 60 * 60 * 1000;
+
+    private static boolean pruned = false;
+
+    private ClasspathArgumentFile() {
+    }
+
+    /**
+     * Returns a command line where the classpath has been replaced with an
+     * argument file if the VM supports argument files and the classpath is
+     * long. Otherwise, returns the original command line.
+     *
+     * @param command
+     *            JVM command line containing "-classpath" and its value
+     * @param vmInstall
+     *            the VM running the command
+     * @return
+     */
+    public static List<String> apply(List<String> command, IVMInstall vmInstall) {
+        int index = command.indexOf("-classpath");
+        if (index < 0 || index + 1 >= command.size()
+                || !VaadinPluginUtil.isJdk9(vmInstall)) {
+            return command;
+        }
+        String classpath = command.get(index + 1);
+        if (classpath.length() < MINIMUM_LENGTH) {
+            return command;
+        }
+        File file;
+        try {
+            file = getFile(classpath);
+        } catch (IOException e) {
+            ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                    "Could not write the classpath to an argument file", e);
+            return command;
+        }
+        List<String> result = new ArrayList<String>(command);
+        result.remove(index + 1);
+        result.set(index, "@" + file.getAbsolutePath());
+        return result;
+    }
+
+    private static File getFile(String classpath) throws IOException {
+        File dir = VaadinPlugin.getInstance().getStateLocation()
+                .append(DIRECTORY).toFile();
+        MessageDigest digest = HashUtil.newSha1();
+        HashUtil.update(digest, classpath);
+        File file = new File(dir, HashUtil.toHex(digest.digest()) + ".txt");
+        if (file.isFile()) {
+            // used by the pruning to detect stale files
+            file.setLastModified(System.currentTimeMillis());
+            return file;
+        }
+
+        prune(dir);
+        // backslashes are escape characters in quoted arguments
+        String contents = "-classpath\n\""
+                + classpath.replace("\\", "\\\\").replace("\"", "\\\"")
+                + "\"\n";
+        File temp = new File(dir, file.getName() + "." + UUID.randomUUID()
+                + ".tmp");
+        FileUtils.writeStringToFile(temp, contents, "UTF-8");
+        if (!temp.renameTo(file) && !file.isFile()) {
+            throw new IOException("Could not rename " + temp + " to " + file);
+        }
+        temp.delete();
+        return file;
+    }
+
+    private static synchronized void prune(File dir) {
+        if (pruned) {
+            return;
+        }
+        pruned = true;
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (File file : files) {
+            if (now - file.lastModified() > MAXIMUM_AGE) {
+                file.delete();
+            }
+        }
+    }
+}
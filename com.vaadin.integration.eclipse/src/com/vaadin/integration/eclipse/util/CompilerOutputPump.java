@@ -0,0 +1,154 @@
+package com.vaadin.integration.eclipse.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.ui.console.MessageConsoleStream;
+
+/**
+ * Copies the output of a compiler process to a console without blocking the
+ * compiling job.
+ *
+ * The output is read on one thread and written to the console on another in
+ * batches, so that a verbose compiler is not slowed down by the console. Each
+ * line is also given to a {@link LineHandler} that can collect problems and
+ * report progress. The writing thread also destroys the process when the
+ * progress monitor is canceled.
+ */
+public class CompilerOutputPump {
+
+    /**
+     * Receives the lines of compiler output on the reading thread.
+     */
+    public interface LineHandler {
+        /**
+         * Handles a line of compiler output.
+         *
+         * @param line
+         * @return true to show the line in the console
+         */
+        boolean handleLine(String line);
+    }
+
+    // how often buffered output is written to the console
+    private static final long FLUSH_INTERVAL = 200;
+
+    // buffered output is written immediately when it grows this large
+    private static final int MAXIMUM_BUFFER_SIZE = 32 * 1024;
+
+    private final Process process;
+    private final MessageConsoleStream stream;
+    private final LineHandler handler;
+    private final IProgressMonitor monitor;
+
+    private final StringBuilder buffer = new StringBuilder();
+    private boolean finished = false;
+
+    private Thread reader;
+    private Thread writer;
+
+    /**
+     * @param process
+     *            the compiler process, with the error stream redirected to
+     *            the output stream
+     * @param stream
+     *            console stream to write to
+     * @param handler
+     *            handler for the lines or null to show all lines
+     * @param monitor
+     *            monitor whose cancellation destroys the process, or null
+     */
+    public CompilerOutputPump(Process process, MessageConsoleStream stream,
+            LineHandler handler, IProgressMonitor monitor) {
+        this.process = process;
+        this.stream = stream;
+        this.handler = handler;
+        this.monitor = monitor;
+    }
+
+    /**
+     * Starts copying the output.
+     */
+    public void start() {
+        reader = new Thread("Compiler output reader") {
+            @Override
+            public void run() {
+                read();
+            }
+        };
+        writer = new Thread("Compiler output writer") {
+            @Override
+            public void run() {
+                write();
+            }
+        };
+        reader.setDaemon(true);
+        writer.setDaemon(true);
+        reader.start();
+        writer.start();
+    }
+
+    /**
+     * Waits until all output of the process has been handled and written to
+     * the console.
+     *
+     * @throws InterruptedException
+     */
+    public void waitFor() throws InterruptedException {
+        reader.join();
+        writer.join();
+    }
+
+    private void read() {
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                    process.getInputStream()));
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (handler != null && !handler.handleLine(line)) {
+                    continue;
+                }
+                synchronized (buffer) {
+                    buffer.append(line).append('\n');
+                    if (buffer.length() >= MAXIMUM_BUFFER_SIZE) {
+                        buffer.notifyAll();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // process destroyed
+        } finally {
+            synchronized (buffer) {
+                finished = true;
+                buffer.notifyAll();
+            }
+        }
+    }
+
+    private void write() {
+        boolean done = false;
+        while (!done) {
+            String output;
+            synchronized (buffer) {
+                if (!finished && buffer.length() < MAXIMUM_BUFFER_SIZE) {
+                    try {
+                        buffer.wait(FLUSH_INTERVAL);
+                    } catch (InterruptedException e) {
+                        // write what there is
+                    }
+                }
+                output = buffer.toString();
+                buffer.setLength(0);
+                done = finished;
+            }
+            if (output.length() > 0) {
+                stream.print(output);
+            }
+            if (!done && monitor != null && monitor.isCanceled()) {
+                process.destroy();
+            }
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.vaadin.integration.eclipse.util;
+
+import java.io.File;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+
+import com.vaadin.integration.eclipse.VaadinPlugin;
+
+/**
+ * Problem markers for errors and warnings reported by the widgetset and theme
+ * compilers.
+ *
+ * The markers of a compilation are identified by the marker type, a source
+ * id (the widgetset module or theme name) and the compiled project, and are
+ * replaced as a whole after each compilation. The markers can be on files in
+ * other projects, e.g. on client side code in a dependency project, so the
+ * resources marked by the last compilation are remembered and only their
+ * markers are removed.
+ */
+public class CompilerProblems {
+
+    public static final String WIDGETSET_MARKER = VaadinPlugin.PLUGIN_ID
+            + ".widgetsetProblem";
+
+    public static final String THEME_MARKER = VaadinPlugin.PLUGIN_ID
+            + ".themeProblem";
+
+    // name of the compiled project, markers are persistent and may be on
+    // resources of other projects
+    private static final String PROJECT_ATTRIBUTE = VaadinPlugin.PLUGIN_ID
+            + ".project";
+
+    /**
+     * Resources marked by the last compilation by project, marker type and
+     * source id. Missing after a restart, in which case the whole workspace
+     * is searched once.
+     */
+    private static final Map<String, Set<IPath>> markedResources = new HashMap<String, Set<IPath>>();
+
+    private CompilerProblems() {
+    }
+
+    /**
+     * A problem in a file reported by a compiler.
+     */
+    public static class Problem {
+        private final String location;
+        private final int line;
+        private final String message;
+        private final int severity;
+
+        /**
+         * @param location
+         *            file URL, absolute path or path relative to a source
+         *            folder
+         * @param line
+         *            line number or -1 if not known
+         * @param message
+         * @param severity
+         *            {@link IMarker#SEVERITY_ERROR} or
+         *            {@link IMarker#SEVERITY_WARNING}
+         */
+        public Problem(String location, int line, String message, int severity) {
+            this.location = location;
+            this.line = line;
+            this.message = message;
+            this.severity = severity;
+        }
+    }
+
+    /**
+     * Replaces the markers of an earlier compilation with markers for the
+     * given problems. Problems in files that are not in the workspace, e.g. in
+     * JARs, are only shown in the console.
+     *
+     * @param jproject
+     *            the compiled project
+     * @param markerType
+     *            {@link #WIDGETSET_MARKER} or {@link #THEME_MARKER}
+     * @param sourceId
+     *            the compiled widgetset module or theme
+     * @param problems
+     */
+    public static void replaceMarkers(final IJavaProject jproject,
+            final String markerType, final String sourceId,
+            final List<Problem> problems) {
+        IWorkspaceRunnable runnable = new IWorkspaceRunnable() {
+            public void run(IProgressMonitor monitor) throws CoreException {
+                IProject project = jproject.getProject();
+                String key = project.getName() + "/" + markerType + "/"
+                        + sourceId;
+                Set<IPath> marked;
+                synchronized (markedResources) {
+                    marked = markedResources.remove(key);
+                }
+                if (marked == null) {
+                    deleteMarkers(ResourcesPlugin.getWorkspace().getRoot(),
+                            project, markerType, sourceId);
+                } else {
+                    for (IPath path : marked) {
+                        IResource resource = ResourcesPlugin.getWorkspace()
+                                .getRoot().findMember(path);
+                        if (resource != null) {
+                            deleteMarkers(resource, project, markerType,
+                                    sourceId);
+                        }
+                    }
+                }
+
+                Set<IPath> newMarked = new HashSet<IPath>();
+                for (Problem problem : problems) {
+                    IFile file = findFile(jproject, problem.location);
+                    if (file == null) {
+                        continue;
+                    }
+                    IMarker marker = file.createMarker(markerType);
+                    marker.setAttribute(IMarker.MESSAGE, problem.message);
+                    marker.setAttribute(IMarker.SEVERITY, problem.severity);
+                    marker.setAttribute(IMarker.SOURCE_ID, sourceId);
+                    marker.setAttribute(PROJECT_ATTRIBUTE, project.getName());
+                    if (problem.line > 0) {
+                        marker.setAttribute(IMarker.LINE_NUMBER, problem.line);
+                    }
+                    newMarked.add(file.getFullPath());
+                }
+                synchronized (markedResources) {
+                    markedResources.put(key, newMarked);
+                }
+            }
+        };
+        try {
+            // a single resource change event for all markers
+            ResourcesPlugin.getWorkspace().run(runnable, null,
+                    IWorkspace.AVOID_UPDATE, null);
+        } catch (CoreException e) {
+            ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                    "Could not update compilation problem markers", e);
+        }
+    }
+
+    private static void deleteMarkers(IResource resource, IProject project,
+            String markerType, String sourceId) throws CoreException {
+        for (IMarker marker : resource.findMarkers(markerType, true,
+                IResource.DEPTH_INFINITE)) {
+            if (sourceId.equals(marker.getAttribute(IMarker.SOURCE_ID, null))
+                    && isFromProject(marker, project)) {
+                marker.delete();
+            }
+        }
+    }
+
+    private static boolean isFromProject(IMarker marker, IProject project) {
+        String projectName = marker.getAttribute(PROJECT_ATTRIBUTE, null);
+        if (projectName == null) {
+            // created before the project was recorded
+            return project.equals(marker.getResource().getProject());
+        }
+        return projectName.equals(project.getName());
+    }
+
+    private static IFile findFile(IJavaProject jproject, String location)
+            throws CoreException {
+        URI uri = null;
+        if (location.startsWith("file:")) {
+            try {
+                uri = new URI(location);
+            } catch (URISyntaxException e) {
+                // not encoded, e.g. spaces in the path
+                uri = new File(location.substring("file:".length())).toURI();
+            }
+        } else if (new File(location).isAbsolute()) {
+            uri = new File(location).toURI();
+        }
+
+        if (uri != null) {
+            IFile[] files = ResourcesPlugin.getWorkspace().getRoot()
+                    .findFilesForLocationURI(uri);
+            for (IFile file : files) {
+                // linked from several projects, prefer the compiled one
+                if (file.getProject().equals(jproject.getProject())) {
+                    return file;
+                }
+            }
+            return files.length > 0 ? files[0] : null;
+        }
+
+        for (IPackageFragmentRoot root : jproject.getPackageFragmentRoots()) {
+            if (root.getKind() == IPackageFragmentRoot.K_SOURCE
+                    && root.getResource() instanceof IContainer) {
+                IFile file = ((IContainer) root.getResource())
+                        .getFile(new Path(location));
+                if (file.exists()) {
+                    return file;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,123 @@
+package com.vaadin.integration.eclipse.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+
+import com.vaadin.integration.eclipse.VaadinPlugin;
+
+/**
+ * Updates files created by external generators only when their contents
+ * change.
+ *
+ * The generators write to a staging directory outside the workspace, and the
+ * result is compared with the file in the workspace. An unchanged file is
+ * not written or refreshed, so it does not cause resource deltas, builds or
+ * server publishing.
+ */
+public class GeneratedFiles {
+
+    private static final String DIRECTORY = "generated";
+
+    private GeneratedFiles() {
+    }
+
+    /**
+     * Creates an empty staging directory in the plug-in state area. The
+     * caller should remove it with {@link #deleteStagingDirectory(File)}.
+     *
+     * @return
+     * @throws IOException
+     */
+    public static File createStagingDirectory() throws IOException {
+        File dir = VaadinPlugin.getInstance().getStateLocation()
+                .append(DIRECTORY).append(UUID.randomUUID().toString())
+                .toFile();
+        if (!dir.mkdirs()) {
+            throw new IOException("Could not create directory " + dir);
+        }
+        return dir;
+    }
+
+    /**
+     * Removes a staging directory and its contents.
+     *
+     * @param dir
+     *            directory created by {@link #createStagingDirectory()}, or
+     *            null
+     */
+    public static void deleteStagingDirectory(File dir) {
+        if (dir != null) {
+            FileUtils.deleteQuietly(dir);
+        }
+    }
+
+    /**
+     * Replaces a file in the workspace with a generated file if their
+     * contents differ, and refreshes only the replaced file.
+     *
+     * @param generated
+     *            the generated file, nothing is done if it does not exist
+     * @param target
+     *            the file in the workspace
+     * @param monitor
+     * @return true if the file in the workspace was written
+     * @throws IOException
+     * @throws CoreException
+     */
+    public static boolean update(File generated, IFile target,
+            IProgressMonitor monitor) throws IOException, CoreException {
+        IPath location = target.getLocation();
+        if (location == null) {
+            return false;
+        }
+        if (!replaceIfChanged(generated, location.toFile())) {
+            return false;
+        }
+        target.refreshLocal(IResource.DEPTH_ZERO, monitor);
+        return true;
+    }
+
+    /**
+     * Replaces a file with a generated file if their contents differ.
+     *
+     * The target is replaced by renaming a copy made next to it, so that it
+     * never has partially written contents.
+     *
+     * @param generated
+     *            the generated file, nothing is done if it does not exist
+     * @param target
+     * @return true if the target was written
+     * @throws IOException
+     */
+    public static boolean replaceIfChanged(File generated, File target)
+            throws IOException {
+        if (!generated.isFile()) {
+            return false;
+        }
+        if (target.isFile() && target.length() == generated.length()
+                && FileUtils.contentEquals(generated, target)) {
+            return false;
+        }
+        File temp = new File(target.getParentFile(), "." + target.getName()
+                + "." + UUID.randomUUID() + ".tmp");
+        FileUtils.copyFile(generated, temp);
+        if (!temp.renameTo(target)) {
+            // renaming over an existing file fails on Windows
+            target.delete();
+            if (!temp.renameTo(target)) {
+                temp.delete();
+                throw new IOException("Could not rename " + temp + " to "
+                        + target);
+            }
+        }
+        return true;
+    }
+}
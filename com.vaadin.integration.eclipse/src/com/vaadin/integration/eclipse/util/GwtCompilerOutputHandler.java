@@ -0,0 +1,175 @@
+package com.vaadin.integration.eclipse.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.runtime.IProgressMonitor;
+
+import com.vaadin.integration.eclipse.util.CompilerProblems.Problem;
+
+/**
+ * Collects problems and reports progress from the log of the GWT compiler.
+ *
+ * Progress is based on the phases logged by the compiler at the INFO level:
+ * loading the module, compiling each permutation and linking. Problems are
+ * collected from the "Errors in" and "Warnings in" blocks listing the lines of
+ * a source file.
+ *
+ * Unless all output is shown, the messages the compiler logs at the INFO
+ * level are hidden from the console and only its errors and warnings are
+ * shown. Output that does not come from the compiler log, such as JVM errors
+ * and stack traces, is always shown.
+ */
+public class GwtCompilerOutputHandler implements CompilerOutputPump.LineHandler {
+
+    private static final Pattern FILE_PATTERN = Pattern
+            .compile("\\[(ERROR|WARN)\\] (?:Errors|Warnings) in '(.*)'");
+
+    private static final Pattern LINE_PATTERN = Pattern
+            .compile("\\[(ERROR|WARN)\\] Line (\\d+): (.*)");
+
+    private static final Pattern PERMUTATIONS_PATTERN = Pattern
+            .compile("Compiling (\\d+) permutations");
+
+    // nested log messages are indented by three spaces per level, and only
+    // the levels other than INFO are labeled, e.g. "[WARN]"
+    private static final Pattern NESTED_INFO_PATTERN = Pattern
+            .compile("(   )+[^\\s\\[]");
+
+    // top level messages logged by the compiler at the INFO level
+    private static final String[] PROGRESS_PREFIXES = { "Compiling ",
+            "Compile of permutations succeeded", "Linking into",
+            "Link succeeded", "Compilation succeeded", "Computing all possible",
+            "Finding entry point classes", "Validating units:",
+            "Resolving ", "Loading inherited module", "Persisting unit cache",
+            "Ignored ", "Unification traversed", "Compilation completed" };
+
+    // progress in percent at the start of each phase
+    private static final int MODULE_LOADED = 5;
+    private static final int PERMUTATIONS_STARTED = 20;
+    private static final int PERMUTATIONS_DONE = 90;
+    private static final int LINKING = 95;
+    private static final int DONE = 100;
+
+    private final IProgressMonitor monitor;
+    private final int totalWork;
+    private final boolean showAll;
+
+    private final List<Problem> problems = new ArrayList<Problem>();
+    private String currentFile;
+
+    private int permutations = 0;
+    private int permutationsStarted = 0;
+    private int reportedWork = 0;
+
+    /**
+     * @param monitor
+     *            monitor to report progress to
+     * @param totalWork
+     *            units of work of the monitor for the whole compilation
+     * @param showAll
+     *            true to show all lines in the console, false to hide the
+     *            messages logged at the INFO level
+     */
+    public GwtCompilerOutputHandler(IProgressMonitor monitor, int totalWork,
+            boolean showAll) {
+        this.monitor = monitor;
+        this.totalWork = totalWork;
+        this.showAll = showAll;
+    }
+
+    public boolean handleLine(String line) {
+        String trimmed = line.trim();
+        boolean problem = trimmed.startsWith("[ERROR]")
+                || trimmed.startsWith("[WARN]");
+        if (problem) {
+            handleProblem(trimmed);
+        } else {
+            handlePhase(trimmed);
+        }
+        return showAll || problem || !isInfo(line, trimmed);
+    }
+
+    private static boolean isInfo(String line, String trimmed) {
+        if (NESTED_INFO_PATTERN.matcher(line).lookingAt()) {
+            return true;
+        }
+        for (String prefix : PROGRESS_PREFIXES) {
+            if (trimmed.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void handleProblem(String line) {
+        Matcher matcher = FILE_PATTERN.matcher(line);
+        if (matcher.matches()) {
+            currentFile = matcher.group(2);
+            return;
+        }
+        matcher = LINE_PATTERN.matcher(line);
+        if (matcher.matches() && currentFile != null) {
+            int severity = "ERROR".equals(matcher.group(1)) ? IMarker.SEVERITY_ERROR
+                    : IMarker.SEVERITY_WARNING;
+            problems.add(new Problem(currentFile, Integer.parseInt(matcher
+                    .group(2)), matcher.group(3), severity));
+        }
+    }
+
+    private void handlePhase(String line) {
+        if (line.startsWith("Compiling module ")) {
+            setProgress(MODULE_LOADED);
+            monitor.subTask(line);
+            return;
+        }
+        Matcher matcher = PERMUTATIONS_PATTERN.matcher(line);
+        if (matcher.lookingAt()) {
+            permutations = Integer.parseInt(matcher.group(1));
+            setProgress(PERMUTATIONS_STARTED);
+        } else if (line.startsWith("Compiling permutation ")) {
+            ++permutationsStarted;
+            if (permutations > 0) {
+                setProgress(PERMUTATIONS_STARTED
+                        + (PERMUTATIONS_DONE - PERMUTATIONS_STARTED)
+                        * Math.min(permutationsStarted, permutations)
+                        / permutations);
+                monitor.subTask("Compiling permutation "
+                        + permutationsStarted + "/" + permutations);
+            }
+        } else if (line.startsWith("Compile of permutations succeeded")) {
+            setProgress(PERMUTATIONS_DONE);
+        } else if (line.startsWith("Linking into")) {
+            setProgress(LINKING);
+            monitor.subTask("Linking");
+        } else if (line.startsWith("Link succeeded")) {
+            setProgress(DONE);
+        }
+    }
+
+    private void setProgress(int percent) {
+        int work = totalWork * percent / 100;
+        if (work > reportedWork) {
+            monitor.worked(work - reportedWork);
+            reportedWork = work;
+        }
+    }
+
+    /**
+     * Reports the remaining work of the compilation as done.
+     */
+    public void done() {
+        setProgress(DONE);
+    }
+
+    /**
+     * Returns the problems found in the output. Only valid after all output
+     * has been handled.
+     */
+    public List<Problem> getProblems() {
+        return problems;
+    }
+}
@@ -0,0 +1,88 @@
+package com.vaadin.integration.eclipse.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Helpers for computing content hashes used as cache keys and for integrity
+ * checks.
+ */
+public class HashUtil {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private HashUtil() {
+    }
+
+    /**
+     * Creates a new SHA-1 digest. Every JVM is required to support SHA-1.
+     */
+    public static MessageDigest newSha1() {
+        return newDigest("SHA-1");
+    }
+
+    /**
+     * Creates a new message digest of the given algorithm, e.g. "SHA-256".
+     */
+    public static MessageDigest newDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Adds a string to a digest, terminated so that consecutive strings cannot
+     * run into each other.
+     */
+    public static void update(MessageDigest digest, String value) {
+        try {
+            digest.update(value.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update((byte) 0);
+    }
+
+    /**
+     * Adds the contents of a stream to a digest. The stream is closed.
+     */
+    public static void update(MessageDigest digest, InputStream in)
+            throws IOException {
+        try {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Returns the hex encoded digest of the contents of a file.
+     */
+    public static String hash(File file, String algorithm) throws IOException {
+        MessageDigest digest = newDigest(algorithm);
+        update(digest, new FileInputStream(file));
+        return toHex(digest.digest());
+    }
+
+    public static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; ++i) {
+            chars[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            chars[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+}
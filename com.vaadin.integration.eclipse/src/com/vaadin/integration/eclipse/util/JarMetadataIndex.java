@@ -0,0 +1,448 @@
+package com.vaadin.integration.eclipse.util;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.eclipse.core.runtime.IStatus;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import com.vaadin.integration.eclipse.VaadinPlugin;
+
+/**
+ * Workspace wide index of the metadata of JARs used by the plug-in: the
+ * manifest attributes describing Vaadin, GWT and add-on JARs, the version
+ * files of old Vaadin JARs, whether the JAR contains GWT modules and whether
+ * it contains the main Vaadin classes.
+ *
+ * A JAR is read once and its metadata is reused until the modification time
+ * or the size of the file changes. Only the central directory, the manifest
+ * and the version files of a JAR are read, see {@link ZipCentralDirectory}.
+ * The index is saved in the plug-in state area when the plug-in is stopped,
+ * so JARs are not read again after a restart.
+ */
+public class JarMetadataIndex {
+
+    private static final String INDEX_FILE = "jar-index.json";
+
+    // increment when the stored metadata changes
+    private static final long FORMAT_VERSION = 2;
+
+    /**
+     * The manifest attributes stored in the index.
+     */
+    private static final Set<String> ATTRIBUTES = new HashSet<String>(
+            Arrays.asList("Bundle-Name", "Bundle-SymbolicName",
+                    "Bundle-Version", "Implementation-Version", "GWT-Version",
+                    "GWT-Version-Dependencies", "Vaadin-Widgetsets",
+                    "Vaadin-Stylesheets"));
+
+    /**
+     * The entries whose presence is stored in the index: the Vaadin 6
+     * Application and Vaadin 7 UI classes.
+     */
+    private static final Set<String> ENTRIES = new HashSet<String>(
+            Arrays.asList("com/vaadin/Application.class",
+                    "com/vaadin/ui/UI.class"));
+
+    private static final String VERSION_FILE = "META-INF/VERSION";
+
+    private static final String GWT_VERSION_FILE = "META-INF/GWT-VERSION";
+
+    private static final Map<String, JarMetadata> index = new ConcurrentHashMap<String, JarMetadata>();
+
+    private static final Object LOCK = new Object();
+
+    private static boolean loaded = false;
+
+    private static boolean modified = false;
+
+    private JarMetadataIndex() {
+    }
+
+    /**
+     * Metadata of a JAR file.
+     */
+    public static class JarMetadata {
+        private final long lastModified;
+        private final long size;
+        private final boolean manifest;
+        private final Map<String, String> attributes;
+        private final String versionFile;
+        private final String gwtVersionFile;
+        private final boolean gwtModules;
+        private final Set<String> entries;
+
+        private JarMetadata(long lastModified, long size, boolean manifest,
+                Map<String, String> attributes, String versionFile,
+                String gwtVersionFile, boolean gwtModules, Set<String> entries) {
+            this.lastModified = lastModified;
+            this.size = size;
+            this.manifest = manifest;
+            this.attributes = attributes;
+            this.versionFile = versionFile;
+            this.gwtVersionFile = gwtVersionFile;
+            this.gwtModules = gwtModules;
+            this.entries = entries;
+        }
+
+        /**
+         * Returns true if the JAR has a manifest.
+         */
+        public boolean hasManifest() {
+            return manifest;
+        }
+
+        /**
+         * Returns the value of a main attribute of the manifest.
+         *
+         * @param name
+         *            an attribute for which {@link JarMetadataIndex#isIndexed}
+         *            returns true
+         * @return the value or null if the attribute is not in the manifest
+         */
+        public String getAttribute(String name) {
+            if (!ATTRIBUTES.contains(name)) {
+                throw new IllegalArgumentException("Attribute " + name
+                        + " is not indexed");
+            }
+            return attributes.get(name);
+        }
+
+        /**
+         * Returns the first line of META-INF/VERSION or null if there is no
+         * such file.
+         */
+        public String getVersionFile() {
+            return versionFile;
+        }
+
+        /**
+         * Returns the first line of META-INF/GWT-VERSION or null if there is
+         * no such file.
+         */
+        public String getGwtVersionFile() {
+            return gwtVersionFile;
+        }
+
+        /**
+         * Returns true if the JAR contains GWT modules (.gwt.xml files).
+         */
+        public boolean hasGwtModules() {
+            return gwtModules;
+        }
+
+        /**
+         * Returns true if the JAR contains an entry.
+         *
+         * @param name
+         *            an entry for which {@link JarMetadataIndex#isIndexedEntry}
+         *            returns true, such as "com/vaadin/ui/UI.class"
+         * @return
+         */
+        public boolean hasEntry(String name) {
+            if (!ENTRIES.contains(name)) {
+                throw new IllegalArgumentException("Entry " + name
+                        + " is not indexed");
+            }
+            return entries.contains(name);
+        }
+    }
+
+    /**
+     * Returns true if the given manifest attribute is stored in the index.
+     *
+     * @param attribute
+     * @return
+     */
+    public static boolean isIndexed(String attribute) {
+        return ATTRIBUTES.contains(attribute);
+    }
+
+    /**
+     * Returns true if the presence of the given JAR entry is stored in the
+     * index.
+     *
+     * @param name
+     * @return
+     */
+    public static boolean isIndexedEntry(String name) {
+        return ENTRIES.contains(name);
+    }
+
+    /**
+     * Returns the metadata of a JAR, reading the JAR only if it is not in the
+     * index or has changed since it was indexed.
+     *
+     * @param file
+     *            JAR file
+     * @return
+     * @throws IOException
+     *             if the file does not exist or cannot be read
+     */
+    public static JarMetadata get(File file) throws IOException {
+        load();
+        String key = file.getAbsolutePath();
+        long lastModified = file.lastModified();
+        long size = file.length();
+        if (lastModified == 0) {
+            throw new FileNotFoundException(key);
+        }
+        JarMetadata metadata = index.get(key);
+        if (metadata != null && metadata.lastModified == lastModified
+                && metadata.size == size) {
+            return metadata;
+        }
+
+        metadata = read(file, lastModified, size);
+        index.put(key, metadata);
+        synchronized (LOCK) {
+            modified = true;
+        }
+        return metadata;
+    }
+
+    private static JarMetadata read(File file, long lastModified, long size)
+            throws IOException {
+        ZipCentralDirectory zip = ZipCentralDirectory.open(file);
+        if (zip == null) {
+            // e.g. ZIP64
+            return readWithJarFile(file, lastModified, size);
+        }
+        try {
+            Manifest manifest = zip.getManifest();
+            Set<String> entries = new HashSet<String>();
+            for (String name : ENTRIES) {
+                if (zip.hasEntry(name)) {
+                    entries.add(name);
+                }
+            }
+            return new JarMetadata(lastModified, size, manifest != null,
+                    getAttributes(manifest), firstLine(zip
+                            .readEntry(VERSION_FILE)), firstLine(zip
+                            .readEntry(GWT_VERSION_FILE)),
+                    zip.hasEntryWithSuffix(".gwt.xml"), entries);
+        } finally {
+            zip.close();
+        }
+    }
+
+    private static JarMetadata readWithJarFile(File file, long lastModified,
+            long size) throws IOException {
+        JarFile jarFile = new JarFile(file);
+        try {
+            Manifest manifest = jarFile.getManifest();
+
+            boolean gwtModules = false;
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements() && !gwtModules) {
+                gwtModules = entries.nextElement().getName()
+                        .endsWith(".gwt.xml");
+            }
+
+            Set<String> entryNames = new HashSet<String>();
+            for (String name : ENTRIES) {
+                if (jarFile.getEntry(name) != null) {
+                    entryNames.add(name);
+                }
+            }
+
+            return new JarMetadata(lastModified, size, manifest != null,
+                    getAttributes(manifest), readFirstLine(jarFile,
+                            VERSION_FILE), readFirstLine(jarFile,
+                            GWT_VERSION_FILE), gwtModules, entryNames);
+        } finally {
+            jarFile.close();
+        }
+    }
+
+    private static Map<String, String> getAttributes(Manifest manifest) {
+        Map<String, String> attributes = new HashMap<String, String>();
+        if (manifest != null) {
+            Attributes mainAttributes = manifest.getMainAttributes();
+            for (String name : ATTRIBUTES) {
+                String value = mainAttributes.getValue(name);
+                if (value != null) {
+                    attributes.put(name, value);
+                }
+            }
+        }
+        return attributes;
+    }
+
+    private static String firstLine(byte[] contents) throws IOException {
+        if (contents == null) {
+            return null;
+        }
+        return new BufferedReader(new InputStreamReader(
+                new ByteArrayInputStream(contents))).readLine();
+    }
+
+    private static String readFirstLine(JarFile jarFile, String name)
+            throws IOException {
+        ZipEntry entry = jarFile.getEntry(name);
+        if (entry == null) {
+            return null;
+        }
+        InputStream in = jarFile.getInputStream(entry);
+        try {
+            return new BufferedReader(new InputStreamReader(in)).readLine();
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    private static File getIndexFile() {
+        return VaadinPlugin.getInstance().getStateLocation()
+                .append(INDEX_FILE).toFile();
+    }
+
+    private static void load() {
+        synchronized (LOCK) {
+            if (loaded) {
+                return;
+            }
+            loaded = true;
+        }
+        File file = getIndexFile();
+        if (!file.isFile()) {
+            return;
+        }
+        try {
+            Object result = new JSONParser().parse(FileUtils.readFileToString(
+                    file, "UTF-8"));
+            if (!(result instanceof JSONObject)
+                    || !Long.valueOf(FORMAT_VERSION).equals(
+                            ((JSONObject) result).get("version"))) {
+                return;
+            }
+            Object jars = ((JSONObject) result).get("jars");
+            if (!(jars instanceof JSONObject)) {
+                return;
+            }
+            for (Object entry : ((JSONObject) jars).entrySet()) {
+                Map.Entry<?, ?> jar = (Map.Entry<?, ?>) entry;
+                JarMetadata metadata = fromJson((JSONObject) jar.getValue());
+                String key = (String) jar.getKey();
+                // entries read from the JARs while loading are newer
+                if (!index.containsKey(key)) {
+                    index.put(key, metadata);
+                }
+            }
+        } catch (IOException e) {
+            ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                    "Could not read the JAR metadata index", e);
+        } catch (ParseException e) {
+            ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                    "Could not read the JAR metadata index", e);
+        } catch (RuntimeException e) {
+            // e.g. missing or unexpected values in an edited file
+            ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                    "Could not read the JAR metadata index", e);
+        }
+    }
+
+    /**
+     * Saves the index if it has been modified. Entries of JARs that no longer
+     * exist are dropped.
+     */
+    @SuppressWarnings("unchecked")
+    public static void save() {
+        synchronized (LOCK) {
+            if (!modified) {
+                return;
+            }
+            modified = false;
+        }
+        JSONObject jars = new JSONObject();
+        Iterator<Map.Entry<String, JarMetadata>> entries = index.entrySet()
+                .iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, JarMetadata> entry = entries.next();
+            if (new File(entry.getKey()).isFile()) {
+                jars.put(entry.getKey(), toJson(entry.getValue()));
+            } else {
+                entries.remove();
+            }
+        }
+        JSONObject root = new JSONObject();
+        root.put("version", FORMAT_VERSION);
+        root.put("jars", jars);
+        try {
+            FileUtils.writeStringToFile(getIndexFile(), root.toJSONString(),
+                    "UTF-8");
+        } catch (IOException e) {
+            ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                    "Could not save the JAR metadata index", e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JSONObject toJson(JarMetadata metadata) {
+        JSONObject json = new JSONObject();
+        json.put("lastModified", metadata.lastModified);
+        json.put("size", metadata.size);
+        json.put("manifest", metadata.manifest);
+        JSONObject attributes = new JSONObject();
+        attributes.putAll(metadata.attributes);
+        json.put("attributes", attributes);
+        json.put("versionFile", metadata.versionFile);
+        json.put("gwtVersionFile", metadata.gwtVersionFile);
+        json.put("gwtModules", metadata.gwtModules);
+        JSONArray entries = new JSONArray();
+        entries.addAll(metadata.entries);
+        json.put("entries", entries);
+        return json;
+    }
+
+    private static JarMetadata fromJson(JSONObject json) {
+        Map<String, String> attributes = new HashMap<String, String>();
+        for (Object entry : ((JSONObject) json.get("attributes")).entrySet()) {
+            Map.Entry<?, ?> attribute = (Map.Entry<?, ?>) entry;
+            attributes.put((String) attribute.getKey(),
+                    (String) attribute.getValue());
+        }
+        Set<String> entries = new HashSet<String>();
+        for (Object entry : (JSONArray) json.get("entries")) {
+            entries.add((String) entry);
+        }
+        return new JarMetadata((Long) json.get("lastModified"),
+                (Long) json.get("size"), (Boolean) json.get("manifest"),
+                attributes, (String) json.get("versionFile"),
+                (String) json.get("gwtVersionFile"),
+                (Boolean) json.get("gwtModules"), entries);
+    }
+
+    /**
+     * Saves the index and clears it from memory.
+     */
+    public static void stop() {
+        save();
+        index.clear();
+        synchronized (LOCK) {
+            loaded = false;
+        }
+    }
+}
@@ -2,15 +2,30 @@ package com.vaadin.integration.eclipse.util;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
 import org.eclipse.core.resources.ProjectScope;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.ui.preferences.ScopedPreferenceStore;
 import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
@@ -21,12 +36,33 @@ import com.vaadin.integration.eclipse.util.files.LocalFileManager.FileType;
 
 /**
  * Helper class for accessing per-project preferences of the Vaadin plug-in.
+ *
+ * Values are kept in memory until saved with {@link #persist()}. State that
+ * changes often during builds, such as the widgetset dirty flags, is saved
+ * with {@link #persistLater()} so that many changes result in a single write
+ * of the settings file. Pending changes are saved and the instance is
+ * discarded when the project is closed.
  */
 public class PreferenceUtil {
 
+    // delay for collecting preference changes into a single save
+    private static final long PERSIST_DELAY = 2000;
+
+    private static final Object LOCK = new Object();
+
+    private static final Map<String, PreferenceUtil> instances = new HashMap<String, PreferenceUtil>();
+
+    // projects whose preferences have not been saved yet
+    private static final Set<String> projectsToPersist = new HashSet<String>();
+
+    private static final PersistJob PERSIST_JOB = new PersistJob();
+
+    private final String projectName;
+
     private ScopedPreferenceStore prefStore;
 
     private PreferenceUtil(IProject project) {
+        projectName = project.getName();
         prefStore = new ScopedPreferenceStore(new ProjectScope(project),
                 VaadinPlugin.PLUGIN_ID);
     }
@@ -34,7 +70,14 @@ public class PreferenceUtil {
     // preference store keys
 
     public static PreferenceUtil get(IProject project) {
-        return new PreferenceUtil(project);
+        synchronized (LOCK) {
+            PreferenceUtil preferences = instances.get(project.getName());
+            if (preferences == null) {
+                preferences = new PreferenceUtil(project);
+                instances.put(project.getName(), preferences);
+            }
+            return preferences;
+        }
     }
 
     /*
@@ -57,6 +100,10 @@ public class PreferenceUtil {
     // "true"/"false"/missing - if missing, check if >1 widgetset exists
     private static final String PREFERENCES_WIDGETSET_DIRTY = VaadinPlugin.PLUGIN_ID
             + "." + "widgetsetDirty";
+    // JSON array of the dirty widgetset modules or missing - if missing and
+    // the widgetset dirty flag is set, all widgetsets are dirty
+    private static final String PREFERENCES_DIRTY_WIDGETSETS = VaadinPlugin.PLUGIN_ID
+            + "." + "dirtyWidgetsets";
     // true to suspend automatic widgetset build requests for the project
     private static final String PREFERENCES_WIDGETSET_SUSPENDED = VaadinPlugin.PLUGIN_ID
             + "." + "widgetsetBuildsSuspended";
@@ -83,6 +130,27 @@ public class PreferenceUtil {
     private static final String PREFERENCES_WIDGETSET_EXTRA_JVM_PARAMETERS = VaadinPlugin.PLUGIN_ID
             + "." + "widgetsetExtraJvmParameters";
 
+    // true to keep a widgetset compiler JVM running between compilations
+    private static final String PREFERENCES_WIDGETSET_COMPILER_WORKER = VaadinPlugin.PLUGIN_ID
+            + "." + "widgetsetCompilerWorker";
+
+    // GWT user.agent value of the browser used for development, i.e. the
+    // permutation recompiled by SuperDevMode and compiled by the development
+    // profile, or missing (default to "safari")
+    private static final String PREFERENCES_DEVELOPMENT_USER_AGENT = VaadinPlugin.PLUGIN_ID
+            + "." + "developmentUserAgent";
+
+    // true to compile widgetsets only for the development browser and the
+    // default locale
+    private static final String PREFERENCES_WIDGETSET_DEV_PROFILE = VaadinPlugin.PLUGIN_ID
+            + "." + "widgetsetDevProfile";
+
+    // JSON array of the widgetset modules whose compiled output in the
+    // project was compiled with the development profile and must not be
+    // exported
+    private static final String PREFERENCES_WIDGETSET_DEV_PROFILE_MODULES = VaadinPlugin.PLUGIN_ID
+            + "." + "widgetsetDevProfileModules";
+
     // project type flags - note that in the future, there could be multiple
     // flags set at the same time
     private static final String PREFERENCES_PROJECT_TYPE_GAE = VaadinPlugin.PLUGIN_ID
@@ -102,6 +170,15 @@ public class PreferenceUtil {
     private static final String PREFERENCES_THEME_COMPILATION_SUSPENDED = VaadinPlugin.PLUGIN_ID
             + "." + "themeCompilationSuspended";
 
+    // true to write minified and precompressed variants of compiled themes
+    private static final String PREFERENCES_THEME_COMPRESSED_OUTPUT = VaadinPlugin.PLUGIN_ID
+            + "." + "themeCompressedOutput";
+
+    // JSON object of the workspace paths of the images inlined into each
+    // compiled theme, changes to them require compiling the theme again
+    private static final String PREFERENCES_THEME_INLINED_IMAGES = VaadinPlugin.PLUGIN_ID
+            + "." + "themeInlinedImages";
+
     // VaadinPlugin.COMPILE_ACTION_* or missing - if missing, defaults to
     // widgetset
     private static final String PREFERENCES_PREVIOUS_COMPILE_ACTION = VaadinPlugin.PLUGIN_ID
@@ -166,6 +243,103 @@ public class PreferenceUtil {
         prefStore.setValue(PREFERENCES_THEME_COMPILATION_SUSPENDED, suspended);
     }
 
+    /**
+     * Checks whether compiled themes should be minified and written also as
+     * precompressed files. Disabled by default.
+     */
+    public boolean isThemeCompressedOutputEnabled() {
+        if (!prefStore.contains(PREFERENCES_THEME_COMPRESSED_OUTPUT)) {
+            return false;
+        } else {
+            return prefStore.getBoolean(PREFERENCES_THEME_COMPRESSED_OUTPUT);
+        }
+    }
+
+    /**
+     * Sets whether compiled themes are minified and precompressed. Returns
+     * true if the value was changed, false if it remained the same.
+     * 
+     * @param enabled
+     * @return
+     */
+    public boolean setThemeCompressedOutputEnabled(boolean enabled) {
+        boolean oldValue = isThemeCompressedOutputEnabled();
+        prefStore.setValue(PREFERENCES_THEME_COMPRESSED_OUTPUT, enabled);
+        return oldValue != enabled;
+    }
+
+    /**
+     * Returns the images inlined into the compiled themes of the project.
+     * 
+     * @return full workspace paths of the images by theme name, empty if no
+     *         images are inlined
+     */
+    public Map<String, Set<String>> getThemeInlinedImages() {
+        Map<String, Set<String>> result = new TreeMap<String, Set<String>>();
+        String value = prefStore.getString(PREFERENCES_THEME_INLINED_IMAGES);
+        if (value == null || value.isEmpty()) {
+            return result;
+        }
+        try {
+            Object json = new JSONParser().parse(value);
+            if (json instanceof JSONObject) {
+                for (Object item : ((JSONObject) json).entrySet()) {
+                    Map.Entry<?, ?> entry = (Map.Entry<?, ?>) item;
+                    if (entry.getValue() instanceof JSONArray) {
+                        Set<String> images = new TreeSet<String>();
+                        for (Object image : (JSONArray) entry.getValue()) {
+                            images.add(image.toString());
+                        }
+                        result.put(entry.getKey().toString(), images);
+                    }
+                }
+            }
+        } catch (ParseException e) {
+            Logger.getLogger(PreferenceUtil.class.getName()).log(Level.WARNING,
+                    "Unable to parse persisted theme inlined images", e);
+        }
+        return result;
+    }
+
+    /**
+     * Records the images inlined into a compiled theme. Returns true if the
+     * value was changed, false if it remained the same.
+     * 
+     * @param theme
+     * @param images
+     *            full workspace paths of the images, empty if none
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public boolean setThemeInlinedImages(String theme,
+            Collection<String> images) {
+        Map<String, Set<String>> inlined = getThemeInlinedImages();
+        Set<String> newImages = new TreeSet<String>(images);
+        Set<String> oldImages = inlined.get(theme);
+        if (newImages.equals(oldImages != null ? oldImages
+                : Collections.<String> emptySet())) {
+            return false;
+        }
+        if (newImages.isEmpty()) {
+            inlined.remove(theme);
+        } else {
+            inlined.put(theme, newImages);
+        }
+        if (inlined.isEmpty()) {
+            prefStore.setToDefault(PREFERENCES_THEME_INLINED_IMAGES);
+        } else {
+            JSONObject json = new JSONObject();
+            for (Map.Entry<String, Set<String>> entry : inlined.entrySet()) {
+                JSONArray array = new JSONArray();
+                array.addAll(entry.getValue());
+                json.put(entry.getKey(), array);
+            }
+            prefStore.setValue(PREFERENCES_THEME_INLINED_IMAGES,
+                    json.toJSONString());
+        }
+        return true;
+    }
+
     /**
      * Checks whether widgetset building for a project has been suspended
      * explicitly by the user.
@@ -295,6 +469,129 @@ public class PreferenceUtil {
 
     }
 
+    /**
+     * Checks whether widgetsets should be compiled in a long-lived compiler
+     * JVM that is kept running between compilations. Disabled by default.
+     */
+    public boolean isWidgetsetCompilerWorkerEnabled() {
+        if (!prefStore.contains(PREFERENCES_WIDGETSET_COMPILER_WORKER)) {
+            return false;
+        } else {
+            return prefStore.getBoolean(PREFERENCES_WIDGETSET_COMPILER_WORKER);
+        }
+    }
+
+    /**
+     * Sets whether a long-lived compiler JVM is used for widgetset compilation.
+     * Returns true if the value was changed, false if it remained the same.
+     * 
+     * @param enabled
+     * @return
+     */
+    public boolean setWidgetsetCompilerWorkerEnabled(boolean enabled) {
+        boolean oldValue = isWidgetsetCompilerWorkerEnabled();
+        prefStore.setValue(PREFERENCES_WIDGETSET_COMPILER_WORKER, enabled);
+        return oldValue != enabled;
+    }
+
+    /**
+     * Returns the GWT user.agent of the browser used for development. The
+     * SuperDevMode code server recompiles this permutation when client side
+     * code changes, and the development profile only compiles it.
+     * 
+     * @return user agent, "safari" by default
+     */
+    public String getDevelopmentUserAgent() {
+        if (!prefStore.contains(PREFERENCES_DEVELOPMENT_USER_AGENT)) {
+            return "safari";
+        } else {
+            return prefStore.getString(PREFERENCES_DEVELOPMENT_USER_AGENT);
+        }
+    }
+
+    /**
+     * Sets the GWT user.agent of the development browser. Returns true if the
+     * value was changed, false if it remained the same.
+     * 
+     * @param userAgent
+     * @return
+     */
+    public boolean setDevelopmentUserAgent(String userAgent) {
+        String oldValue = getDevelopmentUserAgent();
+        prefStore.setValue(PREFERENCES_DEVELOPMENT_USER_AGENT, userAgent);
+        return !equals(oldValue, userAgent);
+    }
+
+    /**
+     * Checks whether widgetsets are compiled with the development profile,
+     * i.e. only for the development browser and the default locale. The
+     * profile is never used when exporting the project. Disabled by default.
+     */
+    public boolean isWidgetsetDevProfileEnabled() {
+        if (!prefStore.contains(PREFERENCES_WIDGETSET_DEV_PROFILE)) {
+            return false;
+        } else {
+            return prefStore.getBoolean(PREFERENCES_WIDGETSET_DEV_PROFILE);
+        }
+    }
+
+    /**
+     * Sets whether the development profile is used for widgetset compilation.
+     * Returns true if the value was changed, false if it remained the same.
+     * 
+     * @param enabled
+     * @return
+     */
+    public boolean setWidgetsetDevProfileEnabled(boolean enabled) {
+        boolean oldValue = isWidgetsetDevProfileEnabled();
+        prefStore.setValue(PREFERENCES_WIDGETSET_DEV_PROFILE, enabled);
+        return oldValue != enabled;
+    }
+
+    /**
+     * Returns the widgetset modules whose compiled output in the project was
+     * compiled with the development profile.
+     * 
+     * @return module names, empty if none
+     */
+    public List<String> getDevProfileWidgetsets() {
+        List<String> modules = getStringList(
+                PREFERENCES_WIDGETSET_DEV_PROFILE_MODULES,
+                "development profile widgetsets");
+        return modules != null ? modules : new ArrayList<String>();
+    }
+
+    /**
+     * Records whether the compiled output of a widgetset module was compiled
+     * with the development profile. Returns true if the value was changed,
+     * false if it remained the same.
+     * 
+     * @param moduleName
+     * @param devProfile
+     * @return
+     */
+    public boolean setWidgetsetDevProfileOutput(String moduleName,
+            boolean devProfile) {
+        List<String> modules = getDevProfileWidgetsets();
+        if (devProfile == modules.contains(moduleName)) {
+            return false;
+        }
+        if (devProfile) {
+            modules.add(moduleName);
+        } else {
+            modules.remove(moduleName);
+        }
+        if (modules.isEmpty()) {
+            prefStore.setToDefault(PREFERENCES_WIDGETSET_DEV_PROFILE_MODULES);
+        } else {
+            JSONArray array = new JSONArray();
+            array.addAll(modules);
+            prefStore.setValue(PREFERENCES_WIDGETSET_DEV_PROFILE_MODULES,
+                    array.toJSONString());
+        }
+        return true;
+    }
+
     public String getWidgetsetCompilationParallelism() {
         if (!prefStore.contains(PREFERENCES_WIDGETSET_PARALLELISM)) {
             return "";
@@ -390,6 +687,118 @@ public class PreferenceUtil {
         prefStore.save();
     }
 
+    /**
+     * Saves the preferences in the background a moment after the last call,
+     * so that frequent changes do not each write the settings file and cause
+     * resource change events.
+     */
+    public void persistLater() {
+        synchronized (LOCK) {
+            projectsToPersist.add(projectName);
+        }
+        PERSIST_JOB.schedule(PERSIST_DELAY);
+    }
+
+    /**
+     * Saves the preferences changed after the last save immediately, e.g. when
+     * the plug-in is stopped. See {@link #persistLater()}.
+     */
+    public static void persistAll() {
+        PERSIST_JOB.cancel();
+        List<String> projectNames;
+        synchronized (LOCK) {
+            projectNames = new ArrayList<String>(projectsToPersist);
+            projectsToPersist.clear();
+        }
+        for (String projectName : projectNames) {
+            IProject project = ResourcesPlugin.getWorkspace().getRoot()
+                    .getProject(projectName);
+            if (!project.isOpen()) {
+                continue;
+            }
+            try {
+                get(project).persist();
+            } catch (IOException e) {
+                ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                        "Could not save the Vaadin preferences of project "
+                                + projectName, e);
+            }
+        }
+    }
+
+    /**
+     * Starts discarding the instances of closed and deleted projects.
+     */
+    public static void start() {
+        ResourcesPlugin.getWorkspace().addResourceChangeListener(
+                ProjectCloseListener.INSTANCE,
+                IResourceChangeEvent.PRE_CLOSE
+                        | IResourceChangeEvent.PRE_DELETE);
+    }
+
+    /**
+     * Stops listening to the projects and saves the pending changes.
+     */
+    public static void stop() {
+        ResourcesPlugin.getWorkspace().removeResourceChangeListener(
+                ProjectCloseListener.INSTANCE);
+        persistAll();
+    }
+
+    /**
+     * Discards the instance of a project, saving its pending changes first
+     * if requested.
+     * 
+     * @param project
+     * @param save
+     *            true to save the pending changes, false to drop them
+     */
+    private static void remove(IProject project, boolean save) {
+        PreferenceUtil preferences;
+        boolean pending;
+        synchronized (LOCK) {
+            preferences = instances.remove(project.getName());
+            pending = projectsToPersist.remove(project.getName());
+        }
+        if (save && pending && preferences != null) {
+            try {
+                preferences.persist();
+            } catch (IOException e) {
+                ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                        "Could not save the Vaadin preferences of project "
+                                + project.getName(), e);
+            }
+        }
+    }
+
+    private static class ProjectCloseListener implements
+            IResourceChangeListener {
+
+        private static final ProjectCloseListener INSTANCE = new ProjectCloseListener();
+
+        public void resourceChanged(IResourceChangeEvent event) {
+            if (event.getResource() instanceof IProject) {
+                remove((IProject) event.getResource(),
+                        event.getType() == IResourceChangeEvent.PRE_CLOSE);
+            }
+        }
+    }
+
+    private static class PersistJob extends Job {
+
+        public PersistJob() {
+            super("Saving Vaadin project preferences");
+            setUser(false);
+            setSystem(true);
+        }
+
+        @Override
+        protected IStatus run(IProgressMonitor monitor) {
+            persistAll();
+            return Status.OK_STATUS;
+        }
+    }
+
     public long getEstimatedCompilationTime() {
         if (prefStore.contains(PREFERENCES_WIDGETSET_COMPILATION_ETA)) {
             return prefStore.getLong(PREFERENCES_WIDGETSET_COMPILATION_ETA);
@@ -427,6 +836,55 @@ public class PreferenceUtil {
                 Boolean.toString(dirty));
     }
 
+    /**
+     * Returns the widgetset modules marked as dirty, or null if no list has
+     * been saved. Without a list, all widgetsets of the project are dirty if
+     * the widgetset dirty flag is set.
+     * 
+     * @return
+     */
+    public List<String> getDirtyWidgetsets() {
+        return getStringList(PREFERENCES_DIRTY_WIDGETSETS, "dirty widgetsets");
+    }
+
+    private List<String> getStringList(String key, String description) {
+        String modules = prefStore.getString(key);
+        if (modules == null || modules.isEmpty()) {
+            return null;
+        }
+        try {
+            Object result = new JSONParser().parse(modules);
+            if (result instanceof JSONArray) {
+                List<String> list = new ArrayList<String>(
+                        ((JSONArray) result).size());
+                for (Object obj : (JSONArray) result) {
+                    list.add(obj.toString());
+                }
+                return list;
+            }
+        } catch (ParseException e) {
+            Logger.getLogger(PreferenceUtil.class.getName()).log(Level.WARNING,
+                    "Unable to parse persisted " + description, e);
+        }
+        return null;
+    }
+
+    /**
+     * Saves the widgetset modules marked as dirty.
+     * 
+     * @param modules
+     *            dirty modules, or null to remove the list
+     */
+    public void setDirtyWidgetsets(Collection<String> modules) {
+        if (modules == null) {
+            prefStore.setToDefault(PREFERENCES_DIRTY_WIDGETSETS);
+            return;
+        }
+        JSONArray array = new JSONArray();
+        array.addAll(modules);
+        prefStore.setValue(PREFERENCES_DIRTY_WIDGETSETS, array.toJSONString());
+    }
+
     /**
      * Checks whether the project is configured to show a notification when it
      * is possible to update to a newer Vaadin version.
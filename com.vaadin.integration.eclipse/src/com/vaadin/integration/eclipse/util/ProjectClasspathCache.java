@@ -0,0 +1,198 @@
+package com.vaadin.integration.eclipse.util;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.launching.IVMInstall;
+import org.eclipse.jdt.launching.IVMInstallChangedListener;
+import org.eclipse.jdt.launching.JavaRuntime;
+import org.eclipse.jdt.launching.PropertyChangeEvent;
+
+/**
+ * Caches the classpaths used to launch the widgetset compiler, the theme
+ * compiler and other external tools for a project.
+ *
+ * Computing a classpath resolves the classpath containers and the system
+ * libraries of the VM, so it is only done again when the classpath of the
+ * project changes or a VM installation is modified.
+ */
+public class ProjectClasspathCache {
+
+    private static final String KEY_SEPARATOR = "\n";
+
+    private static final Object LOCK = new Object();
+
+    /**
+     * Classpaths by project name, VM install and whether output directories
+     * are included.
+     */
+    private static final Map<String, String> classpaths = new HashMap<String, String>();
+
+    // incremented on every invalidation so that a classpath computed while
+    // the project changed is not cached
+    private static int generation = 0;
+
+    // the generation of the last invalidation of each project and of all
+    // projects, see getGeneration(String)
+    private static final Map<String, Integer> projectGenerations = new HashMap<String, Integer>();
+    private static int allGeneration = 0;
+
+    private static final Listener LISTENER = new Listener();
+
+    private ProjectClasspathCache() {
+    }
+
+    /**
+     * Returns the classpath of a project, computing it if it is not cached.
+     * See {@link VaadinPluginUtil#getProjectBaseClasspath(IJavaProject,
+     * IVMInstall, boolean)}.
+     *
+     * @param jproject
+     * @param vmInstall
+     * @param includeOutputDirectories
+     * @return
+     * @throws CoreException
+     */
+    public static String getProjectBaseClasspath(IJavaProject jproject,
+            IVMInstall vmInstall, boolean includeOutputDirectories)
+            throws CoreException {
+        String key = jproject.getElementName() + KEY_SEPARATOR
+                + vmInstall.getVMInstallType().getId() + KEY_SEPARATOR
+                + vmInstall.getId() + KEY_SEPARATOR + includeOutputDirectories;
+        int computedGeneration;
+        synchronized (LOCK) {
+            String classpath = classpaths.get(key);
+            if (classpath != null) {
+                return classpath;
+            }
+            computedGeneration = generation;
+        }
+
+        String classpath = VaadinPluginUtil.computeProjectBaseClasspath(
+                jproject, vmInstall, includeOutputDirectories);
+
+        synchronized (LOCK) {
+            if (computedGeneration == generation) {
+                classpaths.put(key, classpath);
+            }
+        }
+        return classpath;
+    }
+
+    /**
+     * Removes the cached classpaths of a project.
+     *
+     * @param projectName
+     */
+    public static void invalidate(String projectName) {
+        synchronized (LOCK) {
+            ++generation;
+            projectGenerations.put(projectName, generation);
+            Iterator<String> keys = classpaths.keySet().iterator();
+            while (keys.hasNext()) {
+                if (keys.next().startsWith(projectName + KEY_SEPARATOR)) {
+                    keys.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all cached classpaths.
+     */
+    public static void invalidateAll() {
+        synchronized (LOCK) {
+            ++generation;
+            allGeneration = generation;
+            projectGenerations.clear();
+            classpaths.clear();
+        }
+    }
+
+    /**
+     * Returns a number that changes whenever the classpath of a project may
+     * have changed. Values derived from the classpath of the project can be
+     * kept as long as the number stays the same.
+     *
+     * @param projectName
+     * @return
+     */
+    public static int getGeneration(String projectName) {
+        synchronized (LOCK) {
+            Integer projectGeneration = projectGenerations.get(projectName);
+            return projectGeneration != null ? Math.max(projectGeneration,
+                    allGeneration) : allGeneration;
+        }
+    }
+
+    /**
+     * Starts listening to classpath and VM changes.
+     */
+    public static void start() {
+        JavaCore.addElementChangedListener(LISTENER,
+                ElementChangedEvent.POST_CHANGE);
+        JavaRuntime.addVMInstallChangedListener(LISTENER);
+    }
+
+    /**
+     * Stops listening to classpath and VM changes and clears the cache.
+     */
+    public static void stop() {
+        JavaCore.removeElementChangedListener(LISTENER);
+        JavaRuntime.removeVMInstallChangedListener(LISTENER);
+        invalidateAll();
+    }
+
+    private static class Listener implements IElementChangedListener,
+            IVMInstallChangedListener {
+
+        // changes of a project that can change its launch classpath
+        private static final int CLASSPATH_FLAGS = IJavaElementDelta.F_CLASSPATH_CHANGED
+                | IJavaElementDelta.F_RESOLVED_CLASSPATH_CHANGED
+                | IJavaElementDelta.F_OPENED | IJavaElementDelta.F_CLOSED;
+
+        public void elementChanged(ElementChangedEvent event) {
+            visit(event.getDelta());
+        }
+
+        private void visit(IJavaElementDelta delta) {
+            IJavaElement element = delta.getElement();
+            if (element.getElementType() == IJavaElement.JAVA_MODEL) {
+                for (IJavaElementDelta child : delta.getAffectedChildren()) {
+                    visit(child);
+                }
+            } else if (element.getElementType() == IJavaElement.JAVA_PROJECT) {
+                if (delta.getKind() != IJavaElementDelta.CHANGED
+                        || (delta.getFlags() & CLASSPATH_FLAGS) != 0) {
+                    invalidate(element.getElementName());
+                }
+            }
+        }
+
+        public void defaultVMInstallChanged(IVMInstall previous,
+                IVMInstall current) {
+            // the VM is part of the key
+        }
+
+        public void vmChanged(PropertyChangeEvent event) {
+            // e.g. the system libraries of the VM changed
+            invalidateAll();
+        }
+
+        public void vmAdded(IVMInstall vm) {
+            // the VM is part of the key
+        }
+
+        public void vmRemoved(IVMInstall vm) {
+            invalidateAll();
+        }
+    }
+}
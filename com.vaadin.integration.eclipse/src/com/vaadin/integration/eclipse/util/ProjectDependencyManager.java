@@ -416,15 +416,8 @@ public class ProjectDependencyManager {
             }
 
             try {
-                DownloadManager.downloadGwtUserJar(gwtVersion,
-                        new SubProgressMonitor(monitor, 5));
-                DownloadManager.downloadGwtDevJar(gwtVersion,
-                        new SubProgressMonitor(monitor, 5));
-
-                for (String dependency : gwtDependencies) {
-                    DownloadManager.downloadDependency(gwtVersion, dependency,
-                            new SubProgressMonitor(monitor, 5));
-                }
+                DownloadManager.downloadGwtLibraries(gwtVersion,
+                        gwtDependencies, new SubProgressMonitor(monitor, 10));
 
                 IClasspathEntry[] rawClasspath = jproject.getRawClasspath();
                 List<IClasspathEntry> entries = new ArrayList<IClasspathEntry>();
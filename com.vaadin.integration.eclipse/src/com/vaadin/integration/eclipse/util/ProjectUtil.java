@@ -14,8 +14,6 @@ import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
-import org.eclipse.core.resources.IWorkspaceRoot;
-import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IAdaptable;
 import org.eclipse.core.runtime.IPath;
@@ -40,7 +38,8 @@ import org.eclipse.wst.common.componentcore.resources.IVirtualFolder;
 
 import com.vaadin.integration.eclipse.VaadinFacetUtils;
 import com.vaadin.integration.eclipse.VaadinPlugin;
-import com.vaadin.integration.eclipse.maven.MavenUtil;
+import com.vaadin.integration.eclipse.util.VaadinProjectModel.BuildType;
+import com.vaadin.integration.eclipse.util.VaadinProjectModel.VaadinProject;
 import com.vaadin.integration.eclipse.util.files.LocalFileManager;
 
 // TODO this class needs cleanup of all the project related methods - there is a lot of overlap etc.
@@ -520,8 +519,28 @@ public class ProjectUtil {
         return null;
     }
 
+    /**
+     * Returns the Vaadin JAR of a project: the JAR containing the Vaadin 6
+     * Application class or the Vaadin 7 UI class, or another Vaadin JAR on the
+     * classpath or in WEB-INF/lib. The result is cached until the classpath of
+     * the project changes, see {@link VaadinJarResolver}.
+     *
+     * @param javaProject
+     * @return the JAR or null if none was found
+     * @throws CoreException
+     */
     public static IPath findProjectVaadinJarPath(IJavaProject javaProject)
             throws CoreException {
+        return VaadinJarResolver.findVaadinJarPath(javaProject);
+    }
+
+    /**
+     * Finds the Vaadin JAR of a project by looking up the Vaadin classes in
+     * the Java model. This is slow and only used when the JAR is not found
+     * directly on the classpath.
+     */
+    static IPath findProjectVaadinJarPathInJavaModel(IJavaProject javaProject)
+            throws CoreException {
         IJavaElement type;
         type = ProjectUtil.findVaadinApplicationType(javaProject);
         if (null == type) {
@@ -723,7 +742,19 @@ public class ProjectUtil {
     }
 
     public static boolean hasManifestAttribute(String attribute, IPath resource) {
-        if (resource != null && resource.toPortableString().endsWith(".jar")) {
+        if (resource != null && resource.toPortableString().endsWith(".jar")
+                && JarMetadataIndex.isIndexed(attribute)) {
+            try {
+                return JarMetadataIndex.get(resource.toFile()).getAttribute(
+                        attribute) != null;
+            } catch (IOException e) {
+                ErrorUtil.handleBackgroundException(IStatus.INFO,
+                        "Could not access JAR when checking for attribute "
+                                + attribute, e);
+                return false;
+            }
+        } else if (resource != null
+                && resource.toPortableString().endsWith(".jar")) {
             JarFile jarFile = null;
             try {
                 URL url = new URL("file:" + resource.toPortableString());
@@ -749,21 +780,11 @@ public class ProjectUtil {
     }
 
     public static List<IProject> getVaadinMavenProjects() {
-        IWorkspaceRoot workspaceRoot = ResourcesPlugin.getWorkspace().getRoot();
-        IProject[] projects = workspaceRoot.getProjects();
         ArrayList<IProject> vaadinMavenProjects = new ArrayList<IProject>();
-        for (IProject project : projects) {
-            try {
-                if (!project.isOpen() || !project.hasNature(JavaCore.NATURE_ID)
-                        || !MavenUtil.isMavenProject(project)
-                        || !isVaadin7(project)) {
-                    continue;
-                }
-                vaadinMavenProjects.add(project);
-            } catch (CoreException e) {
-                ErrorUtil.handleBackgroundException(IStatus.WARNING,
-                        "Could not check Vaadin version in project " //$NON-NLS-1$
-                                + project.getName(), e);
+        for (VaadinProject project : VaadinProjectModel.getVaadinProjects()) {
+            if (project.getBuildType() == BuildType.MAVEN
+                    && project.isVaadin7()) {
+                vaadinMavenProjects.add(project.getProject());
             }
         }
         return vaadinMavenProjects;
@@ -0,0 +1,225 @@
+package com.vaadin.integration.eclipse.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IJavaProject;
+
+import com.vaadin.integration.eclipse.util.JarMetadataIndex.JarMetadata;
+
+/**
+ * Finds the Vaadin JAR of a project from its resolved classpath.
+ *
+ * The classpath is walked once and each JAR is checked in the
+ * {@link JarMetadataIndex} for the Vaadin 6 Application and Vaadin 7 UI
+ * classes, which gives the same result as looking the classes up in the Java
+ * model without building type hierarchies or searching. The result is kept
+ * until {@link ProjectClasspathCache} reports that the classpath of the
+ * project may have changed. Only if nothing is found this way, the slower
+ * lookup through the Java model is used.
+ */
+public class VaadinJarResolver {
+
+    private static final String APPLICATION_CLASS = "com/vaadin/Application";
+    private static final String UI_CLASS = "com/vaadin/ui/UI";
+
+    private static final Object LOCK = new Object();
+
+    /**
+     * A resolved Vaadin JAR path, which may be null.
+     */
+    private static class Result {
+        private final int generation;
+        private final IPath path;
+
+        private Result(int generation, IPath path) {
+            this.generation = generation;
+            this.path = path;
+        }
+    }
+
+    private static final Map<String, Result> results = new HashMap<String, Result>();
+
+    // statistics, see getCallCount() etc.
+    private static final AtomicLong calls = new AtomicLong();
+    private static final AtomicLong resolves = new AtomicLong();
+    private static final AtomicLong slowResolves = new AtomicLong();
+    private static final AtomicLong resolveNanos = new AtomicLong();
+
+    private VaadinJarResolver() {
+    }
+
+    /**
+     * Returns the Vaadin JAR of a project, see
+     * {@link ProjectUtil#findProjectVaadinJarPath(IJavaProject)}.
+     *
+     * @param javaProject
+     * @return the JAR or null if none was found
+     * @throws CoreException
+     */
+    public static IPath findVaadinJarPath(IJavaProject javaProject)
+            throws CoreException {
+        calls.incrementAndGet();
+        String projectName = javaProject.getElementName();
+        // read before resolving so that a result computed while the
+        // classpath changed is not used later
+        int generation = ProjectClasspathCache.getGeneration(projectName);
+        synchronized (LOCK) {
+            Result result = results.get(projectName);
+            if (result != null && result.generation == generation) {
+                return result.path;
+            }
+        }
+
+        resolves.incrementAndGet();
+        long start = System.nanoTime();
+        IPath path;
+        try {
+            path = resolve(javaProject);
+        } finally {
+            resolveNanos.addAndGet(System.nanoTime() - start);
+        }
+
+        synchronized (LOCK) {
+            results.put(projectName, new Result(generation, path));
+        }
+        return path;
+    }
+
+    private static IPath resolve(IJavaProject javaProject)
+            throws CoreException {
+        IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+        IPath applicationRoot = null;
+        IPath uiRoot = null;
+        IPath vaadinJar = null;
+        for (IClasspathEntry entry : javaProject.getResolvedClasspath(true)) {
+            if (applicationRoot != null) {
+                break;
+            }
+            if (entry.getEntryKind() == IClasspathEntry.CPE_SOURCE) {
+                // e.g. when working on Vaadin itself
+                IResource folder = root.findMember(entry.getPath());
+                if (folder == null) {
+                    continue;
+                }
+                if (root.findMember(entry.getPath().append(
+                        APPLICATION_CLASS + ".java")) != null) {
+                    applicationRoot = folder.getRawLocation();
+                } else if (uiRoot == null
+                        && root.findMember(entry.getPath().append(
+                                UI_CLASS + ".java")) != null) {
+                    uiRoot = folder.getRawLocation();
+                }
+            } else if (entry.getEntryKind() == IClasspathEntry.CPE_LIBRARY
+                    && "jar".equals(entry.getPath().getFileExtension())) {
+                IPath path = VaadinPluginUtil.makePathAbsolute(entry
+                        .getPath());
+                if (path == null) {
+                    continue;
+                }
+                File file = path.toFile();
+                if (!file.isFile()) {
+                    continue;
+                }
+                try {
+                    JarMetadata metadata = JarMetadataIndex.get(file);
+                    if (metadata.hasEntry(APPLICATION_CLASS + ".class")) {
+                        applicationRoot = path;
+                    } else if (uiRoot == null
+                            && metadata.hasEntry(UI_CLASS + ".class")) {
+                        uiRoot = path;
+                    }
+                } catch (IOException e) {
+                    // not readable, the Java model would not find classes in
+                    // it either
+                    continue;
+                }
+                if (vaadinJar == null && VaadinPluginUtil.isVaadinJar(path)) {
+                    vaadinJar = path;
+                }
+            }
+        }
+        if (applicationRoot != null) {
+            return applicationRoot;
+        } else if (uiRoot != null) {
+            return uiRoot;
+        } else if (vaadinJar != null) {
+            return vaadinJar;
+        }
+
+        // not yet on the classpath at project creation
+        IFolder lib = ProjectUtil.getWebInfLibFolder(javaProject.getProject());
+        if (lib != null && lib.exists()) {
+            for (IResource resource : lib.members()) {
+                if (resource instanceof IFile
+                        && VaadinPluginUtil.isVaadinJar(resource.getLocation())) {
+                    return resource.getLocation();
+                }
+            }
+        }
+
+        // e.g. the classes are in a dependent project
+        slowResolves.incrementAndGet();
+        return ProjectUtil.findProjectVaadinJarPathInJavaModel(javaProject);
+    }
+
+    /**
+     * Returns the number of Vaadin JAR lookups since the last reset.
+     */
+    public static long getCallCount() {
+        return calls.get();
+    }
+
+    /**
+     * Returns the number of lookups that were not answered from the cache.
+     */
+    public static long getResolveCount() {
+        return resolves.get();
+    }
+
+    /**
+     * Returns the number of lookups that fell back to searching the Java
+     * model.
+     */
+    public static long getSlowResolveCount() {
+        return slowResolves.get();
+    }
+
+    /**
+     * Returns the total time in nanoseconds spent on lookups that were not
+     * answered from the cache.
+     */
+    public static long getResolveNanos() {
+        return resolveNanos.get();
+    }
+
+    /**
+     * Resets the lookup statistics.
+     */
+    public static void resetStatistics() {
+        calls.set(0);
+        resolves.set(0);
+        slowResolves.set(0);
+        resolveNanos.set(0);
+    }
+
+    /**
+     * Removes all cached results, e.g. when the plugin is stopped.
+     */
+    public static void clear() {
+        synchronized (LOCK) {
+            results.clear();
+        }
+    }
+}
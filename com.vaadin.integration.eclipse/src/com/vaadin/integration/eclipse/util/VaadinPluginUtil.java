@@ -6,8 +6,6 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringWriter;
-import java.net.JarURLConnection;
-import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -16,9 +14,7 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.jar.Attributes;
 import java.util.jar.JarFile;
-import java.util.jar.Manifest;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -67,6 +63,7 @@ import com.vaadin.integration.eclipse.VaadinPlugin;
 import com.vaadin.integration.eclipse.templates.v62.ApplicationTemplate;
 import com.vaadin.integration.eclipse.templates.v7.TestTemplate;
 import com.vaadin.integration.eclipse.templates.v7.UITemplate;
+import com.vaadin.integration.eclipse.util.JarMetadataIndex.JarMetadata;
 import com.vaadin.integration.eclipse.util.files.LocalFileManager;
 
 @SuppressWarnings("restriction")
@@ -701,32 +698,15 @@ public class VaadinPluginUtil {
     public static boolean isVaadinJar(IPath path) {
         if ("jar".equals(path.getFileExtension())
                 && path.lastSegment().contains("vaadin")) {
-            JarFile jarFile = null;
             try {
-                URL url = path.toFile().toURL();
-                url = new URL("jar:" + url.toExternalForm() + "!/");
-                JarURLConnection conn = (JarURLConnection) url.openConnection();
-                jarFile = conn.getJarFile();
-                Manifest manifest = jarFile.getManifest();
-                if (manifest == null) {
-                    return false;
-                }
-                Attributes mainAttributes = manifest.getMainAttributes();
-                if ("Vaadin".equals(mainAttributes.getValue("Bundle-Name"))
-                        && "com.vaadin".equals(mainAttributes
-                                .getValue("Bundle-SymbolicName"))) {
+                JarMetadata metadata = JarMetadataIndex.get(path.toFile());
+                if ("Vaadin".equals(metadata.getAttribute("Bundle-Name"))
+                        && "com.vaadin".equals(metadata
+                                .getAttribute("Bundle-SymbolicName"))) {
                     return true;
                 }
-            } catch (MalformedURLException e) {
-                String message = (jarFile == null) ? "Could not access JAR"
-                        : "Could not access JAR " + jarFile.getName();
-                getLogger().fine(message);
             } catch (IOException e) {
-                String message = (jarFile == null) ? "Could not access JAR"
-                        : "Could not access JAR " + jarFile.getName();
-                getLogger().fine(message);
-            } finally {
-                closeJarFile(jarFile);
+                getLogger().fine("Could not access JAR " + path);
             }
         }
         return false;
@@ -765,6 +745,9 @@ public class VaadinPluginUtil {
      * the widgetset compiler (but after all source directories) to enable
      * accessing the server side annotations.
      *
+     * The classpath is cached until the classpath of the project changes, see
+     * {@link ProjectClasspathCache}.
+     *
      * @param jproject
      * @param vmInstall
      *            JRE/JDK to select the system libraries to include on the class
@@ -779,6 +762,28 @@ public class VaadinPluginUtil {
     public static String getProjectBaseClasspath(IJavaProject jproject,
             IVMInstall vmInstall, boolean includeOutputDirectories)
                     throws CoreException, JavaModelException {
+        return ProjectClasspathCache.getProjectBaseClasspath(jproject,
+                vmInstall, includeOutputDirectories);
+    }
+
+    /**
+     * Computes the project classpath, see
+     * {@link #getProjectBaseClasspath(IJavaProject, IVMInstall, boolean)}.
+     *
+     * @param jproject
+     * @param vmInstall
+     *            JRE/JDK to select the system libraries to include on the class
+     *            path
+     * @param includeOutputDirectories
+     *            true to also include output (class file) locations on the
+     *            classpath
+     * @return
+     * @throws CoreException
+     * @throws JavaModelException
+     */
+    static String computeProjectBaseClasspath(IJavaProject jproject,
+            IVMInstall vmInstall, boolean includeOutputDirectories)
+                    throws CoreException, JavaModelException {
         String classpathSeparator = PlatformUtil.getClasspathSeparator();
         IProject project = jproject.getProject();
 
@@ -918,25 +923,21 @@ public class VaadinPluginUtil {
                 .resolveRuntimeClasspathEntry(systemLibsEntry, jproject);
 
         // construct classpath string
-        String classPath = "";
+        StringBuilder classPath = new StringBuilder();
         for (IRuntimeClasspathEntry entry : systemLibsEntries) {
-            if ("".equals(classPath)) {
-                classPath = entry.getLocation();
-            } else {
-                classPath = classPath + classpathSeparator
-                        + entry.getLocation();
+            if (classPath.length() > 0) {
+                classPath.append(classpathSeparator);
             }
+            classPath.append(entry.getLocation());
         }
         for (IPath path : locations) {
-            if ("".equals(classPath)) {
-                classPath = path.toPortableString();
-            } else {
-                classPath = classPath + classpathSeparator
-                        + path.toPortableString();
+            if (classPath.length() > 0) {
+                classPath.append(classpathSeparator);
             }
+            classPath.append(path.toPortableString());
         }
 
-        return classPath;
+        return classPath.toString();
     }
 
     /**
@@ -977,6 +978,54 @@ public class VaadinPluginUtil {
         return version.startsWith("1.") && version.compareTo("1.8") > 0;
     }
 
+    /**
+     * Checks whether a VM installation is Java 9 or later.
+     *
+     * @param vmInstall
+     * @return true if the VM version is 9 or later, false if older or unknown
+     */
+    public static boolean isJdk9(IVMInstall vmInstall) {
+        if (!(vmInstall instanceof IVMInstall2)) {
+            return false;
+        }
+        String version = ((IVMInstall2) vmInstall).getJavaVersion();
+        if (version == null || version.length() == 0) {
+            return false;
+        }
+        // versions before 9 start with "1."
+        return !version.startsWith("1.")
+                && Character.isDigit(version.charAt(0));
+    }
+
+    /**
+     * Returns the feature version of a VM installation, e.g. 8 for Java 1.8
+     * and 17 for Java 17.
+     * 
+     * @param vmInstall
+     * @return the version or -1 if not known
+     */
+    public static int getJavaFeatureVersion(IVMInstall vmInstall) {
+        if (!(vmInstall instanceof IVMInstall2)) {
+            return -1;
+        }
+        String version = ((IVMInstall2) vmInstall).getJavaVersion();
+        if (version == null) {
+            return -1;
+        }
+        if (version.startsWith("1.")) {
+            version = version.substring(2);
+        }
+        int end = 0;
+        while (end < version.length()
+                && Character.isDigit(version.charAt(end))) {
+            end++;
+        }
+        if (end == 0) {
+            return -1;
+        }
+        return Integer.parseInt(version.substring(0, end));
+    }
+
     /**
      * Returns the JVM install to use for a project. The project JVM is used if
      * available, the workspace default VM if none is specified for the project.
@@ -0,0 +1,349 @@
+package com.vaadin.integration.eclipse.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ivyde.eclipse.cp.IvyClasspathContainerHelper;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+
+import com.vaadin.integration.eclipse.maven.MavenUtil;
+
+/**
+ * Workspace wide model of the Vaadin related properties of projects: the
+ * Vaadin version and JAR, the GWT version, the widgetsets and the build type.
+ *
+ * The properties of a project are computed when first requested and kept
+ * until the classpath of the project changes, the project is opened, closed
+ * or removed, or a JAR, GWT module, build file or Java source file is added
+ * to or removed from it. Jobs iterating over all workspace projects read the
+ * model instead of searching the classpath of each project every time.
+ */
+public class VaadinProjectModel {
+
+    /**
+     * How the dependencies of a project are managed.
+     */
+    public enum BuildType {
+        MAVEN, IVY, OTHER
+    }
+
+    /**
+     * Vaadin related properties of a project.
+     */
+    public static class VaadinProject {
+        private final IProject project;
+        private final boolean vaadin7;
+        private final IPath vaadinJar;
+        private final String vaadinVersion;
+        private final String gwtVersion;
+        private final BuildType buildType;
+        // found on first use, the search visits the source folders
+        private List<String> widgetsets;
+
+        private VaadinProject(IProject project, boolean vaadin7,
+                IPath vaadinJar, String vaadinVersion, String gwtVersion,
+                BuildType buildType) {
+            this.project = project;
+            this.vaadin7 = vaadin7;
+            this.vaadinJar = vaadinJar;
+            this.vaadinVersion = vaadinVersion;
+            this.gwtVersion = gwtVersion;
+            this.buildType = buildType;
+        }
+
+        public IProject getProject() {
+            return project;
+        }
+
+        /**
+         * Returns true if com.vaadin.ui.UI is on the classpath of the project,
+         * see {@link ProjectUtil#isVaadin7(IProject)}.
+         */
+        public boolean isVaadin7() {
+            return vaadin7;
+        }
+
+        /**
+         * Returns true if the project uses Vaadin.
+         */
+        public boolean isVaadin() {
+            return vaadin7 || vaadinVersion != null;
+        }
+
+        /**
+         * Returns the Vaadin JAR of the project, see
+         * {@link ProjectUtil#getVaadinLibraryInProject(IProject, boolean)}.
+         *
+         * @return the JAR or null if none was found
+         */
+        public IPath getVaadinJar() {
+            return vaadinJar;
+        }
+
+        /**
+         * Returns the version of the Vaadin JAR of the project.
+         *
+         * @return the version or null if no Vaadin JAR was found
+         */
+        public String getVaadinVersion() {
+            return vaadinVersion;
+        }
+
+        /**
+         * Returns the GWT version required by the Vaadin JAR of the project.
+         *
+         * @return the version or null if it is not known
+         */
+        public String getGwtVersion() {
+            return gwtVersion;
+        }
+
+        public BuildType getBuildType() {
+            return buildType;
+        }
+
+        /**
+         * Returns the widgetsets in the source folders of the project, see
+         * {@link WidgetsetUtil#findWidgetSets(IJavaProject, org.eclipse.core.runtime.IProgressMonitor)}
+         * .
+         *
+         * @return
+         * @throws CoreException
+         */
+        public synchronized List<String> getWidgetsets() throws CoreException {
+            if (widgetsets == null) {
+                widgetsets = Collections.unmodifiableList(WidgetsetUtil
+                        .findWidgetSets(JavaCore.create(project), null));
+            }
+            return widgetsets;
+        }
+
+        @Override
+        public String toString() {
+            return project.toString();
+        }
+    }
+
+    private static final Object LOCK = new Object();
+
+    private static final Map<String, VaadinProject> projects = new HashMap<String, VaadinProject>();
+
+    // incremented on every invalidation so that properties computed while
+    // the project changed are not cached
+    private static int generation = 0;
+
+    private static final Listener LISTENER = new Listener();
+
+    private VaadinProjectModel() {
+    }
+
+    /**
+     * Returns the Vaadin related properties of a project.
+     *
+     * @param project
+     * @return the properties or null if the project is not an open Java
+     *         project
+     * @throws CoreException
+     */
+    public static VaadinProject get(IProject project) throws CoreException {
+        int computedGeneration;
+        synchronized (LOCK) {
+            VaadinProject result = projects.get(project.getName());
+            if (result != null) {
+                return result;
+            }
+            computedGeneration = generation;
+        }
+        if (!project.isOpen() || !project.hasNature(JavaCore.NATURE_ID)) {
+            return null;
+        }
+
+        VaadinProject result = compute(project);
+        synchronized (LOCK) {
+            if (computedGeneration == generation) {
+                projects.put(project.getName(), result);
+            }
+        }
+        return result;
+    }
+
+    private static VaadinProject compute(IProject project)
+            throws CoreException {
+        IPath vaadinJar = ProjectUtil.getVaadinLibraryInProject(project, true);
+        String vaadinVersion = null;
+        String gwtVersion = null;
+        if (vaadinJar != null) {
+            vaadinVersion = VersionUtil.getVaadinVersionFromJar(vaadinJar);
+            gwtVersion = ProjectUtil
+                    .getRequiredGWTVersionForVaadinJar(vaadinJar);
+        }
+        return new VaadinProject(project, ProjectUtil.isVaadin7(project),
+                vaadinJar, vaadinVersion, gwtVersion, getBuildType(project));
+    }
+
+    private static BuildType getBuildType(IProject project)
+            throws CoreException {
+        if (MavenUtil.isMavenProject(project)) {
+            return BuildType.MAVEN;
+        }
+        for (IClasspathEntry entry : JavaCore.create(project)
+                .getRawClasspath()) {
+            if (entry.getEntryKind() == IClasspathEntry.CPE_CONTAINER
+                    && IvyClasspathContainerHelper
+                            .isIvyClasspathContainer(entry.getPath())) {
+                return BuildType.IVY;
+            }
+        }
+        return BuildType.OTHER;
+    }
+
+    /**
+     * Returns the open workspace projects that use Vaadin.
+     *
+     * @return
+     */
+    public static List<VaadinProject> getVaadinProjects() {
+        List<VaadinProject> result = new ArrayList<VaadinProject>();
+        for (IProject project : ResourcesPlugin.getWorkspace().getRoot()
+                .getProjects()) {
+            try {
+                VaadinProject vaadinProject = get(project);
+                if (vaadinProject != null && vaadinProject.isVaadin()) {
+                    result.add(vaadinProject);
+                }
+            } catch (CoreException e) {
+                ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                        "Could not check Vaadin version in project " //$NON-NLS-1$
+                                + project.getName(), e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes the cached properties of a project.
+     *
+     * @param projectName
+     */
+    public static void invalidate(String projectName) {
+        synchronized (LOCK) {
+            ++generation;
+            projects.remove(projectName);
+        }
+    }
+
+    /**
+     * Removes the cached properties of all projects.
+     */
+    public static void invalidateAll() {
+        synchronized (LOCK) {
+            ++generation;
+            projects.clear();
+        }
+    }
+
+    /**
+     * Starts listening to changes of the projects.
+     */
+    public static void start() {
+        JavaCore.addElementChangedListener(LISTENER,
+                ElementChangedEvent.POST_CHANGE);
+        ResourcesPlugin.getWorkspace().addResourceChangeListener(LISTENER,
+                IResourceChangeEvent.POST_CHANGE);
+    }
+
+    /**
+     * Stops listening to changes of the projects and clears the model.
+     */
+    public static void stop() {
+        JavaCore.removeElementChangedListener(LISTENER);
+        ResourcesPlugin.getWorkspace().removeResourceChangeListener(LISTENER);
+        invalidateAll();
+    }
+
+    private static class Listener implements IElementChangedListener,
+            IResourceChangeListener {
+
+        // changes of a Java project that can change its Vaadin JAR
+        private static final int CLASSPATH_FLAGS = IJavaElementDelta.F_CLASSPATH_CHANGED
+                | IJavaElementDelta.F_RESOLVED_CLASSPATH_CHANGED
+                | IJavaElementDelta.F_OPENED | IJavaElementDelta.F_CLOSED;
+
+        // opened or closed, or natures changed
+        private static final int PROJECT_FLAGS = IResourceDelta.OPEN
+                | IResourceDelta.DESCRIPTION;
+
+        public void elementChanged(ElementChangedEvent event) {
+            IJavaElementDelta delta = event.getDelta();
+            if (delta.getElement().getElementType() != IJavaElement.JAVA_MODEL) {
+                return;
+            }
+            for (IJavaElementDelta child : delta.getAffectedChildren()) {
+                IJavaElement element = child.getElement();
+                if (element.getElementType() == IJavaElement.JAVA_PROJECT
+                        && (child.getKind() != IJavaElementDelta.CHANGED
+                                || (child.getFlags() & CLASSPATH_FLAGS) != 0)) {
+                    invalidate(element.getElementName());
+                }
+            }
+        }
+
+        public void resourceChanged(IResourceChangeEvent event) {
+            IResourceDelta delta = event.getDelta();
+            if (delta == null) {
+                return;
+            }
+            try {
+                delta.accept(new IResourceDeltaVisitor() {
+                    public boolean visit(IResourceDelta delta) {
+                        IResource resource = delta.getResource();
+                        if (resource.getType() == IResource.PROJECT) {
+                            if (delta.getKind() != IResourceDelta.CHANGED
+                                    || (delta.getFlags() & PROJECT_FLAGS) != 0) {
+                                invalidate(resource.getName());
+                                return false;
+                            }
+                        } else if (resource.getType() == IResource.FILE
+                                && isRelevant(delta)) {
+                            invalidate(resource.getProject().getName());
+                        }
+                        return true;
+                    }
+                });
+            } catch (CoreException e) {
+                // the visitor does not throw
+                invalidateAll();
+            }
+        }
+
+        private boolean isRelevant(IResourceDelta delta) {
+            String name = delta.getResource().getName();
+            if (name.endsWith(".jar") || "pom.xml".equals(name)
+                    || "ivy.xml".equals(name)) {
+                return true;
+            }
+            // widgetsets, or e.g. a source folder containing com.vaadin.ui.UI
+            return (name.endsWith(".gwt.xml") || name.endsWith(".java"))
+                    && delta.getKind() != IResourceDelta.CHANGED;
+        }
+    }
+}
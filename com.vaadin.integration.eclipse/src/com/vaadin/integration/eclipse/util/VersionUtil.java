@@ -1,23 +1,16 @@
 package com.vaadin.integration.eclipse.util;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.JarURLConnection;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.jar.Attributes;
-import java.util.jar.JarFile;
-import java.util.jar.Manifest;
-import java.util.zip.ZipEntry;
 
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IStatus;
 
+import com.vaadin.integration.eclipse.util.JarMetadataIndex.JarMetadata;
 import com.vaadin.integration.eclipse.util.data.AbstractVaadinVersion;
+import com.vaadin.integration.eclipse.util.data.VersionNumber;
 
 public class VersionUtil {
 
@@ -50,34 +43,20 @@ public class VersionUtil {
                 || !resource.toFile().exists()) {
             return null;
         }
-        JarFile jarFile = null;
         try {
-            URL url = new URL("file:" + resource.toPortableString());
-            url = new URL("jar:" + url.toExternalForm() + "!/");
-            JarURLConnection conn = (JarURLConnection) url.openConnection();
-            jarFile = conn.getJarFile();
+            JarMetadata metadata = JarMetadataIndex.get(resource.toFile());
 
             // Try to get version from manifest (in Vaadin 6.4.6 and newer)
-            String versionString = getManifestVaadinVersion(jarFile);
+            String versionString = getManifestVaadinVersion(metadata);
             if (versionString != null) {
                 return versionString;
             }
 
             // Try to get version from META-INF/VERSION
-            ZipEntry entry = jarFile.getEntry("META-INF/VERSION");
-            if (entry != null) {
-                InputStream inputStream = jarFile.getInputStream(entry);
-                versionString = new BufferedReader(new InputStreamReader(
-                        inputStream)).readLine();
-                inputStream.close();
-            }
-
-            return versionString;
+            return metadata.getVersionFile();
         } catch (Throwable t) {
             ErrorUtil.handleBackgroundException(IStatus.INFO,
                     "Could not access JAR when checking for Vaadin version", t);
-        } finally {
-            VaadinPluginUtil.closeJarFile(jarFile);
         }
         return null;
     }
@@ -85,64 +64,51 @@ public class VersionUtil {
     /**
      * Returns the Vaadin JAR version, as specified in the manifest.
      * 
-     * @param jarFile
-     *            A JarFile reference to a vaadin jar. Not closed by the method,
-     *            needs to be closed afterwards. Must not be null.
+     * @param metadata
+     *            The metadata of a vaadin jar. Must not be null.
      * @return The Vaadin version stated in the manifest or null if not found.
-     * @throws IOException
      */
-    private static String getManifestVaadinVersion(JarFile jarFile)
-            throws IOException {
-        String version = getManifestVersion(jarFile, "Implementation-Version");
+    private static String getManifestVaadinVersion(JarMetadata metadata) {
+        String version = getManifestVersion(metadata, "Implementation-Version");
         // Check that the version string is of the expected form.
         // For instance SNAPSHOT versions won't pass this check.
         if (version != null && version.matches("\\d+.\\d+.\\d+(\\..*)?")) {
             return version;
         }
         // Otherwise fall back to using Bundle-Version.
-        return getManifestVersion(jarFile, "Bundle-Version");
+        return getManifestVersion(metadata, "Bundle-Version");
     }
 
     /**
      * Returns the GWT version required by the Vaadin JAR, as specified in the
      * manifest.
      * 
-     * @param jarFile
-     *            A JarFile reference to a vaadin jar. Not closed by the method,
-     *            needs to be closed afterwards. Must not be null.
+     * @param metadata
+     *            The metadata of a vaadin jar. Must not be null.
      * @return The Vaadin version stated in the manifest or null if not found.
-     * @throws IOException
      */
-    private static String getManifestGWTVersion(JarFile jarFile)
-            throws IOException {
-        return getManifestVersion(jarFile, "GWT-Version");
+    private static String getManifestGWTVersion(JarMetadata metadata) {
+        return getManifestVersion(metadata, "GWT-Version");
     }
 
-    private static String getManifestVersion(JarFile jarFile,
-            String versionAttribute) throws IOException {
-        Manifest manifest = jarFile.getManifest();
-        if (manifest == null) {
-            return null;
-        }
-        Attributes attr = manifest.getMainAttributes();
-        String bundleName = attr.getValue("Bundle-Name");
+    private static String getManifestVersion(JarMetadata metadata,
+            String versionAttribute) {
+        String bundleName = metadata.getAttribute("Bundle-Name");
         if (bundleName != null
                 && (bundleName.startsWith("Vaadin") || bundleName
                         .startsWith("vaadin-"))) {
-            return attr.getValue(versionAttribute);
+            return metadata.getAttribute(versionAttribute);
         }
 
         return null;
     }
 
-    private static List<String> getManifestArrayAttribute(JarFile jarFile,
-            String attributeName) throws IOException {
-        Manifest manifest = jarFile.getManifest();
-        if (manifest == null) {
+    private static List<String> getManifestArrayAttribute(
+            JarMetadata metadata, String attributeName) {
+        if (!metadata.hasManifest()) {
             return null;
         }
-        Attributes attr = manifest.getMainAttributes();
-        String commaSeparatedValue = attr.getValue(attributeName);
+        String commaSeparatedValue = metadata.getAttribute(attributeName);
         ArrayList<String> result = new ArrayList<String>();
         if (commaSeparatedValue != null) {
             for (String value : commaSeparatedValue.split(",")) {
@@ -185,34 +151,16 @@ public class VersionUtil {
         }
 
         // Check gwt version from included Vaadin jar
-        JarFile jarFile = null;
-        try {
-            jarFile = new JarFile(vaadinJarFile);
-            // Check GWT version from manifest
-            String manifestGWTVersion = getManifestGWTVersion(jarFile);
-            if (manifestGWTVersion != null) {
-                return manifestGWTVersion;
-            }
-
-            ZipEntry entry = jarFile.getEntry("META-INF/GWT-VERSION");
-            if (entry == null) {
-                // found JAR but not GWT version information in it, use
-                // default
-                return null;
-            }
-
-            // extract GWT version from the JAR
-            InputStream gwtVersionStream = jarFile.getInputStream(entry);
-            BufferedReader reader = new BufferedReader(new InputStreamReader(
-                    gwtVersionStream));
-
-            String gwtVersion = reader.readLine();
-            return gwtVersion;
-        } finally {
-            if (jarFile != null) {
-                VaadinPluginUtil.closeJarFile(jarFile);
-            }
+        JarMetadata metadata = JarMetadataIndex.get(vaadinJarFile);
+        // Check GWT version from manifest
+        String manifestGWTVersion = getManifestGWTVersion(metadata);
+        if (manifestGWTVersion != null) {
+            return manifestGWTVersion;
         }
+
+        // extract GWT version from META-INF/GWT-VERSION, null if found JAR
+        // but not GWT version information in it (use default)
+        return metadata.getGwtVersionFile();
     }
 
     public static List<String> getRequiredGWTDependenciesForVaadinJar(
@@ -223,17 +171,9 @@ public class VersionUtil {
         }
 
         // Check gwt version from included Vaadin jar
-        JarFile jarFile = null;
-        try {
-            jarFile = new JarFile(vaadinJarFile);
-            // Check GWT version from manifest
-            return getManifestArrayAttribute(jarFile,
-                    GWT_VERSION_DEPENDENCIES_ATTRIBUTE);
-        } finally {
-            if (jarFile != null) {
-                VaadinPluginUtil.closeJarFile(jarFile);
-            }
-        }
+        return getManifestArrayAttribute(
+                JarMetadataIndex.get(vaadinJarFile),
+                GWT_VERSION_DEPENDENCIES_ATTRIBUTE);
     }
 
     /**
@@ -302,7 +242,7 @@ public class VersionUtil {
      * @return whether version is a stable version
      */
     public static boolean isStableVersion(String version) {
-        return version.matches("[0-9]+\\.[0-9]+\\.[0-9]+");
+        return VersionNumber.valueOf(version).isStable();
     }
 
     /**
@@ -311,8 +251,8 @@ public class VersionUtil {
      * is ignored whether the versions are snapshots. For instance,
      * isSameVersion("7.5.3", "7.5-SNAPSHOT", 2) returns true.
      *
-     * The parameter digits must not be greater than the number of dot-separated
-     * substrings in either version string.
+     * If either version string has fewer dot-separated substrings than the
+     * parameter digits, false is returned.
      *
      * @param version1
      *            a version string
@@ -325,16 +265,8 @@ public class VersionUtil {
      */
     public static boolean isSameVersion(String version1, String version2,
             int digits) {
-        version1 = version1.replaceAll("-.*", "");
-        version2 = version2.replace("-.*", "");
-        String[] v1parts = version1.split("\\.");
-        String[] v2parts = version2.split("\\.");
-        for (int i = 0; i < digits; i++) {
-            if (!v1parts[i].equals(v2parts[i])) {
-                return false;
-            }
-        }
-        return true;
+        return VersionNumber.valueOf(version1).isSameVersion(
+                VersionNumber.valueOf(version2), digits);
     }
 
     /**
@@ -354,58 +286,8 @@ public class VersionUtil {
      *         version1 is newer than, as new as, or older than version2.
      */
     public static int compareVersions(String version1, String version2) {
-        String[] parts1 = version1.split("\\.");
-        String[] parts2 = version2.split("\\.");
-        int partCount = Math.min(parts1.length, parts2.length);
-        for (int i = 0; i < partCount; i++) {
-            int comparePart = compareVersionPart(parts1[i], parts2[i]);
-            if (comparePart != 0) {
-                return comparePart;
-            }
-        }
-        // A stable version is newer than a prerelease, given that no other
-        // difference was found.
-        return (isStableVersion(version1) ? 1 : -1)
-                - (isStableVersion(version2) ? 1 : -1);
-    }
-
-    private static int compareVersionPart(String part1, String part2) {
-        // A snapshot is considered older than a numeric version if the
-        // version is otherwise the same.
-        boolean isSnapShot1 = part1.endsWith("SNAPSHOT");
-        if (isSnapShot1) {
-            part1 = part1.substring(0, part1.length() - 9);
-        }
-        boolean isSnapShot2 = part2.endsWith("SNAPSHOT");
-        if (isSnapShot2) {
-            part2 = part2.substring(0, part2.length() - 9);
-        }
-        Integer version1Part = null, version2Part = null;
-        try {
-            version1Part = Integer.parseInt(part1);
-        } catch (NumberFormatException e) {
-        }
-        try {
-            version2Part = Integer.parseInt(part2);
-        } catch (NumberFormatException e) {
-        }
-        if (version1Part != null && version2Part != null) {
-            // Return a positive number if version1Part >
-            // version2Part or the versions are otherwise the same but part2
-            // is a snapshot.
-            return 2 * (version1Part - version2Part)
-                    + ((isSnapShot2 ? 1 : 0) - (isSnapShot1 ? 1 : 0));
-        } else if (version1Part != null) {
-            // Part1 was numeric but part2 not, part2 is probably a prerelease.
-            return 1;
-        } else if (version2Part != null) {
-            // Part2 was numeric but part1 not, part1 is probably a prerelease.
-            return -1;
-        } else {
-            // Both versions were nonnumeric such as alpha, beta. Use string
-            // comparison.
-            return part1.compareTo(part2);
-        }
+        return VersionNumber.valueOf(version1).compareTo(
+                VersionNumber.valueOf(version2));
     }
 
     private static boolean isAtLeastVersionString(String vaadinVersion,
@@ -413,18 +295,8 @@ public class VersionUtil {
         if (null == vaadinVersion) {
             return false;
         }
-        String[] versionStrings = vaadinVersion.split("[.-]");
-        if (versionStrings.length < 2) {
-            return false;
-        }
-        try {
-            int major = Integer.parseInt(versionStrings[0]);
-            int minor = Integer.parseInt(versionStrings[1]);
-            return major > majorVersion
-                    || (major == majorVersion && minor >= minorVersion);
-        } catch (NumberFormatException e) {
-            return false;
-        }
+        return VersionNumber.valueOf(vaadinVersion).isAtLeast(majorVersion,
+                minorVersion);
     }
 
 }
@@ -0,0 +1,232 @@
+package com.vaadin.integration.eclipse.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+
+import com.vaadin.integration.eclipse.VaadinPlugin;
+import com.vaadin.integration.eclipse.preferences.PreferenceConstants;
+
+/**
+ * Shares the processors and memory of the machine between widgetset
+ * compilations running at the same time.
+ *
+ * Every compilation registers a {@link Request} and acquires a share of the
+ * budget before starting the compiler. The share determines the number of
+ * permutation workers (-localWorkers) of the compiler. Compilations that do
+ * not fit in the remaining budget wait in a queue and are started in request
+ * order. A compilation is always started when nothing else is running, even
+ * if it needs more memory than the budget allows.
+ */
+public class WidgetsetCompileBudget {
+
+    // heap size assumed for a compiler JVM without -Xmx
+    private static final int DEFAULT_HEAP_SIZE = 512;
+
+    private static final Object LOCK = new Object();
+
+    // all requests that have not been released, in request order
+    private static final List<Request> requests = new ArrayList<Request>();
+
+    private static int usedProcessors = 0;
+    private static int usedMemory = 0;
+
+    private WidgetsetCompileBudget() {
+    }
+
+    /**
+     * Registers a new compilation. Registered compilations are taken into
+     * account when dividing processors between the compilations even before
+     * they are ready to start, so all compilations of a batch should be
+     * registered before starting any of them.
+     *
+     * The request must always be released with {@link Request#release()}.
+     */
+    public static Request newRequest() {
+        synchronized (LOCK) {
+            Request request = new Request();
+            requests.add(request);
+            return request;
+        }
+    }
+
+    /**
+     * Returns the number of compilations that have acquired their share of
+     * the budget and not released it yet.
+     */
+    public static int getRunningCount() {
+        synchronized (LOCK) {
+            int count = 0;
+            for (Request request : requests) {
+                if (request.running) {
+                    ++count;
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Returns the maximum heap size in megabytes given to a JVM with the
+     * given arguments.
+     */
+    public static int getHeapSize(List<String> jvmArgs) {
+        int size = DEFAULT_HEAP_SIZE;
+        // the last -Xmx wins like in the JVM
+        for (String arg : jvmArgs) {
+            if (arg.startsWith("-Xmx") && arg.length() > 4) {
+                int parsed = parseSize(arg.substring(4));
+                if (parsed > 0) {
+                    size = parsed;
+                }
+            }
+        }
+        return size;
+    }
+
+    private static int parseSize(String value) {
+        long multiplier = 1;
+        char unit = Character.toLowerCase(value.charAt(value.length() - 1));
+        if (unit == 'k') {
+            multiplier = 1024;
+        } else if (unit == 'm') {
+            multiplier = 1024 * 1024;
+        } else if (unit == 'g') {
+            multiplier = 1024 * 1024 * 1024;
+        }
+        if (multiplier != 1) {
+            value = value.substring(0, value.length() - 1);
+        }
+        try {
+            return (int) (Long.parseLong(value) * multiplier / (1024 * 1024));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static int getProcessors() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    private static int getMemory() {
+        return VaadinPlugin.getInstance().getPreferenceStore()
+                .getInt(PreferenceConstants.WIDGETSET_COMPILATION_MEMORY);
+    }
+
+    /**
+     * A compilation waiting for or holding a share of the budget.
+     */
+    public static class Request {
+
+        private boolean waiting = false;
+        private boolean running = false;
+        private int processors;
+        private int memory;
+        private int localWorkers;
+
+        private Request() {
+        }
+
+        /**
+         * Waits until the compilation can be started within the budget.
+         *
+         * @param workers
+         *            the number of permutation workers configured for the
+         *            compilation, or 0 to use a share of the processors
+         * @param heapSize
+         *            maximum heap of the compiler JVM in megabytes
+         * @param monitor
+         *            progress monitor used to check for cancellation
+         * @return true if the budget was acquired, false if the compilation
+         *         was canceled while waiting
+         * @throws InterruptedException
+         */
+        public boolean acquire(int workers, int heapSize,
+                IProgressMonitor monitor) throws InterruptedException {
+            synchronized (LOCK) {
+                if (!requests.contains(this)) {
+                    // released before use
+                    requests.add(this);
+                }
+                waiting = true;
+                try {
+                    while (!tryStart(workers, heapSize)) {
+                        if (monitor.isCanceled()) {
+                            return false;
+                        }
+                        // also wakes up to check for cancellation
+                        LOCK.wait(500);
+                    }
+                    return true;
+                } finally {
+                    waiting = false;
+                }
+            }
+        }
+
+        private boolean tryStart(int workers, int heapSize) {
+            // only the first waiting request may start so that large
+            // compilations are not starved by small ones
+            for (Request request : requests) {
+                if (request.waiting) {
+                    if (request != this) {
+                        return false;
+                    }
+                    break;
+                }
+            }
+
+            int totalProcessors = getProcessors();
+            int freeProcessors = totalProcessors - usedProcessors;
+            boolean idle = usedProcessors == 0 && usedMemory == 0;
+            if (!idle
+                    && (freeProcessors <= 0 || usedMemory + heapSize > getMemory())) {
+                return false;
+            }
+
+            if (workers > 0) {
+                localWorkers = workers;
+                processors = Math.min(workers, totalProcessors);
+                if (!idle && processors > freeProcessors) {
+                    return false;
+                }
+            } else {
+                // divide the processors evenly between all known
+                // compilations, leaving room for the ones not started yet
+                int share = Math.max(1, totalProcessors / requests.size());
+                localWorkers = Math.max(1, Math.min(share, freeProcessors));
+                processors = localWorkers;
+            }
+            memory = heapSize;
+            usedProcessors += processors;
+            usedMemory += memory;
+            running = true;
+            return true;
+        }
+
+        /**
+         * Returns the number of permutation workers the compilation should
+         * use. Only valid after {@link #acquire(int, int, IProgressMonitor)}.
+         */
+        public int getLocalWorkers() {
+            return localWorkers;
+        }
+
+        /**
+         * Returns the share of the budget and removes the request. Calling
+         * this more than once has no effect.
+         */
+        public void release() {
+            synchronized (LOCK) {
+                if (running) {
+                    usedProcessors -= processors;
+                    usedMemory -= memory;
+                    running = false;
+                }
+                requests.remove(this);
+                LOCK.notifyAll();
+            }
+        }
+    }
+}
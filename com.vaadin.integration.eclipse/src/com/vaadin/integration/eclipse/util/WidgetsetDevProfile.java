@@ -0,0 +1,91 @@
+package com.vaadin.integration.eclipse.util;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+
+import com.vaadin.integration.eclipse.VaadinPlugin;
+
+/**
+ * Generates the GWT modules compiled by the development profile of a
+ * widgetset.
+ *
+ * The derived module inherits the real widgetset module and restricts the
+ * compilation to a single permutation: the development browser and the
+ * default locale. It is renamed to the real module so that the output replaces
+ * the normal widgetset in the project. The derived modules are stored in the
+ * plug-in state area and only added to the classpath of the compiler, so they
+ * never end up in the project or in exported WAR files.
+ */
+public class WidgetsetDevProfile {
+
+    private static final String DEV_PROFILE_DIRECTORY = "devprofile";
+
+    private static final String MODULE_SUFFIX = "DevProfile";
+
+    private WidgetsetDevProfile() {
+    }
+
+    /**
+     * Returns the directory containing the derived modules of a project. The
+     * directory must be on the classpath of the compiler.
+     *
+     * @param project
+     * @return
+     */
+    public static File getDirectory(IProject project) {
+        return VaadinPlugin.getInstance().getStateLocation()
+                .append(DEV_PROFILE_DIRECTORY).append(project.getName())
+                .toFile();
+    }
+
+    /**
+     * Writes the development profile module for a widgetset if it does not
+     * exist or has changed.
+     *
+     * @param project
+     * @param moduleName
+     *            the real widgetset module
+     * @param userAgent
+     *            GWT user.agent value of the development browser
+     * @return the name of the module to compile
+     * @throws CoreException
+     *             if writing the module fails
+     */
+    public static String generate(IProject project, String moduleName,
+            String userAgent) throws CoreException {
+        String derivedModule = moduleName + MODULE_SUFFIX;
+        File file = new File(getDirectory(project), derivedModule.replace('.',
+                File.separatorChar) + ".gwt.xml");
+
+        StringBuilder contents = new StringBuilder();
+        contents.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        contents.append("<!-- Generated by the Vaadin Plug-in for Eclipse, do not edit -->\n");
+        contents.append("<module rename-to=\"").append(moduleName)
+                .append("\">\n");
+        contents.append("    <inherits name=\"").append(moduleName)
+                .append("\" />\n");
+        contents.append("    <set-property name=\"user.agent\" value=\"")
+                .append(userAgent).append("\" />\n");
+        contents.append("    <set-property name=\"locale\" value=\"default\" />\n");
+        contents.append("</module>\n");
+
+        try {
+            // keep the timestamp unchanged so that GWT can reuse its caches
+            if (!file.exists()
+                    || !contents.toString().equals(
+                            FileUtils.readFileToString(file, "UTF-8"))) {
+                FileUtils.writeStringToFile(file, contents.toString(),
+                        "UTF-8");
+            }
+        } catch (IOException e) {
+            throw ErrorUtil.newCoreException(
+                    "Could not write the development profile module " + file,
+                    e);
+        }
+        return derivedModule;
+    }
+}
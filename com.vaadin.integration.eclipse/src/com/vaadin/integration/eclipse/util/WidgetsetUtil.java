@@ -1,26 +1,18 @@
 package com.vaadin.integration.eclipse.util;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.JarURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
-import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
-import java.util.jar.Attributes;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
-import java.util.jar.Manifest;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
@@ -70,6 +62,10 @@ import com.vaadin.integration.eclipse.builder.WidgetsetBuildManager;
 import com.vaadin.integration.eclipse.builder.WidgetsetNature;
 import com.vaadin.integration.eclipse.consoles.CompileWidgetsetConsole;
 import com.vaadin.integration.eclipse.maven.MavenUtil;
+import com.vaadin.integration.eclipse.util.JarMetadataIndex.JarMetadata;
+import com.vaadin.integration.eclipse.util.files.GwtUnitCache;
+import com.vaadin.integration.eclipse.util.files.WidgetsetOutputCache;
+import com.vaadin.integration.eclipse.util.worker.CompilerWorkerPool;
 import com.vaadin.integration.eclipse.wizards.DirectoryManifestProvider;
 
 public class WidgetsetUtil {
@@ -79,6 +75,8 @@ public class WidgetsetUtil {
 	private static final String DEFAULT_WIDGET_SET_NAME_VAADIN6 = "com.vaadin.terminal.gwt.DefaultWidgetSet";
     public static final String DEFAULT_WIDGET_SET_NAME = "com.vaadin.DefaultWidgetSet";
 
+    private static final Object DIRTY_STATE_LOCK = new Object();
+
     /**
      * Helper method to compile a single widgetset.
      *
@@ -103,24 +101,54 @@ public class WidgetsetUtil {
     public static void compileWidgetset(IJavaProject jproject,
             String moduleName, final IProgressMonitor monitor)
                     throws CoreException, IOException, InterruptedException {
+        compileWidgetset(jproject, moduleName, null, false, monitor);
+    }
+
+    /**
+     * Compile a widgetset within the global compilation budget, see
+     * {@link #compileWidgetset(IJavaProject, String, IProgressMonitor)}.
+     *
+     * @param jproject
+     * @param moduleName
+     *            explicit widgetset module name - not null
+     * @param budgetRequest
+     *            request registered in {@link WidgetsetCompileBudget} when
+     *            compiling several widgetsets in parallel, or null to
+     *            register one now; released by this method
+     * @param production
+     *            true to compile all permutations even if the development
+     *            profile is enabled for the project, e.g. when exporting
+     * @param monitor
+     * @throws CoreException
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public static void compileWidgetset(IJavaProject jproject,
+            String moduleName, WidgetsetCompileBudget.Request budgetRequest,
+            boolean production, final IProgressMonitor monitor)
+            throws CoreException, IOException, InterruptedException {
+
+        WidgetsetCompileBudget.Request budget = budgetRequest;
+        if (budget == null) {
+            budget = WidgetsetCompileBudget.newRequest();
+        }
 
         IProject project = jproject.getProject();
 
         if (!isWidgetsetManagedByPlugin(project)) {
+            budget.release();
             return;
         }
 
         final long start = new Date().getTime();
         CompileWidgetsetConsole console = CompileWidgetsetConsole.get();
 
+        // removed also if the compilation is canceled or fails
+        File tempDir = null;
         try {
             PreferenceUtil preferences = PreferenceUtil.get(project);
             boolean verbose = preferences.isWidgetsetCompilationVerboseMode();
 
-            final long estimatedCompilationTime = preferences
-                    .getEstimatedCompilationTime();
-
-            // TODO should report progress more correctly - unknown?
             monitor.beginTask("Compiling widgetset " + moduleName
                     + " in project " + project.getName(), 100 + 10 + 4);
 
@@ -153,7 +181,6 @@ public class WidgetsetUtil {
                     .getFolder(VaadinPlugin.VAADIN_RESOURCE_DIRECTORY)
                     .getFolder("widgetsets");
 
-            File tempDir = null;
             File baseDir = new File(System.getProperty("java.io.tmpdir"));
             tempDir = new File(baseDir, "widgetset_" + moduleName
                     + UUID.randomUUID().toString());
@@ -164,10 +191,6 @@ public class WidgetsetUtil {
 
             ArrayList<String> args = buildCommonArgs(jproject, vmInstall);
 
-            if (useNewGwtCompiler) {
-                args.add("-Dgwt.persistentunitcachedir=" + tempDir);
-            }
-
             String extraJvmParams = preferences
                     .getWidgetsetCompilationExtraJvmParameters();
             if (extraJvmParams != null) {
@@ -186,18 +209,46 @@ public class WidgetsetUtil {
 	            	 args.add("-D" + propertyName + "=" + propertyValue);
 	            }
             }
+
+            if (useNewGwtCompiler) {
+                // stable location so that unchanged compilation units are
+                // reused from earlier compilations
+                args.add("-Dgwt.persistentunitcachedir="
+                        + GwtUnitCache.getDirectory(jproject, moduleName));
+            }
+
+            // compile a derived module limited to a single permutation, found
+            // on the classpath of the compiler only
+            boolean devProfile = useNewGwtCompiler && !production
+                    && preferences.isWidgetsetDevProfileEnabled();
+            String compiledModule = moduleName;
+            String userAgent = preferences.getDevelopmentUserAgent();
+            if (devProfile) {
+                compiledModule = WidgetsetDevProfile.generate(project,
+                        moduleName, userAgent);
+                int index = args.indexOf("-classpath") + 1;
+                args.set(index, WidgetsetDevProfile.getDirectory(project)
+                        .getAbsolutePath()
+                        + PlatformUtil.getClasspathSeparator()
+                        + args.get(index));
+            }
+
+            // a compiler worker is bound to the JVM arguments above
+            boolean useWorker = useNewGwtCompiler
+                    && preferences.isWidgetsetCompilerWorkerEnabled();
+            List<String> workerJvmArgs = new ArrayList<String>(args);
+
             // TODO run com.vaadin.terminal.gwt.widgetsetutils.WidgetSetBuilder
             // and com.google.gwt.dev.Compiler separately and directly if Java
             // 6, do not use WidgetsetCompiler in that case
 
-            List<String> compilerArgs = new ArrayList<String>(args);
             String compilerClass = "com.vaadin.tools.WidgetsetCompiler";
-            compilerArgs.add(compilerClass);
+            List<String> compilerParams = new ArrayList<String>();
 
             if (useNewGwtCompiler) {
-                compilerArgs.add("-war");
-                IPath projectRelativePath = wsDir.getProjectRelativePath();
-                compilerArgs.add(projectRelativePath.toString());
+                // absolute so that it also works in a compiler worker
+                compilerParams.add("-war");
+                compilerParams.add(wsDir.getLocation().toOSString());
 
                 if (!tempDir.mkdirs()) {
                     throw ErrorUtil
@@ -205,45 +256,31 @@ public class WidgetsetUtil {
                             + tempDir);
                 }
 
-                compilerArgs.add("-deploy");
-                compilerArgs.add(tempDir.getAbsolutePath());
+                compilerParams.add("-deploy");
+                compilerParams.add(tempDir.getAbsolutePath());
 
-                compilerArgs.add("-extra");
-                compilerArgs.add(tempDir.getAbsolutePath());
+                compilerParams.add("-extra");
+                compilerParams.add(tempDir.getAbsolutePath());
             } else {
-                compilerArgs.add("-out");
+                compilerParams.add("-out");
                 IPath projectRelativePath = wsDir.getProjectRelativePath();
-                compilerArgs.add(projectRelativePath.toString());
+                compilerParams.add(projectRelativePath.toString());
             }
 
             String style = preferences.getWidgetsetCompilationStyle();
             if ("DRAFT".equals(style)) {
-                compilerArgs.add("-style");
-                compilerArgs.add("PRETTY");
-                compilerArgs.add("-draftCompile");
+                compilerParams.add("-style");
+                compilerParams.add("PRETTY");
+                compilerParams.add("-draftCompile");
             } else if (!"OBF".equals(style)) {
-                compilerArgs.add("-style");
-                compilerArgs.add(style);
+                compilerParams.add("-style");
+                compilerParams.add(style);
             }
 
-            String parallelism = preferences
-                    .getWidgetsetCompilationParallelism();
-            if ("".equals(parallelism)) {
-                compilerArgs.add("-localWorkers");
-                compilerArgs.add(""
-                        + Runtime.getRuntime().availableProcessors());
-            } else {
-                compilerArgs.add("-localWorkers");
-                compilerArgs.add(parallelism);
-            }
-
-            if (verbose) {
-                compilerArgs.add("-logLevel");
-                compilerArgs.add("INFO");
-            } else {
-                compilerArgs.add("-logLevel");
-                compilerArgs.add("WARN");
-            }
+            // the phases logged at the INFO level are needed for progress
+            // reporting, only errors and warnings are shown if not verbose
+            compilerParams.add("-logLevel");
+            compilerParams.add("INFO");
 
             String extraParams = preferences
                     .getWidgetsetCompilationExtraParameters();
@@ -251,17 +288,75 @@ public class WidgetsetUtil {
                 String[] params = extraParams.split(" ");
                 for (String param : params) {
                     if (!"".equals(param)) {
-                        compilerArgs.add(param);
+                        compilerParams.add(param);
                     }
                 }
             }
 
-            compilerArgs.add(moduleName);
+            // reuse an earlier result if none of the inputs have changed -
+            // Vaadin 6 widgetsets also depend on server side classes, so
+            // they are always compiled
+            String cacheKey = null;
+            File outputDir = wsDir.getFolder(moduleName).getLocation()
+                    .toFile();
+            if (useNewGwtCompiler && WidgetsetOutputCache.isEnabled()
+                    && ProjectUtil.isVaadin7(project)) {
+                monitor.subTask("Checking for a previously compiled widgetset "
+                        + moduleName);
+                cacheKey = WidgetsetOutputCache.computeKey(jproject,
+                        moduleName, getClasspath(args), Arrays.asList(style,
+                                extraParams != null ? extraParams : "",
+                                devProfile ? userAgent : ""));
+                if (WidgetsetOutputCache.restore(cacheKey, outputDir)) {
+                    wsDir.refreshLocal(IResource.DEPTH_INFINITE,
+                            new SubProgressMonitor(monitor, 1));
+                    setWidgetsetClean(project, moduleName);
+                    preferences.setWidgetsetDevProfileOutput(moduleName,
+                            devProfile);
+                    preferences.persistLater();
+                    CompilerProblems.replaceMarkers(jproject,
+                            CompilerProblems.WIDGETSET_MARKER, moduleName,
+                            new ArrayList<CompilerProblems.Problem>());
+
+                    console.clearConsole();
+                    MessageConsoleStream stream = console.newMessageStream();
+                    stream.println();
+                    stream.println("Widgetset " + moduleName
+                            + " restored from the widgetset cache");
+                    return;
+                }
+            }
+
+            // wait for processors and memory if other widgetsets are being
+            // compiled
+            int workers = 0;
+            String parallelism = preferences
+                    .getWidgetsetCompilationParallelism();
+            if (!"".equals(parallelism)) {
+                try {
+                    workers = Integer.parseInt(parallelism.trim());
+                } catch (NumberFormatException e) {
+                    ErrorUtil.logInfo("Invalid widgetset compilation "
+                            + "parallelism " + parallelism + ", using default");
+                }
+            }
+            monitor.subTask("Waiting for other widgetset compilations");
+            if (!budget.acquire(workers,
+                    WidgetsetCompileBudget.getHeapSize(args), monitor)) {
+                return;
+            }
+            compilerParams.add("-localWorkers");
+            compilerParams.add(String.valueOf(budget.getLocalWorkers()));
 
-            final String[] argsStr = new String[compilerArgs.size()];
-            compilerArgs.toArray(argsStr);
+            compilerParams.add(compiledModule);
+
+            List<String> compilerArgs = new ArrayList<String>(args);
+            compilerArgs.add(compilerClass);
+            compilerArgs.addAll(compilerParams);
 
-            ProcessBuilder b = new ProcessBuilder(argsStr);
+            // a long classpath is passed in a file if the JVM supports it
+            ProcessBuilder b = new ProcessBuilder(ClasspathArgumentFile.apply(
+                    compilerArgs, vmInstall));
 
             IPath projectLocation = project.getLocation();
             b.directory(projectLocation.toFile());
@@ -271,50 +366,21 @@ public class WidgetsetUtil {
             monitor.subTask("Compiling widgetset " + moduleName
                     + " in project " + project.getName());
 
-            final Process exec = b.start();
-
+            Process exec = null;
+            if (useWorker) {
+                exec = CompilerWorkerPool.start(vmInstall,
+                        projectLocation.toFile(), workerJvmArgs,
+                        compilerClass, compilerParams);
+            }
+            if (exec == null) {
+                exec = b.start();
+            }
             // compilation now on
-
-            Thread t = new Thread() {
-                @Override
-                public synchronized void run() {
-                    int i = 0;
-                    int estimatedProgress = 0;
-
-                    while (true) {
-                        if (monitor.isCanceled()) {
-                            exec.destroy();
-                            break;
-                        } else {
-                            try {
-                                i++;
-                                // give user a feeling that something is
-                                // happening
-
-                                int currentProgress = (int) (100 * (new Date()
-                                .getTime() - start) / estimatedCompilationTime);
-                                if (currentProgress > 100) {
-                                    currentProgress = 100;
-                                }
-                                int delta = currentProgress - estimatedProgress;
-
-                                monitor.worked(delta);
-                                estimatedProgress += delta;
-                                Thread.sleep(300);
-                            } catch (InterruptedException e) {
-                                // STOP executing monitoring cancelled state,
-                                // compilation finished
-                                break;
-                            }
-                        }
-                    }
-                }
-            };
-
-            t.start();
-
             console.setCompilationProcess(exec);
-            console.clearConsole();
+            if (WidgetsetCompileBudget.getRunningCount() <= 1) {
+                // do not hide the output of parallel compilations
+                console.clearConsole();
+            }
 
             MessageConsoleStream newMessageStream = console.newMessageStream();
 
@@ -331,6 +397,10 @@ public class WidgetsetUtil {
             } else {
                 newMessageStream.println("Compiling widgetset " + moduleName);
             }
+            if (devProfile) {
+                newMessageStream.println("Using the development profile: "
+                        + userAgent + " and the default locale only");
+            }
 
             // print warning if not using project VM (#8037)
             if (!vmInstall.equals(JavaRuntime.getVMInstall(jproject))) {
@@ -339,18 +409,35 @@ public class WidgetsetUtil {
                         + "When using GWT 2.4, select JRE 1.6 or later in project preferences.");
             }
 
-            InputStream inputStream = exec.getInputStream();
-            BufferedReader bufferedReader2 = new BufferedReader(
-                    new InputStreamReader(inputStream));
-            String line = null;
-            while ((line = bufferedReader2.readLine()) != null) {
-                newMessageStream.println(line);
-            }
-
+            GwtCompilerOutputHandler outputHandler = new GwtCompilerOutputHandler(
+                    monitor, 100, verbose);
+            CompilerOutputPump pump = new CompilerOutputPump(exec,
+                    newMessageStream, outputHandler, monitor);
+            pump.start();
             int waitFor = exec.waitFor();
+            pump.waitFor();
 
-            // end thread (possibly still) polling for cancelled status
-            t.interrupt();
+            if (CompilerWorkerPool.isWorkerFailure(exec)
+                    && !monitor.isCanceled()) {
+                newMessageStream
+                        .println("The compiler worker stopped unexpectedly, "
+                                + "compiling in a separate JVM");
+                exec = b.start();
+                console.setCompilationProcess(exec);
+                outputHandler = new GwtCompilerOutputHandler(monitor, 100,
+                        verbose);
+                pump = new CompilerOutputPump(exec, newMessageStream,
+                        outputHandler, monitor);
+                pump.start();
+                waitFor = exec.waitFor();
+                pump.waitFor();
+            }
+            outputHandler.done();
+            if (!monitor.isCanceled()) {
+                CompilerProblems.replaceMarkers(jproject,
+                        CompilerProblems.WIDGETSET_MARKER, moduleName,
+                        outputHandler.getProblems());
+            }
 
             if (waitFor == 0) {
                 // Remove the widgetset-aux and widgetset-deploy dirs if they
@@ -365,17 +452,18 @@ public class WidgetsetUtil {
                 deployDir.refreshLocal(0, new SubProgressMonitor(monitor, 1));
                 deployDir.delete(true, null);
 
-                if (tempDir != null && tempDir.exists()) {
-                    deleteFolder(tempDir);
-                }
-
                 // Refresh the workspace so the new widgetset is visible
                 wsDir.refreshLocal(IResource.DEPTH_INFINITE,
                         new SubProgressMonitor(monitor, 1));
-                setWidgetsetDirty(project, false);
+                if (cacheKey != null) {
+                    WidgetsetOutputCache.store(cacheKey, outputDir);
+                }
+                setWidgetsetClean(project, moduleName);
+                preferences.setWidgetsetDevProfileOutput(moduleName,
+                        devProfile);
                 preferences.setWidgetsetCompilationTimeEstimate(new Date()
                 .getTime() - start);
-                preferences.persist();
+                preferences.persistLater();
 
                 if (!verbose) {
                     // if verbose, the output of the compiler is sufficient
@@ -383,7 +471,8 @@ public class WidgetsetUtil {
                 }
             } else {
                 // cancelled or failed
-                setWidgetsetDirty(project, true);
+                markWidgetsetsDirty(project,
+                        Collections.singletonList(moduleName));
 
                 if (monitor.isCanceled()) {
                     newMessageStream.println("Widgetset compilation canceled");
@@ -392,10 +481,21 @@ public class WidgetsetUtil {
                 }
             }
         } finally {
+            budget.release();
             monitor.done();
             console.setCompilationProcess(null);
+            if (tempDir != null && tempDir.exists()) {
+                deleteFolder(tempDir);
+            }
+        }
+    }
 
+    private static String getClasspath(List<String> jvmArgs) {
+        int index = jvmArgs.indexOf("-classpath");
+        if (index >= 0 && index + 1 < jvmArgs.size()) {
+            return jvmArgs.get(index + 1);
         }
+        return "";
     }
 
     public static void deleteFolder(File folder) {
@@ -617,47 +717,20 @@ public class WidgetsetUtil {
 
     private static boolean isNeededForWidgetsetCompilation(IPath path) {
         if ("jar".equals(path.getFileExtension())) {
-            JarFile jarFile = null;
             try {
-                URL url = path.toFile().toURL();
-                url = new URL("jar:" + url.toExternalForm() + "!/");
-                JarURLConnection conn = (JarURLConnection) url.openConnection();
-                jarFile = conn.getJarFile();
-                Manifest manifest = jarFile.getManifest();
-                if (manifest == null) {
+                JarMetadata metadata = JarMetadataIndex.get(path.toFile());
+                if (!metadata.hasManifest()) {
                     return false;
                 }
-                Attributes mainAttributes = manifest.getMainAttributes();
-                if (mainAttributes
-                        .getValue(DirectoryManifestProvider.MANIFEST_VAADIN_WIDGETSETS) != null) {
-                    return true;
-                } else {
-                    // not a vaadin widget package, but it still may be
-                    // needed for referenced gwt modules (cant know for
-                    // sure)
-
-                    Enumeration<JarEntry> entries = jarFile.entries();
-                    while (entries.hasMoreElements()) {
-                        JarEntry nextElement = entries.nextElement();
-                        if (nextElement.getName().endsWith(".gwt.xml")) {
-                            return true;
-                        }
-                    }
-                }
-            } catch (MalformedURLException e) {
-                String message = (jarFile == null) ? "Could not access JAR when searching for widgetsets"
-                        : "Could not access JAR when searching for widgetsets: "
-                        + jarFile.getName();
-                ErrorUtil
-                .handleBackgroundException(IStatus.WARNING, message, e);
+                // not a vaadin widget package, but it still may be needed for
+                // referenced gwt modules (cant know for sure)
+                return metadata
+                        .getAttribute(DirectoryManifestProvider.MANIFEST_VAADIN_WIDGETSETS) != null
+                        || metadata.hasGwtModules();
             } catch (IOException e) {
-                String message = (jarFile == null) ? "Could not access JAR when searching for widgetsets"
-                        : "Could not access JAR when searching for widgetsets: "
-                        + jarFile.getName();
-                ErrorUtil
-                .handleBackgroundException(IStatus.WARNING, message, e);
-            } finally {
-                VaadinPluginUtil.closeJarFile(jarFile);
+                ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                        "Could not access JAR when searching for widgetsets: "
+                                + path, e);
             }
         } else {
             // detect if is jar and if in widgetset
@@ -724,6 +797,9 @@ public class WidgetsetUtil {
      * Mark the widgetset(s) in a project as clean (compiled) or dirty (modified
      * since the last compilation).
      *
+     * The state is saved to the project preferences in the background, see
+     * {@link PreferenceUtil#persistLater()}.
+     *
      * TODO note: keeping track of this in preferences might be an issue with
      * version control etc. if versioning preferences
      *
@@ -731,18 +807,121 @@ public class WidgetsetUtil {
      * @param dirty
      */
     public static void setWidgetsetDirty(IProject project, boolean dirty) {
-        // save as string so that the value false does not result in the entry
-        // being removed - we use three states: true, false and absent
-        PreferenceUtil preferences = PreferenceUtil.get(project);
-        preferences.setWidgetsetDirty(dirty);
-        try {
-            preferences.persist();
-        } catch (IOException e) {
-            ErrorUtil.handleBackgroundException(IStatus.WARNING,
-                    "Could not save widgetset compilation state for project "
-                            + project.getName(), e);
+        synchronized (DIRTY_STATE_LOCK) {
+            // save as string so that the value false does not result in the
+            // entry being removed - we use three states: true, false and
+            // absent
+            PreferenceUtil preferences = PreferenceUtil.get(project);
+            preferences.setWidgetsetDirty(dirty);
+            // applies to all widgetsets
+            preferences.setDirtyWidgetsets(null);
+        }
+        schedulePersist(project);
+    }
+
+    /**
+     * Marks some widgetset modules of a project as dirty without changing the
+     * state of the other widgetsets.
+     *
+     * @param project
+     * @param modules
+     *            widgetset module names
+     */
+    public static void markWidgetsetsDirty(IProject project,
+            Collection<String> modules) {
+        if (modules.isEmpty()) {
+            return;
         }
+        synchronized (DIRTY_STATE_LOCK) {
+            PreferenceUtil preferences = PreferenceUtil.get(project);
+            List<String> dirtyModules = preferences.getDirtyWidgetsets();
+            if (Boolean.TRUE.equals(preferences.isWidgetsetDirty())) {
+                if (dirtyModules == null
+                        || dirtyModules.containsAll(modules)) {
+                    // nothing new
+                    return;
+                }
+            } else {
+                dirtyModules = null;
+            }
+            Set<String> newModules = new TreeSet<String>(modules);
+            if (dirtyModules != null) {
+                newModules.addAll(dirtyModules);
+            }
+            preferences.setWidgetsetDirty(true);
+            preferences.setDirtyWidgetsets(newModules);
+        }
+        schedulePersist(project);
+    }
+
+    /**
+     * Marks a single widgetset module of a project as clean after it has been
+     * compiled. The project is clean once all its widgetsets are.
+     *
+     * @param project
+     * @param moduleName
+     *            widgetset module name
+     */
+    public static void setWidgetsetClean(IProject project, String moduleName) {
+        synchronized (DIRTY_STATE_LOCK) {
+            PreferenceUtil preferences = PreferenceUtil.get(project);
+            if (!Boolean.TRUE.equals(preferences.isWidgetsetDirty())) {
+                preferences.setWidgetsetDirty(false);
+                preferences.setDirtyWidgetsets(null);
+            } else {
+                List<String> dirtyModules = preferences.getDirtyWidgetsets();
+                if (dirtyModules == null) {
+                    // all were dirty, keep the other ones dirty
+                    try {
+                        dirtyModules = findWidgetSets(JavaCore.create(project),
+                                new NullProgressMonitor());
+                    } catch (CoreException e) {
+                        ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                                "Could not list widgetsets of project "
+                                        + project.getName(), e);
+                        dirtyModules = new ArrayList<String>();
+                    }
+                }
+                dirtyModules = new ArrayList<String>(dirtyModules);
+                dirtyModules.remove(moduleName);
+                if (dirtyModules.isEmpty()) {
+                    preferences.setWidgetsetDirty(false);
+                    preferences.setDirtyWidgetsets(null);
+                } else {
+                    preferences.setDirtyWidgetsets(dirtyModules);
+                }
+            }
+        }
+        schedulePersist(project);
+    }
+
+    /**
+     * Returns the widgetset modules of a project that have been modified since
+     * their last compilation.
+     *
+     * @param jproject
+     * @param monitor
+     * @return dirty widgetset module names, empty if the project is clean
+     * @throws CoreException
+     */
+    public static List<String> getDirtyWidgetsets(IJavaProject jproject,
+            IProgressMonitor monitor) throws CoreException {
+        IProject project = jproject.getProject();
+        if (!isWidgetsetDirty(project)) {
+            return new ArrayList<String>();
+        }
+        List<String> widgetsets = findWidgetSets(jproject, monitor);
+        List<String> dirtyModules = PreferenceUtil.get(project)
+                .getDirtyWidgetsets();
+        if (dirtyModules != null) {
+            // modules may have been removed since they were marked
+            widgetsets.retainAll(dirtyModules);
+        }
+        return widgetsets;
+    }
 
+    private static void schedulePersist(IProject project) {
+        PreferenceUtil.get(project).persistLater();
     }
 
     /**
@@ -0,0 +1,302 @@
+package com.vaadin.integration.eclipse.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.jar.Manifest;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the central directory of a ZIP (JAR) file without creating an entry
+ * object for each file in the archive.
+ *
+ * Only the end of central directory record and the central directory are
+ * read, memory mapped except on Windows where a mapped file cannot be
+ * replaced until the mapping is garbage collected. Single entries such as the
+ * manifest are read and inflated on demand. Archives in the ZIP64 format or
+ * split into several files are not supported, for them {@link #open(File)}
+ * returns null and the archive should be read with {@link java.util.jar.JarFile}.
+ */
+public class ZipCentralDirectory {
+
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int END_LENGTH = 22;
+    private static final int MAXIMUM_COMMENT_LENGTH = 0xffff;
+
+    private static final int ENTRY_SIGNATURE = 0x02014b50;
+    private static final int ENTRY_LENGTH = 46;
+
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_LENGTH = 30;
+
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    private static final String MANIFEST_NAME = "META-INF/MANIFEST.MF";
+
+    private final RandomAccessFile file;
+    private final ByteBuffer directory;
+    private final int entryCount;
+
+    private ZipCentralDirectory(RandomAccessFile file, ByteBuffer directory,
+            int entryCount) {
+        this.file = file;
+        this.directory = directory;
+        this.entryCount = entryCount;
+    }
+
+    /**
+     * Opens a ZIP file and reads its central directory. The file must be
+     * closed with {@link #close()}.
+     *
+     * @param zip
+     * @return the central directory or null if the format of the file is not
+     *         supported
+     * @throws IOException
+     *             if the file cannot be read or is not a ZIP file
+     */
+    public static ZipCentralDirectory open(File zip) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(zip, "r");
+        boolean success = false;
+        try {
+            FileChannel channel = file.getChannel();
+            long size = channel.size();
+            int tailLength = (int) Math.min(size, END_LENGTH
+                    + MAXIMUM_COMMENT_LENGTH);
+            ByteBuffer tail = read(channel, size - tailLength, tailLength);
+
+            int end = -1;
+            for (int i = tailLength - END_LENGTH; i >= 0; --i) {
+                if (tail.getInt(i) == END_SIGNATURE) {
+                    end = i;
+                    break;
+                }
+            }
+            if (end < 0) {
+                throw new IOException("Not a ZIP file: " + zip);
+            }
+
+            int disk = tail.getShort(end + 4) & 0xffff;
+            int directoryDisk = tail.getShort(end + 6) & 0xffff;
+            int entryCount = tail.getShort(end + 10) & 0xffff;
+            long directorySize = tail.getInt(end + 12) & 0xffffffffL;
+            long directoryOffset = tail.getInt(end + 16) & 0xffffffffL;
+            if (disk != 0 || directoryDisk != 0 || entryCount == 0xffff
+                    || directorySize == 0xffffffffL
+                    || directoryOffset == 0xffffffffL) {
+                // split archive or ZIP64
+                return null;
+            }
+            if (directoryOffset + directorySize > size) {
+                throw new IOException("Invalid central directory in " + zip);
+            }
+
+            ZipCentralDirectory result = new ZipCentralDirectory(file, read(
+                    channel, directoryOffset, (int) directorySize),
+                    entryCount);
+            success = true;
+            return result;
+        } finally {
+            if (!success) {
+                file.close();
+            }
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position,
+            int length) throws IOException {
+        ByteBuffer buffer;
+        if ("windows".equals(PlatformUtil.getPlatform())) {
+            buffer = ByteBuffer.allocate(length);
+            readFully(channel, buffer, position);
+            buffer.flip();
+        } else {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                    length);
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    /**
+     * Returns true if the name of some entry ends with the given suffix.
+     *
+     * @param suffix
+     *            ASCII suffix such as ".gwt.xml"
+     * @return
+     * @throws IOException
+     *             if the central directory is corrupt
+     */
+    public boolean hasEntryWithSuffix(String suffix) throws IOException {
+        byte[] suffixBytes = suffix.getBytes("US-ASCII");
+        int position = 0;
+        for (int i = 0; i < entryCount; ++i) {
+            int nameLength = getNameLength(position);
+            if (nameLength >= suffixBytes.length
+                    && regionMatches(position + ENTRY_LENGTH + nameLength
+                            - suffixBytes.length, suffixBytes)) {
+                return true;
+            }
+            position = nextEntry(position, nameLength);
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if there is an entry with the given name.
+     *
+     * @param name
+     * @return
+     * @throws IOException
+     *             if the central directory is corrupt
+     */
+    public boolean hasEntry(String name) throws IOException {
+        return findEntry(name) >= 0;
+    }
+
+    /**
+     * Returns the uncompressed contents of an entry.
+     *
+     * @param name
+     * @return the contents or null if there is no such entry
+     * @throws IOException
+     */
+    public byte[] readEntry(String name) throws IOException {
+        int position = findEntry(name);
+        return position >= 0 ? readData(position) : null;
+    }
+
+    // position of the central directory entry or -1
+    private int findEntry(String name) throws IOException {
+        byte[] nameBytes = name.getBytes("UTF-8");
+        int position = 0;
+        for (int i = 0; i < entryCount; ++i) {
+            int nameLength = getNameLength(position);
+            if (nameLength == nameBytes.length
+                    && regionMatches(position + ENTRY_LENGTH, nameBytes)) {
+                return position;
+            }
+            position = nextEntry(position, nameLength);
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the manifest of a JAR file.
+     *
+     * @return the manifest or null if there is none
+     * @throws IOException
+     */
+    public Manifest getManifest() throws IOException {
+        byte[] manifest = readEntry(MANIFEST_NAME);
+        if (manifest == null) {
+            return null;
+        }
+        return new Manifest(new ByteArrayInputStream(manifest));
+    }
+
+    /**
+     * Closes the file.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private int getNameLength(int position) throws IOException {
+        if (position + ENTRY_LENGTH > directory.limit()
+                || directory.getInt(position) != ENTRY_SIGNATURE) {
+            throw new IOException("Invalid central directory entry");
+        }
+        return directory.getShort(position + 28) & 0xffff;
+    }
+
+    private int nextEntry(int position, int nameLength) {
+        int extraLength = directory.getShort(position + 30) & 0xffff;
+        int commentLength = directory.getShort(position + 32) & 0xffff;
+        return position + ENTRY_LENGTH + nameLength + extraLength
+                + commentLength;
+    }
+
+    private boolean regionMatches(int position, byte[] bytes) {
+        if (position + bytes.length > directory.limit()) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; ++i) {
+            if (directory.get(position + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte[] readData(int position) throws IOException {
+        int method = directory.getShort(position + 10) & 0xffff;
+        long compressedSize = directory.getInt(position + 20) & 0xffffffffL;
+        long size = directory.getInt(position + 24) & 0xffffffffL;
+        long localOffset = directory.getInt(position + 42) & 0xffffffffL;
+        if (compressedSize > Integer.MAX_VALUE || size > Integer.MAX_VALUE) {
+            throw new IOException("Entry too large");
+        }
+
+        FileChannel channel = file.getChannel();
+        ByteBuffer local = ByteBuffer.allocate(LOCAL_LENGTH).order(
+                ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, local, localOffset);
+        if (local.getInt(0) != LOCAL_SIGNATURE) {
+            throw new IOException("Invalid local entry header");
+        }
+        // the name and extra field of the local header may differ from the
+        // central directory
+        long dataOffset = localOffset + LOCAL_LENGTH
+                + (local.getShort(26) & 0xffff) + (local.getShort(28) & 0xffff);
+        ByteBuffer data = ByteBuffer.allocate((int) compressedSize);
+        readFully(channel, data, dataOffset);
+
+        if (method == STORED) {
+            return data.array();
+        } else if (method != DEFLATED) {
+            throw new IOException("Unsupported compression method " + method);
+        }
+        Inflater inflater = new Inflater(true);
+        try {
+            // the inflater needs an extra byte at the end of raw deflate data
+            byte[] input = new byte[(int) compressedSize + 1];
+            System.arraycopy(data.array(), 0, input, 0, (int) compressedSize);
+            inflater.setInput(input);
+            byte[] result = new byte[(int) size];
+            int length = 0;
+            while (length < result.length && !inflater.finished()) {
+                int inflated = inflater.inflate(result, length, result.length
+                        - length);
+                if (inflated == 0 && inflater.needsInput()) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != result.length) {
+                throw new IOException("Truncated entry");
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid compressed entry: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer,
+            long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+    }
+}
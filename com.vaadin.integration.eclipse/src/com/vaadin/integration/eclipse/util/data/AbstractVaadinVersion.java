@@ -5,10 +5,13 @@ import com.vaadin.integration.eclipse.util.files.LocalFileManager.FileType;
 public abstract class AbstractVaadinVersion {
 
     private String versionNumber;
+    private VersionNumber version;
     private FileType type;
 
     public AbstractVaadinVersion(String versionNumber, FileType type) {
         this.versionNumber = versionNumber;
+        version = versionNumber != null ? VersionNumber
+                .valueOf(versionNumber) : null;
         this.type = type;
     }
 
@@ -16,6 +19,16 @@ public abstract class AbstractVaadinVersion {
         return versionNumber;
     }
 
+    /**
+     * Returns the parsed version number for comparisons.
+     * 
+     * @return the parsed version number or null if the version number is
+     *         null
+     */
+    public VersionNumber getVersion() {
+        return version;
+    }
+
     public FileType getType() {
         return type;
     }
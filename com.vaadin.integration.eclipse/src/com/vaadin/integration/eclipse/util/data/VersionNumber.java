@@ -0,0 +1,290 @@
+package com.vaadin.integration.eclipse.util.data;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A parsed Vaadin version number such as "7.5.3", "7.6.0.beta2" or
+ * "7.5-SNAPSHOT".
+ *
+ * Instances are immutable and shared: {@link #valueOf(String)} parses each
+ * version string only once, so comparing versions does not split or match
+ * strings again.
+ */
+public final class VersionNumber implements Comparable<VersionNumber> {
+
+    // version strings come from a limited set of releases, this only
+    // protects against unexpected input
+    private static final int MAXIMUM_CACHE_SIZE = 10000;
+
+    private static final ConcurrentMap<String, VersionNumber> cache = new ConcurrentHashMap<String, VersionNumber>();
+
+    private static final String SNAPSHOT = "SNAPSHOT";
+
+    private final String version;
+
+    // numeric value of each "."-separated part or null if not numeric, the
+    // text of each part without a snapshot suffix and whether it had one
+    private final Integer[] numbers;
+    private final String[] texts;
+    private final boolean[] snapshots;
+
+    // "."-separated parts without a "-" suffix, for comparing prefixes
+    private final String[] baseParts;
+
+    private final int major;
+    private final int minor;
+    private final int maintenance;
+    private final String qualifier;
+    private final boolean stable;
+
+    private VersionNumber(String version) {
+        this.version = version;
+
+        String[] parts = version.split("\\.");
+        numbers = new Integer[parts.length];
+        texts = new String[parts.length];
+        snapshots = new boolean[parts.length];
+        for (int i = 0; i < parts.length; ++i) {
+            String part = parts[i];
+            // "-SNAPSHOT" or ".SNAPSHOT"
+            if (part.endsWith(SNAPSHOT)) {
+                snapshots[i] = true;
+                part = part.substring(0,
+                        Math.max(0, part.length() - SNAPSHOT.length() - 1));
+            }
+            texts[i] = part;
+            numbers[i] = parseInt(part);
+        }
+
+        baseParts = version.replaceAll("-.*", "").split("\\.");
+
+        String[] fields = version.split("[.-]");
+        Integer majorNumber = parseInt(fields[0]);
+        Integer minorNumber = fields.length > 1 ? parseInt(fields[1]) : null;
+        Integer maintenanceNumber = fields.length > 2 ? parseInt(fields[2])
+                : null;
+        major = majorNumber != null ? majorNumber : -1;
+        minor = majorNumber != null && minorNumber != null ? minorNumber : -1;
+        maintenance = minor >= 0 && maintenanceNumber != null ? maintenanceNumber
+                : -1;
+        int qualifierStart = 0;
+        for (int i = 0; i < fields.length && qualifierStart < version.length(); ++i) {
+            if (i < 3 && parseInt(fields[i]) != null) {
+                qualifierStart += fields[i].length() + 1;
+            } else {
+                break;
+            }
+        }
+        qualifier = qualifierStart < version.length() ? version
+                .substring(qualifierStart) : null;
+
+        stable = version.matches("[0-9]+\\.[0-9]+\\.[0-9]+");
+    }
+
+    private static Integer parseInt(String value) {
+        // avoid exceptions for the common non-numeric parts
+        if (value.length() == 0 || value.length() > 9) {
+            return null;
+        }
+        for (int i = 0; i < value.length(); ++i) {
+            if (!Character.isDigit(value.charAt(i))) {
+                return null;
+            }
+        }
+        return Integer.valueOf(value);
+    }
+
+    /**
+     * Returns the parsed version for a version string.
+     *
+     * @param version
+     *            a version string, not null
+     * @return
+     */
+    public static VersionNumber valueOf(String version) {
+        VersionNumber result = cache.get(version);
+        if (result == null) {
+            if (cache.size() >= MAXIMUM_CACHE_SIZE) {
+                cache.clear();
+            }
+            result = new VersionNumber(version);
+            VersionNumber existing = cache.putIfAbsent(version, result);
+            if (existing != null) {
+                result = existing;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the major version or -1 if it is not numeric.
+     */
+    public int getMajor() {
+        return major;
+    }
+
+    /**
+     * Returns the minor version or -1 if it or the major version is not
+     * numeric.
+     */
+    public int getMinor() {
+        return minor;
+    }
+
+    /**
+     * Returns the maintenance version or -1 if it is not numeric or missing.
+     */
+    public int getMaintenance() {
+        return maintenance;
+    }
+
+    /**
+     * Returns the rest of the version after the numeric major, minor and
+     * maintenance versions, such as "beta2" or "SNAPSHOT", or null if there
+     * is nothing else.
+     */
+    public String getQualifier() {
+        return qualifier;
+    }
+
+    /**
+     * Returns true if this is a stable version, as opposed to snapshots and
+     * alphas, betas and release candidates. A stable version contains only
+     * three numeric values separated by dots.
+     */
+    public boolean isStable() {
+        return stable;
+    }
+
+    /**
+     * Returns true if this version is at least the given major and minor
+     * version. False is returned if the version cannot be determined.
+     *
+     * @param majorVersion
+     * @param minorVersion
+     * @return
+     */
+    public boolean isAtLeast(int majorVersion, int minorVersion) {
+        if (minor < 0) {
+            return false;
+        }
+        return major > majorVersion
+                || (major == majorVersion && minor >= minorVersion);
+    }
+
+    /**
+     * Checks whether this and another version are the same when taking into
+     * account only the given number of "."-separated parts, ignoring any "-"
+     * suffix such as "-SNAPSHOT".
+     *
+     * @param other
+     * @param digits
+     *            how many parts are compared
+     * @return false also if either version has fewer parts
+     */
+    public boolean isSameVersion(VersionNumber other, int digits) {
+        if (baseParts.length < digits || other.baseParts.length < digits) {
+            return false;
+        }
+        for (int i = 0; i < digits; ++i) {
+            if (!baseParts[i].equals(other.baseParts[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the first "."-separated parts of the version without any "-"
+     * suffix, or null if the version has fewer parts. Versions for which
+     * {@link #isSameVersion(VersionNumber, int)} is true have the same
+     * prefix.
+     *
+     * @param digits
+     * @return
+     */
+    public String getPrefix(int digits) {
+        if (baseParts.length < digits) {
+            return null;
+        }
+        StringBuilder prefix = new StringBuilder();
+        for (int i = 0; i < digits; ++i) {
+            if (i > 0) {
+                prefix.append('.');
+            }
+            prefix.append(baseParts[i]);
+        }
+        return prefix.toString();
+    }
+
+    /**
+     * Compares versions part by part. Numeric parts are compared as numbers
+     * and are newer than non-numeric parts such as "beta1", a missing part is
+     * compared as 0, and a snapshot is older than the same version without
+     * the snapshot suffix. If no other difference is found, a stable version
+     * is newer than a prerelease, and other versions are ordered by their
+     * strings so that only equal versions compare as the same.
+     *
+     * @return a positive number, zero or a negative number depending on
+     *         whether this version is newer than, as new as, or older than
+     *         the other version
+     */
+    public int compareTo(VersionNumber other) {
+        int partCount = Math.max(numbers.length, other.numbers.length);
+        for (int i = 0; i < partCount; ++i) {
+            int comparePart = comparePart(i, other);
+            if (comparePart != 0) {
+                return comparePart;
+            }
+        }
+        if (stable != other.stable) {
+            return stable ? 1 : -1;
+        }
+        return version.compareTo(other.version);
+    }
+
+    private int comparePart(int i, VersionNumber other) {
+        Integer number1 = getNumber(i);
+        Integer number2 = other.getNumber(i);
+        if (number1 != null && number2 != null) {
+            // positive if this part is larger or the parts are otherwise the
+            // same but the other is a snapshot
+            return 2 * (number1 - number2)
+                    + ((other.isSnapshot(i) ? 1 : 0) - (isSnapshot(i) ? 1 : 0));
+        } else if (number1 != null) {
+            // the other part is probably a prerelease
+            return 1;
+        } else if (number2 != null) {
+            return -1;
+        } else {
+            // both non-numeric such as alpha, beta
+            return texts[i].compareTo(other.texts[i]);
+        }
+    }
+
+    // missing parts are 0, e.g. "7.5" is "7.5.0"
+    private Integer getNumber(int i) {
+        return i < numbers.length ? numbers[i] : Integer.valueOf(0);
+    }
+
+    private boolean isSnapshot(int i) {
+        return i < snapshots.length && snapshots[i];
+    }
+
+    @Override
+    public int hashCode() {
+        return version.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof VersionNumber
+                && ((VersionNumber) obj).version.equals(version);
+    }
+
+    @Override
+    public String toString() {
+        return version;
+    }
+}
@@ -0,0 +1,643 @@
+package com.vaadin.integration.eclipse.util.files;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import com.vaadin.integration.eclipse.VaadinPlugin;
+import com.vaadin.integration.eclipse.preferences.PreferenceConstants;
+import com.vaadin.integration.eclipse.util.ErrorUtil;
+import com.vaadin.integration.eclipse.util.HashUtil;
+import com.vaadin.integration.eclipse.util.PlatformUtil;
+import com.vaadin.integration.eclipse.util.ProjectDependencyManager;
+import com.vaadin.integration.eclipse.util.VaadinPluginUtil;
+
+/**
+ * Deduplicates and garbage collects the files downloaded by the plug-in.
+ *
+ * Downloaded Vaadin and GWT JARs stay in their versioned directories, so they
+ * are found as before, but identical files are hard links to a single copy
+ * in a content addressed store named by the SHA-1 of the contents. On file
+ * systems without hard links the files are kept as they are.
+ *
+ * A ledger next to the store records the hash of each downloaded file and
+ * which workspace projects reference it on their classpath or use it as their
+ * GWT JARs. The ledger is only read and written while holding a file lock,
+ * as other Eclipse instances may update it concurrently. When the
+ * downloads grow over the size configured in the preferences, files that no
+ * project has referenced for a while are removed, least recently used first,
+ * and so are store entries no longer linked from any version directory. The
+ * download directory is shared by all workspaces of an installation, so
+ * references from other workspaces are trusted until they expire. Nothing is
+ * removed if the ledger could not be read, and files found in the download
+ * directory but missing from the ledger are kept at least until the next
+ * collection.
+ */
+public class ArtifactStore {
+
+    private static final String STORE_DIRECTORY = "store";
+
+    private static final String LEDGER_FILE = "store-ledger.json";
+
+    private static final String LOCK_FILE = "store-ledger.lock";
+
+    // references from a workspace are trusted this long after the workspace
+    // was last seen using the file
+    private static final long REFERENCE_EXPIRY = 30L * 24 * 60 * 60 * 1000;
+
+    private static final long GC_INTERVAL = 24L * 60 * 60 * 1000;
+
+    // first collection after startup, not to slow down opening the workspace
+    private static final long GC_DELAY = 10L * 60 * 1000;
+
+    // after downloads
+    private static final long GC_AFTER_DOWNLOAD_DELAY = 60L * 1000;
+
+    private static final Object LOCK = new Object();
+
+    private static final GcJob GC_JOB = new GcJob();
+
+    private ArtifactStore() {
+    }
+
+    /**
+     * An entry of the ledger: a file in the download directory.
+     */
+    private static class Artifact {
+        private String sha1;
+        private long size;
+        private long lastUsed;
+        // "<workspace location>|<project name>" to time last seen
+        private final Map<String, Long> references = new HashMap<String, Long>();
+
+        private boolean isReferenced(long now) {
+            for (Long seen : references.values()) {
+                if (now - seen < REFERENCE_EXPIRY) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Adds newly downloaded files to the store, replacing them with links to
+     * an identical earlier download if there is one. A garbage collection is
+     * scheduled afterwards.
+     *
+     * @param files
+     *            files in the download directory
+     */
+    public static void add(Collection<File> files) {
+        synchronized (LOCK) {
+            FileLock lock = null;
+            try {
+                File downloadDir = LocalFileManager.getDownloadDirectory()
+                        .toFile();
+                lock = lockLedger(downloadDir);
+                Map<String, Artifact> ledger = readLedger(downloadDir);
+                if (ledger == null) {
+                    // the files are added by the next collection, which
+                    // rewrites the ledger
+                    return;
+                }
+                for (File file : files) {
+                    if (file.isFile()) {
+                        add(downloadDir, ledger, file);
+                    }
+                }
+                writeLedger(downloadDir, ledger);
+            } catch (IOException e) {
+                ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                        "Could not add downloaded files to the local store", e);
+            } catch (CoreException e) {
+                ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                        "Could not add downloaded files to the local store", e);
+            } finally {
+                unlockLedger(lock);
+            }
+        }
+        GC_JOB.schedule(GC_AFTER_DOWNLOAD_DELAY);
+    }
+
+    private static void add(File downloadDir, Map<String, Artifact> ledger,
+            File file) throws IOException {
+        String sha1 = HashUtil.hash(file, "SHA-1");
+        File blob = new File(new File(downloadDir, STORE_DIRECTORY), sha1);
+        blob.getParentFile().mkdirs();
+        if (blob.isFile()) {
+            if (blob.length() == file.length()) {
+                // replace the file with a link to the earlier copy
+                File temp = new File(file.getParentFile(), file.getName()
+                        + "." + UUID.randomUUID() + ".tmp");
+                if (createLink(temp, blob) && !replace(file, temp)) {
+                    // the original file is kept as it is
+                    temp.delete();
+                }
+            }
+        } else {
+            createLink(blob, file);
+        }
+
+        Artifact artifact = new Artifact();
+        artifact.sha1 = sha1;
+        artifact.size = file.length();
+        artifact.lastUsed = System.currentTimeMillis();
+        ledger.put(getKey(downloadDir, file), artifact);
+    }
+
+    /**
+     * Replaces a file with another file in the same directory. If the file
+     * cannot be replaced, it is left as it was.
+     *
+     * @return true if the file was replaced
+     */
+    private static boolean replace(File file, File replacement)
+            throws IOException {
+        if (replacement.renameTo(file)) {
+            return true;
+        }
+        if (!"windows".equals(PlatformUtil.getPlatform())) {
+            return false;
+        }
+        // renaming over an existing file fails on Windows
+        File backup = new File(file.getParentFile(), file.getName() + "."
+                + UUID.randomUUID() + ".bak");
+        if (!file.renameTo(backup)) {
+            return false;
+        }
+        if (replacement.renameTo(file)) {
+            backup.delete();
+            return true;
+        }
+        if (!backup.renameTo(file)) {
+            FileUtils.copyFile(backup, file);
+            backup.delete();
+        }
+        return false;
+    }
+
+    private static String getKey(File downloadDir, File file) {
+        return new Path(file.getAbsolutePath()).makeRelativeTo(
+                new Path(downloadDir.getAbsolutePath())).toPortableString();
+    }
+
+    /**
+     * Creates a hard link using java.nio.file when running on Java 7 or
+     * later.
+     *
+     * @return true if the link was created
+     */
+    private static boolean createLink(File link, File existing) {
+        try {
+            Method toPath = File.class.getMethod("toPath");
+            Class<?> pathClass = Class.forName("java.nio.file.Path");
+            Method createLink = Class.forName("java.nio.file.Files")
+                    .getMethod("createLink", pathClass, pathClass);
+            createLink.invoke(null, toPath.invoke(link),
+                    toPath.invoke(existing));
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        } catch (NoSuchMethodException e) {
+            return false;
+        } catch (IllegalAccessException e) {
+            return false;
+        } catch (InvocationTargetException e) {
+            // e.g. file system without hard links
+            return false;
+        }
+    }
+
+    /**
+     * Starts the periodic garbage collection of downloaded files.
+     */
+    public static void start() {
+        GC_JOB.schedule(GC_DELAY);
+    }
+
+    /**
+     * Stops the garbage collection.
+     */
+    public static void stop() {
+        GC_JOB.cancel();
+    }
+
+    /**
+     * Updates the references of the workspace projects in the ledger and
+     * removes unreferenced downloads when over the size quota.
+     */
+    private static void collect(IProgressMonitor monitor) throws CoreException,
+            IOException {
+        File downloadDir = LocalFileManager.getDownloadDirectory().toFile();
+        Set<String> used = getReferencedFiles(downloadDir);
+        long now = System.currentTimeMillis();
+
+        synchronized (LOCK) {
+            FileLock lock = lockLedger(downloadDir);
+            try {
+                collect(downloadDir, used, now, monitor);
+            } finally {
+                unlockLedger(lock);
+            }
+        }
+    }
+
+    private static void collect(File downloadDir, Set<String> used, long now,
+            IProgressMonitor monitor) throws IOException {
+        Map<String, Artifact> ledger = readLedger(downloadDir);
+        // an unreadable ledger is rebuilt, but without the references of
+        // other workspaces nothing can be removed safely
+        boolean removeAllowed = ledger != null;
+        if (ledger == null) {
+            ledger = new HashMap<String, Artifact>();
+        }
+        // not known to be unused yet
+        Set<String> untracked = new HashSet<String>();
+        addUntrackedFiles(downloadDir, downloadDir, ledger, untracked, monitor);
+
+        String workspace = ResourcesPlugin.getWorkspace().getRoot()
+                .getLocation().toPortableString()
+                + "|";
+        Iterator<Map.Entry<String, Artifact>> entries = ledger.entrySet()
+                .iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, Artifact> entry = entries.next();
+            if (!new File(downloadDir, entry.getKey()).isFile()) {
+                entries.remove();
+                continue;
+            }
+            Artifact artifact = entry.getValue();
+            // the references of this workspace are recomputed
+            Iterator<String> references = artifact.references.keySet()
+                    .iterator();
+            while (references.hasNext()) {
+                String reference = references.next();
+                long seen = artifact.references.get(reference);
+                if (reference.startsWith(workspace)
+                        || now - seen >= REFERENCE_EXPIRY) {
+                    references.remove();
+                }
+            }
+            for (String reference : used) {
+                if (reference.startsWith(entry.getKey() + "|")) {
+                    artifact.references.put(
+                            workspace
+                                    + reference.substring(entry.getKey()
+                                            .length() + 1), now);
+                    artifact.lastUsed = now;
+                }
+            }
+        }
+
+        if (removeAllowed && !monitor.isCanceled()) {
+            if (removeOverQuota(downloadDir, ledger, untracked, now)) {
+                LocalVersionCatalogue.invalidate();
+            }
+            removeUnlinkedBlobs(downloadDir, ledger);
+        }
+        writeLedger(downloadDir, ledger);
+    }
+
+    /**
+     * Returns the downloaded files on the classpaths of the open projects of
+     * the workspace and the GWT JARs they use, as
+     * "<ledger key>|<project name>".
+     */
+    private static Set<String> getReferencedFiles(File downloadDir) {
+        Set<String> result = new HashSet<String>();
+        IPath downloadPath = new Path(downloadDir.getAbsolutePath());
+        for (IProject project : ResourcesPlugin.getWorkspace().getRoot()
+                .getProjects()) {
+            try {
+                if (!project.isOpen()
+                        || !project.hasNature(JavaCore.NATURE_ID)) {
+                    continue;
+                }
+                IJavaProject jproject = JavaCore.create(project);
+                List<IPath> paths = new ArrayList<IPath>();
+                for (IClasspathEntry entry : jproject
+                        .getResolvedClasspath(true)) {
+                    if (entry.getEntryKind() == IClasspathEntry.CPE_LIBRARY) {
+                        paths.add(entry.getPath());
+                    }
+                }
+                // the widgetset compiler uses GWT JARs from the download
+                // directory even when they are not on the classpath
+                try {
+                    paths.add(ProjectDependencyManager
+                            .getGWTDevJarPath(jproject));
+                    paths.add(VaadinPluginUtil.getGWTUserJarPath(jproject));
+                } catch (CoreException e) {
+                    // no Vaadin JAR, no GWT JARs used
+                }
+                for (IPath path : paths) {
+                    if (path != null && downloadPath.isPrefixOf(path)) {
+                        result.add(path.makeRelativeTo(downloadPath)
+                                .toPortableString() + "|" + project.getName());
+                    }
+                }
+            } catch (JavaModelException e) {
+                // closed or broken project, its references expire
+            } catch (CoreException e) {
+                // closed or broken project, its references expire
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds files downloaded before the store existed or missing from an
+     * unreadable ledger.
+     *
+     * @param added
+     *            the keys of the added files are added here
+     */
+    private static void addUntrackedFiles(File downloadDir, File dir,
+            Map<String, Artifact> ledger, Set<String> added,
+            IProgressMonitor monitor) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (monitor.isCanceled()) {
+                return;
+            }
+            if (file.isDirectory()) {
+                if (!(dir.equals(downloadDir) && STORE_DIRECTORY.equals(file
+                        .getName()))) {
+                    addUntrackedFiles(downloadDir, file, ledger, added,
+                            monitor);
+                }
+            } else if (file.getName().endsWith(".jar")
+                    && !ledger.containsKey(getKey(downloadDir, file))) {
+                add(downloadDir, ledger, file);
+                added.add(getKey(downloadDir, file));
+            }
+        }
+    }
+
+    /**
+     * @param keep
+     *            keys of files that must not be removed
+     * @return true if any files were removed
+     */
+    private static boolean removeOverQuota(File downloadDir,
+            Map<String, Artifact> ledger, Set<String> keep, long now) {
+        long quota = 1024L * 1024L * VaadinPlugin.getInstance()
+                .getPreferenceStore()
+                .getInt(PreferenceConstants.DOWNLOAD_STORE_SIZE);
+
+        // linked files take space only once
+        Map<String, Long> blobSizes = new HashMap<String, Long>();
+        Map<String, Integer> linkCounts = new HashMap<String, Integer>();
+        for (Artifact artifact : ledger.values()) {
+            blobSizes.put(artifact.sha1, artifact.size);
+            Integer count = linkCounts.get(artifact.sha1);
+            linkCounts.put(artifact.sha1, count == null ? 1 : count + 1);
+        }
+        long total = 0;
+        for (Long size : blobSizes.values()) {
+            total += size;
+        }
+        if (total <= quota) {
+            return false;
+        }
+
+        List<Map.Entry<String, Artifact>> candidates = new ArrayList<Map.Entry<String, Artifact>>();
+        for (Map.Entry<String, Artifact> entry : ledger.entrySet()) {
+            if (!entry.getValue().isReferenced(now)
+                    && !keep.contains(entry.getKey())) {
+                candidates.add(entry);
+            }
+        }
+        // least recently used first
+        Collections.sort(candidates,
+                new Comparator<Map.Entry<String, Artifact>>() {
+                    public int compare(Map.Entry<String, Artifact> o1,
+                            Map.Entry<String, Artifact> o2) {
+                        long diff = o1.getValue().lastUsed
+                                - o2.getValue().lastUsed;
+                        return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+                    }
+                });
+        boolean removed = false;
+        for (Map.Entry<String, Artifact> entry : candidates) {
+            if (total <= quota) {
+                break;
+            }
+            File file = new File(downloadDir, entry.getKey());
+            if (!file.delete()) {
+                continue;
+            }
+            // remove the empty version directory
+            file.getParentFile().delete();
+            ledger.remove(entry.getKey());
+            removed = true;
+            Artifact artifact = entry.getValue();
+            int count = linkCounts.get(artifact.sha1) - 1;
+            linkCounts.put(artifact.sha1, count);
+            if (count == 0) {
+                total -= artifact.size;
+            }
+        }
+        return removed;
+    }
+
+    private static void removeUnlinkedBlobs(File downloadDir,
+            Map<String, Artifact> ledger) {
+        Set<String> linked = new HashSet<String>();
+        for (Artifact artifact : ledger.values()) {
+            linked.add(artifact.sha1);
+        }
+        File[] blobs = new File(downloadDir, STORE_DIRECTORY).listFiles();
+        if (blobs == null) {
+            return;
+        }
+        for (File blob : blobs) {
+            if (!linked.contains(blob.getName())) {
+                blob.delete();
+            }
+        }
+    }
+
+    /**
+     * Reads the ledger. The caller must hold the ledger lock.
+     *
+     * @return the ledger, empty if it does not exist yet, or null if it could
+     *         not be read
+     */
+    private static Map<String, Artifact> readLedger(File downloadDir) {
+        Map<String, Artifact> ledger = new HashMap<String, Artifact>();
+        File file = new File(downloadDir, LEDGER_FILE);
+        if (!file.isFile()) {
+            return ledger;
+        }
+        try {
+            JSONObject root = (JSONObject) new JSONParser().parse(FileUtils
+                    .readFileToString(file, "UTF-8"));
+            for (Object item : root.entrySet()) {
+                Map.Entry<?, ?> entry = (Map.Entry<?, ?>) item;
+                JSONObject json = (JSONObject) entry.getValue();
+                Artifact artifact = new Artifact();
+                artifact.sha1 = (String) json.get("sha1");
+                artifact.size = (Long) json.get("size");
+                artifact.lastUsed = (Long) json.get("lastUsed");
+                JSONObject references = (JSONObject) json.get("references");
+                for (Object reference : references.entrySet()) {
+                    Map.Entry<?, ?> ref = (Map.Entry<?, ?>) reference;
+                    artifact.references.put((String) ref.getKey(),
+                            (Long) ref.getValue());
+                }
+                ledger.put((String) entry.getKey(), artifact);
+            }
+        } catch (IOException e) {
+            ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                    "Could not read the download ledger", e);
+            return null;
+        } catch (ParseException e) {
+            ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                    "Could not read the download ledger", e);
+            return null;
+        } catch (RuntimeException e) {
+            // e.g. missing or unexpected values in an edited file
+            ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                    "Could not read the download ledger", e);
+            return null;
+        }
+        return ledger;
+    }
+
+    /**
+     * Locks the ledger against concurrent updates from other Eclipse
+     * instances sharing the download directory, waiting for the lock if
+     * necessary.
+     *
+     * @return the lock to release with {@link #unlockLedger(FileLock)}
+     * @throws IOException
+     */
+    private static FileLock lockLedger(File downloadDir) throws IOException {
+        downloadDir.mkdirs();
+        RandomAccessFile file = new RandomAccessFile(new File(downloadDir,
+                LOCK_FILE), "rw");
+        try {
+            return file.getChannel().lock();
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    private static void unlockLedger(FileLock lock) {
+        if (lock == null) {
+            return;
+        }
+        try {
+            lock.release();
+        } catch (IOException e) {
+            // released when the channel is closed
+        } finally {
+            try {
+                lock.channel().close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * Writes the ledger. The caller must hold the ledger lock.
+     */
+    @SuppressWarnings("unchecked")
+    private static void writeLedger(File downloadDir,
+            Map<String, Artifact> ledger) throws IOException {
+        JSONObject root = new JSONObject();
+        for (Map.Entry<String, Artifact> entry : ledger.entrySet()) {
+            Artifact artifact = entry.getValue();
+            JSONObject json = new JSONObject();
+            json.put("sha1", artifact.sha1);
+            json.put("size", artifact.size);
+            json.put("lastUsed", artifact.lastUsed);
+            JSONObject references = new JSONObject();
+            references.putAll(artifact.references);
+            json.put("references", references);
+            root.put(entry.getKey(), json);
+        }
+        // other workspaces may be reading the ledger
+        File temp = new File(downloadDir, LEDGER_FILE + "."
+                + UUID.randomUUID() + ".tmp");
+        FileUtils.writeStringToFile(temp, root.toJSONString(), "UTF-8");
+        File file = new File(downloadDir, LEDGER_FILE);
+        if (!temp.renameTo(file)) {
+            // Windows does not replace files on rename
+            file.delete();
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                throw new IOException("Could not write " + file);
+            }
+        }
+    }
+
+    /**
+     * Collects the unused downloaded files periodically.
+     */
+    private static class GcJob extends Job {
+
+        public GcJob() {
+            super("Removing unused downloaded libraries");
+            setUser(false);
+            setSystem(true);
+        }
+
+        @Override
+        protected IStatus run(IProgressMonitor monitor) {
+            try {
+                collect(monitor);
+            } catch (CoreException e) {
+                ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                        "Could not remove unused downloaded libraries", e);
+            } catch (IOException e) {
+                ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                        "Could not remove unused downloaded libraries", e);
+            }
+            if (monitor.isCanceled()) {
+                return Status.CANCEL_STATUS;
+            }
+            schedule(GC_INTERVAL);
+            return Status.OK_STATUS;
+        }
+    }
+}
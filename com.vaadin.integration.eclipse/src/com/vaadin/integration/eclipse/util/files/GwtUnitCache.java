@@ -0,0 +1,223 @@
+package com.vaadin.integration.eclipse.util.files;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.core.IJavaProject;
+
+import com.vaadin.integration.eclipse.VaadinPlugin;
+import com.vaadin.integration.eclipse.util.ErrorUtil;
+import com.vaadin.integration.eclipse.util.ProjectUtil;
+import com.vaadin.integration.eclipse.util.VersionUtil;
+
+/**
+ * Persistent GWT unit cache directories of widgetset compilations.
+ *
+ * Each widgetset module of a project gets a stable directory in the plug-in
+ * state area so that the GWT compiler can reuse the compilation units of
+ * earlier compilations and only translate the changed ones. A directory is
+ * emptied when the GWT or Vaadin version of the project changes, removed when
+ * the project is deleted and pruned when it has not been used for a while.
+ */
+public class GwtUnitCache {
+
+    private static final String CACHE_DIRECTORY = "gwt-unitcache";
+
+    // file in a module cache directory recording the versions it was built
+    // with
+    private static final String VERSION_FILE = ".versions";
+
+    // module cache directories not used for this long are removed
+    private static final long MAXIMUM_AGE = 30L * 24 * 60 * 60 * 1000;
+
+    private static final long PRUNE_INTERVAL = 24L * 60 * 60 * 1000;
+
+    // first pruning after startup, not to slow down opening the workspace
+    private static final long PRUNE_DELAY = 10L * 60 * 1000;
+
+    private static final PruneJob PRUNE_JOB = new PruneJob();
+
+    // set when the plug-in stops so that the prune job does not reschedule
+    private static volatile boolean stopped = false;
+
+    private GwtUnitCache() {
+    }
+
+    /**
+     * Returns the unit cache directory of a widgetset module, creating it if
+     * necessary. If the directory was used with another GWT or Vaadin version,
+     * its contents are removed first.
+     *
+     * @param jproject
+     *            the project containing the widgetset
+     * @param moduleName
+     *            widgetset module name
+     * @return unit cache directory
+     * @throws CoreException
+     *             if the directory could not be created
+     */
+    public static File getDirectory(IJavaProject jproject, String moduleName)
+            throws CoreException {
+        File dir = getProjectDirectory(jproject.getProject().getName());
+        dir = new File(dir, moduleName);
+
+        String versions = getVersions(jproject);
+        File versionFile = new File(dir, VERSION_FILE);
+        try {
+            if (dir.isDirectory()
+                    && (!versionFile.isFile() || !versions.equals(FileUtils
+                            .readFileToString(versionFile, "UTF-8")))) {
+                // units compiled by another GWT version are useless and may
+                // confuse the compiler
+                FileUtils.deleteDirectory(dir);
+            }
+            if (!dir.isDirectory()) {
+                if (!dir.mkdirs()) {
+                    throw ErrorUtil.newCoreException("Could not create directory "
+                            + dir);
+                }
+                FileUtils.writeStringToFile(versionFile, versions, "UTF-8");
+            }
+        } catch (IOException e) {
+            throw ErrorUtil.newCoreException(
+                    "Could not prepare the GWT unit cache directory " + dir, e);
+        }
+        // used by the pruning to detect stale directories
+        dir.setLastModified(System.currentTimeMillis());
+        return dir;
+    }
+
+    private static String getVersions(IJavaProject jproject)
+            throws CoreException {
+        IPath vaadinJar = ProjectUtil.findProjectVaadinJarPath(jproject);
+        return "gwt=" + ProjectUtil.getRequiredGWTVersionForProject(jproject)
+                + "\nvaadin=" + VersionUtil.getVaadinVersionFromJar(vaadinJar)
+                + "\n";
+    }
+
+    private static File getRootDirectory() {
+        return VaadinPlugin.getInstance().getStateLocation()
+                .append(CACHE_DIRECTORY).toFile();
+    }
+
+    private static File getProjectDirectory(String projectName) {
+        return new File(getRootDirectory(), projectName);
+    }
+
+    /**
+     * Removes the unit cache directories of a project.
+     */
+    public static void delete(String projectName) {
+        File dir = getProjectDirectory(projectName);
+        if (dir.exists()) {
+            try {
+                FileUtils.deleteDirectory(dir);
+            } catch (IOException e) {
+                ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                        "Could not delete the GWT unit cache of project "
+                                + projectName, e);
+            }
+        }
+    }
+
+    /**
+     * Starts maintaining the unit cache directories: the caches of deleted
+     * projects are removed and old caches are pruned periodically.
+     */
+    public static void start() {
+        ResourcesPlugin.getWorkspace().addResourceChangeListener(
+                ProjectDeleteListener.INSTANCE,
+                IResourceChangeEvent.PRE_DELETE);
+        stopped = false;
+        PRUNE_JOB.schedule(PRUNE_DELAY);
+    }
+
+    /**
+     * Stops maintaining the unit cache directories.
+     */
+    public static void stop() {
+        ResourcesPlugin.getWorkspace().removeResourceChangeListener(
+                ProjectDeleteListener.INSTANCE);
+        stopped = true;
+        PRUNE_JOB.cancel();
+    }
+
+    private static class ProjectDeleteListener implements
+            IResourceChangeListener {
+
+        private static final ProjectDeleteListener INSTANCE = new ProjectDeleteListener();
+
+        public void resourceChanged(IResourceChangeEvent event) {
+            if (event.getResource() instanceof IProject) {
+                delete(event.getResource().getName());
+            }
+        }
+    }
+
+    /**
+     * Removes the unit caches of projects that no longer exist in the
+     * workspace and of modules that have not been compiled for a long time.
+     */
+    private static class PruneJob extends Job {
+
+        public PruneJob() {
+            super("Pruning GWT unit caches");
+            setUser(false);
+            setSystem(true);
+        }
+
+        @Override
+        protected IStatus run(IProgressMonitor monitor) {
+            File[] projectDirs = getRootDirectory().listFiles();
+            if (projectDirs != null) {
+                long now = System.currentTimeMillis();
+                for (File projectDir : projectDirs) {
+                    if (monitor.isCanceled() || stopped) {
+                        return Status.CANCEL_STATUS;
+                    }
+                    prune(projectDir, now);
+                }
+            }
+            if (!stopped) {
+                schedule(PRUNE_INTERVAL);
+            }
+            return Status.OK_STATUS;
+        }
+
+        private void prune(File projectDir, long now) {
+            try {
+                IProject project = ResourcesPlugin.getWorkspace().getRoot()
+                        .getProject(projectDir.getName());
+                if (!project.exists()) {
+                    FileUtils.deleteDirectory(projectDir);
+                    return;
+                }
+                File[] moduleDirs = projectDir.listFiles();
+                if (moduleDirs == null) {
+                    return;
+                }
+                for (File moduleDir : moduleDirs) {
+                    if (now - moduleDir.lastModified() > MAXIMUM_AGE) {
+                        FileUtils.deleteDirectory(moduleDir);
+                    }
+                }
+            } catch (IOException e) {
+                ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                        "Could not prune the GWT unit cache " + projectDir, e);
+            } catch (IllegalArgumentException e) {
+                // not a valid project name, not created by this class
+            }
+        }
+    }
+}
@@ -1,24 +1,13 @@
 package com.vaadin.integration.eclipse.util.files;
 
-import java.io.File;
 import java.io.IOException;
 import java.net.URL;
-import java.text.DecimalFormat;
-import java.text.ParseException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.SortedMap;
-import java.util.TreeMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import javax.swing.text.NumberFormatter;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.FileLocator;
 import org.eclipse.core.runtime.IPath;
-import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.Platform;
 
@@ -26,7 +15,6 @@ import com.vaadin.integration.eclipse.VaadinPlugin;
 import com.vaadin.integration.eclipse.util.ErrorUtil;
 import com.vaadin.integration.eclipse.util.LegacyUtil;
 import com.vaadin.integration.eclipse.util.PlatformUtil;
-import com.vaadin.integration.eclipse.util.VersionUtil;
 import com.vaadin.integration.eclipse.util.data.LocalVaadinVersion;
 
 /**
@@ -38,10 +26,6 @@ import com.vaadin.integration.eclipse.util.data.LocalVaadinVersion;
  */
 public class LocalFileManager {
 
-    // this is used to extract version number parts for sorting
-    // this pattern does not filter out old versions
-    private static final String VAADIN_VERSION_PART_PATTERN = "([0-9]*)\\.([0-9])\\.(.+)";
-
     /**
      * Directory where additional GWT dependencies are stored (as
      * <dir>/<gwtVersion>/<file.jar>
@@ -258,79 +242,12 @@ public class LocalFileManager {
      */
     public static List<LocalVaadinVersion> getLocalVaadinVersions(
             boolean includeEarlyVaadin7) throws CoreException {
-        NumberFormatter nf = new NumberFormatter(new DecimalFormat("000"));
-
-        // the key is only used internally for sorting
-        SortedMap<String, LocalVaadinVersion> versions = new TreeMap<String, LocalVaadinVersion>();
-
         try {
-            for (FileType type : FileType.vaadinReleaseTypes()) {
-                File downloadDirectory = getDownloadDirectory(type).toFile();
-
-                if (!downloadDirectory.exists()) {
-                    // ignore and continue with next directory
-                    continue;
-                }
-
-                File[] files = downloadDirectory.listFiles();
-                Pattern pattern = Pattern.compile("^"
-                        + VAADIN_VERSION_PART_PATTERN + "$");
-                for (File jarDirectory : files) {
-                    String name = jarDirectory.getName();
-
-                    Matcher m = pattern.matcher(name);
-                    if (m.matches()) {
-                        try {
-                            int major = Integer.parseInt(m.group(1));
-                            if (major > 6 && !includeEarlyVaadin7) {
-                                continue;
-                            }
-                            int minor = Integer.parseInt(m.group(2));
-                            // the third component may be other than an int
-                            String revision = m.group(3);
-                            String key = nf.valueToString(major)
-                                    + nf.valueToString(minor);
-                            // make sure integers are sorted before other
-                            // strings
-                            if (revision.matches("[0-9]+")) {
-                                Integer revInt = Integer.parseInt(revision);
-                                key += "2" + nf.valueToString(revInt);
-                            } else if (revision.matches("[0-9].*")) {
-                                // #3579 this is primarily for 6.2 nightly
-                                // builds
-                                key += "1" + revision;
-                            } else {
-                                key += "0" + revision;
-                            }
-                            LocalVaadinVersion version = new LocalVaadinVersion(
-                                    type,
-                                    name,
-                                    new Path(jarDirectory.getAbsolutePath()
-                                            + Path.SEPARATOR
-                                            + VersionUtil
-                                                    .getVaadinJarFilename(name)));
-                            versions.put(key, version);
-                        } catch (ParseException pe) {
-                            // log and ignore
-                            ErrorUtil.handleBackgroundException(IStatus.INFO,
-                                    "Failed to parse the Vaadin version number "
-                                            + name, pe);
-                        }
-                    }
-                }
-            }
+            return LocalVersionCatalogue.getVersions(includeEarlyVaadin7);
         } catch (Exception e) {
             throw ErrorUtil.newCoreException(
                     "Failed to list local Vaadin versions", e);
         }
-
-        List<LocalVaadinVersion> versionList = new ArrayList<LocalVaadinVersion>(
-                versions.values());
-
-        // return latest version first
-        Collections.reverse(versionList);
-
-        return versionList;
     }
 
     /**
@@ -349,15 +266,7 @@ public class LocalFileManager {
             // optimization - no need to get the list
             return null;
         }
-        List<LocalVaadinVersion> versions = getLocalVaadinVersions(true);
-        for (LocalVaadinVersion version : versions) {
-            if (version.getVersionNumber().equals(versionString)) {
-                return version;
-            }
-        }
-
-        // not found
-        return null;
+        return LocalVersionCatalogue.getVersion(versionString);
     }
 
     /**
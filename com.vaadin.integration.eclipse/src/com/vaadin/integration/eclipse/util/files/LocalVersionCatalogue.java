@@ -0,0 +1,339 @@
+package com.vaadin.integration.eclipse.util.files;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Path;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import com.vaadin.integration.eclipse.util.ErrorUtil;
+import com.vaadin.integration.eclipse.util.VersionUtil;
+import com.vaadin.integration.eclipse.util.data.LocalVaadinVersion;
+import com.vaadin.integration.eclipse.util.files.LocalFileManager.FileType;
+
+/**
+ * Catalogue of the Vaadin versions downloaded to the local file store.
+ *
+ * The download directories are listed only once: the catalogue is saved in
+ * the download directory together with the modification times of the
+ * directories of each release type, and is kept up to date in memory when
+ * versions are downloaded. The saved catalogue is trusted as long as the
+ * directory modification times match, so listing the local versions in
+ * wizards and property pages does not read the directories again.
+ */
+public class LocalVersionCatalogue {
+
+    private static final String CATALOGUE_FILE = "local-versions.json";
+
+    // increment when the saved catalogue changes
+    private static final long FORMAT_VERSION = 1;
+
+    // this is used to extract version number parts for sorting
+    // this pattern does not filter out old versions
+    private static final Pattern VERSION_PATTERN = Pattern
+            .compile("^([0-9]*)\\.([0-9])\\.(.+)$");
+
+    private static final Pattern NUMBER_PATTERN = Pattern.compile("[0-9]+");
+
+    // local versions, latest first
+    private static List<Entry> entries = null;
+
+    private LocalVersionCatalogue() {
+    }
+
+    /**
+     * A local version with its version number parsed for sorting.
+     */
+    private static class Entry implements Comparable<Entry> {
+        private final LocalVaadinVersion version;
+        private final int major;
+        private final int minor;
+        // integer revisions are sorted after other revisions starting with a
+        // digit (#3579, 6.2 nightly builds), which are after the rest
+        private final int revisionRank;
+        private final int revisionNumber;
+        private final String revision;
+
+        private Entry(LocalVaadinVersion version, int major, int minor,
+                String revision) {
+            this.version = version;
+            this.major = major;
+            this.minor = minor;
+            this.revision = revision;
+            if (NUMBER_PATTERN.matcher(revision).matches()
+                    && revision.length() < 10) {
+                revisionRank = 2;
+                revisionNumber = Integer.parseInt(revision);
+            } else {
+                revisionRank = Character.isDigit(revision.charAt(0)) ? 1 : 0;
+                revisionNumber = 0;
+            }
+        }
+
+        // latest first
+        public int compareTo(Entry other) {
+            if (major != other.major) {
+                return major > other.major ? -1 : 1;
+            }
+            if (minor != other.minor) {
+                return minor > other.minor ? -1 : 1;
+            }
+            if (revisionRank != other.revisionRank) {
+                return revisionRank > other.revisionRank ? -1 : 1;
+            }
+            if (revisionNumber != other.revisionNumber) {
+                return revisionNumber > other.revisionNumber ? -1 : 1;
+            }
+            return other.revision.compareTo(revision);
+        }
+    }
+
+    /**
+     * Returns the locally cached Vaadin versions, sorted with the latest
+     * version first.
+     *
+     * @param includeEarlyVaadin7
+     *            if true, single-JAR early Vaadin 7 alphas and betas are also
+     *            listed
+     * @return
+     * @throws CoreException
+     */
+    public static synchronized List<LocalVaadinVersion> getVersions(
+            boolean includeEarlyVaadin7) throws CoreException {
+        List<LocalVaadinVersion> result = new ArrayList<LocalVaadinVersion>();
+        for (Entry entry : getEntries()) {
+            if (includeEarlyVaadin7 || entry.major <= 6) {
+                result.add(entry.version);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a locally cached Vaadin version.
+     *
+     * @param versionNumber
+     * @return the version or null if it has not been downloaded
+     * @throws CoreException
+     */
+    public static synchronized LocalVaadinVersion getVersion(
+            String versionNumber) throws CoreException {
+        for (Entry entry : getEntries()) {
+            if (entry.version.getVersionNumber().equals(versionNumber)) {
+                return entry.version;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds a downloaded version to the catalogue.
+     *
+     * @param type
+     *            release type
+     * @param versionNumber
+     * @throws CoreException
+     */
+    public static synchronized void add(FileType type, String versionNumber)
+            throws CoreException {
+        List<Entry> current = getEntries();
+        Entry entry = createEntry(type, versionNumber);
+        if (entry == null) {
+            return;
+        }
+        List<Entry> updated = new ArrayList<Entry>(current.size() + 1);
+        for (Entry existing : current) {
+            if (!existing.version.getVersionNumber().equals(versionNumber)) {
+                updated.add(existing);
+            }
+        }
+        updated.add(entry);
+        Collections.sort(updated);
+        entries = updated;
+        save();
+    }
+
+    /**
+     * Makes the catalogue list the download directories again on next use,
+     * e.g. after downloaded files have been removed.
+     */
+    public static synchronized void invalidate() {
+        entries = null;
+        try {
+            new File(LocalFileManager.getDownloadDirectory().toFile(),
+                    CATALOGUE_FILE).delete();
+        } catch (CoreException e) {
+            // nothing saved
+        }
+    }
+
+    private static List<Entry> getEntries() throws CoreException {
+        if (entries == null) {
+            entries = load();
+            if (entries == null) {
+                entries = scan();
+                save();
+            }
+        }
+        return entries;
+    }
+
+    private static Entry createEntry(FileType type, String versionNumber)
+            throws CoreException {
+        Matcher m = VERSION_PATTERN.matcher(versionNumber);
+        if (!m.matches()) {
+            return null;
+        }
+        try {
+            // the third component may be other than an int
+            return new Entry(new LocalVaadinVersion(type, versionNumber,
+                    new Path(LocalFileManager
+                            .getVersionedDownloadDirectory(type,
+                                    versionNumber).toFile().getAbsolutePath()
+                            + Path.SEPARATOR
+                            + VersionUtil.getVaadinJarFilename(versionNumber))),
+                    Integer.parseInt(m.group(1)), Integer.parseInt(m
+                            .group(2)), m.group(3));
+        } catch (NumberFormatException e) {
+            // log and ignore
+            ErrorUtil.handleBackgroundException(IStatus.INFO,
+                    "Failed to parse the Vaadin version number "
+                            + versionNumber, e);
+            return null;
+        }
+    }
+
+    /**
+     * Lists the download directories of all release types.
+     */
+    private static List<Entry> scan() throws CoreException {
+        // a version in several directories is listed with the last type
+        Map<String, Entry> versions = new HashMap<String, Entry>();
+        for (FileType type : FileType.vaadinReleaseTypes()) {
+            File[] files = LocalFileManager.getDownloadDirectory(type)
+                    .toFile().listFiles();
+            if (files == null) {
+                continue;
+            }
+            for (File jarDirectory : files) {
+                Entry entry = createEntry(type, jarDirectory.getName());
+                if (entry != null) {
+                    versions.put(jarDirectory.getName(), entry);
+                }
+            }
+        }
+        List<Entry> result = new ArrayList<Entry>(versions.values());
+        Collections.sort(result);
+        return result;
+    }
+
+    private static File getCatalogueFile() throws CoreException {
+        return new File(LocalFileManager.getDownloadDirectory().toFile(),
+                CATALOGUE_FILE);
+    }
+
+    /**
+     * Returns the saved catalogue or null if there is none or the download
+     * directories have changed since it was saved, e.g. by another workspace.
+     */
+    private static List<Entry> load() throws CoreException {
+        File file = getCatalogueFile();
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            JSONObject root = (JSONObject) new JSONParser().parse(FileUtils
+                    .readFileToString(file, "UTF-8"));
+            if (!Long.valueOf(FORMAT_VERSION).equals(root.get("version"))) {
+                return null;
+            }
+            JSONObject directories = (JSONObject) root.get("directories");
+            for (FileType type : FileType.vaadinReleaseTypes()) {
+                Long lastModified = (Long) directories.get(type
+                        .getReleaseType());
+                if (lastModified == null
+                        || lastModified != LocalFileManager
+                                .getDownloadDirectory(type).toFile()
+                                .lastModified()) {
+                    return null;
+                }
+            }
+            List<Entry> result = new ArrayList<Entry>();
+            for (Object item : (JSONArray) root.get("versions")) {
+                JSONObject json = (JSONObject) item;
+                Entry entry = createEntry(FileType
+                        .getVaadinReleaseType((String) json.get("type")),
+                        (String) json.get("version"));
+                if (entry != null) {
+                    result.add(entry);
+                }
+            }
+            Collections.sort(result);
+            return result;
+        } catch (IOException e) {
+            ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                    "Could not read the local Vaadin version catalogue", e);
+        } catch (ParseException e) {
+            ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                    "Could not read the local Vaadin version catalogue", e);
+        } catch (RuntimeException e) {
+            // e.g. missing or unexpected values in an edited file
+            ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                    "Could not read the local Vaadin version catalogue", e);
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void save() throws CoreException {
+        JSONObject directories = new JSONObject();
+        for (FileType type : FileType.vaadinReleaseTypes()) {
+            directories.put(type.getReleaseType(), LocalFileManager
+                    .getDownloadDirectory(type).toFile().lastModified());
+        }
+        JSONArray versions = new JSONArray();
+        for (Entry entry : entries) {
+            JSONObject json = new JSONObject();
+            json.put("type", entry.version.getType().getReleaseType());
+            json.put("version", entry.version.getVersionNumber());
+            versions.add(json);
+        }
+        JSONObject root = new JSONObject();
+        root.put("version", FORMAT_VERSION);
+        root.put("directories", directories);
+        root.put("versions", versions);
+
+        // other workspaces may be reading the catalogue
+        File file = getCatalogueFile();
+        File temp = new File(file.getParentFile(), CATALOGUE_FILE + "."
+                + UUID.randomUUID() + ".tmp");
+        try {
+            FileUtils.writeStringToFile(temp, root.toJSONString(), "UTF-8");
+            if (!temp.renameTo(file)) {
+                // Windows does not replace files on rename
+                file.delete();
+                if (!temp.renameTo(file)) {
+                    temp.delete();
+                }
+            }
+        } catch (IOException e) {
+            temp.delete();
+            ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                    "Could not save the local Vaadin version catalogue", e);
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package com.vaadin.integration.eclipse.util.files;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceVisitor;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jface.preference.IPreferenceStore;
+
+import com.vaadin.integration.eclipse.VaadinPlugin;
+import com.vaadin.integration.eclipse.builder.GwtModuleIndex;
+import com.vaadin.integration.eclipse.preferences.PreferenceConstants;
+import com.vaadin.integration.eclipse.util.ErrorUtil;
+import com.vaadin.integration.eclipse.util.HashUtil;
+import com.vaadin.integration.eclipse.util.PlatformUtil;
+
+/**
+ * Content addressed store of compiled widgetsets.
+ *
+ * A compiled widgetset is stored under a key computed from all inputs of the
+ * compilation: the module descriptors of the project and the files in the
+ * source, super-source and public folders they declare, the JARs and other
+ * folders on the compilation classpath (including add-ons, GWT and the
+ * compiled classes of the project and its dependencies) and the compiler
+ * settings. When a widgetset with the same inputs is compiled again,
+ * e.g. after switching back to another branch, the output is copied from the
+ * store instead of running the compiler.
+ *
+ * By default the store is in the Eclipse configuration area, which is shared
+ * by all workspaces opened with the same installation. Another directory, e.g.
+ * one shared by several installations, can be selected in the Vaadin
+ * preferences. The least recently used entries are removed when the store
+ * grows over the configured size.
+ */
+public class WidgetsetOutputCache {
+
+    private static final String CACHE_DIRECTORY = "widgetset-cache";
+
+    private WidgetsetOutputCache() {
+    }
+
+    /**
+     * Checks whether the widgetset output cache is enabled in the workspace
+     * preferences.
+     */
+    public static boolean isEnabled() {
+        return VaadinPlugin.getInstance().getPreferenceStore()
+                .getBoolean(PreferenceConstants.WIDGETSET_CACHE_ENABLED);
+    }
+
+    /**
+     * Returns the directory of the cache, creating it if necessary.
+     */
+    public static File getCacheDirectory() throws CoreException {
+        String location = VaadinPlugin.getInstance().getPreferenceStore()
+                .getString(PreferenceConstants.WIDGETSET_CACHE_DIRECTORY);
+        File dir;
+        if (location == null || "".equals(location.trim())) {
+            dir = LocalFileManager.getConfigurationPath()
+                    .append(CACHE_DIRECTORY).toFile();
+        } else {
+            dir = new File(location.trim());
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw ErrorUtil.newCoreException("Could not create directory "
+                    + dir);
+        }
+        return dir;
+    }
+
+    /**
+     * Computes the cache key of a widgetset compilation.
+     *
+     * @param jproject
+     *            the project containing the widgetset
+     * @param moduleName
+     *            widgetset module name
+     * @param classpath
+     *            the classpath of the compiler
+     * @param settings
+     *            compiler settings that affect the output, e.g. style
+     * @return hex encoded key
+     * @throws CoreException
+     */
+    public static String computeKey(IJavaProject jproject, String moduleName,
+            String classpath, List<String> settings) throws CoreException {
+        MessageDigest digest = HashUtil.newSha1();
+        HashUtil.update(digest, moduleName);
+        for (String setting : settings) {
+            HashUtil.update(digest, setting);
+        }
+
+        // source folders of the project are covered by hashing the client
+        // side sources below
+        Set<File> sourceFolders = new HashSet<File>();
+        for (IPackageFragmentRoot root : jproject.getPackageFragmentRoots()) {
+            if (root.getKind() == IPackageFragmentRoot.K_SOURCE
+                    && root.getResource() != null
+                    && root.getResource().getLocation() != null) {
+                sourceFolders.add(root.getResource().getLocation().toFile()
+                        .getAbsoluteFile());
+            }
+        }
+
+        // JARs (GWT, Vaadin, add-ons) are identified by their location, size
+        // and timestamp, other folders (output folders of the project and of
+        // projects it depends on, class folders) by their contents, which
+        // stay the same when the classes are compiled again
+        for (String entry : classpath.split(PlatformUtil
+                .getClasspathSeparator())) {
+            File file = new File(entry);
+            if (file.isFile()) {
+                HashUtil.update(digest, entry);
+                HashUtil.update(digest, file.length() + ":"
+                        + file.lastModified());
+            } else if (file.isDirectory()
+                    && !sourceFolders.contains(file.getAbsoluteFile())) {
+                HashUtil.update(digest, entry);
+                updateDirectory(digest, file);
+            }
+        }
+
+        // sorted so that the key does not depend on traversal order
+        final Set<IPath> clientSideFolders = GwtModuleIndex.get(
+                jproject.getProject()).getClientSideFolders();
+        final Map<String, IFile> sources = new TreeMap<String, IFile>();
+        for (IPackageFragmentRoot root : jproject.getPackageFragmentRoots()) {
+            if (root.getKind() != IPackageFragmentRoot.K_SOURCE
+                    || !(root.getResource() instanceof IContainer)) {
+                continue;
+            }
+            root.getResource().accept(new IResourceVisitor() {
+                public boolean visit(IResource resource) throws CoreException {
+                    if (resource instanceof IFile
+                            && isClientSideInput((IFile) resource,
+                                    clientSideFolders)) {
+                        sources.put(resource.getFullPath().toPortableString(),
+                                (IFile) resource);
+                    }
+                    return true;
+                }
+            });
+        }
+        for (Map.Entry<String, IFile> entry : sources.entrySet()) {
+            HashUtil.update(digest, entry.getKey());
+            try {
+                HashUtil.update(digest, entry.getValue().getContents(true));
+            } catch (IOException e) {
+                throw ErrorUtil.newCoreException("Could not read "
+                        + entry.getKey(), e);
+            }
+        }
+
+        return HashUtil.toHex(digest.digest());
+    }
+
+    private static boolean isClientSideInput(IFile file,
+            Set<IPath> clientSideFolders) {
+        if (GwtModuleIndex.isModuleFile(file)) {
+            return true;
+        }
+        for (IPath folder : clientSideFolders) {
+            if (folder.isPrefixOf(file.getFullPath())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds the relative paths and contents of the files in a directory tree
+     * to a digest, in a stable order.
+     */
+    private static void updateDirectory(MessageDigest digest, File dir)
+            throws CoreException {
+        Map<String, File> files = new TreeMap<String, File>();
+        collectFiles(dir, "", files);
+        for (Map.Entry<String, File> entry : files.entrySet()) {
+            HashUtil.update(digest, entry.getKey());
+            try {
+                HashUtil.update(digest, new FileInputStream(entry.getValue()));
+            } catch (IOException e) {
+                throw ErrorUtil.newCoreException("Could not read "
+                        + entry.getValue(), e);
+            }
+        }
+    }
+
+    private static void collectFiles(File dir, String prefix,
+            Map<String, File> files) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            String path = prefix + child.getName();
+            if (child.isDirectory()) {
+                collectFiles(child, path + "/", files);
+            } else {
+                files.put(path, child);
+            }
+        }
+    }
+
+    /**
+     * Replaces the contents of a widgetset output directory with a cached
+     * compilation result, if one exists for the key. The caller is
+     * responsible for refreshing the directory in the workspace.
+     *
+     * @param key
+     *            key from {@link #computeKey(IJavaProject, String, String, List)}
+     * @param outputDir
+     *            the directory of the compiled widgetset
+     * @return true if the output was restored from the cache
+     */
+    public static boolean restore(String key, File outputDir) {
+        try {
+            File entry = new File(getCacheDirectory(), key);
+            if (!entry.isDirectory()) {
+                return false;
+            }
+            // mark as recently used
+            entry.setLastModified(System.currentTimeMillis());
+
+            if (outputDir.exists()) {
+                FileUtils.deleteDirectory(outputDir);
+            }
+            FileUtils.copyDirectory(entry, outputDir);
+            return true;
+        } catch (IOException e) {
+            // e.g. evicted by another workspace while copying
+            ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                    "Could not restore compiled widgetset from cache", e);
+            return false;
+        } catch (CoreException e) {
+            ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                    "Could not restore compiled widgetset from cache", e);
+            return false;
+        }
+    }
+
+    /**
+     * Stores a compiled widgetset in the cache and evicts the least recently
+     * used entries if the cache has grown too large.
+     *
+     * @param key
+     *            key from {@link #computeKey(IJavaProject, String, String, List)}
+     *            computed before the compilation
+     * @param outputDir
+     *            the directory of the compiled widgetset
+     */
+    public static void store(String key, File outputDir) {
+        if (!outputDir.isDirectory()) {
+            return;
+        }
+        try {
+            File cacheDir = getCacheDirectory();
+            File entry = new File(cacheDir, key);
+            if (!entry.exists()) {
+                // copy under a temporary name so that other workspaces never
+                // see a partial entry
+                File temp = new File(cacheDir, key + ".tmp-"
+                        + UUID.randomUUID());
+                FileUtils.copyDirectory(outputDir, temp);
+                if (!temp.renameTo(entry)) {
+                    FileUtils.deleteDirectory(temp);
+                }
+            }
+            evict(cacheDir, getMaximumSize());
+        } catch (IOException e) {
+            ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                    "Could not store compiled widgetset in cache", e);
+        } catch (CoreException e) {
+            ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                    "Could not store compiled widgetset in cache", e);
+        }
+    }
+
+    private static long getMaximumSize() {
+        IPreferenceStore store = VaadinPlugin.getInstance()
+                .getPreferenceStore();
+        return store.getInt(PreferenceConstants.WIDGETSET_CACHE_SIZE) * 1024L * 1024L;
+    }
+
+    private static void evict(File cacheDir, long maximumSize)
+            throws IOException {
+        File[] entries = cacheDir.listFiles();
+        if (entries == null) {
+            return;
+        }
+        List<File> sorted = new ArrayList<File>();
+        long total = 0;
+        for (File entry : entries) {
+            if (entry.isDirectory() && !entry.getName().contains(".tmp-")) {
+                sorted.add(entry);
+                total += FileUtils.sizeOfDirectory(entry);
+            }
+        }
+        // least recently used first
+        Collections.sort(sorted, new Comparator<File>() {
+            public int compare(File o1, File o2) {
+                long diff = o1.lastModified() - o2.lastModified();
+                return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+            }
+        });
+        // always keep the newest entry
+        for (int i = 0; i < sorted.size() - 1 && total > maximumSize; ++i) {
+            File entry = sorted.get(i);
+            long size = FileUtils.sizeOfDirectory(entry);
+            FileUtils.deleteDirectory(entry);
+            total -= size;
+        }
+    }
+}
@@ -0,0 +1,386 @@
+package com.vaadin.integration.eclipse.util.network;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+import com.vaadin.integration.eclipse.util.ErrorUtil;
+import com.vaadin.integration.eclipse.util.HashUtil;
+
+/**
+ * Downloads files to the local file store.
+ *
+ * Independent files are downloaded concurrently. Each file is first written
+ * to a ".part" file next to the target and renamed when complete, so an
+ * interrupted download never leaves a truncated target behind, and the next
+ * attempt continues the partial file with an HTTP range request. If the
+ * server publishes a ".sha256" or ".sha1" checksum next to the file, the
+ * download is verified against it.
+ *
+ * Progress is reported in bytes to the monitor of the calling thread, which
+ * is also where cancellation is checked.
+ */
+public class DownloadEngine {
+
+    private static final int CONNECT_TIMEOUT = 15000;
+    private static final int READ_TIMEOUT = 60000;
+
+    private static final int MAXIMUM_THREADS = 4;
+
+    // how often the calling thread updates the monitor
+    private static final long PROGRESS_INTERVAL = 100;
+
+    // units of work of the monitor for each download
+    private static final int WORK_PER_DOWNLOAD = 1000;
+
+    private static final String PART_SUFFIX = ".part";
+
+    // checksum sidecar file suffixes and algorithms, strongest first
+    private static final String[][] CHECKSUMS = { { ".sha256", "SHA-256" },
+            { ".sha1", "SHA-1" } };
+
+    // locks of targets being downloaded, to avoid two jobs writing the same
+    // part file
+    private static final ConcurrentHashMap<String, Object> locks = new ConcurrentHashMap<String, Object>();
+
+    private DownloadEngine() {
+    }
+
+    /**
+     * A file to download.
+     */
+    public static class Download {
+        private final String url;
+        private final File target;
+
+        private volatile long length = -1;
+        private volatile long downloaded = 0;
+
+        /**
+         * @param url
+         *            URL to download
+         * @param target
+         *            file to store the download as, nothing is downloaded if
+         *            it already exists
+         */
+        public Download(String url, File target) {
+            this.url = url;
+            this.target = target;
+        }
+
+        /**
+         * Returns the file the download is stored as.
+         */
+        public File getTarget() {
+            return target;
+        }
+
+        private int getWork() {
+            if (length <= 0) {
+                return 0;
+            }
+            return (int) (WORK_PER_DOWNLOAD * Math.min(downloaded, length) / length);
+        }
+    }
+
+    /**
+     * Downloads files that do not exist yet, concurrently.
+     *
+     * @param downloads
+     * @param monitor
+     * @throws CoreException
+     *             if any of the downloads failed, after the others have
+     *             completed
+     * @throws OperationCanceledException
+     *             if the monitor was canceled
+     */
+    public static void download(List<Download> downloads,
+            IProgressMonitor monitor) throws CoreException {
+        List<Download> missing = new ArrayList<Download>();
+        for (Download download : downloads) {
+            if (!download.target.exists()) {
+                missing.add(download);
+            }
+        }
+        if (missing.isEmpty()) {
+            monitor.done();
+            return;
+        }
+
+        monitor.beginTask("Downloading", WORK_PER_DOWNLOAD * missing.size());
+        final AtomicBoolean canceled = new AtomicBoolean(false);
+        boolean interrupted = false;
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(
+                MAXIMUM_THREADS, missing.size()));
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (final Download download : missing) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws IOException {
+                        downloadFile(download, canceled);
+                        return null;
+                    }
+                }));
+            }
+
+            int reportedWork = 0;
+            IOException failure = null;
+            for (int i = 0; i < futures.size(); ++i) {
+                Future<?> future = futures.get(i);
+                while (true) {
+                    try {
+                        future.get(PROGRESS_INTERVAL, TimeUnit.MILLISECONDS);
+                        break;
+                    } catch (TimeoutException e) {
+                        // update progress below
+                    } catch (ExecutionException e) {
+                        if (failure == null) {
+                            Throwable cause = e.getCause();
+                            failure = cause instanceof IOException ? (IOException) cause
+                                    : new IOException(cause.toString());
+                        }
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                        canceled.set(true);
+                    } finally {
+                        reportedWork = reportProgress(missing, reportedWork,
+                                monitor);
+                    }
+                    if (monitor.isCanceled()) {
+                        canceled.set(true);
+                    }
+                }
+            }
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (canceled.get()) {
+                throw new OperationCanceledException();
+            }
+            if (failure != null) {
+                throw ErrorUtil.newCoreException(failure.getMessage(),
+                        failure);
+            }
+        } finally {
+            executor.shutdownNow();
+            monitor.done();
+        }
+    }
+
+    private static int reportProgress(List<Download> downloads,
+            int reportedWork, IProgressMonitor monitor) {
+        int work = 0;
+        long downloaded = 0;
+        long length = 0;
+        for (Download download : downloads) {
+            work += download.getWork();
+            downloaded += download.downloaded;
+            length += Math.max(download.length, 0);
+        }
+        if (work > reportedWork) {
+            monitor.worked(work - reportedWork);
+            reportedWork = work;
+        }
+        monitor.subTask("Downloaded " + formatSize(downloaded) + " of "
+                + formatSize(length));
+        return reportedWork;
+    }
+
+    private static String formatSize(long bytes) {
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+
+    private static void downloadFile(Download download, AtomicBoolean canceled)
+            throws IOException {
+        File target = download.target;
+        String key = target.getAbsolutePath();
+        locks.putIfAbsent(key, new Object());
+        synchronized (locks.get(key)) {
+            if (target.exists()) {
+                // downloaded by another job meanwhile
+                download.length = target.length();
+                download.downloaded = download.length;
+                return;
+            }
+            File parent = target.getParentFile();
+            if (!parent.exists()) {
+                parent.mkdirs();
+            }
+            File part = new File(parent, target.getName() + PART_SUFFIX);
+            try {
+                transfer(download, part, canceled);
+            } catch (RangeNotSatisfiableException e) {
+                // the part file is stale, start over
+                part.delete();
+                transfer(download, part, canceled);
+            }
+            try {
+                verify(download.url, part);
+            } catch (IOException e) {
+                part.delete();
+                throw e;
+            }
+            if (!part.renameTo(target)) {
+                throw new IOException("Could not rename " + part + " to "
+                        + target);
+            }
+        }
+    }
+
+    private static class RangeNotSatisfiableException extends IOException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static void transfer(Download download, File part,
+            AtomicBoolean canceled) throws IOException {
+        long offset = part.length();
+        URLConnection connection = openConnection(download.url);
+        if (offset > 0 && connection instanceof HttpURLConnection) {
+            connection.setRequestProperty("Range", "bytes=" + offset + "-");
+        }
+        boolean append = false;
+        if (connection instanceof HttpURLConnection) {
+            int status = ((HttpURLConnection) connection).getResponseCode();
+            if (status == 416) {
+                ((HttpURLConnection) connection).disconnect();
+                throw new RangeNotSatisfiableException();
+            } else if (status == HttpURLConnection.HTTP_PARTIAL) {
+                append = true;
+            } else if (status != HttpURLConnection.HTTP_OK) {
+                ((HttpURLConnection) connection).disconnect();
+                throw new IOException("Failed to download " + download.url
+                        + ": HTTP status " + status);
+            }
+        }
+        if (!append) {
+            offset = 0;
+        }
+        long contentLength = connection.getContentLength();
+        download.length = contentLength < 0 ? -1 : offset + contentLength;
+        download.downloaded = offset;
+
+        InputStream in = connection.getInputStream();
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(part, append);
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                if (canceled.get() || Thread.interrupted()) {
+                    // keep the part file to resume later
+                    throw new InterruptedIOException("Download canceled");
+                }
+                out.write(buffer, 0, read);
+                download.downloaded += read;
+            }
+            out.close();
+            out = null;
+        } finally {
+            IOUtils.closeQuietly(out);
+            IOUtils.closeQuietly(in);
+        }
+        if (download.length >= 0 && part.length() != download.length) {
+            throw new IOException("Incomplete download of " + download.url);
+        }
+        download.length = part.length();
+    }
+
+    /**
+     * Verifies a download against a checksum file published next to it, if
+     * any.
+     */
+    private static void verify(String url, File file) throws IOException {
+        for (String[] checksum : CHECKSUMS) {
+            String expected = fetchChecksum(url + checksum[0]);
+            if (expected == null) {
+                continue;
+            }
+            String actual = HashUtil.hash(file, checksum[1]);
+            if (!actual.equalsIgnoreCase(expected)) {
+                throw new IOException("Checksum mismatch for " + url
+                        + ": expected " + expected + " but was " + actual);
+            }
+            return;
+        }
+    }
+
+    /**
+     * Fetches a published checksum. Failures are only logged, as the checksum
+     * is optional and the download itself has succeeded.
+     *
+     * @param url
+     * @return the checksum or null if none was published or it could not be
+     *         fetched
+     */
+    private static String fetchChecksum(String url) {
+        InputStream in = null;
+        try {
+            URLConnection connection = openConnection(url);
+            if (connection instanceof HttpURLConnection) {
+                int status = ((HttpURLConnection) connection)
+                        .getResponseCode();
+                if (status != HttpURLConnection.HTTP_OK) {
+                    // no checksum published
+                    ((HttpURLConnection) connection).disconnect();
+                    return null;
+                }
+            }
+            in = connection.getInputStream();
+            // "<hex> [filename]"
+            String[] parts = IOUtils.toString(in, "US-ASCII").trim()
+                    .split("\\s+");
+            return parts.length > 0 && parts[0].matches("[0-9a-fA-F]+") ? parts[0]
+                    : null;
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                    "Could not fetch the checksum " + url
+                            + ", the download is not verified", e);
+            return null;
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Opens a connection with timeouts. Proxies are taken care of by the
+     * platform.
+     *
+     * @param url
+     * @return
+     * @throws IOException
+     */
+    static URLConnection openConnection(String url) throws IOException {
+        URLConnection connection = new URL(url).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        return connection;
+    }
+}
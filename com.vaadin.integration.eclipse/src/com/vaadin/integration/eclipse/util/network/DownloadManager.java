@@ -1,11 +1,10 @@
 package com.vaadin.integration.eclipse.util.network;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.apache.commons.io.IOUtils;
@@ -14,16 +13,23 @@ import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.NullProgressMonitor;
 
+import com.vaadin.integration.eclipse.VaadinPlugin;
 import com.vaadin.integration.eclipse.util.ErrorUtil;
 import com.vaadin.integration.eclipse.util.LegacyUtil;
 import com.vaadin.integration.eclipse.util.VersionUtil;
 import com.vaadin.integration.eclipse.util.data.DownloadableVaadinVersion;
+import com.vaadin.integration.eclipse.util.files.ArtifactStore;
 import com.vaadin.integration.eclipse.util.files.LocalFileManager;
 import com.vaadin.integration.eclipse.util.files.LocalFileManager.FileType;
+import com.vaadin.integration.eclipse.util.files.LocalVersionCatalogue;
+import com.vaadin.integration.eclipse.util.network.DownloadEngine.Download;
 
 public class DownloadManager {
 
-    public static final String VAADIN_DOWNLOAD_BASE_URL = "http://vaadin.com/download/";
+    // can be pointed to a local server e.g. for testing
+    public static final String VAADIN_DOWNLOAD_BASE_URL = System.getProperty(
+            VaadinPlugin.PLUGIN_ID + ".downloadBaseUrl",
+            "http://vaadin.com/download/");
 
     public static final String VAADIN_LATEST_URL = VAADIN_DOWNLOAD_BASE_URL
             + "LATEST";
@@ -31,10 +37,18 @@ public class DownloadManager {
     private static final String AVAILABLE_VAADIN_VERSIONS_ALL_URL = VAADIN_DOWNLOAD_BASE_URL
             + "VERSIONS_ALL";
 
-    private static final String GWT_DOWNLOAD_URL = "http://vaadin.com/download/external/gwt";
+    private static final String GWT_DOWNLOAD_URL = VAADIN_DOWNLOAD_BASE_URL
+            + "external/gwt";
+
+    private static final HttpResourceCache versionsCache = new HttpResourceCache(
+            AVAILABLE_VAADIN_VERSIONS_ALL_URL, "VERSIONS_ALL",
+            HttpResourceCache.DEFAULT_MAXIMUM_AGE);
 
     private static List<DownloadableVaadinVersion> availableVersions;
 
+    // the contents availableVersions was parsed from
+    private static String availableVersionsData;
+
     /**
      * Returns the latest release version available to download.
      * 
@@ -68,7 +82,12 @@ public class DownloadManager {
      *             URL
      */
     static String downloadURL(String url) throws IOException {
-        return IOUtils.toString(getDownloadStream(url));
+        InputStream in = getDownloadStream(url);
+        try {
+            return IOUtils.toString(in);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
     }
 
     /**
@@ -80,10 +99,7 @@ public class DownloadManager {
      */
     private static InputStream getDownloadStream(String urlString)
             throws IOException {
-        URL url = new URL(urlString);
-        InputStream inputStream = url.openStream();
-
-        return inputStream;
+        return DownloadEngine.openConnection(urlString).getInputStream();
     }
 
     /**
@@ -91,8 +107,10 @@ public class DownloadManager {
      * list contains release version and additionally, if includeDevelopment is
      * true, nightly and pre-release versions.
      * 
-     * It is not guaranteed that the list is fetched from the site every time
-     * this is called.
+     * The list is fetched from the site only if it has not been fetched before
+     * or the cache has been flushed. Otherwise, the previously fetched list is
+     * returned and updated in the background when it is older than
+     * {@link HttpResourceCache#DEFAULT_MAXIMUM_AGE}.
      * 
      * @param onlyRelease
      *            True to include only release builds, false to include others
@@ -103,8 +121,10 @@ public class DownloadManager {
      */
     public static synchronized List<DownloadableVaadinVersion> getAvailableVersions(
             boolean onlyRelease) throws CoreException {
-        if (availableVersions == null) {
-            availableVersions = downloadAvailableVersionsList();
+        String data = versionsCache.get();
+        if (data != availableVersionsData) {
+            availableVersions = parseAvailableVersions(data);
+            availableVersionsData = data;
         }
 
         List<DownloadableVaadinVersion> versions;
@@ -126,28 +146,11 @@ public class DownloadManager {
     }
 
     /**
-     * Flush the cached list of versions, forcing it to be reloaded the next
-     * time it is requested.
+     * Flush the cached list of versions, forcing it to be checked on the site
+     * the next time it is requested.
      */
     public static synchronized void flushCache() {
-        availableVersions = null;
-    }
-
-    /**
-     * Download and return the list of available Vaadin versions from vaadin.com
-     * 
-     * @return
-     * @throws CoreException
-     */
-    private static List<DownloadableVaadinVersion> downloadAvailableVersionsList()
-            throws CoreException {
-        try {
-            String versionData = downloadURL(AVAILABLE_VAADIN_VERSIONS_ALL_URL);
-            return parseAvailableVersions(versionData);
-        } catch (IOException e) {
-            throw ErrorUtil.newCoreException(
-                    "Failed to download list of available Vaadin versions", e);
-        }
+        versionsCache.invalidate();
     }
 
     /**
@@ -206,6 +209,8 @@ public class DownloadManager {
                 downloadFileToLocalStore(downloadableVersion.getDownloadURL(),
                         downloadableVersion.getType(), versionNumber,
                         subProgressMonitor);
+                LocalVersionCatalogue.add(downloadableVersion.getType(),
+                        versionNumber);
             } catch (CoreException e) {
                 throw ErrorUtil.newCoreException(
                         "Failed to download Vaadin version ("
@@ -289,6 +294,45 @@ public class DownloadManager {
         }
     }
 
+    /**
+     * Downloads gwt-user.jar, gwt-dev.jar and the given dependencies of the
+     * specified GWT version, concurrently. Files that have already been
+     * downloaded are skipped.
+     * 
+     * @param gwtVersion
+     * @param dependencyJars
+     *            file names of the GWT dependency JARs
+     * @param monitor
+     * @throws CoreException
+     */
+    public static void downloadGwtLibraries(String gwtVersion,
+            List<String> dependencyJars, IProgressMonitor monitor)
+            throws CoreException {
+        if (monitor == null) {
+            monitor = new NullProgressMonitor();
+        }
+
+        List<Download> downloads = new ArrayList<Download>();
+        downloads.add(new Download(GWT_USER_JAR_DOWNLOAD_URL(gwtVersion),
+                LocalFileManager.getLocalGwtUserJar(gwtVersion).toFile()));
+        downloads.add(new Download(GWT_DEV_JAR_DOWNLOAD_URL(gwtVersion),
+                LocalFileManager.getLocalGwtDevJar(gwtVersion).toFile()));
+        for (String dependencyJar : dependencyJars) {
+            downloads.add(new Download(GWT_DEPENDENCY_JAR_DOWNLOAD_URL(
+                    gwtVersion, dependencyJar), LocalFileManager
+                    .getLocalGWTDependencyJar(gwtVersion, dependencyJar)
+                    .toFile()));
+        }
+        List<File> downloaded = new ArrayList<File>();
+        for (Download download : downloads) {
+            if (!download.getTarget().exists()) {
+                downloaded.add(download.getTarget());
+            }
+        }
+        DownloadEngine.download(downloads, monitor);
+        ArtifactStore.add(downloaded);
+    }
+
     public static void downloadDependency(String gwtVersion,
             String dependencyJar, IProgressMonitor monitor)
             throws CoreException {
@@ -302,7 +346,7 @@ public class DownloadManager {
 
             IPath target = LocalFileManager.getLocalGWTDependencyJar(
                     gwtVersion, dependencyJar);
-            downloadFileToLocalStore(url, target.toFile());
+            downloadFileToLocalStore(url, target.toFile(), monitor);
         } finally {
             monitor.done();
         }
@@ -325,14 +369,10 @@ public class DownloadManager {
     private static boolean downloadFileToLocalStore(String url,
             FileType fileType, String version, IProgressMonitor monitor)
             throws CoreException {
-        String filename = fileType.getFilename(version);
-        monitor.beginTask("Downloading " + filename + "...",
-                IProgressMonitor.UNKNOWN);
-
         File targetFile = LocalFileManager.getLocalFile(fileType, version)
                 .toFile();
 
-        return downloadFileToLocalStore(url, targetFile);
+        return downloadFileToLocalStore(url, targetFile, monitor);
     }
 
     /**
@@ -341,31 +381,21 @@ public class DownloadManager {
      * 
      * @param url
      * @param targetFile
+     * @param monitor
      * @return true if the file was downloaded, false otherwise
      * @throws CoreException
      *             If the download failed
      */
-    private static boolean downloadFileToLocalStore(String url, File targetFile)
-            throws CoreException {
+    private static boolean downloadFileToLocalStore(String url,
+            File targetFile, IProgressMonitor monitor) throws CoreException {
         if (targetFile.exists()) {
             return false;
         }
 
-        try {
-            // Create the parent directory if it does not exist
-            if (!targetFile.getParentFile().exists()) {
-                targetFile.getParentFile().mkdirs();
-            }
-
-            IOUtils.copy(getDownloadStream(url), new FileOutputStream(
-                    targetFile));
-
-            return true;
-        } catch (IOException e) {
-            throw ErrorUtil.newCoreException("Failed to download "
-                    + targetFile.getName() + " from " + url);
-        }
-
+        DownloadEngine.download(Collections.singletonList(new Download(url,
+                targetFile)), monitor);
+        ArtifactStore.add(Collections.singletonList(targetFile));
+        return true;
     }
 
 }
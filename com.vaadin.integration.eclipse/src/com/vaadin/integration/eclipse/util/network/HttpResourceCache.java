@@ -0,0 +1,287 @@
+package com.vaadin.integration.eclipse.util.network;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URLConnection;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import com.vaadin.integration.eclipse.util.ErrorUtil;
+import com.vaadin.integration.eclipse.util.files.LocalFileManager;
+
+/**
+ * Local copy of a small text resource on the Vaadin site, such as a version
+ * or archetype list.
+ *
+ * The resource is saved in the configuration area together with its ETag
+ * and Last-Modified headers. Once the copy is older than the maximum age, it
+ * is still returned immediately but revalidated with a conditional request
+ * in a background job, so an unchanged resource is not downloaded again and
+ * callers do not wait for the network. Only when there is no local copy at
+ * all, or it has been explicitly invalidated, {@link #get()} waits for the
+ * download.
+ *
+ * {@link #get()} returns the same String instance until the contents change,
+ * so callers can cheaply check whether to parse the contents again.
+ */
+public class HttpResourceCache {
+
+    /**
+     * Default maximum age of a local copy before it is revalidated.
+     */
+    public static final long DEFAULT_MAXIMUM_AGE = 60L * 60 * 1000;
+
+    private static final String METADATA_SUFFIX = ".cache.json";
+
+    private static final String CHARSET = "UTF-8";
+
+    private final String url;
+    private final String fileName;
+    private final long maximumAge;
+    private final Job refreshJob;
+
+    private boolean loaded = false;
+    private boolean invalidated = false;
+    private String data;
+    private String etag;
+    private String lastModified;
+    // when the local copy was last known to be up to date
+    private long validated;
+
+    /**
+     * @param url
+     *            URL of the resource
+     * @param fileName
+     *            name of the local copy in the configuration area
+     * @param maximumAge
+     *            time in milliseconds after which the local copy is
+     *            revalidated in the background
+     */
+    public HttpResourceCache(String url, String fileName, long maximumAge) {
+        this.url = url;
+        this.fileName = fileName;
+        this.maximumAge = maximumAge;
+        refreshJob = new Job("Updating " + fileName) {
+            @Override
+            protected IStatus run(IProgressMonitor monitor) {
+                try {
+                    fetch();
+                } catch (CoreException e) {
+                    // typically offline, the local copy is used
+                    ErrorUtil.handleBackgroundException(IStatus.INFO,
+                            "Could not update " + HttpResourceCache.this.url,
+                            e);
+                }
+                return Status.OK_STATUS;
+            }
+        };
+        refreshJob.setUser(false);
+        refreshJob.setSystem(true);
+    }
+
+    /**
+     * Returns the contents of the resource, downloading it only if there is
+     * no local copy or it has been invalidated. A local copy older than the
+     * maximum age is returned and revalidated in the background.
+     *
+     * @return
+     * @throws CoreException
+     *             if there is no local copy and the download failed
+     */
+    public String get() throws CoreException {
+        boolean download;
+        synchronized (this) {
+            load();
+            download = data == null || invalidated;
+        }
+        if (download) {
+            try {
+                fetch();
+            } catch (CoreException e) {
+                synchronized (this) {
+                    if (data == null) {
+                        throw e;
+                    }
+                }
+                ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                        "Could not update " + url + ", using the local copy",
+                        e);
+            }
+        }
+        return getIfPresent();
+    }
+
+    /**
+     * Returns the local copy of the resource without waiting for the network.
+     * If there is no local copy or it is older than the maximum age, the
+     * resource is downloaded in the background.
+     *
+     * @return the local copy or null if there is none yet
+     */
+    public synchronized String getIfPresent() {
+        load();
+        if (data == null || invalidated
+                || System.currentTimeMillis() - validated > maximumAge) {
+            refreshJob.schedule();
+        }
+        return data;
+    }
+
+    /**
+     * Makes the next {@link #get()} check the resource on the server before
+     * returning it.
+     */
+    public synchronized void invalidate() {
+        invalidated = true;
+    }
+
+    /**
+     * Downloads the resource if it has changed since the local copy was
+     * downloaded.
+     */
+    private void fetch() throws CoreException {
+        String requestEtag;
+        String requestLastModified;
+        synchronized (this) {
+            requestEtag = data != null ? etag : null;
+            requestLastModified = data != null ? lastModified : null;
+        }
+        try {
+            URLConnection connection = DownloadEngine.openConnection(url);
+            if (requestEtag != null) {
+                connection.setRequestProperty("If-None-Match", requestEtag);
+            }
+            if (requestLastModified != null) {
+                connection.setRequestProperty("If-Modified-Since",
+                        requestLastModified);
+            }
+            if (connection instanceof HttpURLConnection) {
+                int status = ((HttpURLConnection) connection)
+                        .getResponseCode();
+                if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    ((HttpURLConnection) connection).disconnect();
+                    synchronized (this) {
+                        invalidated = false;
+                        validated = System.currentTimeMillis();
+                        saveMetadata();
+                    }
+                    return;
+                } else if (status != HttpURLConnection.HTTP_OK) {
+                    ((HttpURLConnection) connection).disconnect();
+                    throw new IOException("HTTP status " + status);
+                }
+            }
+            InputStream in = connection.getInputStream();
+            String contents;
+            try {
+                contents = IOUtils.toString(in, CHARSET);
+            } finally {
+                IOUtils.closeQuietly(in);
+            }
+            synchronized (this) {
+                if (!contents.equals(data)) {
+                    data = contents;
+                    save();
+                }
+                etag = connection.getHeaderField("ETag");
+                lastModified = connection.getHeaderField("Last-Modified");
+                invalidated = false;
+                validated = System.currentTimeMillis();
+                saveMetadata();
+            }
+        } catch (IOException e) {
+            throw ErrorUtil.newCoreException("Failed to download " + url, e);
+        }
+    }
+
+    private File getFile(String suffix) throws CoreException {
+        return LocalFileManager.getConfigurationPath()
+                .append(IPath.SEPARATOR + fileName + suffix).toFile();
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        try {
+            File file = getFile("");
+            if (!file.isFile()) {
+                return;
+            }
+            data = FileUtils.readFileToString(file, CHARSET);
+            File metadataFile = getFile(METADATA_SUFFIX);
+            if (metadataFile.isFile()) {
+                JSONObject metadata = (JSONObject) new JSONParser()
+                        .parse(FileUtils.readFileToString(metadataFile,
+                                CHARSET));
+                etag = (String) metadata.get("etag");
+                lastModified = (String) metadata.get("lastModified");
+                validated = (Long) metadata.get("validated");
+            }
+        } catch (CoreException e) {
+            ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                    "Could not read the local copy of " + url, e);
+        } catch (IOException e) {
+            ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                    "Could not read the local copy of " + url, e);
+        } catch (ParseException e) {
+            ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                    "Could not read the local copy of " + url, e);
+        } catch (RuntimeException e) {
+            // e.g. missing or unexpected values in an edited file, the
+            // resource is revalidated
+            ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                    "Could not read the local copy of " + url, e);
+            etag = null;
+            lastModified = null;
+            validated = 0;
+        }
+    }
+
+    private void save() {
+        try {
+            File file = getFile("");
+            file.getParentFile().mkdirs();
+            FileUtils.writeStringToFile(file, data, CHARSET);
+        } catch (CoreException e) {
+            // log and ignore - the data is still valid
+            ErrorUtil.handleBackgroundException(
+                    "Failed to save " + url + " to cache", e);
+        } catch (IOException e) {
+            // log and ignore - the data is still valid
+            ErrorUtil.handleBackgroundException(
+                    "Failed to save " + url + " to cache", e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void saveMetadata() {
+        JSONObject metadata = new JSONObject();
+        metadata.put("etag", etag);
+        metadata.put("lastModified", lastModified);
+        metadata.put("validated", validated);
+        try {
+            FileUtils.writeStringToFile(getFile(METADATA_SUFFIX),
+                    metadata.toJSONString(), CHARSET);
+        } catch (CoreException e) {
+            ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                    "Failed to save the cache headers of " + url, e);
+        } catch (IOException e) {
+            ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                    "Failed to save the cache headers of " + url, e);
+        }
+    }
+}
@@ -1,27 +1,20 @@
 package com.vaadin.integration.eclipse.util.network;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileWriter;
-import java.io.IOException;
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.List;
 
 import javax.xml.parsers.DocumentBuilderFactory;
 
-import org.apache.commons.io.IOUtils;
 import org.eclipse.core.runtime.CoreException;
-import org.eclipse.core.runtime.IPath;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
 import com.vaadin.integration.eclipse.util.ErrorUtil;
 import com.vaadin.integration.eclipse.util.data.MavenVaadinVersion;
-import com.vaadin.integration.eclipse.util.files.LocalFileManager;
 import com.vaadin.integration.eclipse.util.files.LocalFileManager.FileType;
 import com.vaadin.integration.eclipse.wizards.VaadinArchetype;
 
@@ -37,13 +30,29 @@ public class MavenVersionManager {
     private static final String AVAILABLE_VAADIN_ARCHETYPES_URL = DownloadManager.VAADIN_DOWNLOAD_BASE_URL
             + ARCHETYPES_FILE_NAME;
 
+    private static final HttpResourceCache versionsCache = new HttpResourceCache(
+            AVAILABLE_VAADIN_VERSIONS_URL, VERSIONS_FILE_NAME,
+            HttpResourceCache.DEFAULT_MAXIMUM_AGE);
+
+    private static final HttpResourceCache archetypesCache = new HttpResourceCache(
+            AVAILABLE_VAADIN_ARCHETYPES_URL, ARCHETYPES_FILE_NAME,
+            HttpResourceCache.DEFAULT_MAXIMUM_AGE);
+
     private static List<MavenVaadinVersion> availableVersions;
 
+    // the contents availableVersions was parsed from
+    private static String availableVersionsData;
+
     private static List<VaadinArchetype> allArchetypes;
 
+    // the contents allArchetypes was parsed from, null for the defaults
+    private static String allArchetypesData;
+
     /**
-     * Returns a list of available Vaadin archetypes. It is not guaranteed that
-     * the list is fetched from the site every time this is called.
+     * Returns a list of available Vaadin archetypes. The list is never
+     * fetched from the site while waiting, but updated in the background.
+     * Until the list has been fetched once, the archetypes included in the
+     * plug-in are returned.
      *
      * @param includePrereleases
      *            true to also return pre-release versions of archetypes
@@ -56,21 +65,10 @@ public class MavenVersionManager {
     @SuppressWarnings("restriction")
     public static synchronized List<VaadinArchetype> getAvailableArchetypes(
             boolean includePrereleases, String versionRegex) {
-        if (allArchetypes == null) {
-            try {
-                loadAndCacheResource(AVAILABLE_VAADIN_ARCHETYPES_URL,
-                        ARCHETYPES_FILE_NAME);
-            } catch (IOException e) {
-                ErrorUtil.handleBackgroundException(
-                        "Failed to retrieve Vaadin archetype list from server",
-                        e);
-            }
-            try {
-                allArchetypes = loadCachedArchetypes(ARCHETYPES_FILE_NAME);
-            } catch (CoreException e) {
-                ErrorUtil.handleBackgroundException(
-                        "Failed to load cached Vaadin archetypes", e);
-            }
+        String data = archetypesCache.getIfPresent();
+        if (allArchetypes == null || data != allArchetypesData) {
+            allArchetypes = data != null ? loadCachedArchetypes(data) : null;
+            allArchetypesData = data;
         }
 
         if (allArchetypes == null) {
@@ -90,23 +88,14 @@ public class MavenVersionManager {
         return availableArchetypes;
     }
 
-    private static List<VaadinArchetype> loadCachedArchetypes(String filename)
-            throws CoreException {
-        File file = getCacheFile(filename);
-        InputStream is = null;
+    private static List<VaadinArchetype> loadCachedArchetypes(String data) {
         try {
-            is = new BufferedInputStream(new FileInputStream(file));
-            return parseArchetypesStream(is);
-        } catch (IOException ignored) {
-        } finally {
-            try {
-                if (is != null) {
-                    is.close();
-                }
-            } catch (IOException ignored) {
-            }
+            return parseArchetypesStream(new ByteArrayInputStream(
+                    data.getBytes("UTF-8")));
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            return null;
         }
-        return null;
     }
 
     private static List<VaadinArchetype> loadDefaultArchetypes() {
@@ -159,8 +148,10 @@ public class MavenVersionManager {
      * management systems. The list contains release version and additionally,
      * if onlyRelease is false, nightly and pre-release versions.
      *
-     * It is not guaranteed that the list is fetched from the site every time
-     * this is called.
+     * The list is fetched from the site only if it has not been fetched
+     * before. Otherwise, the previously fetched list is returned and updated
+     * in the background when it is older than
+     * {@link HttpResourceCache#DEFAULT_MAXIMUM_AGE}.
      *
      * @param onlyRelease
      *            True to include only release builds, false to include others
@@ -171,15 +162,10 @@ public class MavenVersionManager {
      */
     public static synchronized List<MavenVaadinVersion> getAvailableVersions(
             boolean onlyRelease) throws CoreException {
-        if (availableVersions == null) {
-            try {
-                availableVersions = downloadAvailableVersionsList();
-            } catch (CoreException e) {
-                ErrorUtil.handleBackgroundException(
-                        "Failed to retrieve available Vaadin 7 version list from server, using cached list",
-                        e);
-                availableVersions = getCachedAvailableVersionsList();
-            }
+        String data = versionsCache.get();
+        if (data != availableVersionsData) {
+            availableVersions = parseAvailableVersions(data);
+            availableVersionsData = data;
         }
 
         List<MavenVaadinVersion> versions;
@@ -198,87 +184,6 @@ public class MavenVersionManager {
         return versions;
     }
 
-    /**
-     * Download and return the list of available Vaadin versions from vaadin.com
-     * .
-     *
-     * If the download succeeds, also save the list in the cache.
-     *
-     * @return
-     * @throws CoreException
-     */
-    private static List<MavenVaadinVersion> downloadAvailableVersionsList()
-            throws CoreException {
-        try {
-            String versionData = loadAndCacheResource(
-                    AVAILABLE_VAADIN_VERSIONS_URL, VERSIONS_FILE_NAME);
-            return parseAvailableVersions(versionData);
-        } catch (IOException e) {
-            throw ErrorUtil.newCoreException(
-                    "Failed to download list of available Vaadin versions", e);
-        }
-    }
-
-    private static String loadAndCacheResource(String url, String cacheFileName)
-            throws IOException {
-        String data = DownloadManager.downloadURL(url);
-
-        // store downloaded data to cache
-        try {
-            File cacheFile = getCacheFile(cacheFileName);
-            cacheFile.getParentFile().mkdirs();
-            BufferedWriter writer = new BufferedWriter(
-                    new FileWriter(cacheFile));
-            try {
-                writer.write(data);
-            } finally {
-                writer.close();
-            }
-        } catch (CoreException e) {
-            // log and ignore - the data is still valid
-            ErrorUtil.handleBackgroundException(
-                    "Failed to save " + url + " to cache", e);
-        } catch (IOException e) {
-            // log and ignore - the data is still valid
-            ErrorUtil.handleBackgroundException(
-                    "Failed to save " + url + " to cache", e);
-        }
-        return data;
-    }
-
-    /**
-     * Return the cached list of available Vaadin versions from last successful
-     * request to vaadin.com .
-     *
-     * @return
-     * @throws CoreException
-     */
-    private static List<MavenVaadinVersion> getCachedAvailableVersionsList()
-            throws CoreException {
-        try {
-            File cacheFile = getCacheFile(VERSIONS_FILE_NAME);
-            InputStream is = new FileInputStream(cacheFile);
-            String versionData;
-            try {
-                versionData = IOUtils.toString(is);
-            } finally {
-                is.close();
-            }
-
-            return parseAvailableVersions(versionData);
-        } catch (IOException e) {
-            throw ErrorUtil.newCoreException(
-                    "Failed to get cached list of available Vaadin versions",
-                    e);
-        }
-    }
-
-    private static File getCacheFile(String fileName) throws CoreException {
-        IPath path = LocalFileManager.getConfigurationPath()
-                .append(IPath.SEPARATOR + fileName);
-        return path.toFile();
-    }
-
     /**
      * Parses the available versions and URLs from comma separated data.
      *
@@ -0,0 +1,226 @@
+package com.vaadin.integration.eclipse.util.worker;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.security.Permission;
+
+/**
+ * Main class of a long-lived compiler worker JVM started by
+ * {@link CompilerWorkerPool}.
+ *
+ * The worker listens on a local socket and runs the main method of a compiler
+ * class (e.g. the widgetset compiler) once per request, sending everything the
+ * compiler prints back over the connection followed by an exit status line.
+ * Calls to System.exit() made by the compiler are trapped so that the JVM and
+ * its loaded and JIT compiled classes survive between compilations.
+ *
+ * This class is executed outside Eclipse and must only depend on the JDK.
+ */
+public class CompilerWorker extends SecurityManager implements
+        Thread.UncaughtExceptionHandler, Runnable {
+
+    // first line written to standard output, followed by the port number
+    static final String PORT_MARKER = "#vaadin-compiler-worker-port# ";
+
+    // last line of the output of a request, followed by the exit status
+    static final String EXIT_MARKER = "#vaadin-compiler-worker-exit# ";
+
+    // message of the exception used to abort System.exit() calls
+    private static final String EXIT_TRAPPED = "#vaadin-compiler-worker-exit-trapped#";
+
+    private static final String REQUEST_ENCODING = "UTF-8";
+
+    private BufferedReader stdin;
+
+    private volatile boolean trapExit = false;
+    private volatile Integer exitStatus = null;
+
+    /**
+     * Public so that the JVM can install the worker as the security manager
+     * at startup (-Djava.security.manager=&lt;this class&gt;).
+     */
+    public CompilerWorker() {
+    }
+
+    /**
+     * Starts the worker. The only argument is the idle timeout in
+     * milliseconds. The first line of standard input must contain the secret
+     * token the clients need to send; closing standard input stops the worker.
+     */
+    public static void main(String[] args) throws IOException {
+        int idleTimeout = Integer.parseInt(args[0]);
+
+        BufferedReader stdin = new BufferedReader(new InputStreamReader(
+                System.in, REQUEST_ENCODING));
+        String token = stdin.readLine();
+        if (token == null) {
+            return;
+        }
+
+        CompilerWorker worker;
+        if (System.getSecurityManager() instanceof CompilerWorker) {
+            worker = (CompilerWorker) System.getSecurityManager();
+        } else {
+            worker = new CompilerWorker();
+            System.setSecurityManager(worker);
+        }
+        worker.stdin = stdin;
+
+        // stop if the plug-in goes away without shutting the worker down
+        Thread stdinWatcher = new Thread(worker, "Compiler worker watchdog");
+        stdinWatcher.setDaemon(true);
+        stdinWatcher.start();
+
+        Thread.setDefaultUncaughtExceptionHandler(worker);
+
+        ServerSocket serverSocket = new ServerSocket(0, 1,
+                InetAddress.getByName("127.0.0.1"));
+        try {
+            serverSocket.setSoTimeout(idleTimeout);
+            System.out.println(PORT_MARKER + serverSocket.getLocalPort());
+            System.out.flush();
+
+            while (true) {
+                Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (SocketTimeoutException e) {
+                    // idle for too long
+                    break;
+                }
+                try {
+                    worker.serve(socket, token);
+                } catch (IOException e) {
+                    // the client went away, wait for the next one
+                } finally {
+                    socket.close();
+                }
+            }
+        } finally {
+            serverSocket.close();
+        }
+        // compilers may leave non-daemon threads behind
+        System.exit(0);
+    }
+
+    /**
+     * Reads one request from the socket, runs it and writes back the output
+     * and exit status.
+     *
+     * The request consists of lines: the token, the name of the main class,
+     * the number of arguments and the arguments one per line.
+     */
+    private void serve(Socket socket, String token) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(
+                socket.getInputStream(), REQUEST_ENCODING));
+        if (!token.equals(in.readLine())) {
+            return;
+        }
+        String mainClass = in.readLine();
+        int count = Integer.parseInt(in.readLine());
+        String[] args = new String[count];
+        for (int i = 0; i < count; ++i) {
+            args[i] = in.readLine();
+        }
+
+        // the output uses the default encoding like a forked compiler would
+        PrintStream out = new PrintStream(new BufferedOutputStream(
+                socket.getOutputStream()), true);
+        int status = run(mainClass, args, out);
+        out.println(EXIT_MARKER + status);
+        out.flush();
+    }
+
+    private int run(String mainClass, String[] args, PrintStream out) {
+        PrintStream originalOut = System.out;
+        PrintStream originalErr = System.err;
+        System.setOut(out);
+        System.setErr(out);
+        exitStatus = null;
+        trapExit = true;
+        boolean failed = false;
+        try {
+            Class<?> cls = Class.forName(mainClass, true,
+                    ClassLoader.getSystemClassLoader());
+            Method main = cls.getMethod("main", String[].class);
+            main.invoke(null, new Object[] { args });
+        } catch (InvocationTargetException e) {
+            if (!isTrappedExit(e.getCause())) {
+                e.getCause().printStackTrace(out);
+                failed = true;
+            }
+        } catch (Exception e) {
+            e.printStackTrace(out);
+            failed = true;
+        } finally {
+            trapExit = false;
+            out.flush();
+            System.setOut(originalOut);
+            System.setErr(originalErr);
+        }
+
+        if (exitStatus != null) {
+            return exitStatus.intValue();
+        }
+        return failed ? 1 : 0;
+    }
+
+    /**
+     * Waits until standard input is closed and then halts the JVM.
+     */
+    public void run() {
+        try {
+            while (stdin.readLine() != null) {
+                // ignore
+            }
+        } catch (IOException e) {
+            // fall through
+        }
+        Runtime.getRuntime().halt(0);
+    }
+
+    private static boolean isTrappedExit(Throwable t) {
+        return t instanceof SecurityException
+                && EXIT_TRAPPED.equals(t.getMessage());
+    }
+
+    @Override
+    public void checkExit(int status) {
+        if (trapExit) {
+            // the compiler may call exit from another thread than the one
+            // running main(), so the status is recorded here
+            if (exitStatus == null) {
+                exitStatus = Integer.valueOf(status);
+            }
+            throw new SecurityException(EXIT_TRAPPED);
+        }
+    }
+
+    @Override
+    public void checkPermission(Permission perm) {
+        // everything else is allowed
+    }
+
+    @Override
+    public void checkPermission(Permission perm, Object context) {
+        // everything else is allowed
+    }
+
+    public void uncaughtException(Thread t, Throwable e) {
+        if (isTrappedExit(e)) {
+            // the compiler thread that called System.exit()
+            return;
+        }
+        System.err.print("Exception in thread \"" + t.getName() + "\" ");
+        e.printStackTrace(System.err);
+    }
+}
@@ -0,0 +1,577 @@
+package com.vaadin.integration.eclipse.util.worker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.jdt.launching.IVMInstall;
+
+import com.vaadin.integration.eclipse.VaadinPlugin;
+import com.vaadin.integration.eclipse.util.ErrorUtil;
+import com.vaadin.integration.eclipse.util.HashUtil;
+import com.vaadin.integration.eclipse.util.PlatformUtil;
+import com.vaadin.integration.eclipse.util.VaadinPluginUtil;
+
+/**
+ * Manages long-lived compiler worker JVMs (see {@link CompilerWorker}) that
+ * stay warm between compilations.
+ *
+ * Workers are shared by all compilations with the same fingerprint of the
+ * JVM command line, which includes the VM and the classpath, and the working
+ * directory. When no worker can be used, e.g. the maximum number of workers
+ * are busy or the VM cannot trap System.exit() calls,
+ * {@link #start(IVMInstall, File, List, String, List)} returns null and the
+ * caller should fork a new compiler JVM as usual.
+ */
+public class CompilerWorkerPool {
+
+    // workers shut themselves down when not used for this long
+    private static final int IDLE_TIMEOUT = 15 * 60 * 1000;
+
+    private static final int CONNECT_TIMEOUT = 5000;
+
+    private static final String REQUEST_ENCODING = "UTF-8";
+
+    private static final String WORKER_DIRECTORY = "compiler-worker";
+
+    private static final String WORKER_CLASS_FILE = CompilerWorker.class
+            .getSimpleName() + ".class";
+
+    // more workers are started when all are busy, up to this many in total
+    private static final int MAX_WORKERS = 4;
+
+    /**
+     * Workers by the fingerprint of their JVM command line and working
+     * directory.
+     */
+    private static final Map<String, List<Worker>> workers = new HashMap<String, List<Worker>>();
+
+    private static boolean unsupportedVmLogged = false;
+
+    private static File classDirectory = null;
+
+    private CompilerWorkerPool() {
+    }
+
+    /**
+     * Runs the main class of a compiler in a warm worker, starting a worker
+     * if none with the same JVM, JVM arguments and working directory is idle.
+     *
+     * @param vmInstall
+     *            the VM of the JVM executable
+     * @param directory
+     *            working directory of the compiler, normally the project
+     * @param jvmArgs
+     *            the JVM executable followed by the JVM arguments, including
+     *            -classpath but not the main class
+     * @param mainClass
+     *            fully qualified name of the class to run
+     * @param args
+     *            arguments for the main method of the class
+     * @return process representing the compilation, or null if a worker
+     *         cannot be used and the compiler should be forked instead
+     */
+    public static synchronized Process start(IVMInstall vmInstall,
+            File directory, List<String> jvmArgs, String mainClass,
+            List<String> args) {
+        String securityManager = getSecurityManagerArgument(vmInstall);
+        if (securityManager == null) {
+            return null;
+        }
+        String fingerprint = fingerprint(directory, jvmArgs);
+
+        List<Worker> candidates = workers.get(fingerprint);
+        if (candidates == null) {
+            candidates = new ArrayList<Worker>();
+            workers.put(fingerprint, candidates);
+        }
+        Worker worker = null;
+        for (Iterator<Worker> it = candidates.iterator(); it.hasNext();) {
+            Worker candidate = it.next();
+            if (!candidate.isAlive()) {
+                // e.g. stopped after the idle timeout
+                it.remove();
+                candidate.dispose();
+            } else if (worker == null && !candidate.isBusy()) {
+                worker = candidate;
+            }
+        }
+        if (worker == null) {
+            if (getWorkerCount() >= MAX_WORKERS && !disposeIdleWorker()) {
+                // all workers are busy - compile the old way this time
+                removeIfEmpty(fingerprint);
+                return null;
+            }
+            worker = Worker.launch(fingerprint, directory, jvmArgs,
+                    securityManager);
+            if (worker == null) {
+                removeIfEmpty(fingerprint);
+                return null;
+            }
+            candidates.add(worker);
+        }
+
+        try {
+            return worker.submit(mainClass, args);
+        } catch (IOException e) {
+            ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                    "Could not send a request to the compiler worker", e);
+            stop(worker);
+            return null;
+        }
+    }
+
+    /**
+     * Checks whether a process returned by
+     * {@link #start(IVMInstall, File, List, String, List)} ended because the
+     * worker died or the connection to it was lost, in which case the
+     * compilation should be retried by forking a JVM.
+     */
+    public static boolean isWorkerFailure(Process process) {
+        return process instanceof WorkerProcess
+                && ((WorkerProcess) process).isWorkerFailure();
+    }
+
+    /**
+     * Stops all workers. Called when the plug-in is stopped.
+     */
+    public static synchronized void stopAll() {
+        for (List<Worker> list : workers.values()) {
+            for (Worker worker : list) {
+                worker.dispose();
+            }
+        }
+        workers.clear();
+    }
+
+    /**
+     * Returns the JVM argument that installs the worker as the security
+     * manager, which traps System.exit() calls of the compilers, or null if
+     * the VM does not support security managers.
+     */
+    private static String getSecurityManagerArgument(IVMInstall vmInstall) {
+        int version = VaadinPluginUtil.getJavaFeatureVersion(vmInstall);
+        if (version >= 24) {
+            if (!unsupportedVmLogged) {
+                unsupportedVmLogged = true;
+                ErrorUtil.logInfo("Compiler workers are not used with Java "
+                        + version + " as it does not allow installing a "
+                        + "security manager, using a separate JVM for each "
+                        + "compilation");
+            }
+            return null;
+        } else if (version >= 18) {
+            // the worker installs itself, which must be allowed explicitly
+            return "-Djava.security.manager=allow";
+        } else {
+            return "-Djava.security.manager="
+                    + CompilerWorker.class.getName();
+        }
+    }
+
+    private static int getWorkerCount() {
+        int count = 0;
+        for (List<Worker> list : workers.values()) {
+            count += list.size();
+        }
+        return count;
+    }
+
+    /**
+     * Stops an idle worker to make room for a new one.
+     *
+     * @return true if a worker was stopped
+     */
+    private static boolean disposeIdleWorker() {
+        for (List<Worker> list : workers.values()) {
+            for (Worker worker : list) {
+                if (!worker.isBusy()) {
+                    stop(worker);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void removeIfEmpty(String fingerprint) {
+        List<Worker> list = workers.get(fingerprint);
+        if (list != null && list.isEmpty()) {
+            workers.remove(fingerprint);
+        }
+    }
+
+    private static String fingerprint(File directory, List<String> jvmArgs) {
+        MessageDigest digest = HashUtil.newSha1();
+        HashUtil.update(digest, directory.getAbsolutePath());
+        for (String arg : jvmArgs) {
+            HashUtil.update(digest, arg);
+        }
+        return HashUtil.toHex(digest.digest());
+    }
+
+    /**
+     * Returns the directory containing the worker class, copying the class
+     * file out of the plug-in if not done yet in this session.
+     */
+    private static File getClassDirectory() throws IOException {
+        if (classDirectory == null) {
+            File dir = VaadinPlugin.getInstance().getStateLocation()
+                    .append(WORKER_DIRECTORY).append("classes").toFile();
+            String packagePath = CompilerWorker.class.getPackage().getName()
+                    .replace('.', File.separatorChar);
+            File packageDir = new File(dir, packagePath);
+            if (!packageDir.isDirectory() && !packageDir.mkdirs()) {
+                throw new IOException("Could not create directory "
+                        + packageDir);
+            }
+            InputStream in = CompilerWorker.class
+                    .getResourceAsStream(WORKER_CLASS_FILE);
+            if (in == null) {
+                throw new IOException("Could not find " + WORKER_CLASS_FILE);
+            }
+            OutputStream out = null;
+            try {
+                out = new FileOutputStream(new File(packageDir,
+                        WORKER_CLASS_FILE));
+                IOUtils.copy(in, out);
+            } finally {
+                IOUtils.closeQuietly(in);
+                IOUtils.closeQuietly(out);
+            }
+            classDirectory = dir;
+        }
+        return classDirectory;
+    }
+
+    /**
+     * A running worker JVM.
+     */
+    private static final class Worker {
+        private final String fingerprint;
+        private final Process process;
+        private final int port;
+        private final String token;
+        private volatile boolean busy = false;
+
+        private Worker(String fingerprint, Process process, int port,
+                String token) {
+            this.fingerprint = fingerprint;
+            this.process = process;
+            this.port = port;
+            this.token = token;
+        }
+
+        private static Worker launch(String fingerprint, File directory,
+                List<String> jvmArgs, String securityManager) {
+            Process process = null;
+            try {
+                List<String> command = new ArrayList<String>();
+                for (int i = 0; i < jvmArgs.size(); ++i) {
+                    String arg = jvmArgs.get(i);
+                    if (i > 0 && "-classpath".equals(jvmArgs.get(i - 1))) {
+                        arg = getClassDirectory().getAbsolutePath()
+                                + PlatformUtil.getClasspathSeparator() + arg;
+                    }
+                    command.add(arg);
+                }
+                command.add(1, securityManager);
+                command.add(CompilerWorker.class.getName());
+                command.add(String.valueOf(IDLE_TIMEOUT));
+
+                ProcessBuilder builder = new ProcessBuilder(command);
+                // relative paths in compiler parameters resolve as when
+                // forking the compiler
+                builder.directory(directory);
+                builder.redirectErrorStream(true);
+                process = builder.start();
+
+                String token = UUID.randomUUID().toString();
+                Writer stdin = new OutputStreamWriter(
+                        process.getOutputStream(), REQUEST_ENCODING);
+                stdin.write(token + "\n");
+                stdin.flush();
+
+                final BufferedReader stdout = new BufferedReader(
+                        new InputStreamReader(process.getInputStream()));
+                String line;
+                int port = -1;
+                while ((line = stdout.readLine()) != null) {
+                    if (line.startsWith(CompilerWorker.PORT_MARKER)) {
+                        port = Integer.parseInt(line.substring(
+                                CompilerWorker.PORT_MARKER.length()).trim());
+                        break;
+                    }
+                }
+                if (port < 0) {
+                    ErrorUtil.logInfo("Compiler worker could not be started, "
+                            + "using a separate JVM for each compilation");
+                    process.destroy();
+                    return null;
+                }
+
+                // nothing should be printed outside requests, but the pipe
+                // must not fill up
+                Thread drain = new Thread("Compiler worker output") {
+                    @Override
+                    public void run() {
+                        try {
+                            while (stdout.readLine() != null) {
+                                // ignore
+                            }
+                        } catch (IOException e) {
+                            // worker stopped
+                        }
+                    }
+                };
+                drain.setDaemon(true);
+                drain.start();
+
+                return new Worker(fingerprint, process, port, token);
+            } catch (IOException e) {
+                ErrorUtil.handleBackgroundException(IStatus.WARNING,
+                        "Could not start compiler worker", e);
+                if (process != null) {
+                    process.destroy();
+                }
+                return null;
+            }
+        }
+
+        private boolean isBusy() {
+            return busy;
+        }
+
+        private boolean isAlive() {
+            try {
+                process.exitValue();
+                return false;
+            } catch (IllegalThreadStateException e) {
+                return true;
+            }
+        }
+
+        private WorkerProcess submit(String mainClass, List<String> args)
+                throws IOException {
+            Socket socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress("127.0.0.1", port),
+                        CONNECT_TIMEOUT);
+                Writer out = new OutputStreamWriter(socket.getOutputStream(),
+                        REQUEST_ENCODING);
+                out.write(token + "\n");
+                out.write(mainClass + "\n");
+                out.write(args.size() + "\n");
+                for (String arg : args) {
+                    out.write(arg + "\n");
+                }
+                out.flush();
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+            busy = true;
+            return new WorkerProcess(this, socket);
+        }
+
+        private void done() {
+            busy = false;
+        }
+
+        private void dispose() {
+            process.destroy();
+        }
+    }
+
+    /**
+     * A single compilation run by a worker, presented as a {@link Process} so
+     * that it can be handled like a forked compiler.
+     *
+     * The standard output of the process contains the compiler output up to
+     * the exit status line sent by the worker. Destroying the process stops
+     * the whole worker.
+     */
+    private static final class WorkerProcess extends Process {
+        // exit status used when the worker went away during a compilation
+        private static final int WORKER_FAILURE = -1;
+
+        private final Worker worker;
+        private final Socket socket;
+        private final OutputInputStream inputStream;
+        private volatile Integer exitValue = null;
+        private volatile boolean workerFailure = false;
+
+        private WorkerProcess(Worker worker, Socket socket) throws IOException {
+            this.worker = worker;
+            this.socket = socket;
+            inputStream = new OutputInputStream(socket.getInputStream());
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return new ByteArrayOutputStream();
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return inputStream;
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            // the worker merges error output into the output
+            return new ByteArrayInputStream(new byte[0]);
+        }
+
+        @Override
+        public int waitFor() throws InterruptedException {
+            try {
+                while (inputStream.read() >= 0) {
+                    // skip output nobody read
+                }
+            } catch (IOException e) {
+                finish(null);
+            }
+            return exitValue();
+        }
+
+        @Override
+        public int exitValue() {
+            if (exitValue == null) {
+                throw new IllegalThreadStateException(
+                        "Compilation has not finished");
+            }
+            return exitValue.intValue();
+        }
+
+        @Override
+        public void destroy() {
+            stop(worker);
+            finish(null);
+        }
+
+        private boolean isWorkerFailure() {
+            return workerFailure;
+        }
+
+        private synchronized void finish(Integer status) {
+            if (exitValue != null) {
+                return;
+            }
+            if (status == null) {
+                workerFailure = true;
+                exitValue = Integer.valueOf(WORKER_FAILURE);
+                stop(worker);
+            } else {
+                exitValue = status;
+                worker.done();
+            }
+            IOUtils.closeQuietly(socket);
+        }
+
+        /**
+         * Passes through the output of the compiler line by line, ending at
+         * the exit status line of the worker.
+         */
+        private final class OutputInputStream extends InputStream {
+            private final InputStream in;
+            private byte[] line = new byte[0];
+            private int position = 0;
+            private boolean ended = false;
+
+            private OutputInputStream(InputStream in) {
+                this.in = new BufferedInputStream(in);
+            }
+
+            @Override
+            public int read() throws IOException {
+                if (!fill()) {
+                    return -1;
+                }
+                return line[position++] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                if (!fill()) {
+                    return -1;
+                }
+                int count = Math.min(len, line.length - position);
+                System.arraycopy(line, position, b, off, count);
+                position += count;
+                return count;
+            }
+
+            private boolean fill() throws IOException {
+                if (position < line.length) {
+                    return true;
+                }
+                if (ended) {
+                    return false;
+                }
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                int b;
+                while ((b = in.read()) >= 0) {
+                    buffer.write(b);
+                    if (b == '\n') {
+                        break;
+                    }
+                }
+                if (buffer.size() == 0) {
+                    // connection closed without an exit status
+                    ended = true;
+                    finish(null);
+                    return false;
+                }
+                line = buffer.toByteArray();
+                position = 0;
+
+                String text = new String(line, "ISO-8859-1");
+                if (text.startsWith(CompilerWorker.EXIT_MARKER)) {
+                    ended = true;
+                    line = new byte[0];
+                    try {
+                        finish(Integer.valueOf(text.substring(
+                                CompilerWorker.EXIT_MARKER.length()).trim()));
+                    } catch (NumberFormatException e) {
+                        finish(null);
+                    }
+                    return false;
+                }
+                return true;
+            }
+        }
+    }
+
+    private static synchronized void stop(Worker worker) {
+        List<Worker> list = workers.get(worker.fingerprint);
+        if (list != null) {
+            list.remove(worker);
+            removeIfEmpty(worker.fingerprint);
+        }
+        worker.dispose();
+    }
+}
@@ -10,6 +10,7 @@ import org.eclipse.wst.common.componentcore.resources.IVirtualComponent;
 import org.eclipse.wst.common.frameworks.datamodel.AbstractDataModelOperation;
 
 import com.vaadin.integration.eclipse.builder.WidgetsetBuildManager;
+import com.vaadin.integration.eclipse.util.PreferenceUtil;
 import com.vaadin.integration.eclipse.util.WidgetsetUtil;
 
 public class WarExportCompileWidgetsetOperation extends
@@ -25,9 +26,16 @@ public class WarExportCompileWidgetsetOperation extends
                 IJ2EEComponentExportDataModelProperties.COMPONENT);
         if (component instanceof IVirtualComponent) {
             IProject project = ((IVirtualComponent) component).getProject();
-            if (WidgetsetUtil.isWidgetsetDirty(project)) {
-                WidgetsetBuildManager.runWidgetSetBuildTool(project, true,
+            // a widgetset compiled with the development profile only works
+            // in the development browser and must never be exported, so it
+            // is recompiled without asking
+            if (!PreferenceUtil.get(project).getDevProfileWidgetsets()
+                    .isEmpty()) {
+                WidgetsetBuildManager.compileWidgetsetsForExport(project,
                         monitor);
+            } else if (WidgetsetUtil.isWidgetsetDirty(project)) {
+                WidgetsetBuildManager.runWidgetSetBuildTool(project, true,
+                        true, monitor);
             }
         }
 